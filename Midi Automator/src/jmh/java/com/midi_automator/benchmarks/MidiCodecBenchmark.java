@@ -0,0 +1,79 @@
+package com.midi_automator.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.SysexMessage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.midi_automator.utils.MidiUtils;
+
+/**
+ * Benchmarks the midi codec of MidiUtils that decodes, encodes and normalizes
+ * every incoming and learned midi message. Run by the Benchmark profile.
+ *
+ * @author aguelle
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MidiCodecBenchmark {
+
+	private ShortMessage noteOn;
+	private ShortMessage controlChange;
+	private SysexMessage sysex;
+	private String signature;
+
+	@Setup
+	public void setUp() throws InvalidMidiDataException {
+
+		noteOn = new ShortMessage(ShortMessage.NOTE_ON, 0, 60, 100);
+		controlChange = new ShortMessage(ShortMessage.CONTROL_CHANGE, 15, 103,
+				64);
+		sysex = new SysexMessage(new byte[] { (byte) 0xF0, 0x43, 0x10, 0x4C,
+				0x00, 0x00, 0x7E, 0x00, (byte) 0xF7 }, 9);
+		signature = MidiUtils.messageToString(MidiUtils
+				.normalizeMidiMesage(controlChange));
+	}
+
+	@Benchmark
+	public String messageToStringShortMessage() {
+		return MidiUtils.messageToString(controlChange);
+	}
+
+	@Benchmark
+	public String messageToStringSysexMessage() {
+		return MidiUtils.messageToString(sysex);
+	}
+
+	@Benchmark
+	public MidiMessage signatureToMessage() throws InvalidMidiDataException {
+		return MidiUtils.signatureToMessage(signature);
+	}
+
+	@Benchmark
+	public MidiMessage normalizeNoteOn() {
+		return MidiUtils.normalizeMidiMesage(noteOn);
+	}
+
+	@Benchmark
+	public MidiMessage normalizeControlChange() {
+		return MidiUtils.normalizeMidiMesage(controlChange);
+	}
+}
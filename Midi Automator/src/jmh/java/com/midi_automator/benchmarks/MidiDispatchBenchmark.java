@@ -0,0 +1,193 @@
+package com.midi_automator.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.ShortMessage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.midi_automator.midi.MidiAutomatorReceiver;
+import com.midi_automator.midi.MidiINMultiplexer;
+import com.midi_automator.midi.MidiRoute;
+import com.midi_automator.midi.MidiRoute.Trigger;
+import com.midi_automator.midi.MidiRoutingTable;
+import com.midi_automator.presenter.services.MidiRoutingService;
+import com.midi_automator.utils.MidiUtils;
+
+/**
+ * Benchmarks the hot path of an incoming midi message on the midi dispatcher
+ * thread: the multiplexer interprets the message, the receivers decode its
+ * signature and the execute receiver looks up and debounces the route of a set
+ * list with 128 learned items. The learned messages are notes, control
+ * changes of parameter selectors would be held by the parameter assembler.
+ * MidiExecuteBenchmark continues with the services behind the route. Run by
+ * the Benchmark profile.
+ *
+ * @author aguelle
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MidiDispatchBenchmark {
+
+	private static final int SET_LIST_SIZE = 128;
+	private static final int LEARNED_CHANNEL = 0;
+	private static final int UNLEARNED_CHANNEL = 15;
+
+	private MidiRoutingTable routingTable;
+	private MidiINMultiplexer interpretingMultiplexer;
+	private MidiINMultiplexer routingMultiplexer;
+	private RoutingReceiver routingReceiver;
+	private SignatureReceiver signatureReceiver;
+
+	private long debounceWindow;
+	private long time;
+	private int note;
+
+	@Setup
+	public void setUp() throws InvalidMidiDataException {
+
+		debounceWindow = MidiRoutingService.DEFAULT_DEBOUNCE_WINDOW * 1000;
+		routingTable = new MidiRoutingTable();
+
+		for (Trigger trigger : Trigger.values()) {
+			routingTable.setDebounceWindow(trigger, debounceWindow);
+		}
+
+		for (int i = 0; i < SET_LIST_SIZE; i++) {
+			MidiMessage learned = MidiUtils
+					.normalizeMidiMesage(new ShortMessage(
+							ShortMessage.NOTE_ON, LEARNED_CHANNEL, i, 127));
+			routingTable.addItem(MidiUtils.messageToString(learned), i);
+		}
+
+		signatureReceiver = new SignatureReceiver();
+		interpretingMultiplexer = new MidiINMultiplexer();
+		interpretingMultiplexer.setDeviceName("Benchmark");
+		interpretingMultiplexer.attach(signatureReceiver);
+
+		routingReceiver = new RoutingReceiver(routingTable);
+		routingMultiplexer = new MidiINMultiplexer();
+		routingMultiplexer.setDeviceName("Benchmark");
+		routingMultiplexer.attach(signatureReceiver);
+		routingMultiplexer.attach(routingReceiver);
+	}
+
+	/**
+	 * Gets the time stamp of the next message. The time stamps are apart more
+	 * than the debounce window, so every learned message fires its route.
+	 *
+	 * @return The time stamp in microseconds
+	 */
+	private long nextTime() {
+		time += debounceWindow + 1;
+		return time;
+	}
+
+	/**
+	 * Gets the note of the next message, it cycles through the set list.
+	 *
+	 * @return The note
+	 */
+	private int nextNote() {
+		note = (note + 1) % SET_LIST_SIZE;
+		return note;
+	}
+
+	@Benchmark
+	public String interpretMessage() {
+
+		interpretingMultiplexer.handleShortMessage(ShortMessage.NOTE_ON
+				| LEARNED_CHANNEL, nextNote(), 127, nextTime(),
+				System.nanoTime());
+		return signatureReceiver.signature;
+	}
+
+	@Benchmark
+	public void dispatchLearnedMessage(Blackhole blackhole) {
+
+		routingMultiplexer.handleShortMessage(ShortMessage.NOTE_ON
+				| LEARNED_CHANNEL, nextNote(), 127, nextTime(),
+				System.nanoTime());
+		blackhole.consume(routingReceiver.itemIndex);
+		blackhole.consume(signatureReceiver.signature);
+	}
+
+	@Benchmark
+	public void dispatchUnlearnedMessage(Blackhole blackhole) {
+
+		routingMultiplexer.handleShortMessage(ShortMessage.NOTE_ON
+				| UNLEARNED_CHANNEL, nextNote(), 127, nextTime(),
+				System.nanoTime());
+		blackhole.consume(routingReceiver.itemIndex);
+		blackhole.consume(signatureReceiver.signature);
+	}
+
+	/**
+	 * Decodes the signature of every message like the learn, automation and
+	 * metronom receivers.
+	 *
+	 * @author aguelle
+	 *
+	 */
+	static class SignatureReceiver extends MidiAutomatorReceiver {
+
+		String signature;
+
+		@Override
+		protected void receive(MidiMessage message, long timeStamp) {
+			super.receive(message, timeStamp);
+			signature = getInterpretedSignature();
+		}
+	}
+
+	/**
+	 * Routes every message like the execute receiver and MidiService do.
+	 *
+	 * @author aguelle
+	 *
+	 */
+	static class RoutingReceiver extends MidiAutomatorReceiver {
+
+		private final MidiRoutingTable routingTable;
+		int itemIndex;
+
+		RoutingReceiver(MidiRoutingTable routingTable) {
+			this.routingTable = routingTable;
+		}
+
+		@Override
+		protected void receive(MidiMessage message, long timeStamp) {
+			super.receive(message, timeStamp);
+
+			itemIndex = -1;
+
+			if (isInterpretedMessageKnown()) {
+
+				MidiRoute route = routingTable.getRoute(interpretedMessage);
+				long messageTime = getMessageTime(timeStamp);
+
+				if (route != null && route.getItemIndex() > -1
+						&& route.debounce(Trigger.ITEM, messageTime)) {
+					itemIndex = route.getItemIndex();
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,243 @@
+package com.midi_automator.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.ShortMessage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.midi_automator.midi.MidiAutomatorReceiver;
+import com.midi_automator.midi.MidiDispatcher;
+import com.midi_automator.midi.MidiINAutomationReceiver;
+import com.midi_automator.midi.MidiINExecuteReceiver;
+import com.midi_automator.midi.MidiINLearnReceiver;
+import com.midi_automator.midi.MidiINMerger;
+import com.midi_automator.midi.MidiINMetronomReceiver;
+import com.midi_automator.midi.MidiINMultiplexer;
+import com.midi_automator.midi.MidiRoute.Trigger;
+import com.midi_automator.midi.MidiRoutingTable;
+import com.midi_automator.presenter.services.GUIAutomationsService;
+import com.midi_automator.presenter.services.ItemListService;
+import com.midi_automator.presenter.services.LatencyService;
+import com.midi_automator.presenter.services.MidiControllerService;
+import com.midi_automator.presenter.services.MidiExecuteService;
+import com.midi_automator.presenter.services.MidiLearnService;
+import com.midi_automator.presenter.services.MidiMetronomService;
+import com.midi_automator.presenter.services.MidiRoutingService;
+import com.midi_automator.presenter.services.MidiService;
+import com.midi_automator.utils.MidiUtils;
+
+/**
+ * Benchmarks MidiService.executeMidiMessage and the fan-out of an incoming
+ * midi message to the receivers of a remote device: the execute, learn,
+ * automation and metronom receivers with the services behind them, routing a
+ * set list with 128 learned items. The services are wired by hand, the item
+ * selection that would open a file in the GUI is replaced by a sink. Run by
+ * the Benchmark profile.
+ *
+ * @author aguelle
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MidiExecuteBenchmark {
+
+	private static final int SET_LIST_SIZE = 128;
+	private static final int LEARNED_CHANNEL = 0;
+	private static final int UNLEARNED_CHANNEL = 15;
+
+	private MidiService midiService;
+	private MidiINMultiplexer multiplexer;
+	private SelectionSink selectionSink;
+
+	private ShortMessage[] learnedMessages;
+	private ShortMessage[] unlearnedMessages;
+
+	private long debounceWindow;
+	private long time;
+	private int note;
+
+	@Setup
+	public void setUp() throws InvalidMidiDataException {
+
+		debounceWindow = MidiRoutingService.DEFAULT_DEBOUNCE_WINDOW * 1000;
+		MidiRoutingTable routingTable = new MidiRoutingTable();
+
+		for (Trigger trigger : Trigger.values()) {
+			routingTable.setDebounceWindow(trigger, debounceWindow);
+		}
+
+		learnedMessages = new ShortMessage[SET_LIST_SIZE];
+		unlearnedMessages = new ShortMessage[SET_LIST_SIZE];
+
+		for (int i = 0; i < SET_LIST_SIZE; i++) {
+			learnedMessages[i] = new ShortMessage(ShortMessage.NOTE_ON,
+					LEARNED_CHANNEL, i, 127);
+			unlearnedMessages[i] = new ShortMessage(ShortMessage.NOTE_ON,
+					UNLEARNED_CHANNEL, i, 127);
+
+			MidiMessage learned = MidiUtils
+					.normalizeMidiMesage(learnedMessages[i]);
+			routingTable.addItem(MidiUtils.messageToString(learned), i);
+		}
+
+		LatencyService latencyService = new LatencyService();
+		MidiLearnService midiLearnService = new MidiLearnService();
+		selectionSink = new SelectionSink();
+
+		MidiExecuteService midiExecuteService = new MidiExecuteService();
+		ReflectionTestUtils.setField(midiExecuteService, "fileListService",
+				selectionSink);
+		ReflectionTestUtils.setField(midiExecuteService, "latencyService",
+				latencyService);
+
+		MidiRoutingService midiRoutingService = new MidiRoutingService();
+		ReflectionTestUtils.setField(midiRoutingService, "routingTable",
+				routingTable);
+		ReflectionTestUtils.setField(midiRoutingService, "midiDispatcher",
+				new MidiDispatcher());
+		ReflectionTestUtils.setField(midiRoutingService, "midiLearnService",
+				midiLearnService);
+		ReflectionTestUtils.setField(midiRoutingService, "midiExecuteService",
+				midiExecuteService);
+
+		midiService = new MidiService();
+		ReflectionTestUtils.setField(midiService, "midiLearnService",
+				midiLearnService);
+		ReflectionTestUtils.setField(midiService, "midiRoutingService",
+				midiRoutingService);
+		ReflectionTestUtils.setField(midiService, "midiExecuteService",
+				midiExecuteService);
+		ReflectionTestUtils.setField(midiService, "latencyService",
+				latencyService);
+
+		GUIAutomationsService guiAutomationsService = new GUIAutomationsService();
+		ReflectionTestUtils.setField(guiAutomationsService,
+				"midiRoutingService", midiRoutingService);
+		ReflectionTestUtils.setField(guiAutomationsService, "latencyService",
+				latencyService);
+
+		MidiMetronomService midiMetronomService = new MidiMetronomService();
+		ReflectionTestUtils.setField(midiMetronomService, "midiLearnService",
+				midiLearnService);
+
+		MidiINExecuteReceiver executeReceiver = new MidiINExecuteReceiver();
+		ReflectionTestUtils.setField(executeReceiver, "midiService",
+				midiService);
+		ReflectionTestUtils.setField(executeReceiver, "latencyService",
+				latencyService);
+		ReflectionTestUtils.setField(executeReceiver, "midiINMerger",
+				new MidiINMerger());
+		ReflectionTestUtils.setField(executeReceiver, "midiControllerService",
+				new MidiControllerService());
+
+		MidiINAutomationReceiver automationReceiver = new MidiINAutomationReceiver();
+		ReflectionTestUtils.setField(automationReceiver,
+				"guiAutomationsService", guiAutomationsService);
+
+		MidiINMetronomReceiver metronomReceiver = new MidiINMetronomReceiver();
+		ReflectionTestUtils.setField(metronomReceiver, "midiMetronomService",
+				midiMetronomService);
+
+		MidiINLearnReceiver learnReceiver = new MidiINLearnReceiver();
+
+		multiplexer = new MidiINMultiplexer();
+		multiplexer.setDeviceName("Benchmark");
+
+		for (MidiAutomatorReceiver receiver : new MidiAutomatorReceiver[] {
+				learnReceiver, executeReceiver, automationReceiver,
+				metronomReceiver }) {
+			ReflectionTestUtils.setField(receiver, "midiLearnService",
+					midiLearnService);
+			multiplexer.attach(receiver);
+		}
+	}
+
+	/**
+	 * Gets the time stamp of the next message. The time stamps are apart more
+	 * than the debounce window, so every learned message fires its route.
+	 *
+	 * @return The time stamp in microseconds
+	 */
+	private long nextTime() {
+		time += debounceWindow + 1;
+		return time;
+	}
+
+	/**
+	 * Gets the note of the next message, it cycles through the set list.
+	 *
+	 * @return The note
+	 */
+	private int nextNote() {
+		note = (note + 1) % SET_LIST_SIZE;
+		return note;
+	}
+
+	@Benchmark
+	public int executeLearnedMessage() {
+
+		midiService.executeMidiMessage(learnedMessages[nextNote()],
+				nextTime(), System.nanoTime());
+		return selectionSink.index;
+	}
+
+	@Benchmark
+	public int executeUnlearnedMessage() {
+
+		midiService.executeMidiMessage(unlearnedMessages[nextNote()],
+				nextTime(), System.nanoTime());
+		return selectionSink.index;
+	}
+
+	@Benchmark
+	public void fanOutLearnedMessage(Blackhole blackhole) {
+
+		multiplexer.handleShortMessage(ShortMessage.NOTE_ON | LEARNED_CHANNEL,
+				nextNote(), 127, nextTime(), System.nanoTime());
+		blackhole.consume(selectionSink.index);
+	}
+
+	@Benchmark
+	public void fanOutUnlearnedMessage(Blackhole blackhole) {
+
+		multiplexer.handleShortMessage(ShortMessage.NOTE_ON
+				| UNLEARNED_CHANNEL, nextNote(), 127, nextTime(),
+				System.nanoTime());
+		blackhole.consume(selectionSink.index);
+	}
+
+	/**
+	 * Takes the selection of an item instead of opening its file.
+	 *
+	 * @author aguelle
+	 *
+	 */
+	static class SelectionSink extends ItemListService {
+
+		int index;
+
+		@Override
+		public void selectEntryByIndex(int index, boolean send,
+				long triggerTime) {
+			this.index = index;
+		}
+	}
+}
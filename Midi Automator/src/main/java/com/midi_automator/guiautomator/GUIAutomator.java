@@ -163,27 +163,6 @@ public class GUIAutomator extends Thread implements IDeActivateable {
 		}
 	}
 
-	/**
-	 * Activates all automation that shall be run by midi message.
-	 * 
-	 * @param midiSignature
-	 *            The midi signature that shall invoke the automation
-	 */
-	public void activateMidiAutomations(String midiSignature) {
-
-		String trigger = guiAutomation.getTrigger();
-		String signature = guiAutomation.getMidiSignature();
-
-		if (signature != null && midiSignature != null) {
-			if ((trigger.contains(GUIAutomation.TRIGGER_MIDI) && (signature
-					.equals(midiSignature)))) {
-				log.info("Activated automation " + guiAutomation
-						+ " by MIDI message: " + midiSignature);
-				guiAutomation.setActive(true);
-			}
-		}
-	}
-
 	/**
 	 * Searches for the region and runs the desired action if the automation are
 	 * active.
@@ -0,0 +1,26 @@
+package com.midi_automator.midi;
+
+/**
+ * Consumes the values drained from a controller coalescer.
+ *
+ * @author aguelle
+ *
+ */
+public interface IMidiControllerHandler {
+
+	/**
+	 * Handles the latest value of a controller
+	 *
+	 * @param device
+	 *            The index of the device
+	 * @param channel
+	 *            The channel, 0 to 15
+	 * @param controller
+	 *            The controller number, 0 to 127 or
+	 *            MidiControllerCoalescer.PITCH_WHEEL
+	 * @param value
+	 *            The value, 0 to 127 or 0 to 16383 for the pitch wheel
+	 */
+	public void controllerChanged(int device, int channel, int controller,
+			int value);
+}
@@ -0,0 +1,30 @@
+package com.midi_automator.midi;
+
+import javax.sound.midi.MidiDevice;
+
+/**
+ * Gets notified when midi devices are plugged in or out.
+ *
+ * @author aguelle
+ *
+ */
+public interface IMidiDeviceListener {
+
+	/**
+	 * A midi device was attached. Called by the thread that refreshed the
+	 * device registry.
+	 *
+	 * @param device
+	 *            The attached midi device
+	 */
+	public void midiDeviceAttached(MidiDevice device);
+
+	/**
+	 * A midi device was detached. Called by the thread that refreshed the
+	 * device registry.
+	 *
+	 * @param device
+	 *            The detached midi device
+	 */
+	public void midiDeviceDetached(MidiDevice device);
+}
@@ -0,0 +1,25 @@
+package com.midi_automator.midi;
+
+import com.midi_automator.midi.MidiComboAutomaton.Input;
+
+/**
+ * Listens to gestures that are decided by a deadline instead of a message,
+ * e.g. a long press or the tap before the double tap window passed.
+ *
+ * @author aguelle
+ *
+ */
+public interface IMidiGestureListener {
+
+	/**
+	 * Called on the midi dispatcher thread when a gesture was fired
+	 *
+	 * @param input
+	 *            The input the switch was pressed on
+	 * @param route
+	 *            The route of the gesture
+	 * @param time
+	 *            The time of the gesture in microseconds
+	 */
+	public void gestureFired(Input input, MidiRoute route, long time);
+}
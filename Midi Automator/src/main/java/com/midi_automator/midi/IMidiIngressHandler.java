@@ -0,0 +1,44 @@
+package com.midi_automator.midi;
+
+import javax.sound.midi.MidiMessage;
+
+/**
+ * Consumes the messages drained from a MIDI ingress buffer.
+ *
+ * @author aguelle
+ *
+ */
+public interface IMidiIngressHandler {
+
+	/**
+	 * Handles a short message
+	 *
+	 * @param status
+	 *            The status byte
+	 * @param data1
+	 *            The first data byte
+	 * @param data2
+	 *            The second data byte
+	 * @param timeStamp
+	 *            The time stamp of the message in microseconds, -1 if not
+	 *            supported by the device
+	 * @param arrivalTime
+	 *            The System.nanoTime() when the message arrived
+	 */
+	public void handleShortMessage(int status, int data1, int data2,
+			long timeStamp, long arrivalTime);
+
+	/**
+	 * Handles a message that is no short message, e.g. SysEx
+	 *
+	 * @param message
+	 *            The midi message
+	 * @param timeStamp
+	 *            The time stamp of the message in microseconds, -1 if not
+	 *            supported by the device
+	 * @param arrivalTime
+	 *            The System.nanoTime() when the message arrived
+	 */
+	public void handleMessage(MidiMessage message, long timeStamp,
+			long arrivalTime);
+}
@@ -1,7 +1,9 @@
 package com.midi_automator.midi;
 
+import javax.sound.midi.MetaMessage;
 import javax.sound.midi.MidiMessage;
-import javax.sound.midi.Receiver;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.SysexMessage;
 
 import org.apache.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -10,76 +12,110 @@ import org.springframework.stereotype.Component;
 
 import com.midi_automator.presenter.Presenter;
 import com.midi_automator.presenter.services.MidiLearnService;
-import com.midi_automator.utils.MidiUtils;
 
 /**
  * 
  * @author aguelle
  * 
- *         A special midi receiver that normalizes incoming midi data and puts
- *         out debug information.
+ *         A consumer of incoming midi messages. The receiver is attached to the
+ *         midi IN multiplexer of a device, which filters, buffers, normalizes
+ *         and decodes every message once and dispatches it to all attached
+ *         receivers on the midi dispatcher thread.
  */
 @Component
 @Scope("prototype")
-public class MidiAutomatorReceiver implements Receiver {
+public class MidiAutomatorReceiver {
 
 	protected Logger log = Logger.getLogger(this.getClass().getName());
 
-	protected boolean isExecuting;
-
 	@Autowired
 	protected Presenter presenter;
 	@Autowired
 	protected MidiLearnService midiLearnService;
 
-	protected long lastTimeStamp = 0;
-	protected final long timeTolerance = 0; // in microseconds
 	protected String name;
+	protected MidiINMultiplexer multiplexer;
 	protected MidiMessage interpretedMessage;
-	protected String interpretedSignature;
-
-	@Override
-	public void send(MidiMessage message, long timeStamp) {
+	protected long arrivalTime;
 
-		log.debug("MIDI message received: "
-				+ MidiUtils.messageToString(message));
-
-		if (!isExecuting) {
-			interpretedMessage = interpreteMessage(message, timeStamp);
-			interpretedSignature = MidiUtils
-					.messageToString(interpretedMessage);
+	/**
+	 * Dispatches a midi message from a multiplexer to the receiver. Called by
+	 * the midi dispatcher thread.
+	 * 
+	 * @param multiplexer
+	 *            The multiplexer that interpreted the message
+	 * @param message
+	 *            The midi message
+	 * @param timeStamp
+	 *            The time stamp of the message
+	 * @param arrivalTime
+	 *            The System.nanoTime() when the message arrived
+	 */
+	void dispatch(MidiINMultiplexer multiplexer, MidiMessage message,
+			long timeStamp, long arrivalTime) {
 
-			log.debug("MIDI message interpreted: " + interpretedSignature);
-			log.debug("Property isExecuting=" + isExecuting);
-			log.debug("Property isInMidiLearnMode="
-					+ midiLearnService.isMidiLearning());
-		}
+		this.multiplexer = multiplexer;
+		this.interpretedMessage = multiplexer.getInterpretedMessage();
+		this.arrivalTime = arrivalTime;
+		receive(message, timeStamp);
 	}
 
-	@Override
-	public void close() {
-	};
-
 	/**
-	 * Interprets a message within a certain time frame and normalizes it.
+	 * Receives a midi message on the midi dispatcher thread. The arrival time
+	 * of the message is available in arrivalTime.
 	 * 
 	 * @param message
 	 *            The midi message
 	 * @param timeStamp
 	 *            The time stamp of the message
-	 * @return The interpreted message
 	 */
-	protected MidiMessage interpreteMessage(MidiMessage message, long timeStamp) {
+	protected void receive(MidiMessage message, long timeStamp) {
 
-		MidiMessage result = null;
+		if (log.isTraceEnabled()) {
+			log.trace("MIDI message interpreted: " + getInterpretedSignature());
+			log.trace("Property isInMidiLearnMode="
+					+ midiLearnService.isMidiLearning());
+		}
+	}
 
-		long lockedTimeFrame = lastTimeStamp + timeTolerance;
+	/**
+	 * Gets the signature of the interpreted message. The signature is decoded
+	 * by the multiplexer only once for all receivers.
+	 * 
+	 * @return The signature of the interpreted message, <NULL> if no message
+	 *         was interpreted
+	 */
+	protected String getInterpretedSignature() {
 
-		if (timeStamp > lockedTimeFrame || timeStamp == 0) {
-			lastTimeStamp = timeStamp;
-			result = MidiUtils.normalizeMidiMesage(message);
+		if (multiplexer == null) {
+			return null;
 		}
-		return result;
+		return multiplexer.getInterpretedSignature();
+	}
+
+	/**
+	 * Gets the time of the received message. The time stamp of the device is
+	 * used if supported, else the arrival time.
+	 * 
+	 * @param timeStamp
+	 *            The time stamp of the message
+	 * @return The time of the message in microseconds
+	 */
+	protected long getMessageTime(long timeStamp) {
+		return (timeStamp > 0) ? timeStamp : arrivalTime / 1000;
+	}
+
+	/**
+	 * Checks if the interpreted message is a known midi message type.
+	 * 
+	 * @return <TRUE> if the message is a short, sysex, meta or assembled
+	 *         parameter message, else <FALSE>
+	 */
+	protected boolean isInterpretedMessageKnown() {
+		return interpretedMessage instanceof ShortMessage
+				|| interpretedMessage instanceof SysexMessage
+				|| interpretedMessage instanceof MetaMessage
+				|| interpretedMessage instanceof MidiParameterMessage;
 	}
 
 	public String getName() {
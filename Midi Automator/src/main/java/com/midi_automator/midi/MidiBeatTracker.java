@@ -0,0 +1,215 @@
+package com.midi_automator.midi;
+
+import javax.sound.midi.ShortMessage;
+
+/**
+ * Tracks the beats of an incoming midi clock. The tracker counts the timing
+ * clocks at 24 pulses per quarter note, follows Start, Stop, Continue and Song
+ * Position Pointer and estimates the tempo from the beat intervals. The jitter
+ * of single clocks is smoothed by measuring whole beats and averaging them
+ * exponentially, a tempo change of more than 10% is followed immediately.
+ * Messages are handled by their status byte only, the tracker never allocates.
+ * It must only be used by one thread.
+ *
+ * @author aguelle
+ *
+ */
+public class MidiBeatTracker {
+
+	public static final int PPQN = 24;
+	public static final int DEFAULT_BEATS_PER_BAR = 4;
+
+	/** Returned if no beat was reached */
+	public static final int NO_BEAT = 0;
+
+	private static final int CLOCKS_PER_SIXTEENTH = PPQN / 4;
+	private static final double SMOOTHING = 0.25;
+	private static final double TEMPO_CHANGE = 0.1;
+	private static final double MICROS_PER_MINUTE = 60000000d;
+
+	private int beatsPerBar = DEFAULT_BEATS_PER_BAR;
+	private boolean running;
+	private long clockCount;
+	private long tempoClockCount;
+	private long lastBeatTime = -1;
+	private double beatInterval;
+
+	private volatile double bpm;
+
+	/**
+	 * Handles a midi message by its status byte
+	 *
+	 * @param status
+	 *            The status byte
+	 * @param data1
+	 *            The first data byte
+	 * @param data2
+	 *            The second data byte
+	 * @param time
+	 *            The time of the message in microseconds
+	 * @return The beat in the bar from 1 to beats per bar if a beat was
+	 *         reached, else NO_BEAT
+	 */
+	public int handle(int status, int data1, int data2, long time) {
+
+		switch (status) {
+		case ShortMessage.TIMING_CLOCK:
+			return clock(time);
+		case ShortMessage.START:
+			start();
+			break;
+		case ShortMessage.CONTINUE:
+			running = true;
+			break;
+		case ShortMessage.STOP:
+			stop();
+			break;
+		case ShortMessage.SONG_POSITION_POINTER:
+			setSongPosition((data2 << 7) | data1);
+			break;
+		}
+
+		return NO_BEAT;
+	}
+
+	/**
+	 * Checks if the status byte is handled by the tracker
+	 *
+	 * @param status
+	 *            The status byte
+	 * @return <TRUE> if the status is a clock, transport or song position
+	 *         message, else <FALSE>
+	 */
+	public static boolean isTracked(int status) {
+		return status == ShortMessage.TIMING_CLOCK
+				|| status == ShortMessage.START
+				|| status == ShortMessage.CONTINUE
+				|| status == ShortMessage.STOP
+				|| status == ShortMessage.SONG_POSITION_POINTER;
+	}
+
+	/**
+	 * Counts a timing clock. The tempo is estimated at every 24th clock, even
+	 * if the transport is stopped. The song position only advances while the
+	 * transport is running, so the clocks a stopped sequencer keeps sending do
+	 * not shift the position kept for Continue.
+	 *
+	 * @param time
+	 *            The time of the clock in microseconds
+	 * @return The beat in the bar if a beat was reached while running, else
+	 *         NO_BEAT
+	 */
+	private int clock(long time) {
+
+		if (tempoClockCount++ % PPQN == 0) {
+			estimateTempo(time);
+		}
+
+		if (!running) {
+			return NO_BEAT;
+		}
+
+		boolean beat = clockCount % PPQN == 0;
+		int beatInBar = (int) ((clockCount / PPQN) % beatsPerBar) + 1;
+
+		clockCount++;
+
+		return beat ? beatInBar : NO_BEAT;
+	}
+
+	/**
+	 * Estimates the tempo from the interval since the last beat
+	 *
+	 * @param time
+	 *            The time of the beat in microseconds
+	 */
+	private void estimateTempo(long time) {
+
+		if (lastBeatTime >= 0 && time > lastBeatTime) {
+
+			double interval = time - lastBeatTime;
+
+			if (beatInterval == 0
+					|| Math.abs(interval - beatInterval) > beatInterval
+							* TEMPO_CHANGE) {
+				beatInterval = interval;
+			} else {
+				beatInterval += (interval - beatInterval) * SMOOTHING;
+			}
+
+			bpm = MICROS_PER_MINUTE / beatInterval;
+		}
+
+		lastBeatTime = time;
+	}
+
+	/**
+	 * Starts the transport from the beginning of the song. The next clock is
+	 * the first downbeat.
+	 */
+	private void start() {
+		running = true;
+		clockCount = 0;
+		tempoClockCount = 0;
+		lastBeatTime = -1;
+	}
+
+	/**
+	 * Stops the transport, the position is kept for Continue.
+	 */
+	private void stop() {
+		running = false;
+		tempoClockCount = 0;
+		lastBeatTime = -1;
+	}
+
+	/**
+	 * Sets the song position. The tempo measurement restarts at the next beat.
+	 *
+	 * @param sixteenths
+	 *            The song position in sixteenth notes
+	 */
+	private void setSongPosition(int sixteenths) {
+		clockCount = (long) sixteenths * CLOCKS_PER_SIXTEENTH;
+		tempoClockCount = 0;
+		lastBeatTime = -1;
+	}
+
+	/**
+	 * Gets the estimated tempo. May be called from any thread.
+	 *
+	 * @return The tempo in beats per minute, 0 if no tempo was measured yet
+	 */
+	public double getBpm() {
+		return bpm;
+	}
+
+	/**
+	 * Checks if the transport is running
+	 *
+	 * @return <TRUE> after Start or Continue, <FALSE> after Stop
+	 */
+	public boolean isRunning() {
+		return running;
+	}
+
+	public int getBeatsPerBar() {
+		return beatsPerBar;
+	}
+
+	public void setBeatsPerBar(int beatsPerBar) {
+		this.beatsPerBar = Math.max(1, beatsPerBar);
+	}
+
+	/**
+	 * Resets the tracker to a stopped transport without tempo.
+	 */
+	public void reset() {
+		running = false;
+		clockCount = 0;
+		tempoClockCount = 0;
+		lastBeatTime = -1;
+		beatInterval = 0;
+		bpm = 0;
+	}
+}
@@ -0,0 +1,207 @@
+package com.midi_automator.midi;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MetaMessage;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.SysexMessage;
+import javax.sound.midi.Track;
+
+/**
+ * Records the raw incoming midi stream of midi IN devices to a Standard MIDI
+ * File. Every device gets its own track named by the device. The messages are
+ * stamped with their arrival time at a resolution of 50 microseconds. System
+ * common and real time messages can not be stored as events of a Standard
+ * MIDI File, so they are stored as escaped SysEx events (F7) and restored by
+ * the MidiCaptureReplayer.
+ *
+ * @author aguelle
+ *
+ */
+public class MidiCaptureRecorder {
+
+	/** Ticks per quarter note, 50 microseconds per tick at the default tempo */
+	public static final int RESOLUTION = 10000;
+	public static final int DEFAULT_TEMPO = 500000;
+
+	static final int META_TEMPO = 0x51;
+	static final int META_TRACK_NAME = 0x03;
+
+	private static final long MICROS_PER_TICK = DEFAULT_TEMPO / RESOLUTION;
+
+	private final Sequence sequence;
+	private final Map<String, Track> tracks = new HashMap<String, Track>();
+	private long startTime;
+	private long eventCount;
+	private boolean recording;
+
+	/**
+	 * Constructor
+	 */
+	public MidiCaptureRecorder() {
+
+		try {
+			sequence = new Sequence(Sequence.PPQ, RESOLUTION);
+			Track conductor = sequence.createTrack();
+			conductor.add(new MidiEvent(new MetaMessage(META_TEMPO,
+					new byte[] { (byte) (DEFAULT_TEMPO >> 16),
+							(byte) (DEFAULT_TEMPO >> 8), (byte) DEFAULT_TEMPO },
+					3), 0));
+		} catch (InvalidMidiDataException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Starts recording, the arrival times are stored relative to the start.
+	 */
+	public synchronized void start() {
+		startTime = System.nanoTime();
+		recording = true;
+	}
+
+	/**
+	 * Stops recording, later messages are ignored.
+	 */
+	public synchronized void stop() {
+		recording = false;
+	}
+
+	/**
+	 * Gets a receiver that records the messages of a device
+	 *
+	 * @param deviceName
+	 *            The name of the midi device
+	 * @return The receiver to tap the ingress of the device
+	 */
+	public Receiver getTap(final String deviceName) {
+
+		return new Receiver() {
+
+			@Override
+			public void send(MidiMessage message, long timeStamp) {
+				record(deviceName, message, System.nanoTime());
+			}
+
+			@Override
+			public void close() {
+			}
+		};
+	}
+
+	/**
+	 * Records a message
+	 *
+	 * @param deviceName
+	 *            The name of the midi device
+	 * @param message
+	 *            The midi message
+	 * @param arrivalTime
+	 *            The System.nanoTime() when the message arrived
+	 */
+	public synchronized void record(String deviceName, MidiMessage message,
+			long arrivalTime) {
+
+		if (!recording) {
+			return;
+		}
+
+		long tick = TimeUnit.NANOSECONDS.toMicros(arrivalTime - startTime)
+				/ MICROS_PER_TICK;
+
+		try {
+			getTrack(deviceName).add(
+					new MidiEvent(toStorableMessage(message), Math.max(0, tick)));
+			eventCount++;
+		} catch (InvalidMidiDataException e) {
+			throw new IllegalArgumentException(e);
+		}
+	}
+
+	/**
+	 * Gets the track of a device, a new track is named by the device.
+	 *
+	 * @param deviceName
+	 *            The name of the midi device
+	 * @return The track
+	 * @throws InvalidMidiDataException
+	 *             If the device name can not be stored
+	 */
+	private Track getTrack(String deviceName) throws InvalidMidiDataException {
+
+		Track track = tracks.get(deviceName);
+
+		if (track == null) {
+			track = sequence.createTrack();
+			byte[] name = String.valueOf(deviceName).getBytes();
+			track.add(new MidiEvent(new MetaMessage(META_TRACK_NAME, name,
+					name.length), 0));
+			tracks.put(deviceName, track);
+		}
+		return track;
+	}
+
+	/**
+	 * Converts a message to a message that can be stored in a Standard MIDI
+	 * File.
+	 *
+	 * @param message
+	 *            The midi message
+	 * @return The storable message
+	 * @throws InvalidMidiDataException
+	 *             If the message can not be escaped
+	 */
+	static MidiMessage toStorableMessage(MidiMessage message)
+			throws InvalidMidiDataException {
+
+		if (message instanceof ShortMessage && message.getStatus() >= 0xF0) {
+			return new SysexMessage(SysexMessage.SPECIAL_SYSTEM_EXCLUSIVE,
+					message.getMessage(), message.getLength());
+		}
+		return (MidiMessage) message.clone();
+	}
+
+	/**
+	 * Writes the recording to a Standard MIDI File
+	 *
+	 * @param file
+	 *            The file
+	 * @throws IOException
+	 *             If the file can not be written
+	 */
+	public synchronized void write(File file) throws IOException {
+		MidiSystem.write(sequence, 1, file);
+	}
+
+	/**
+	 * Gets the recorded sequence
+	 *
+	 * @return The sequence
+	 */
+	public Sequence getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * Gets the number of recorded messages
+	 *
+	 * @return The number of recorded messages
+	 */
+	public synchronized long getEventCount() {
+		return eventCount;
+	}
+
+	public synchronized boolean isRecording() {
+		return recording;
+	}
+}
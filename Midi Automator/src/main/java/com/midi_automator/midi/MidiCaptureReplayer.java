@@ -0,0 +1,383 @@
+package com.midi_automator.midi;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MetaMessage;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.SysexMessage;
+import javax.sound.midi.Track;
+
+import org.apache.log4j.Logger;
+
+import com.midi_automator.midi.MidiIngressRingBuffer.OverflowPolicy;
+import com.midi_automator.utils.LatencyHistogram;
+
+/**
+ * Replays a captured midi stream into the receiver chain without hardware.
+ * Every track of the Standard MIDI File is injected into its own midi IN
+ * multiplexer. A probe receiver is attached after the receivers of the
+ * multiplexers, it decodes every dispatched message and measures the latency
+ * from the injection until all receivers handled it. The stream can be
+ * replayed in real time, faster or as fast as possible.
+ *
+ * Within the application the MidiStressService replays into the multiplexers
+ * of loaded devices, so the execute, learn, automation and controller
+ * receivers act on the stream like on a show. Standalone the replayer creates
+ * multiplexers without receivers drained by its own midi dispatcher, so it
+ * only measures the ingress and dispatch overhead.
+ *
+ * Usage: MidiCaptureReplayer file [speed] [overflow policy]
+ *
+ * @author aguelle
+ *
+ */
+public class MidiCaptureReplayer {
+
+	private Logger log = Logger.getLogger(this.getClass().getName());
+
+	/** Replays without waiting between the messages */
+	public static final double AS_FAST_AS_POSSIBLE = 0;
+
+	private static final long DRAIN_TIMEOUT = TimeUnit.SECONDS.toNanos(10);
+	private static final long DRAIN_PARK_NANOS = TimeUnit.MILLISECONDS
+			.toNanos(1);
+
+	private double speed = 1;
+	private OverflowPolicy overflowPolicy = MidiIngressRingBuffer.DEFAULT_OVERFLOW_POLICY;
+	private String rejectedStatuses;
+
+	/**
+	 * Replays a Standard MIDI File
+	 *
+	 * @param file
+	 *            The captured file
+	 * @return The report of the replay
+	 * @throws InvalidMidiDataException
+	 *             If the file is no valid Standard MIDI File
+	 * @throws IOException
+	 *             If the file can not be read
+	 */
+	public MidiReplayReport replay(File file) throws InvalidMidiDataException,
+			IOException {
+		return replay(MidiSystem.getSequence(file));
+	}
+
+	/**
+	 * Replays a sequence into multiplexers without receivers
+	 *
+	 * @param sequence
+	 *            The captured sequence
+	 * @return The report of the replay
+	 * @throws InvalidMidiDataException
+	 *             If an escaped message is invalid
+	 */
+	public MidiReplayReport replay(Sequence sequence)
+			throws InvalidMidiDataException {
+
+		Track[] tracks = sequence.getTracks();
+		MidiDispatcher dispatcher = new MidiDispatcher();
+		MidiINMultiplexer[] multiplexers = new MidiINMultiplexer[tracks.length];
+
+		for (int i = 0; i < tracks.length; i++) {
+
+			MidiIngressFilter filter = new MidiIngressFilter();
+			if (rejectedStatuses != null) {
+				filter.setRejectedStatuses(rejectedStatuses);
+			}
+
+			multiplexers[i] = new MidiINMultiplexer();
+			multiplexers[i].setMidiDispatcher(dispatcher);
+			multiplexers[i].setDeviceName(getTrackName(tracks[i], i));
+			multiplexers[i].setIngressFilter(filter);
+			multiplexers[i].getIngressBuffer()
+					.setOverflowPolicy(overflowPolicy);
+			dispatcher.register(multiplexers[i]);
+		}
+
+		try {
+			return replay(sequence, multiplexers);
+		} finally {
+			for (MidiINMultiplexer multiplexer : multiplexers) {
+				multiplexer.close();
+			}
+		}
+	}
+
+	/**
+	 * Replays a sequence into the multiplexers of loaded devices. The tracks
+	 * are injected into the multiplexers in turn. The multiplexers keep their
+	 * receivers, filters and overflow policies and stay open.
+	 *
+	 * @param sequence
+	 *            The captured sequence
+	 * @param multiplexers
+	 *            The multiplexers registered at a running midi dispatcher
+	 * @return The report of the replay
+	 * @throws InvalidMidiDataException
+	 *             If an escaped message is invalid
+	 */
+	public MidiReplayReport replay(Sequence sequence,
+			MidiINMultiplexer[] multiplexers) throws InvalidMidiDataException {
+
+		AtomicLong processed = new AtomicLong();
+		LatencyHistogram histogram = new LatencyHistogram();
+		MidiLatencyProbe[] probes = new MidiLatencyProbe[multiplexers.length];
+
+		for (int i = 0; i < multiplexers.length; i++) {
+			probes[i] = new MidiLatencyProbe(histogram, processed);
+			multiplexers[i].attach(probes[i]);
+		}
+
+		List<ReplayEvent> events = getTimeline(sequence);
+		long start = System.nanoTime();
+
+		for (ReplayEvent event : events) {
+
+			if (speed > AS_FAST_AS_POSSIBLE) {
+				long due = start
+						+ (long) (TimeUnit.MICROSECONDS.toNanos(event.time) / speed);
+				long wait;
+				while ((wait = due - System.nanoTime()) > 0) {
+					LockSupport.parkNanos(wait);
+				}
+			}
+			multiplexers[event.track % multiplexers.length].send(
+					event.message, -1);
+		}
+
+		long injectionTime = System.nanoTime() - start;
+		MidiReplayReport report = new MidiReplayReport(events.size(),
+				injectionTime, processed, histogram, multiplexers);
+
+		long deadline = System.nanoTime() + DRAIN_TIMEOUT;
+		while (!report.isComplete() && System.nanoTime() - deadline < 0) {
+			LockSupport.parkNanos(DRAIN_PARK_NANOS);
+		}
+
+		for (int i = 0; i < multiplexers.length; i++) {
+			multiplexers[i].detach(probes[i]);
+		}
+
+		log.info("Replayed MIDI capture: " + report);
+		return report;
+	}
+
+	/**
+	 * Gets the replayable messages of all tracks ordered by their time. The
+	 * ticks are converted to microseconds with the tempo changes of the
+	 * sequence.
+	 *
+	 * @param sequence
+	 *            The sequence
+	 * @return The events with their time in microseconds
+	 * @throws InvalidMidiDataException
+	 *             If an escaped message is invalid
+	 */
+	List<ReplayEvent> getTimeline(Sequence sequence)
+			throws InvalidMidiDataException {
+
+		List<ReplayEvent> events = new ArrayList<ReplayEvent>();
+		Track[] tracks = sequence.getTracks();
+
+		for (int i = 0; i < tracks.length; i++) {
+			for (int j = 0; j < tracks[i].size(); j++) {
+				MidiEvent event = tracks[i].get(j);
+				events.add(new ReplayEvent(event.getTick(), i, event
+						.getMessage()));
+			}
+		}
+
+		Collections.sort(events, new Comparator<ReplayEvent>() {
+			@Override
+			public int compare(ReplayEvent e1, ReplayEvent e2) {
+				return Long.compare(e1.tick, e2.tick);
+			}
+		});
+
+		boolean ppq = sequence.getDivisionType() == Sequence.PPQ;
+		double microsPerTick = ppq ? (double) MidiCaptureRecorder.DEFAULT_TEMPO
+				/ sequence.getResolution() : 1000000d
+				/ (sequence.getDivisionType() * sequence.getResolution());
+
+		List<ReplayEvent> timeline = new ArrayList<ReplayEvent>(events.size());
+		long lastTick = 0;
+		double time = 0;
+
+		for (ReplayEvent event : events) {
+
+			time += (event.tick - lastTick) * microsPerTick;
+			lastTick = event.tick;
+
+			if (event.message instanceof MetaMessage) {
+				MetaMessage meta = (MetaMessage) event.message;
+				if (ppq && meta.getType() == MidiCaptureRecorder.META_TEMPO) {
+					byte[] data = meta.getData();
+					microsPerTick = (double) (((data[0] & 0xFF) << 16)
+							| ((data[1] & 0xFF) << 8) | (data[2] & 0xFF))
+							/ sequence.getResolution();
+				}
+				continue;
+			}
+
+			event.time = (long) time;
+			event.message = toReplayableMessage(event.message);
+			timeline.add(event);
+		}
+
+		return timeline;
+	}
+
+	/**
+	 * Restores system common and real time messages that were escaped as
+	 * SysEx events.
+	 *
+	 * @param message
+	 *            The stored message
+	 * @return The message to replay
+	 * @throws InvalidMidiDataException
+	 *             If an escaped message is invalid
+	 */
+	static MidiMessage toReplayableMessage(MidiMessage message)
+			throws InvalidMidiDataException {
+
+		if (message.getStatus() == SysexMessage.SPECIAL_SYSTEM_EXCLUSIVE) {
+
+			byte[] data = ((SysexMessage) message).getData();
+
+			if (data.length > 0 && data.length <= 3
+					&& (data[0] & 0xFF) > SysexMessage.SYSTEM_EXCLUSIVE
+					&& (data[0] & 0xFF) != SysexMessage.SPECIAL_SYSTEM_EXCLUSIVE) {
+
+				ShortMessage shortMessage = new ShortMessage();
+				shortMessage.setMessage(data[0] & 0xFF,
+						(data.length > 1) ? data[1] : 0,
+						(data.length > 2) ? data[2] : 0);
+				return shortMessage;
+			}
+		}
+		return message;
+	}
+
+	/**
+	 * Gets the name of a track
+	 *
+	 * @param track
+	 *            The track
+	 * @param index
+	 *            The index of the track
+	 * @return The track name or "Track index" if the track has no name
+	 */
+	private static String getTrackName(Track track, int index) {
+
+		for (int i = 0; i < track.size(); i++) {
+			MidiMessage message = track.get(i).getMessage();
+			if (message instanceof MetaMessage
+					&& ((MetaMessage) message).getType() == MidiCaptureRecorder.META_TRACK_NAME) {
+				return new String(((MetaMessage) message).getData());
+			}
+		}
+		return "Track " + index;
+	}
+
+	public double getSpeed() {
+		return speed;
+	}
+
+	/**
+	 * Sets the replay speed
+	 *
+	 * @param speed
+	 *            1 for real time, N for N times faster, AS_FAST_AS_POSSIBLE
+	 *            for no waiting
+	 */
+	public void setSpeed(double speed) {
+		this.speed = speed;
+	}
+
+	public OverflowPolicy getOverflowPolicy() {
+		return overflowPolicy;
+	}
+
+	public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+		this.overflowPolicy = overflowPolicy;
+	}
+
+	public String getRejectedStatuses() {
+		return rejectedStatuses;
+	}
+
+	/**
+	 * Sets the statuses rejected by the ingress filters
+	 *
+	 * @param rejectedStatuses
+	 *            The comma separated statuses, <NULL> for the default filter
+	 */
+	public void setRejectedStatuses(String rejectedStatuses) {
+		this.rejectedStatuses = rejectedStatuses;
+	}
+
+	/**
+	 * Replays a captured file and prints the report
+	 *
+	 * @param args
+	 *            The file, the speed ("max" for as fast as possible) and the
+	 *            overflow policy
+	 * @throws Exception
+	 *             If the replay fails
+	 */
+	public static void main(String[] args) throws Exception {
+
+		if (args.length < 1) {
+			System.err.println("Usage: " + MidiCaptureReplayer.class.getName()
+					+ " file [speed|max] [BLOCK|DROP_OLDEST|COALESCE]");
+			System.exit(1);
+		}
+
+		MidiCaptureReplayer replayer = new MidiCaptureReplayer();
+
+		if (args.length > 1) {
+			replayer.setSpeed(args[1].equalsIgnoreCase("max") ? AS_FAST_AS_POSSIBLE
+					: Double.parseDouble(args[1]));
+		}
+
+		if (args.length > 2) {
+			replayer.setOverflowPolicy(OverflowPolicy.valueOf(args[2]
+					.toUpperCase()));
+		}
+
+		System.out.println(replayer.replay(new File(args[0])).getReport());
+	}
+
+	/**
+	 * A message of the captured stream
+	 *
+	 * @author aguelle
+	 *
+	 */
+	static class ReplayEvent {
+
+		private final long tick;
+		private final int track;
+		private MidiMessage message;
+		private long time;
+
+		ReplayEvent(long tick, int track, MidiMessage message) {
+			this.tick = tick;
+			this.track = track;
+			this.message = message;
+		}
+	}
+}
@@ -0,0 +1,483 @@
+package com.midi_automator.midi;
+
+import java.util.Arrays;
+import java.util.regex.Pattern;
+
+import javax.sound.midi.ShortMessage;
+
+import com.midi_automator.model.MidiAutomatorProperties;
+
+/**
+ * Matches combo triggers, i.e. chords and sequences of short messages within a
+ * time window, e.g. "channel 1: NOTE ON C3 + channel 1: NOTE ON E3" for a chord
+ * in any order or "channel 1: NOTE ON C3 > channel 1: NOTE ON D3 within 800 ms"
+ * for an ordered sequence. Without a window the default window of the kind is
+ * used.
+ *
+ * The combos are compiled to a nondeterministic automaton that is advanced
+ * incrementally by every incoming message. Every element of a combo is a
+ * transition indexed by the routing key of its message, so a message only
+ * touches the combos it is part of, no matter how many combos are configured.
+ * The partial matches are held in preallocated time slots: a sequence keeps
+ * the start time of the latest partial match that reached each position, a
+ * chord keeps the time every element was received last. Keeping only the
+ * latest start is enough, an older partial match never completes before a
+ * newer one.
+ *
+ * Every input has its own slots, so a message received by the remote and the
+ * automation trigger receivers does not advance a combo twice. The automaton
+ * is compiled once and must only be advanced from the midi dispatcher thread.
+ *
+ * @author aguelle
+ *
+ */
+public class MidiComboAutomaton {
+
+	/**
+	 * The inputs that advance the combos independently
+	 *
+	 * @author aguelle
+	 *
+	 */
+	public enum Input {
+		/** The remote devices that execute items and switches */
+		REMOTE, //
+		/** The devices that trigger GUI automations */
+		AUTOMATION
+	}
+
+	public static final String CHORD_SEPARATOR = " + ";
+	public static final String SEQUENCE_SEPARATOR = " > ";
+	public static final String WINDOW_PREFIX = " within ";
+	public static final String WINDOW_SUFFIX = " ms";
+
+	/** The default chord window in milliseconds */
+	public static final long DEFAULT_CHORD_WINDOW = 30;
+	/** The default sequence window in milliseconds */
+	public static final long DEFAULT_SEQUENCE_WINDOW = 1000;
+	public static final int MAX_ELEMENTS = 16;
+
+	private static final long NO_TIME = Long.MIN_VALUE;
+	private static final int EMPTY_KEY = 0;
+	private static final int INITIAL_CAPACITY = 16;
+	private static final int POSITION_BITS = 8;
+	private static final int POSITION_MASK = (1 << POSITION_BITS) - 1;
+
+	private Combo[] combos = new Combo[0];
+	private int[] keys = new int[INITIAL_CAPACITY];
+	private int[][] transitions = new int[INITIAL_CAPACITY][];
+	private int keyCount;
+	private final long[][] times = new long[Input.values().length][0];
+
+	/**
+	 * Gets the route of a combo and creates it if it does not exist
+	 *
+	 * @param combo
+	 *            The combo
+	 * @param debounceWindows
+	 *            The debounce windows for a new route
+	 * @return The route
+	 */
+	MidiRoute getOrCreateRoute(Combo combo, long[] debounceWindows) {
+
+		for (Combo existing : combos) {
+			if (existing.equals(combo)) {
+				return existing.route;
+			}
+		}
+
+		int number = combos.length;
+		combo.route = new MidiRoute(debounceWindows);
+		combo.offset = (number == 0) ? 0 : combos[number - 1].offset
+				+ combos[number - 1].keys.length;
+		combos = Arrays.copyOf(combos, number + 1);
+		combos[number] = combo;
+
+		int slots = combo.offset + combo.keys.length;
+		for (int i = 0; i < times.length; i++) {
+			int oldSlots = times[i].length;
+			times[i] = Arrays.copyOf(times[i], slots);
+			Arrays.fill(times[i], oldSlots, slots, NO_TIME);
+		}
+
+		// higher positions first, so a message advances a sequence only once
+		for (int position = combo.keys.length - 1; position >= 0; position--) {
+			addTransition(combo.keys[position],
+					(number << POSITION_BITS) | position);
+		}
+
+		return combo.route;
+	}
+
+	/**
+	 * Advances the automaton by a short message
+	 *
+	 * @param input
+	 *            The input that received the message
+	 * @param status
+	 *            The status byte
+	 * @param data1
+	 *            The first data byte
+	 * @param data2
+	 *            The second data byte
+	 * @param time
+	 *            The time stamp of the message in microseconds
+	 * @return The route of the first combo the message completes or <NULL> if
+	 *         no combo was completed
+	 */
+	public MidiRoute advance(Input input, int status, int data1, int data2,
+			long time) {
+
+		if (combos.length == 0 || isRelease(status, data2)) {
+			return null;
+		}
+
+		int[] keyTransitions = get(MidiRoutingTable.getRoutingKey(status,
+				data1, data2));
+		if (keyTransitions == null) {
+			return null;
+		}
+
+		long[] state = times[input.ordinal()];
+		MidiRoute completed = null;
+
+		for (int transition : keyTransitions) {
+
+			Combo combo = combos[transition >>> POSITION_BITS];
+
+			if (combo.advance(state, transition & POSITION_MASK, time)
+					&& completed == null) {
+				completed = combo.route;
+			}
+		}
+
+		return completed;
+	}
+
+	/**
+	 * Gets the number of combos
+	 *
+	 * @return The number of combos
+	 */
+	public int size() {
+		return combos.length;
+	}
+
+	/**
+	 * Checks if a message releases a key, i.e. a note off or a note on with
+	 * velocity 0. Releases do not advance combos.
+	 *
+	 * @param status
+	 *            The status byte
+	 * @param data2
+	 *            The second data byte
+	 * @return <TRUE> if the message is a release, else <FALSE>
+	 */
+	public static boolean isRelease(int status, int data2) {
+
+		int command = status & 0xF0;
+		return command == ShortMessage.NOTE_OFF
+				|| (command == ShortMessage.NOTE_ON && data2 == 0);
+	}
+
+	/**
+	 * Checks if a signature is a combo signature
+	 *
+	 * @param signature
+	 *            The midi signature
+	 * @return <TRUE> if it is a chord or a sequence, else <FALSE>
+	 */
+	public static boolean isCombo(String signature) {
+		return signature != null
+				&& (signature.contains(CHORD_SEPARATOR) || signature
+						.contains(SEQUENCE_SEPARATOR));
+	}
+
+	/**
+	 * Parses a combo signature. The elements must be signatures of short
+	 * messages.
+	 *
+	 * @param signature
+	 *            The combo signature
+	 * @param chordWindow
+	 *            The window of chords without window in milliseconds
+	 * @param sequenceWindow
+	 *            The window of sequences without window in milliseconds
+	 * @return The combo, <NULL> if the signature is no valid combo
+	 */
+	public static Combo parseCombo(String signature, long chordWindow,
+			long sequenceWindow) {
+
+		if (!isCombo(signature)) {
+			return null;
+		}
+
+		boolean chord = signature.contains(CHORD_SEPARATOR);
+		if (chord && signature.contains(SEQUENCE_SEPARATOR)) {
+			return null;
+		}
+
+		long window = chord ? chordWindow : sequenceWindow;
+		int windowIndex = signature.lastIndexOf(WINDOW_PREFIX);
+
+		if (windowIndex >= 0) {
+
+			if (!signature.endsWith(WINDOW_SUFFIX)) {
+				return null;
+			}
+			try {
+				window = Long.parseLong(signature.substring(
+						windowIndex + WINDOW_PREFIX.length(),
+						signature.length() - WINDOW_SUFFIX.length()));
+			} catch (NumberFormatException e) {
+				return null;
+			}
+			signature = signature.substring(0, windowIndex);
+		}
+
+		String[] elements = signature.split(Pattern
+				.quote(chord ? CHORD_SEPARATOR : SEQUENCE_SEPARATOR));
+		if (elements.length < 2 || elements.length > MAX_ELEMENTS
+				|| window < 0) {
+			return null;
+		}
+
+		int[] keys = new int[elements.length];
+		for (int i = 0; i < elements.length; i++) {
+
+			if (elements[i].equals(MidiAutomatorProperties.VALUE_NULL)) {
+				return null;
+			}
+
+			keys[i] = MidiRoutingTable.getRoutingKey(elements[i].trim());
+			if (keys[i] == EMPTY_KEY) {
+				return null;
+			}
+
+			// a chord element can only be held once
+			for (int j = 0; chord && j < i; j++) {
+				if (keys[j] == keys[i]) {
+					return null;
+				}
+			}
+		}
+
+		return new Combo(chord, keys, window * 1000);
+	}
+
+	/**
+	 * Builds the signature of a combo
+	 *
+	 * @param signatures
+	 *            The signatures of the elements
+	 * @param chord
+	 *            <TRUE> for a chord, <FALSE> for a sequence
+	 * @param window
+	 *            The window in milliseconds, 0 for the default window
+	 * @return The combo signature
+	 */
+	public static String toSignature(Iterable<String> signatures,
+			boolean chord, long window) {
+
+		StringBuilder combo = new StringBuilder();
+
+		for (String signature : signatures) {
+			if (combo.length() > 0) {
+				combo.append(chord ? CHORD_SEPARATOR : SEQUENCE_SEPARATOR);
+			}
+			combo.append(signature);
+		}
+
+		if (window > 0) {
+			combo.append(WINDOW_PREFIX).append(window).append(WINDOW_SUFFIX);
+		}
+		return combo.toString();
+	}
+
+	/**
+	 * Adds a transition to the transitions of a routing key
+	 *
+	 * @param key
+	 *            The routing key
+	 * @param transition
+	 *            The number of the combo and the position of the element
+	 */
+	private void addTransition(int key, int transition) {
+
+		int mask = keys.length - 1;
+		int i = hash(key) & mask;
+
+		while (keys[i] != EMPTY_KEY && keys[i] != key) {
+			i = (i + 1) & mask;
+		}
+
+		if (keys[i] == key) {
+			int[] keyTransitions = Arrays.copyOf(transitions[i],
+					transitions[i].length + 1);
+			keyTransitions[keyTransitions.length - 1] = transition;
+			transitions[i] = keyTransitions;
+			return;
+		}
+
+		if ((keyCount + 1) * 2 > keys.length) {
+			rehash(keys.length * 2);
+			addTransition(key, transition);
+			return;
+		}
+
+		keys[i] = key;
+		transitions[i] = new int[] { transition };
+		keyCount++;
+	}
+
+	/**
+	 * Resizes the hash table of the transitions
+	 *
+	 * @param capacity
+	 *            The new capacity, must be a power of two
+	 */
+	private void rehash(int capacity) {
+
+		int[] oldKeys = keys;
+		int[][] oldTransitions = transitions;
+
+		keys = new int[capacity];
+		transitions = new int[capacity][];
+
+		int mask = capacity - 1;
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != EMPTY_KEY) {
+				int j = hash(oldKeys[i]) & mask;
+				while (keys[j] != EMPTY_KEY) {
+					j = (j + 1) & mask;
+				}
+				keys[j] = oldKeys[i];
+				transitions[j] = oldTransitions[i];
+			}
+		}
+	}
+
+	/**
+	 * Gets the transitions of a routing key
+	 *
+	 * @param key
+	 *            The routing key
+	 * @return The transitions or <NULL> if no combo contains the key
+	 */
+	private int[] get(int key) {
+
+		int mask = keys.length - 1;
+		for (int i = hash(key) & mask;; i = (i + 1) & mask) {
+			int storedKey = keys[i];
+			if (storedKey == key) {
+				return transitions[i];
+			}
+			if (storedKey == EMPTY_KEY) {
+				return null;
+			}
+		}
+	}
+
+	private static int hash(int key) {
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * A compiled chord or sequence
+	 *
+	 * @author aguelle
+	 *
+	 */
+	public static class Combo {
+
+		private final boolean chord;
+		private final int[] keys;
+		private final long window;
+		private int offset;
+		private MidiRoute route;
+
+		/**
+		 * Constructor
+		 *
+		 * @param chord
+		 *            <TRUE> for a chord, <FALSE> for a sequence
+		 * @param keys
+		 *            The routing keys of the elements
+		 * @param window
+		 *            The window in microseconds
+		 */
+		Combo(boolean chord, int[] keys, long window) {
+			this.chord = chord;
+			this.keys = keys;
+			this.window = window;
+		}
+
+		/**
+		 * Advances the combo by one of its elements
+		 *
+		 * @param state
+		 *            The time slots of the input
+		 * @param position
+		 *            The position of the received element
+		 * @param time
+		 *            The time stamp of the message in microseconds
+		 * @return <TRUE> if the combo is completed, else <FALSE>
+		 */
+		boolean advance(long[] state, int position, long time) {
+
+			if (chord) {
+				state[offset + position] = time;
+
+				for (int i = offset; i < offset + keys.length; i++) {
+					if (state[i] == NO_TIME
+							|| Math.abs(time - state[i]) > window) {
+						return false;
+					}
+				}
+
+				reset(state);
+				return true;
+			}
+
+			long start = time;
+
+			if (position > 0) {
+				start = state[offset + position];
+				if (start == NO_TIME || time < start || time - start > window) {
+					return false;
+				}
+			}
+
+			if (position == keys.length - 1) {
+				reset(state);
+				return true;
+			}
+
+			int next = offset + position + 1;
+			state[next] = Math.max(state[next], start);
+			return false;
+		}
+
+		private void reset(long[] state) {
+			Arrays.fill(state, offset, offset + keys.length, NO_TIME);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+
+			if (!(obj instanceof Combo)) {
+				return false;
+			}
+
+			Combo other = (Combo) obj;
+			return chord == other.chord && window == other.window
+					&& Arrays.equals(keys, other.keys);
+		}
+
+		@Override
+		public int hashCode() {
+			return Arrays.hashCode(keys) * 31 + (chord ? 1 : 0);
+		}
+	}
+}
@@ -0,0 +1,108 @@
+package com.midi_automator.midi;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Keeps only the latest value of continuous controllers until the consumer is
+ * ready. Every combination of device, channel and controller has one slot, a
+ * new value overwrites the pending value of its slot. So a fast fader sweep
+ * costs the consumer at most one value per controller and drain, no matter
+ * how many messages arrived meanwhile.
+ *
+ * Values are offered by the receiving threads and drained by a single
+ * consumer.
+ *
+ * @author aguelle
+ *
+ */
+public class MidiControllerCoalescer {
+
+	/** The controller number of the pitch wheel */
+	public static final int PITCH_WHEEL = 128;
+	public static final int MAX_DEVICES = 16;
+
+	private static final int CHANNELS = 16;
+	private static final int CONTROLLERS = 129;
+	private static final int NO_VALUE = -1;
+
+	private final AtomicIntegerArray values = new AtomicIntegerArray(
+			MAX_DEVICES * CHANNELS * CONTROLLERS);
+	private final ConcurrentLinkedQueue<Integer> pending = new ConcurrentLinkedQueue<Integer>();
+
+	/**
+	 * Constructor
+	 */
+	public MidiControllerCoalescer() {
+		for (int i = 0; i < values.length(); i++) {
+			values.set(i, NO_VALUE);
+		}
+	}
+
+	/**
+	 * Offers the latest value of a controller
+	 *
+	 * @param device
+	 *            The index of the device, 0 to MAX_DEVICES - 1
+	 * @param channel
+	 *            The channel, 0 to 15
+	 * @param controller
+	 *            The controller number, 0 to 127 or PITCH_WHEEL
+	 * @param value
+	 *            The value
+	 * @return <TRUE> if the controller had no pending value, <FALSE> if a
+	 *         pending value was superseded
+	 */
+	public boolean offer(int device, int channel, int controller, int value) {
+
+		int key = (device * CHANNELS + channel) * CONTROLLERS + controller;
+
+		if (values.getAndSet(key, value) == NO_VALUE) {
+			pending.add(key);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Hands the pending values to the handler. Every controller is handled at
+	 * most once, values offered while draining are left for the next drain.
+	 *
+	 * @param handler
+	 *            The handler of the values
+	 * @return The number of handled values
+	 */
+	public int drain(IMidiControllerHandler handler) {
+
+		int handled = 0;
+
+		for (int remaining = pending.size(); remaining > 0; remaining--) {
+
+			Integer key = pending.poll();
+			if (key == null) {
+				break;
+			}
+
+			int value = values.getAndSet(key, NO_VALUE);
+			if (value != NO_VALUE) {
+				int controller = key % CONTROLLERS;
+				int channel = (key / CONTROLLERS) % CHANNELS;
+				int device = key / (CONTROLLERS * CHANNELS);
+
+				handler.controllerChanged(device, channel, controller, value);
+				handled++;
+			}
+		}
+
+		return handled;
+	}
+
+	/**
+	 * Checks if values are pending
+	 *
+	 * @return <TRUE> if values are pending, else <FALSE>
+	 */
+	public boolean isPending() {
+		return !pending.isEmpty();
+	}
+}
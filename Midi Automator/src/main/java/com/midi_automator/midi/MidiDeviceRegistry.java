@@ -0,0 +1,378 @@
+package com.midi_automator.midi;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.sound.midi.MidiDevice;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.MidiUnavailableException;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Caches the available midi devices with their directions, so looking up a
+ * device never enumerates the midi system. A poller thread refreshes the cache
+ * in the background, diffs the device list and notifies the listeners about
+ * attached and detached devices. Devices are identified by their
+ * MidiDevice.Info, which the midi system keeps for devices that stay plugged
+ * in.
+ *
+ * @author aguelle
+ *
+ */
+public class MidiDeviceRegistry implements Runnable {
+
+	private Logger log = Logger.getLogger(this.getClass().getName());
+
+	public static final String THREAD_NAME = "MIDI Device Poller";
+	public static final long POLL_INTERVAL = 1000;
+
+	private static final Entry[] NO_ENTRIES = new Entry[0];
+
+	private final CopyOnWriteArrayList<IMidiDeviceListener> listeners = new CopyOnWriteArrayList<IMidiDeviceListener>();
+	private volatile Entry[] entries;
+	private volatile Thread thread;
+
+	/**
+	 * Gets a midi device by name
+	 *
+	 * @param name
+	 *            The name of the midi device
+	 * @param direction
+	 *            "IN" only input devices are considered, "OUT" only output
+	 *            devices are considered.
+	 * @return The midi device, <NULL> if there is no such device
+	 */
+	public MidiDevice getMidiDevice(String name, String direction) {
+
+		Entry entry = find(name, direction);
+
+		if (entry == null && !isPolling()) {
+			refresh();
+			entry = find(name, direction);
+		}
+
+		return (entry != null) ? entry.device : null;
+	}
+
+	/**
+	 * Gets the info of a midi device by name
+	 *
+	 * @param name
+	 *            The name of the midi device
+	 * @param forOutput
+	 *            If true, only devices with receivers are considered. If
+	 *            false, only devices with transmitters are considered.
+	 * @return The info of the midi device, <NULL> if there is no such device
+	 */
+	public MidiDevice.Info getMidiDeviceInfo(String name, boolean forOutput) {
+
+		String direction = forOutput ? "OUT" : "IN";
+
+		for (Entry entry : getEntries()) {
+			if (entry.allows(direction)
+					&& entry.device.getDeviceInfo().getName().equals(name)) {
+				return entry.device.getDeviceInfo();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Gets the names of all midi devices
+	 *
+	 * @param direction
+	 *            "IN" for devices with transmitters, "OUT" for devices with
+	 *            receivers, <NULL> for all devices
+	 * @return The names of the devices
+	 */
+	public List<String> getMidiDeviceSignatures(String direction) {
+
+		List<String> signatures = new ArrayList<String>();
+
+		for (Entry entry : getEntries()) {
+			if (entry.allows(direction)) {
+				signatures.add(entry.device.getDeviceInfo().getName());
+			}
+		}
+		return signatures;
+	}
+
+	/**
+	 * Finds the cached entry of a device
+	 *
+	 * @param name
+	 *            The name of the midi device
+	 * @param direction
+	 *            The direction "IN"/"OUT" of the device
+	 * @return The entry, <NULL> if there is no such device
+	 */
+	private Entry find(String name, String direction) {
+
+		if (name == null) {
+			return null;
+		}
+
+		for (Entry entry : getEntries()) {
+			if (entry.direction != null && entry.direction.equals(direction)
+					&& entry.device.getDeviceInfo().getName().equals(name)) {
+				return entry;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Gets the cached entries, the midi system is enumerated on first use.
+	 *
+	 * @return The entries
+	 */
+	private Entry[] getEntries() {
+
+		Entry[] cached = entries;
+
+		if (cached == null) {
+			refresh();
+			cached = entries;
+		}
+		return cached;
+	}
+
+	/**
+	 * Enumerates the midi system and updates the cache. Devices that were
+	 * already known are reused.
+	 */
+	public void refresh() {
+
+		MidiDevice.Info[] infos = MidiSystem.getMidiDeviceInfo();
+		List<MidiDevice> devices = new ArrayList<MidiDevice>(infos.length);
+		Map<MidiDevice.Info, MidiDevice> known = new IdentityHashMap<MidiDevice.Info, MidiDevice>();
+
+		Entry[] cached = entries;
+		if (cached != null) {
+			for (Entry entry : cached) {
+				known.put(entry.device.getDeviceInfo(), entry.device);
+			}
+		}
+
+		for (MidiDevice.Info info : infos) {
+
+			MidiDevice device = known.get(info);
+
+			if (device == null) {
+				try {
+					device = MidiSystem.getMidiDevice(info);
+				} catch (MidiUnavailableException e) {
+					log.error("The MIDI device " + info.getName()
+							+ " is not available", e);
+					continue;
+				} catch (IllegalArgumentException e) {
+					log.debug("The MIDI device " + info.getName()
+							+ " was removed while refreshing");
+					continue;
+				}
+			}
+			devices.add(device);
+		}
+
+		update(devices.toArray(new MidiDevice[devices.size()]));
+	}
+
+	/**
+	 * Replaces the cached devices and notifies the listeners about the
+	 * difference.
+	 *
+	 * @param devices
+	 *            The currently available midi devices
+	 */
+	public void update(MidiDevice[] devices) {
+
+		List<MidiDevice> attached = new ArrayList<MidiDevice>();
+		List<MidiDevice> detached = new ArrayList<MidiDevice>();
+
+		synchronized (this) {
+
+			Entry[] cached = (entries != null) ? entries : NO_ENTRIES;
+			Map<MidiDevice.Info, Entry> known = new IdentityHashMap<MidiDevice.Info, Entry>();
+
+			for (Entry entry : cached) {
+				known.put(entry.device.getDeviceInfo(), entry);
+			}
+
+			Entry[] updated = new Entry[devices.length];
+
+			for (int i = 0; i < devices.length; i++) {
+
+				Entry entry = known.remove(devices[i].getDeviceInfo());
+
+				if (entry == null) {
+					entry = new Entry(devices[i]);
+					if (entries != null) {
+						attached.add(devices[i]);
+					}
+				}
+				updated[i] = entry;
+			}
+
+			for (Entry entry : known.values()) {
+				detached.add(entry.device);
+			}
+
+			entries = updated;
+		}
+
+		for (MidiDevice device : detached) {
+			log.info("MIDI device detached: "
+					+ device.getDeviceInfo().getName());
+			for (IMidiDeviceListener listener : listeners) {
+				listener.midiDeviceDetached(device);
+			}
+		}
+
+		for (MidiDevice device : attached) {
+			log.info("MIDI device attached: "
+					+ device.getDeviceInfo().getName());
+			for (IMidiDeviceListener listener : listeners) {
+				listener.midiDeviceAttached(device);
+			}
+		}
+	}
+
+	/**
+	 * Starts polling the midi system if it is not polled yet.
+	 */
+	public void startPolling() {
+
+		if (thread != null) {
+			return;
+		}
+
+		synchronized (this) {
+			if (thread == null) {
+				Thread pollerThread = new Thread(this, THREAD_NAME);
+				pollerThread.setDaemon(true);
+				thread = pollerThread;
+				pollerThread.start();
+			}
+		}
+	}
+
+	/**
+	 * Stops polling the midi system.
+	 */
+	public void stopPolling() {
+
+		Thread pollerThread = thread;
+		thread = null;
+
+		if (pollerThread != null) {
+			pollerThread.interrupt();
+		}
+	}
+
+	/**
+	 * Checks if the midi system is polled
+	 *
+	 * @return <TRUE> if the poller thread is running, else <FALSE>
+	 */
+	public boolean isPolling() {
+		return thread != null;
+	}
+
+	@Override
+	public void run() {
+
+		while (Thread.currentThread() == thread) {
+			try {
+				refresh();
+			} catch (RuntimeException e) {
+				log.error("Refreshing the MIDI devices failed", e);
+			}
+
+			try {
+				Thread.sleep(POLL_INTERVAL);
+			} catch (InterruptedException e) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Adds a listener for attached and detached devices
+	 *
+	 * @param listener
+	 *            The listener
+	 */
+	public void addListener(IMidiDeviceListener listener) {
+		listeners.addIfAbsent(listener);
+	}
+
+	/**
+	 * Removes a listener
+	 *
+	 * @param listener
+	 *            The listener
+	 */
+	public void removeListener(IMidiDeviceListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * A cached midi device with its direction
+	 *
+	 * @author aguelle
+	 *
+	 */
+	private static class Entry {
+
+		private final MidiDevice device;
+		private final boolean allowsInput;
+		private final boolean allowsOutput;
+		private final String direction;
+
+		/**
+		 * Constructor
+		 *
+		 * @param device
+		 *            The midi device
+		 */
+		Entry(MidiDevice device) {
+
+			this.device = device;
+			allowsInput = device.getMaxTransmitters() != 0;
+			allowsOutput = device.getMaxReceivers() != 0;
+
+			if (allowsInput) {
+				direction = "IN";
+			} else if (allowsOutput) {
+				direction = "OUT";
+			} else {
+				direction = null;
+			}
+		}
+
+		/**
+		 * Checks if the device allows a direction
+		 *
+		 * @param direction
+		 *            "IN", "OUT" or <NULL> for any direction
+		 * @return <TRUE> if the device allows the direction, else <FALSE>
+		 */
+		boolean allows(String direction) {
+
+			if (direction == null) {
+				return true;
+			}
+			if (direction.equals("IN")) {
+				return allowsInput;
+			}
+			if (direction.equals("OUT")) {
+				return allowsOutput;
+			}
+			return false;
+		}
+	}
+}
@@ -0,0 +1,264 @@
+package com.midi_automator.midi;
+
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.log4j.Logger;
+import org.springframework.stereotype.Component;
+
+/**
+ * The event loop for all midi triggered actions. A single high priority thread
+ * drains the ingress buffers of all connected midi IN devices and runs the
+ * actions triggered by them, so the transmitter threads of the midi devices
+ * only have to copy the messages and the actions are never delayed by the EDT.
+ * Actions that have to wait are scheduled instead of sleeping on the
+ * dispatcher thread.
+ *
+ * @author aguelle
+ *
+ */
+@Component
+public class MidiDispatcher implements Runnable {
+
+	private Logger log = Logger.getLogger(this.getClass().getName());
+
+	public static final String THREAD_NAME = "MIDI Dispatcher";
+
+	private static final int DRAIN_BATCH_SIZE = 64;
+	private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS
+			.toNanos(10);
+
+	private final CopyOnWriteArrayList<MidiINMultiplexer> multiplexers = new CopyOnWriteArrayList<MidiINMultiplexer>();
+	private final ConcurrentLinkedQueue<ScheduledTask> submittedTasks = new ConcurrentLinkedQueue<ScheduledTask>();
+	private final PriorityQueue<ScheduledTask> scheduledTasks = new PriorityQueue<ScheduledTask>();
+	private long taskSequence;
+
+	private volatile Thread thread;
+	private volatile boolean parked;
+
+	/**
+	 * Registers a multiplexer, so its ingress buffer will be drained.
+	 *
+	 * @param multiplexer
+	 *            The midi IN multiplexer of a device
+	 */
+	public void register(MidiINMultiplexer multiplexer) {
+
+		if (multiplexers.addIfAbsent(multiplexer)) {
+			start();
+			log.debug("Registered " + multiplexer.getDeviceName()
+					+ " for dispatching");
+		}
+	}
+
+	/**
+	 * Unregisters a multiplexer, its ingress buffer will not be drained
+	 * anymore.
+	 *
+	 * @param multiplexer
+	 *            The midi IN multiplexer of a device
+	 */
+	public void unregister(MidiINMultiplexer multiplexer) {
+
+		if (multiplexers.remove(multiplexer)) {
+			multiplexer.getIngressBuffer().close();
+			log.info("Unregistered " + multiplexer.getDeviceName()
+					+ " from dispatching, ingress: "
+					+ multiplexer.getIngressBuffer());
+		}
+	}
+
+	/**
+	 * Runs a task on the dispatcher thread. If called from the dispatcher
+	 * thread the task is run after the current one.
+	 *
+	 * @param task
+	 *            The task
+	 */
+	public void execute(Runnable task) {
+		schedule(task, 0);
+	}
+
+	/**
+	 * Runs a task on the dispatcher thread after a delay.
+	 *
+	 * @param task
+	 *            The task
+	 * @param delay
+	 *            The delay in milliseconds
+	 */
+	public void schedule(Runnable task, long delay) {
+
+		long deadline = System.nanoTime()
+				+ TimeUnit.MILLISECONDS.toNanos(Math.max(0, delay));
+
+		submittedTasks.add(new ScheduledTask(task, deadline));
+		start();
+		signal();
+	}
+
+	/**
+	 * Checks if the current thread is the dispatcher thread
+	 *
+	 * @return <TRUE> if called from the dispatcher thread, else <FALSE>
+	 */
+	public boolean isDispatcherThread() {
+		return Thread.currentThread() == thread;
+	}
+
+	/**
+	 * Signals new messages in an ingress buffer or new tasks. Only wakes up the
+	 * dispatcher if it is parked.
+	 */
+	public void signal() {
+		if (parked) {
+			LockSupport.unpark(thread);
+		}
+	}
+
+	/**
+	 * Starts the dispatcher thread if it is not running yet.
+	 */
+	private void start() {
+
+		if (thread != null) {
+			return;
+		}
+
+		synchronized (this) {
+			if (thread == null) {
+				Thread dispatcherThread = new Thread(this, THREAD_NAME);
+				dispatcherThread.setDaemon(true);
+				dispatcherThread.setPriority(Thread.MAX_PRIORITY);
+				thread = dispatcherThread;
+				dispatcherThread.start();
+			}
+		}
+	}
+
+	@Override
+	public void run() {
+
+		while (true) {
+
+			boolean busy = runDueTasks();
+
+			for (MidiINMultiplexer multiplexer : multiplexers) {
+				try {
+					if (multiplexer.drainIngressBuffer(DRAIN_BATCH_SIZE) > 0) {
+						busy = true;
+					}
+				} catch (RuntimeException e) {
+					log.error("Dispatching MIDI message from "
+							+ multiplexer.getDeviceName() + " failed", e);
+				}
+			}
+
+			if (!busy) {
+				parked = true;
+				if (isIdle()) {
+					LockSupport.parkNanos(this, getParkNanos());
+				}
+				parked = false;
+			}
+		}
+	}
+
+	/**
+	 * Runs all tasks that are due.
+	 *
+	 * @return <TRUE> if a task was run, else <FALSE>
+	 */
+	private boolean runDueTasks() {
+
+		ScheduledTask submittedTask;
+		while ((submittedTask = submittedTasks.poll()) != null) {
+			submittedTask.sequence = taskSequence++;
+			scheduledTasks.add(submittedTask);
+		}
+
+		boolean ran = false;
+		long now = System.nanoTime();
+
+		while (!scheduledTasks.isEmpty()
+				&& scheduledTasks.peek().deadline - now <= 0) {
+
+			ScheduledTask scheduledTask = scheduledTasks.poll();
+			try {
+				scheduledTask.task.run();
+			} catch (RuntimeException e) {
+				log.error("Running MIDI dispatcher task failed", e);
+			}
+			ran = true;
+		}
+
+		return ran;
+	}
+
+	/**
+	 * Gets the time to park until the next scheduled task is due
+	 *
+	 * @return The time to park in nanoseconds
+	 */
+	private long getParkNanos() {
+
+		if (scheduledTasks.isEmpty()) {
+			return IDLE_PARK_NANOS;
+		}
+
+		long untilDeadline = scheduledTasks.peek().deadline - System.nanoTime();
+		return Math.max(0, Math.min(IDLE_PARK_NANOS, untilDeadline));
+	}
+
+	/**
+	 * Checks if there is nothing to do
+	 *
+	 * @return <TRUE> if there is nothing to dispatch, else <FALSE>
+	 */
+	private boolean isIdle() {
+
+		if (!submittedTasks.isEmpty()) {
+			return false;
+		}
+
+		for (MidiINMultiplexer multiplexer : multiplexers) {
+			if (!multiplexer.getIngressBuffer().isEmpty()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * A task that is run when its deadline was reached. Tasks with the same
+	 * deadline are run in the order they were submitted.
+	 *
+	 * @author aguelle
+	 *
+	 */
+	class ScheduledTask implements Comparable<ScheduledTask> {
+
+		private final Runnable task;
+		private final long deadline;
+		private long sequence;
+
+		public ScheduledTask(Runnable task, long deadline) {
+			this.task = task;
+			this.deadline = deadline;
+		}
+
+		@Override
+		public int compareTo(ScheduledTask other) {
+
+			long difference = deadline - other.deadline;
+
+			if (difference == 0) {
+				difference = sequence - other.sequence;
+			}
+			return (difference < 0) ? -1 : ((difference > 0) ? 1 : 0);
+		}
+	}
+}
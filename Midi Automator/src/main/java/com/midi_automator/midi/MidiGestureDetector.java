@@ -0,0 +1,556 @@
+package com.midi_automator.midi;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.ShortMessage;
+
+import com.midi_automator.midi.MidiComboAutomaton.Input;
+import com.midi_automator.utils.MidiUtils;
+
+/**
+ * Detects gestures on switches from their press and release messages, e.g.
+ * "channel 1: NOTE ON C3 (double tap)", "channel 1: NOTE ON C3 (long press)"
+ * or "channel 1: CONTROL CHANGE 64 value: 127 (hold)". A note is released by
+ * a note off or a note on with velocity 0, a control change by a value below
+ * 64.
+ *
+ * As soon as a gesture is routed to a switch, the switch is handled here and
+ * its plain trigger becomes the tap. A tap fires as soon as it is decidable:
+ * on the release if no double tap is routed, else when the double tap window
+ * passed without another press. A long press fires once when the switch is
+ * held for the long press time, a hold fires then and repeats until the
+ * release. The press duration is measured by the time stamps of the messages,
+ * the deadlines of pressed switches are evaluated by a shared timer wheel.
+ * Switches without gestures are not delayed at all.
+ *
+ * Every input has its own states, like the combos. The detector is compiled
+ * once and must only be used from the midi dispatcher thread.
+ *
+ * @author aguelle
+ *
+ */
+public class MidiGestureDetector {
+
+	/**
+	 * The gestures of a switch
+	 *
+	 * @author aguelle
+	 *
+	 */
+	public enum Gesture {
+		TAP(""), //
+		DOUBLE_TAP(" (double tap)"), //
+		LONG_PRESS(" (long press)"), //
+		HOLD(" (hold)");
+
+		private final String suffix;
+
+		private Gesture(String suffix) {
+			this.suffix = suffix;
+		}
+
+		/**
+		 * Gets the suffix of the gesture in a midi signature
+		 *
+		 * @return The suffix
+		 */
+		public String getSuffix() {
+			return suffix;
+		}
+	}
+
+	/** The default double tap window in milliseconds */
+	public static final long DEFAULT_DOUBLE_TAP_WINDOW = 300;
+	/** The default long press time in milliseconds */
+	public static final long DEFAULT_LONG_PRESS_TIME = 500;
+	/** The default hold repeat interval in milliseconds */
+	public static final long DEFAULT_HOLD_REPEAT_INTERVAL = 200;
+
+	private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+	private static final int WHEEL_SLOTS = 256;
+	private static final int EMPTY_KEY = 0;
+	private static final int INITIAL_CAPACITY = 16;
+	private static final int PRESS_VALUE = 127;
+	private static final int RELEASE_LIMIT = 64;
+
+	private static final int IDLE = 0;
+	private static final int PRESSED = 1;
+	private static final int TAPPED = 2;
+	private static final int HELD = 3;
+	private static final int CONSUMED = 4;
+
+	private final MidiTimerWheel wheel = new MidiTimerWheel(TICK_NANOS,
+			WHEEL_SLOTS);
+	private IMidiGestureListener listener;
+
+	private int[] keys = new int[INITIAL_CAPACITY];
+	private Switch[] switches = new Switch[INITIAL_CAPACITY];
+	private int size;
+
+	private long doubleTapWindow = DEFAULT_DOUBLE_TAP_WINDOW;
+	private long longPressTime = DEFAULT_LONG_PRESS_TIME;
+	private long holdRepeatInterval = DEFAULT_HOLD_REPEAT_INTERVAL;
+
+	/**
+	 * Sets the times of the gestures
+	 *
+	 * @param doubleTapWindow
+	 *            The time between a release and the next press of a double
+	 *            tap in milliseconds
+	 * @param longPressTime
+	 *            The time a switch is held for a long press or a hold in
+	 *            milliseconds
+	 * @param holdRepeatInterval
+	 *            The interval a hold is repeated in milliseconds
+	 */
+	public void setTimes(long doubleTapWindow, long longPressTime,
+			long holdRepeatInterval) {
+		this.doubleTapWindow = Math.max(0, doubleTapWindow);
+		this.longPressTime = Math.max(0, longPressTime);
+		this.holdRepeatInterval = Math.max(1, holdRepeatInterval);
+	}
+
+	/**
+	 * Sets the listener for gestures that are fired by a deadline
+	 *
+	 * @param listener
+	 *            The listener
+	 */
+	public void setListener(IMidiGestureListener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * Gets the route of a gesture and creates it if it does not exist
+	 *
+	 * @param pressKey
+	 *            The press key of the switch
+	 * @param gesture
+	 *            The gesture, not TAP
+	 * @param debounceWindows
+	 *            The debounce windows for a new route
+	 * @return The route
+	 */
+	MidiRoute getOrCreateRoute(int pressKey, Gesture gesture,
+			long[] debounceWindows) {
+
+		Switch footSwitch = get(pressKey);
+
+		if (footSwitch == null) {
+			footSwitch = new Switch();
+			put(pressKey, footSwitch);
+		}
+
+		MidiRoute route = footSwitch.routes[gesture.ordinal()];
+		if (route == null) {
+			route = new MidiRoute(debounceWindows);
+			footSwitch.routes[gesture.ordinal()] = route;
+		}
+		return route;
+	}
+
+	/**
+	 * Checks if a short message presses or releases a switch with gestures
+	 *
+	 * @param status
+	 *            The status byte
+	 * @param data1
+	 *            The first data byte
+	 * @param data2
+	 *            The second data byte
+	 * @return <TRUE> if the message is handled by the detector, else <FALSE>
+	 */
+	boolean isHandled(int status, int data1, int data2) {
+		return size > 0 && get(getPressKey(status, data1, data2)) != null;
+	}
+
+	/**
+	 * Handles the press or release of a switch with gestures
+	 *
+	 * @param input
+	 *            The input that received the message
+	 * @param status
+	 *            The status byte
+	 * @param data1
+	 *            The first data byte
+	 * @param data2
+	 *            The second data byte
+	 * @param time
+	 *            The time stamp of the message in microseconds
+	 * @param tapRoute
+	 *            The route of the plain trigger of the switch
+	 * @return The route of a gesture that was decided by the message or
+	 *         <NULL> if no gesture was decided
+	 */
+	MidiRoute handle(Input input, int status, int data1, int data2,
+			long time, MidiRoute tapRoute) {
+
+		Switch footSwitch = get(getPressKey(status, data1, data2));
+		State state = footSwitch.states[input.ordinal()];
+		long now = System.nanoTime();
+
+		if (isPress(status, data2)) {
+
+			if (state.phase == TAPPED) {
+				wheel.cancel(state);
+				state.phase = CONSUMED;
+				return footSwitch.routes[Gesture.DOUBLE_TAP.ordinal()];
+			}
+
+			// a press without release restarts the gesture
+			wheel.cancel(state);
+			state.phase = PRESSED;
+			state.pressTime = time;
+			state.pressNanos = now;
+			state.tapRoute = tapRoute;
+
+			if (footSwitch.isHoldable()) {
+				wheel.schedule(state, now,
+						TimeUnit.MILLISECONDS.toNanos(longPressTime));
+			}
+			return null;
+		}
+
+		switch (state.phase) {
+
+		case PRESSED:
+			wheel.cancel(state);
+			state.phase = IDLE;
+
+			// the deadline may not have been evaluated yet
+			if (footSwitch.isHoldable()
+					&& time - state.pressTime >= longPressTime * 1000) {
+				MidiRoute longPress = footSwitch.routes[Gesture.LONG_PRESS
+						.ordinal()];
+				return (longPress != null) ? longPress
+						: footSwitch.routes[Gesture.HOLD.ordinal()];
+			}
+
+			if (footSwitch.routes[Gesture.DOUBLE_TAP.ordinal()] != null) {
+				state.phase = TAPPED;
+				wheel.schedule(state, now,
+						TimeUnit.MILLISECONDS.toNanos(doubleTapWindow));
+				return null;
+			}
+			return state.tapRoute;
+
+		case HELD:
+		case CONSUMED:
+			wheel.cancel(state);
+			state.phase = IDLE;
+			return null;
+
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * Fires the gestures that reached their deadline
+	 *
+	 * @param now
+	 *            The current System.nanoTime()
+	 * @return The number of expired deadlines
+	 */
+	public int advance(long now) {
+		return wheel.advance(now);
+	}
+
+	/**
+	 * Checks if deadlines of pressed switches are pending
+	 *
+	 * @return <TRUE> if deadlines are pending, else <FALSE>
+	 */
+	public boolean isPending() {
+		return wheel.size() > 0;
+	}
+
+	/**
+	 * Gets the interval the detector must be advanced while deadlines are
+	 * pending
+	 *
+	 * @return The interval in nanoseconds
+	 */
+	public long getTickNanos() {
+		return wheel.getTickNanos();
+	}
+
+	/**
+	 * Gets the number of routed gestures
+	 *
+	 * @return The number of routed gestures
+	 */
+	public int size() {
+
+		int gestures = 0;
+		for (Switch footSwitch : switches) {
+			if (footSwitch != null) {
+				for (MidiRoute route : footSwitch.routes) {
+					if (route != null) {
+						gestures++;
+					}
+				}
+			}
+		}
+		return gestures;
+	}
+
+	/**
+	 * Gets the gesture of a signature
+	 *
+	 * @param signature
+	 *            The midi signature
+	 * @return The gesture, TAP if the signature has no gesture suffix
+	 */
+	public static Gesture getGesture(String signature) {
+
+		for (Gesture gesture : Gesture.values()) {
+			if (gesture != Gesture.TAP && signature.endsWith(gesture.suffix)) {
+				return gesture;
+			}
+		}
+		return Gesture.TAP;
+	}
+
+	/**
+	 * Gets the press key of a gesture signature
+	 *
+	 * @param signature
+	 *            The midi signature with gesture suffix
+	 * @param gesture
+	 *            The gesture of the signature
+	 * @return The press key, 0 if the signature is no note on or pressing
+	 *         control change
+	 */
+	public static int getPressKey(String signature, Gesture gesture) {
+
+		MidiMessage message;
+		try {
+			message = MidiUtils.signatureToMessage(signature.substring(0,
+					signature.length() - gesture.suffix.length()));
+		} catch (InvalidMidiDataException e) {
+			return EMPTY_KEY;
+		}
+
+		if (!(message instanceof ShortMessage)) {
+			return EMPTY_KEY;
+		}
+
+		ShortMessage shortMessage = (ShortMessage) message;
+		int command = shortMessage.getCommand();
+
+		if (command == ShortMessage.CONTROL_CHANGE
+				&& shortMessage.getData2() < RELEASE_LIMIT) {
+			return EMPTY_KEY;
+		}
+		if (command != ShortMessage.NOTE_ON
+				&& command != ShortMessage.CONTROL_CHANGE) {
+			return EMPTY_KEY;
+		}
+		return getPressKey(shortMessage.getStatus(), shortMessage.getData1(),
+				shortMessage.getData2());
+	}
+
+	/**
+	 * Gets the routing key of the press of a switch, a release has the key of
+	 * its press
+	 *
+	 * @param status
+	 *            The status byte
+	 * @param data1
+	 *            The first data byte
+	 * @param data2
+	 *            The second data byte
+	 * @return The press key, 0 if the message is no note or control change
+	 */
+	public static int getPressKey(int status, int data1, int data2) {
+
+		int channel = status & 0x0F;
+
+		switch (status & 0xF0) {
+		case ShortMessage.NOTE_OFF:
+		case ShortMessage.NOTE_ON:
+			return MidiRoutingTable.getRoutingKey(ShortMessage.NOTE_ON
+					| channel, data1, 0);
+
+		case ShortMessage.CONTROL_CHANGE:
+			return MidiRoutingTable.getRoutingKey(status, data1, PRESS_VALUE);
+
+		default:
+			return EMPTY_KEY;
+		}
+	}
+
+	/**
+	 * Checks if a message presses a switch
+	 *
+	 * @param status
+	 *            The status byte
+	 * @param data2
+	 *            The second data byte
+	 * @return <TRUE> for a press, <FALSE> for a release
+	 */
+	private static boolean isPress(int status, int data2) {
+
+		if ((status & 0xF0) == ShortMessage.CONTROL_CHANGE) {
+			return data2 >= RELEASE_LIMIT;
+		}
+		return !MidiComboAutomaton.isRelease(status, data2);
+	}
+
+	/**
+	 * Fires a gesture that was decided by a deadline
+	 *
+	 * @param state
+	 *            The state of the switch
+	 * @param now
+	 *            The current System.nanoTime()
+	 */
+	private void expire(State state, long now) {
+
+		Switch footSwitch = state.footSwitch;
+
+		switch (state.phase) {
+
+		case PRESSED:
+			fire(state, footSwitch.routes[Gesture.LONG_PRESS.ordinal()], now);
+
+			if (footSwitch.routes[Gesture.HOLD.ordinal()] != null) {
+				state.phase = HELD;
+				expire(state, now);
+			} else {
+				state.phase = CONSUMED;
+			}
+			break;
+
+		case HELD:
+			fire(state, footSwitch.routes[Gesture.HOLD.ordinal()], now);
+			wheel.schedule(state, now,
+					TimeUnit.MILLISECONDS.toNanos(holdRepeatInterval));
+			break;
+
+		case TAPPED:
+			state.phase = IDLE;
+			fire(state, state.tapRoute, now);
+			break;
+		}
+	}
+
+	/**
+	 * Notifies the listener about a gesture. The time of the gesture is
+	 * derived from the time stamp of the press.
+	 */
+	private void fire(State state, MidiRoute route, long now) {
+
+		if (route != null && listener != null) {
+			listener.gestureFired(state.input, route, state.pressTime
+					+ (now - state.pressNanos) / 1000);
+		}
+	}
+
+	private void put(int key, Switch footSwitch) {
+
+		if ((size + 1) * 2 > keys.length) {
+			int[] oldKeys = keys;
+			Switch[] oldSwitches = switches;
+			keys = new int[keys.length * 2];
+			switches = new Switch[keys.length];
+			size = 0;
+
+			for (int i = 0; i < oldKeys.length; i++) {
+				if (oldKeys[i] != EMPTY_KEY) {
+					put(oldKeys[i], oldSwitches[i]);
+				}
+			}
+		}
+
+		int mask = keys.length - 1;
+		int i = hash(key) & mask;
+		while (keys[i] != EMPTY_KEY) {
+			i = (i + 1) & mask;
+		}
+		keys[i] = key;
+		switches[i] = footSwitch;
+		size++;
+	}
+
+	private Switch get(int key) {
+
+		if (key == EMPTY_KEY) {
+			return null;
+		}
+
+		int mask = keys.length - 1;
+		for (int i = hash(key) & mask;; i = (i + 1) & mask) {
+			int storedKey = keys[i];
+			if (storedKey == key) {
+				return switches[i];
+			}
+			if (storedKey == EMPTY_KEY) {
+				return null;
+			}
+		}
+	}
+
+	private static int hash(int key) {
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * The routed gestures of a switch and its states per input
+	 *
+	 * @author aguelle
+	 *
+	 */
+	private class Switch {
+
+		private final MidiRoute[] routes = new MidiRoute[Gesture.values().length];
+		private final State[] states = new State[Input.values().length];
+
+		private Switch() {
+			for (Input input : Input.values()) {
+				states[input.ordinal()] = new State(this, input);
+			}
+		}
+
+		/**
+		 * Checks if a long press or a hold is routed
+		 *
+		 * @return <TRUE> if the switch can be held, else <FALSE>
+		 */
+		private boolean isHoldable() {
+			return routes[Gesture.LONG_PRESS.ordinal()] != null
+					|| routes[Gesture.HOLD.ordinal()] != null;
+		}
+	}
+
+	/**
+	 * The state of a switch on an input. It is the timeout of its own
+	 * deadline, so pressing a switch allocates nothing.
+	 *
+	 * @author aguelle
+	 *
+	 */
+	private class State extends MidiTimerWheel.Timeout {
+
+		private final Switch footSwitch;
+		private final Input input;
+		private int phase = IDLE;
+		private long pressTime;
+		private long pressNanos;
+		private MidiRoute tapRoute;
+
+		private State(Switch footSwitch, Input input) {
+			this.footSwitch = footSwitch;
+			this.input = input;
+		}
+
+		@Override
+		protected void expire(long now) {
+			MidiGestureDetector.this.expire(this, now);
+		}
+	}
+}
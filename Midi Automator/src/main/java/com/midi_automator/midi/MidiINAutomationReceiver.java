@@ -7,7 +7,6 @@ import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Component;
 
 import com.midi_automator.presenter.services.GUIAutomationsService;
-import com.midi_automator.utils.MidiUtils;
 
 /**
  * Executes automations by received midi signals.
@@ -23,19 +22,13 @@ public class MidiINAutomationReceiver extends MidiAutomatorReceiver {
 	private GUIAutomationsService guiAutomationsService;
 
 	@Override
-	public void send(MidiMessage message, long timeStamp) {
-		super.send(message, timeStamp);
+	protected void receive(MidiMessage message, long timeStamp) {
+		super.receive(message, timeStamp);
 
-		if (!midiLearnService.isMidiLearning() && interpretedMessage != null
-				&& !interpretedSignature.equals(MidiUtils.UNKNOWN_MESSAGE)
-				&& !isExecuting) {
+		if (!midiLearnService.isMidiLearning() && isInterpretedMessageKnown()) {
 
-			log.debug(name + " checking MIDI trigger for message: "
-					+ interpretedSignature);
-
-			guiAutomationsService
-					.activateAutomationsByMidiMessage(interpretedMessage);
-			isExecuting = false;
+			guiAutomationsService.activateAutomationsByMidiMessage(message,
+					getMessageTime(timeStamp));
 		}
 	}
 }
@@ -1,7 +1,6 @@
 package com.midi_automator.midi;
 
 import javax.sound.midi.MidiMessage;
-import javax.swing.SwingUtilities;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Scope;
@@ -23,17 +22,7 @@ public class MidiINDetector extends MidiAutomatorReceiver {
 	private MidiService midiService;
 
 	@Override
-	public void send(MidiMessage message, long timeStamp) {
-		super.send(message, timeStamp);
-
-		if (!isExecuting) {
-			SwingUtilities.invokeLater(new Runnable() {
-				public void run() {
-					log.debug("Blink MIDI IN");
-					midiService.showMidiINSignal();
-					isExecuting = false;
-				}
-			});
-		}
+	protected void receive(MidiMessage message, long timeStamp) {
+		midiService.showMidiINSignal();
 	}
 }
@@ -1,17 +1,23 @@
 package com.midi_automator.midi;
 
 import javax.sound.midi.MidiMessage;
-import javax.swing.SwingUtilities;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Component;
 
+import com.midi_automator.presenter.services.LatencyService;
+import com.midi_automator.presenter.services.LatencyService.Drop;
+import com.midi_automator.presenter.services.LatencyService.Stage;
+import com.midi_automator.presenter.services.MidiControllerService;
 import com.midi_automator.presenter.services.MidiService;
-import com.midi_automator.utils.MidiUtils;
 
 /**
- * Executes received midi signals.
+ * Executes received midi signals. The signals are executed on the midi
+ * dispatcher thread, so they do not wait for the EDT. The signals of all remote
+ * devices are merged, so redundant devices do not execute a signal twice.
+ * The raw signals are routed, so trigger patterns can match their values.
+ * Mapped continuous controllers are not merged but coalesced per device.
  * 
  * @author aguelle
  * 
@@ -22,25 +28,34 @@ public class MidiINExecuteReceiver extends MidiAutomatorReceiver {
 
 	@Autowired
 	private MidiService midiService;
+	@Autowired
+	private LatencyService latencyService;
+	@Autowired
+	private MidiINMerger midiINMerger;
+	@Autowired
+	private MidiControllerService midiControllerService;
 
 	@Override
-	public void send(MidiMessage message, long timeStamp) {
-		super.send(message, timeStamp);
-
-		if (!midiLearnService.isMidiLearning() && interpretedMessage != null
-				&& !interpretedSignature.equals(MidiUtils.UNKNOWN_MESSAGE)
-				&& !isExecuting) {
-			isExecuting = true;
-
-			log.debug("Executed MIDI message: " + interpretedSignature);
-
-			SwingUtilities.invokeLater(new Runnable() {
-				public void run() {
-					midiService.executeMidiMessage(interpretedMessage);
-					isExecuting = false;
-				}
-			});
-
+	protected void receive(MidiMessage message, long timeStamp) {
+		super.receive(message, timeStamp);
+
+		if (!midiLearnService.isMidiLearning() && isInterpretedMessageKnown()) {
+
+			if (midiControllerService.control(multiplexer.getDeviceName(),
+					message)) {
+				latencyService.record(Stage.INGRESS, arrivalTime);
+				return;
+			}
+
+			long time = midiINMerger.merge(multiplexer.getDeviceName(),
+					interpretedMessage, timeStamp, arrivalTime);
+
+			if (time != MidiINMerger.DUPLICATE) {
+				latencyService.record(Stage.INGRESS, arrivalTime);
+				midiService.executeMidiMessage(message, time, arrivalTime);
+			} else {
+				latencyService.countDrop(Drop.DUPLICATE);
+			}
 		}
 	}
 }
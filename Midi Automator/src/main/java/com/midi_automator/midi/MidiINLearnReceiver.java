@@ -1,15 +1,15 @@
 package com.midi_automator.midi;
 
 import javax.sound.midi.MidiMessage;
+import javax.sound.midi.ShortMessage;
 import javax.swing.SwingUtilities;
 
 import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Component;
 
-import com.midi_automator.utils.MidiUtils;
-
 /**
- * Learns a midi signal.
+ * Learns a midi signal. The signals are collected by the learn service, so
+ * chords and sequences can be learned.
  * 
  * @author aguelle
  * 
@@ -19,21 +19,22 @@ import com.midi_automator.utils.MidiUtils;
 public class MidiINLearnReceiver extends MidiAutomatorReceiver {
 
 	@Override
-	public void send(MidiMessage message, long timeStamp) {
-		super.send(message, timeStamp);
+	protected void receive(MidiMessage message, long timeStamp) {
+		super.receive(message, timeStamp);
 
-		if (midiLearnService.isMidiLearning() && interpretedSignature != null
-				&& !interpretedSignature.equals(MidiUtils.UNKNOWN_MESSAGE)
-				&& !isExecuting) {
-			isExecuting = true;
+		if (midiLearnService.isMidiLearning() && isInterpretedMessageKnown()) {
 
-			log.debug("MIDI message learned: " + interpretedSignature);
+			final String signature = getInterpretedSignature();
+			final long time = getMessageTime(timeStamp);
+			final boolean release = message instanceof ShortMessage
+					&& MidiComboAutomaton.isRelease(message.getStatus(),
+							((ShortMessage) message).getData2());
+			log.debug("MIDI message learned: " + signature);
 
 			SwingUtilities.invokeLater(new Runnable() {
 				public void run() {
-					midiLearnService.midiLearn(interpretedSignature);
-					midiLearnService.setMidiLearnMode(false);
-					isExecuting = false;
+					midiLearnService.collectMidiLearnSignature(signature,
+							time, release);
 				}
 			});
 
@@ -0,0 +1,207 @@
+package com.midi_automator.midi;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.ShortMessage;
+
+import org.apache.log4j.Logger;
+import org.springframework.stereotype.Component;
+
+/**
+ * Merges the messages of redundant midi IN remote devices to a single stream,
+ * e.g. a foot switch connected by USB and DIN. The time stamps of every device
+ * are normalized to a common time base, so the merged stream has a monotonic
+ * timeline for debouncing. A message that arrives from another device within
+ * the merge window of an equal message is a redundant copy and dropped before
+ * it is executed.
+ *
+ * Messages are merged in the order the midi dispatcher drains them and are
+ * not held back for reordering, as that would delay every trigger by the merge
+ * window. Must only be called from the midi dispatcher thread.
+ *
+ * @author aguelle
+ *
+ */
+@Component
+public class MidiINMerger {
+
+	private Logger log = Logger.getLogger(this.getClass().getName());
+
+	public static final long DUPLICATE = Long.MIN_VALUE;
+	public static final long DEFAULT_WINDOW = 30;
+
+	private static final int HISTORY_SIZE = 32;
+	private static final int MAX_SOURCES = 64;
+	private static final long NO_TIME = Long.MIN_VALUE;
+
+	private final Map<String, Source> sources = new HashMap<String, Source>();
+
+	private final MidiMessage[] historyMessages = new MidiMessage[HISTORY_SIZE];
+	private final long[] historyTimes = new long[HISTORY_SIZE];
+	private final int[] historyOrigins = new int[HISTORY_SIZE];
+	private final long[] historyDeliveries = new long[HISTORY_SIZE];
+	private int historyIndex;
+
+	private volatile long window = DEFAULT_WINDOW * 1000;
+	private long lastTime = NO_TIME;
+	private long duplicateCount;
+
+	/**
+	 * Merges a message of a device to the stream
+	 *
+	 * @param deviceName
+	 *            The name of the midi device
+	 * @param message
+	 *            The interpreted midi message
+	 * @param timeStamp
+	 *            The time stamp of the device in microseconds, -1 if the device
+	 *            does not support time stamps
+	 * @param arrivalTime
+	 *            The System.nanoTime() when the message arrived
+	 * @return The time of the message in the merged stream in microseconds,
+	 *         DUPLICATE if the message is a redundant copy
+	 */
+	public long merge(String deviceName, MidiMessage message, long timeStamp,
+			long arrivalTime) {
+
+		Source source = getSource(deviceName);
+		long time = source.normalize(timeStamp, arrivalTime);
+		long delivery = 1L << source.index;
+
+		if (sources.size() > 1) {
+			for (int i = 0; i < HISTORY_SIZE; i++) {
+
+				if (historyMessages[i] != null
+						&& historyOrigins[i] != source.index
+						&& (historyDeliveries[i] & delivery) == 0
+						&& Math.abs(time - historyTimes[i]) <= window
+						&& isEqual(historyMessages[i], message)) {
+
+					historyDeliveries[i] |= delivery;
+					duplicateCount++;
+
+					if (log.isTraceEnabled()) {
+						log.trace("Dropped redundant MIDI message from "
+								+ deviceName);
+					}
+					return DUPLICATE;
+				}
+			}
+		}
+
+		historyMessages[historyIndex] = message;
+		historyTimes[historyIndex] = time;
+		historyOrigins[historyIndex] = source.index;
+		historyDeliveries[historyIndex] = delivery;
+		historyIndex = (historyIndex + 1) % HISTORY_SIZE;
+
+		if (time > lastTime) {
+			lastTime = time;
+		}
+		return lastTime;
+	}
+
+	/**
+	 * Gets the source of a device and registers it on first use
+	 *
+	 * @param deviceName
+	 *            The name of the midi device
+	 * @return The source
+	 */
+	private Source getSource(String deviceName) {
+
+		Source source = sources.get(deviceName);
+		if (source == null) {
+			source = new Source(sources.size() % MAX_SOURCES);
+			sources.put(deviceName, source);
+		}
+		return source;
+	}
+
+	/**
+	 * Checks if two messages have the same bytes
+	 */
+	private boolean isEqual(MidiMessage message, MidiMessage other) {
+
+		if (message instanceof ShortMessage && other instanceof ShortMessage) {
+
+			ShortMessage shortMessage = (ShortMessage) message;
+			ShortMessage otherShortMessage = (ShortMessage) other;
+
+			return shortMessage.getStatus() == otherShortMessage.getStatus()
+					&& shortMessage.getData1() == otherShortMessage.getData1()
+					&& shortMessage.getData2() == otherShortMessage.getData2();
+		}
+
+		return message.getLength() == other.getLength()
+				&& Arrays.equals(message.getMessage(), other.getMessage());
+	}
+
+	/**
+	 * Sets the merge window
+	 *
+	 * @param window
+	 *            The merge window in microseconds, 0 merges without
+	 *            deduplication
+	 */
+	public void setWindow(long window) {
+		this.window = Math.max(0, window);
+	}
+
+	public long getWindow() {
+		return window;
+	}
+
+	/**
+	 * Gets the number of dropped redundant copies
+	 *
+	 * @return The number of dropped messages
+	 */
+	public long getDuplicateCount() {
+		return duplicateCount;
+	}
+
+	/**
+	 * A device that feeds the merged stream
+	 *
+	 * @author aguelle
+	 *
+	 */
+	private static class Source {
+
+		private final int index;
+		private long offset = Long.MAX_VALUE;
+
+		Source(int index) {
+			this.index = index;
+		}
+
+		/**
+		 * Normalizes a time stamp of the device to the time base of the
+		 * arrival times. The offset of the device clock is the smallest
+		 * difference seen, as it has the least transport jitter.
+		 *
+		 * @param timeStamp
+		 *            The time stamp of the device in microseconds
+		 * @param arrivalTime
+		 *            The System.nanoTime() when the message arrived
+		 * @return The normalized time in microseconds
+		 */
+		long normalize(long timeStamp, long arrivalTime) {
+
+			long arrival = arrivalTime / 1000;
+
+			if (timeStamp <= 0) {
+				return arrival;
+			}
+
+			if (arrival - timeStamp < offset) {
+				offset = arrival - timeStamp;
+			}
+			return timeStamp + offset;
+		}
+	}
+}
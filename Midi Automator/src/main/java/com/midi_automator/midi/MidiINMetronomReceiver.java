@@ -1,17 +1,18 @@
 package com.midi_automator.midi;
 
 import javax.sound.midi.MidiMessage;
-import javax.swing.SwingUtilities;
+import javax.sound.midi.ShortMessage;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Component;
 
 import com.midi_automator.presenter.services.MidiMetronomService;
-import com.midi_automator.utils.MidiUtils;
 
 /**
- * Displays received midi signals as metronom.
+ * Displays received midi signals as metronom. Clock, transport and song
+ * position messages are tracked by their status byte, the note signatures of
+ * the metronom are a fallback for devices without clock.
  * 
  * @author aguelle
  * 
@@ -24,29 +25,30 @@ public class MidiINMetronomReceiver extends MidiAutomatorReceiver {
 	private MidiMetronomService midiMetronomService;
 
 	@Override
-	public void send(MidiMessage message, long timeStamp) {
-		super.send(message, timeStamp);
+	protected void receive(MidiMessage message, long timeStamp) {
 
-		if (!midiLearnService.isMidiLearning() && message != null) {
-			String signature = MidiUtils.messageToString(message);
+		if (message instanceof ShortMessage
+				&& MidiBeatTracker.isTracked(message.getStatus())) {
 
-			if (signature
-					.contains(MidiMetronomService.METRONOM_FIRST_CLICK_MIDI_SIGNATURE)) {
+			ShortMessage shortMessage = (ShortMessage) message;
+			midiMetronomService.trackBeat(shortMessage.getStatus(),
+					shortMessage.getData1(), shortMessage.getData2(),
+					timeStamp, arrivalTime);
+			return;
+		}
+
+		super.receive(message, timeStamp);
 
-				SwingUtilities.invokeLater(new Runnable() {
-					public void run() {
-						midiMetronomService.metronomClick(1);
-					}
-				});
+		if (!midiLearnService.isMidiLearning()
+				&& interpretedMessage instanceof ShortMessage) {
+			String signature = getInterpretedSignature();
 
+			if (signature
+					.contains(MidiMetronomService.METRONOM_FIRST_CLICK_MIDI_SIGNATURE)) {
+				midiMetronomService.metronomClick(1);
 			} else if (signature
 					.contains(MidiMetronomService.METRONOM_CLICK_MIDI_SIGNATURE)) {
-
-				SwingUtilities.invokeLater(new Runnable() {
-					public void run() {
-						midiMetronomService.metronomClick(-1);
-					}
-				});
+				midiMetronomService.metronomClick(-1);
 			}
 
 		}
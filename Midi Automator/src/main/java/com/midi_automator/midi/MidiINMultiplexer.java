@@ -0,0 +1,381 @@
+package com.midi_automator.midi;
+
+import java.util.Arrays;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Transmitter;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Scope;
+import org.springframework.stereotype.Component;
+
+import com.midi_automator.utils.MidiUtils;
+
+/**
+ * The only receiver connected to a midi IN device. The device opens exactly one
+ * transmitter for it, the transmitter thread forwards the messages of the
+ * thru routes, filters the messages and copies them to the ingress buffer. On
+ * the midi dispatcher thread the control changes of NRPNs, RPNs and the
+ * configured 14 bit controllers are assembled to parameter messages, then
+ * every message is interpreted and decoded once and fanned out to all
+ * attached midi automator receivers, e.g. learn, execute, automation,
+ * metronom and detector.
+ *
+ * @author aguelle
+ *
+ */
+@Component
+@Scope("prototype")
+public class MidiINMultiplexer implements Receiver, IMidiIngressHandler {
+
+	private Logger log = Logger.getLogger(this.getClass().getName());
+
+	private static final MidiAutomatorReceiver[] NO_CONSUMERS = new MidiAutomatorReceiver[0];
+	public static final MidiThruRoute[] NO_THRU_ROUTES = new MidiThruRoute[0];
+
+	@Autowired
+	private MidiDispatcher midiDispatcher;
+
+	private final MidiIngressRingBuffer ingressBuffer = new MidiIngressRingBuffer();
+	private volatile MidiIngressFilter ingressFilter = new MidiIngressFilter();
+	private volatile MidiAutomatorReceiver[] consumers = NO_CONSUMERS;
+	private volatile Receiver ingressTap;
+	private volatile MidiThruRoute[] thruRoutes = NO_THRU_ROUTES;
+	private int[] attachments = new int[0];
+	private Transmitter transmitter;
+	private String deviceName;
+	private long reportedDroppedCount = 0;
+
+	private MidiMessage interpretedMessage;
+	private String interpretedSignature;
+	private boolean assemblerFlushScheduled;
+
+	private final MidiParameterAssembler parameterAssembler = new MidiParameterAssembler(
+			new IMidiIngressHandler() {
+
+				public void handleShortMessage(int status, int data1,
+						int data2, long timeStamp, long arrivalTime) {
+
+					try {
+						dispatch(new ShortMessage(status, data1, data2),
+								timeStamp, arrivalTime);
+					} catch (InvalidMidiDataException e) {
+						log.error("Received invalid MIDI message", e);
+					}
+				}
+
+				public void handleMessage(MidiMessage message, long timeStamp,
+						long arrivalTime) {
+					dispatch(message, timeStamp, arrivalTime);
+				}
+			});
+
+	private final Runnable assemblerFlush = new Runnable() {
+		public void run() {
+			drainIngressBuffer(ingressBuffer.size());
+			parameterAssembler.flush(System.nanoTime());
+			assemblerFlushScheduled = false;
+			scheduleAssemblerFlush();
+		}
+	};
+
+	@Override
+	public void send(MidiMessage message, long timeStamp) {
+
+		Receiver tap = ingressTap;
+		if (tap != null) {
+			tap.send(message, timeStamp);
+		}
+
+		MidiThruRoute[] routes = thruRoutes;
+		if (routes.length > 0) {
+			long arrivalTime = System.nanoTime();
+			for (MidiThruRoute route : routes) {
+				route.forward(message, arrivalTime);
+			}
+		}
+
+		if (!ingressFilter.accepts(message.getStatus())) {
+			return;
+		}
+
+		if (message instanceof ShortMessage) {
+			ShortMessage shortMessage = (ShortMessage) message;
+			ingressBuffer.offer(shortMessage.getStatus(),
+					shortMessage.getData1(), shortMessage.getData2(),
+					timeStamp);
+		} else {
+			ingressBuffer.offer(message, timeStamp);
+		}
+
+		midiDispatcher.signal();
+	}
+
+	/**
+	 * Connects the multiplexer to the transmitter of the device and registers
+	 * it at the midi dispatcher.
+	 *
+	 * @param transmitter
+	 *            The transmitter of the midi device
+	 */
+	public void open(Transmitter transmitter) {
+
+		this.transmitter = transmitter;
+		transmitter.setReceiver(this);
+		midiDispatcher.register(this);
+	}
+
+	@Override
+	public void close() {
+
+		midiDispatcher.unregister(this);
+
+		if (transmitter != null) {
+			transmitter.setReceiver(null);
+			transmitter.close();
+			transmitter = null;
+		}
+	}
+
+	/**
+	 * Attaches a receiver, it will get all messages of the device. Receivers
+	 * are shared by class, if a receiver of the same class is already attached
+	 * it is used instead and only its attachments are counted.
+	 *
+	 * @param receiver
+	 *            The midi automator receiver
+	 * @return The attached receiver
+	 */
+	public synchronized MidiAutomatorReceiver attach(
+			MidiAutomatorReceiver receiver) {
+
+		for (int i = 0; i < consumers.length; i++) {
+			if (consumers[i].getClass() == receiver.getClass()) {
+				attachments[i]++;
+				return consumers[i];
+			}
+		}
+
+		MidiAutomatorReceiver[] attached = Arrays.copyOf(consumers,
+				consumers.length + 1);
+		attached[consumers.length] = receiver;
+		attachments = Arrays.copyOf(attachments, attached.length);
+		attachments[consumers.length] = 1;
+		consumers = attached;
+
+		return receiver;
+	}
+
+	/**
+	 * Detaches a receiver, it will not get any messages anymore when it was
+	 * detached as often as it was attached.
+	 *
+	 * @param receiver
+	 *            The midi automator receiver
+	 */
+	public synchronized void detach(MidiAutomatorReceiver receiver) {
+
+		for (int i = 0; i < consumers.length; i++) {
+			if (consumers[i] == receiver && --attachments[i] == 0) {
+
+				MidiAutomatorReceiver[] attached = new MidiAutomatorReceiver[consumers.length - 1];
+				int[] remaining = new int[attached.length];
+				System.arraycopy(consumers, 0, attached, 0, i);
+				System.arraycopy(consumers, i + 1, attached, i,
+						attached.length - i);
+				System.arraycopy(attachments, 0, remaining, 0, i);
+				System.arraycopy(attachments, i + 1, remaining, i,
+						remaining.length - i);
+				attachments = remaining;
+				consumers = attached;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Drains the ingress buffer. Called by the midi dispatcher thread.
+	 *
+	 * @param maxMessages
+	 *            The maximum number of messages to drain
+	 * @return The number of drained messages
+	 */
+	public int drainIngressBuffer(int maxMessages) {
+
+		int count = ingressBuffer.drain(this, maxMessages);
+
+		long droppedCount = ingressBuffer.getDroppedCount();
+		if (droppedCount != reportedDroppedCount) {
+			log.warn(deviceName + " dropped "
+					+ (droppedCount - reportedDroppedCount)
+					+ " MIDI messages on overflow (" + ingressBuffer + ")");
+			reportedDroppedCount = droppedCount;
+		}
+
+		return count;
+	}
+
+	@Override
+	public void handleShortMessage(int status, int data1, int data2,
+			long timeStamp, long arrivalTime) {
+
+		parameterAssembler.handleShortMessage(status, data1, data2, timeStamp,
+				arrivalTime);
+		scheduleAssemblerFlush();
+	}
+
+	@Override
+	public void handleMessage(MidiMessage message, long timeStamp,
+			long arrivalTime) {
+		parameterAssembler.handleMessage(message, timeStamp, arrivalTime);
+	}
+
+	/**
+	 * Schedules the release of the controllers held by the parameter assembler
+	 * if no release is scheduled yet. The ingress buffer is drained before, so
+	 * an LSB or data entry that already arrived still completes them.
+	 */
+	private void scheduleAssemblerFlush() {
+
+		if (parameterAssembler.isPending() && !assemblerFlushScheduled
+				&& midiDispatcher != null) {
+			assemblerFlushScheduled = true;
+			midiDispatcher.schedule(assemblerFlush,
+					parameterAssembler.getFlushDelay());
+		}
+	}
+
+	/**
+	 * Normalizes a message once and dispatches it to all attached receivers.
+	 * Duplicates are not suppressed here but debounced per learned trigger.
+	 *
+	 * @param message
+	 *            The midi message
+	 * @param timeStamp
+	 *            The time stamp of the message
+	 * @param arrivalTime
+	 *            The System.nanoTime() when the message arrived
+	 */
+	private void dispatch(MidiMessage message, long timeStamp, long arrivalTime) {
+
+		if (log.isTraceEnabled()) {
+			log.trace("MIDI message received from " + deviceName + ": "
+					+ MidiUtils.messageToString(message));
+		}
+
+		interpretedMessage = MidiUtils.normalizeMidiMesage(message);
+		interpretedSignature = null;
+
+		for (MidiAutomatorReceiver consumer : consumers) {
+			try {
+				consumer.dispatch(this, message, timeStamp, arrivalTime);
+			} catch (RuntimeException e) {
+				log.error("Dispatching MIDI message to "
+						+ consumer.getClass().getSimpleName() + " failed", e);
+			}
+		}
+	}
+
+	/**
+	 * Gets the interpreted message that is currently dispatched
+	 *
+	 * @return The interpreted message, <NULL> if the message was not
+	 *         interpreted
+	 */
+	public MidiMessage getInterpretedMessage() {
+		return interpretedMessage;
+	}
+
+	/**
+	 * Gets the signature of the interpreted message that is currently
+	 * dispatched. The signature is decoded on demand and only once for all
+	 * receivers.
+	 *
+	 * @return The signature of the interpreted message, <NULL> if no message
+	 *         was interpreted
+	 */
+	public String getInterpretedSignature() {
+
+		if (interpretedSignature == null && interpretedMessage != null) {
+			interpretedSignature = MidiUtils
+					.messageToString(interpretedMessage);
+		}
+		return interpretedSignature;
+	}
+
+	/**
+	 * Gets the attached receivers
+	 *
+	 * @return The attached midi automator receivers
+	 */
+	public MidiAutomatorReceiver[] getConsumers() {
+		return consumers;
+	}
+
+	public MidiIngressRingBuffer getIngressBuffer() {
+		return ingressBuffer;
+	}
+
+	public MidiParameterAssembler getParameterAssembler() {
+		return parameterAssembler;
+	}
+
+	public MidiIngressFilter getIngressFilter() {
+		return ingressFilter;
+	}
+
+	public void setIngressFilter(MidiIngressFilter ingressFilter) {
+		this.ingressFilter = ingressFilter;
+	}
+
+	public Receiver getIngressTap() {
+		return ingressTap;
+	}
+
+	/**
+	 * Sets a receiver that gets the raw incoming stream before it is filtered,
+	 * e.g. for capturing. It is called by the transmitter thread.
+	 *
+	 * @param ingressTap
+	 *            The receiver or <NULL> to remove the tap
+	 */
+	public void setIngressTap(Receiver ingressTap) {
+		this.ingressTap = ingressTap;
+	}
+
+	public MidiThruRoute[] getThruRoutes() {
+		return thruRoutes;
+	}
+
+	/**
+	 * Sets the routes the raw incoming messages are forwarded to. They are
+	 * called by the transmitter thread.
+	 *
+	 * @param thruRoutes
+	 *            The configured thru routes
+	 */
+	public void setThruRoutes(MidiThruRoute[] thruRoutes) {
+		this.thruRoutes = thruRoutes;
+	}
+
+	public void setMidiDispatcher(MidiDispatcher midiDispatcher) {
+		this.midiDispatcher = midiDispatcher;
+	}
+
+	public String getDeviceName() {
+		return deviceName;
+	}
+
+	public void setDeviceName(String deviceName) {
+		this.deviceName = deviceName;
+	}
+
+	@Override
+	public String toString() {
+		return deviceName + " - " + ingressBuffer + ", " + ingressFilter;
+	}
+}
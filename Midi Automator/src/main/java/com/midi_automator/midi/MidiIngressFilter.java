@@ -0,0 +1,229 @@
+package com.midi_automator.midi;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sound.midi.ShortMessage;
+
+/**
+ * A filter for incoming midi messages of a device. The filter is a bitset over
+ * all 128 status bytes, so channel voice messages can be filtered by command
+ * and channel and system messages by their status. It is applied on the
+ * transmitter thread before a message is buffered or decoded, rejecting a
+ * message only tests a bit and counts it.
+ *
+ * @author aguelle
+ *
+ */
+public class MidiIngressFilter {
+
+	/** MTC quarter frame, timing clock and active sensing */
+	public static final int[] DEFAULT_REJECTED_STATUSES = {
+			ShortMessage.MIDI_TIME_CODE, ShortMessage.TIMING_CLOCK,
+			ShortMessage.ACTIVE_SENSING };
+
+	public static final int[] CHANNEL_COMMANDS = { ShortMessage.NOTE_OFF,
+			ShortMessage.NOTE_ON, ShortMessage.POLY_PRESSURE,
+			ShortMessage.CONTROL_CHANGE, ShortMessage.PROGRAM_CHANGE,
+			ShortMessage.CHANNEL_PRESSURE, ShortMessage.PITCH_BEND };
+
+	private static final String STATUS_DELIMITER = ",";
+
+	private volatile long rejectedLow;
+	private volatile long rejectedHigh;
+
+	private final AtomicLong filtered = new AtomicLong();
+
+	/**
+	 * Creates a filter that rejects the default statuses.
+	 */
+	public MidiIngressFilter() {
+		for (int status : DEFAULT_REJECTED_STATUSES) {
+			setRejected(status, true);
+		}
+	}
+
+	/**
+	 * Checks if a message with the given status passes the filter. Rejected
+	 * messages are counted.
+	 *
+	 * @param status
+	 *            The status byte
+	 * @return <TRUE> if the message passes, <FALSE> if it is rejected
+	 */
+	public boolean accepts(int status) {
+
+		if (isRejected(status)) {
+			filtered.incrementAndGet();
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Checks if a status is rejected
+	 *
+	 * @param status
+	 *            The status byte
+	 * @return <TRUE> if the status is rejected, else <FALSE>
+	 */
+	public boolean isRejected(int status) {
+
+		long rejected = ((status & 0x40) == 0) ? rejectedLow : rejectedHigh;
+		return (rejected & (1L << (status & 0x3F))) != 0;
+	}
+
+	/**
+	 * Rejects or accepts a status
+	 *
+	 * @param status
+	 *            The status byte
+	 * @param rejected
+	 *            <TRUE> to reject the status, <FALSE> to accept it
+	 */
+	public synchronized void setRejected(int status, boolean rejected) {
+
+		long bit = 1L << (status & 0x3F);
+
+		if ((status & 0x40) == 0) {
+			rejectedLow = rejected ? (rejectedLow | bit) : (rejectedLow & ~bit);
+		} else {
+			rejectedHigh = rejected ? (rejectedHigh | bit)
+					: (rejectedHigh & ~bit);
+		}
+	}
+
+	/**
+	 * Checks if a channel voice command is rejected on all channels
+	 *
+	 * @param command
+	 *            The command, e.g. ShortMessage.NOTE_ON
+	 * @return <TRUE> if the command is rejected, else <FALSE>
+	 */
+	public boolean isCommandRejected(int command) {
+
+		for (int channel = 0; channel < 16; channel++) {
+			if (!isRejected(command | channel)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Rejects or accepts a channel voice command on all channels
+	 *
+	 * @param command
+	 *            The command, e.g. ShortMessage.NOTE_ON
+	 * @param rejected
+	 *            <TRUE> to reject the command, <FALSE> to accept it
+	 */
+	public synchronized void setCommandRejected(int command, boolean rejected) {
+		for (int channel = 0; channel < 16; channel++) {
+			setRejected(command | channel, rejected);
+		}
+	}
+
+	/**
+	 * Checks if all channel voice commands of a channel are rejected
+	 *
+	 * @param channel
+	 *            The channel from 0 to 15
+	 * @return <TRUE> if the channel is rejected, else <FALSE>
+	 */
+	public boolean isChannelRejected(int channel) {
+
+		for (int command : CHANNEL_COMMANDS) {
+			if (!isRejected(command | channel)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Rejects or accepts all channel voice commands of a channel
+	 *
+	 * @param channel
+	 *            The channel from 0 to 15
+	 * @param rejected
+	 *            <TRUE> to reject the channel, <FALSE> to accept it
+	 */
+	public synchronized void setChannelRejected(int channel, boolean rejected) {
+		for (int command : CHANNEL_COMMANDS) {
+			setRejected(command | channel, rejected);
+		}
+	}
+
+	/**
+	 * Gets the rejected statuses
+	 *
+	 * @return The rejected status bytes as comma separated hex values
+	 */
+	public String getRejectedStatuses() {
+
+		StringBuilder statuses = new StringBuilder();
+
+		for (int status = 0x80; status <= 0xFF; status++) {
+			if (isRejected(status)) {
+				if (statuses.length() > 0) {
+					statuses.append(STATUS_DELIMITER);
+				}
+				statuses.append(Integer.toHexString(status).toUpperCase());
+			}
+		}
+
+		return statuses.toString();
+	}
+
+	/**
+	 * Sets the rejected statuses, all other statuses are accepted.
+	 *
+	 * @param statuses
+	 *            The rejected status bytes as comma separated hex values
+	 * @throws NumberFormatException
+	 *             If a status is no hex value
+	 */
+	public synchronized void setRejectedStatuses(String statuses)
+			throws NumberFormatException {
+
+		long low = 0;
+		long high = 0;
+
+		for (String status : statuses.split(STATUS_DELIMITER)) {
+
+			status = status.trim();
+			if (status.isEmpty()) {
+				continue;
+			}
+
+			int value = Integer.parseInt(status, 16);
+			if (value < 0x80 || value > 0xFF) {
+				throw new NumberFormatException("No status byte: " + status);
+			}
+
+			if ((value & 0x40) == 0) {
+				low |= 1L << (value & 0x3F);
+			} else {
+				high |= 1L << (value & 0x3F);
+			}
+		}
+
+		rejectedLow = low;
+		rejectedHigh = high;
+	}
+
+	/**
+	 * Gets the number of rejected messages
+	 *
+	 * @return The number of filtered messages
+	 */
+	public long getFilteredCount() {
+		return filtered.get();
+	}
+
+	@Override
+	public String toString() {
+		return "rejected: [" + getRejectedStatuses() + "], filtered: "
+				+ filtered.get();
+	}
+}
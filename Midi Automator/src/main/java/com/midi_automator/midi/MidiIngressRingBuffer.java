@@ -0,0 +1,408 @@
+package com.midi_automator.midi;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.sound.midi.MidiMessage;
+
+/**
+ * A preallocated lock-free single producer / single consumer ring buffer for
+ * incoming midi messages. The producer is the transmitter thread of the midi
+ * device which only copies the status, both data bytes and the time stamp to
+ * the buffer and stamps the arrival with System.nanoTime(). The consumer is the
+ * midi dispatcher thread.
+ *
+ * If the buffer is full the overflow policy decides what happens:
+ * <ul>
+ * <li>BLOCK: the transmitter thread waits until the consumer made room.</li>
+ * <li>DROP_OLDEST: the oldest buffered message is dropped.</li>
+ * <li>COALESCE: the message is merged with pending messages of the same status
+ * and data1 byte, the latest value wins.</li>
+ * </ul>
+ * Every message is counted as enqueued, dropped or coalesced.
+ *
+ * @author aguelle
+ *
+ */
+public class MidiIngressRingBuffer {
+
+	public static final int DEFAULT_CAPACITY = 1024;
+	public static final OverflowPolicy DEFAULT_OVERFLOW_POLICY = OverflowPolicy.DROP_OLDEST;
+
+	private static final long BLOCK_PARK_NANOS = 100000;
+	private static final int COALESCE_KEYS = 1 << 14;
+
+	public enum OverflowPolicy {
+		BLOCK, //
+		DROP_OLDEST, //
+		COALESCE
+	}
+
+	private final int capacity;
+	private final int mask;
+	private final int[] messages;
+	private final long[] timeStamps;
+	private final long[] arrivalTimes;
+	private final MidiMessage[] longMessages;
+
+	private final AtomicLong head = new AtomicLong();
+	private final AtomicLong tail = new AtomicLong();
+
+	private volatile OverflowPolicy overflowPolicy = DEFAULT_OVERFLOW_POLICY;
+	private volatile boolean closed;
+
+	private AtomicIntegerArray coalescedMessages;
+	private AtomicLongArray coalescedTimeStamps;
+	private AtomicLongArray coalescedArrivalTimes;
+	private AtomicLongArray coalescedKeys;
+	private volatile boolean coalescePending;
+
+	private final AtomicLong enqueued = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+	private final AtomicLong coalesced = new AtomicLong();
+
+	public MidiIngressRingBuffer() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates a ring buffer
+	 *
+	 * @param capacity
+	 *            The capacity, will be rounded up to a power of two
+	 */
+	public MidiIngressRingBuffer(int capacity) {
+		this.capacity = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+		mask = this.capacity - 1;
+		messages = new int[this.capacity];
+		timeStamps = new long[this.capacity];
+		arrivalTimes = new long[this.capacity];
+		longMessages = new MidiMessage[this.capacity];
+	}
+
+	/**
+	 * Offers a short message to the buffer. Must only be called by the
+	 * producer thread.
+	 *
+	 * @param status
+	 *            The status byte
+	 * @param data1
+	 *            The first data byte
+	 * @param data2
+	 *            The second data byte
+	 * @param timeStamp
+	 *            The time stamp of the message
+	 * @return <TRUE> if the message was enqueued or coalesced, <FALSE> if it
+	 *         was dropped
+	 */
+	public boolean offer(int status, int data1, int data2, long timeStamp) {
+
+		long arrivalTime = System.nanoTime();
+		int message = (status & 0xFF) | ((data1 & 0x7F) << 8)
+				| ((data2 & 0x7F) << 16);
+
+		if (coalescePending
+				&& coalescedMessages.get(getCoalesceKey(message)) != 0) {
+			return coalesce(message, timeStamp, arrivalTime);
+		}
+
+		long t = tail.get();
+
+		if (!waitForCapacity(t)) {
+
+			if (overflowPolicy == OverflowPolicy.COALESCE) {
+				return coalesce(message, timeStamp, arrivalTime);
+			}
+
+			dropped.incrementAndGet();
+			return false;
+		}
+
+		int index = (int) t & mask;
+		messages[index] = message;
+		timeStamps[index] = timeStamp;
+		arrivalTimes[index] = arrivalTime;
+		longMessages[index] = null;
+		tail.set(t + 1);
+		enqueued.incrementAndGet();
+
+		return true;
+	}
+
+	/**
+	 * Offers a message that is no short message to the buffer. Must only be
+	 * called by the producer thread.
+	 *
+	 * @param message
+	 *            The midi message
+	 * @param timeStamp
+	 *            The time stamp of the message
+	 * @return <TRUE> if the message was enqueued, <FALSE> if it was dropped
+	 */
+	public boolean offer(MidiMessage message, long timeStamp) {
+
+		long arrivalTime = System.nanoTime();
+		long t = tail.get();
+
+		if (!waitForCapacity(t)) {
+			dropped.incrementAndGet();
+			return false;
+		}
+
+		int index = (int) t & mask;
+		messages[index] = 0;
+		timeStamps[index] = timeStamp;
+		arrivalTimes[index] = arrivalTime;
+		longMessages[index] = message;
+		tail.set(t + 1);
+		enqueued.incrementAndGet();
+
+		return true;
+	}
+
+	/**
+	 * Drains the buffered messages to the handler. Must only be called by the
+	 * consumer thread.
+	 *
+	 * @param handler
+	 *            The handler for the messages
+	 * @param maxMessages
+	 *            The maximum number of messages to drain
+	 * @return The number of drained messages
+	 */
+	public int drain(IMidiIngressHandler handler, int maxMessages) {
+
+		int count = 0;
+
+		while (count < maxMessages) {
+
+			long h = head.get();
+			if (h >= tail.get()) {
+				break;
+			}
+
+			int index = (int) h & mask;
+			int message = messages[index];
+			long timeStamp = timeStamps[index];
+			long arrivalTime = arrivalTimes[index];
+			MidiMessage longMessage = longMessages[index];
+
+			// the producer may have dropped the message meanwhile
+			if (!head.compareAndSet(h, h + 1)) {
+				continue;
+			}
+
+			if (longMessage != null) {
+				handler.handleMessage(longMessage, timeStamp, arrivalTime);
+			} else {
+				handler.handleShortMessage(message & 0xFF,
+						(message >> 8) & 0x7F, (message >> 16) & 0x7F,
+						timeStamp, arrivalTime);
+			}
+			count++;
+		}
+
+		if (count < maxMessages && coalescePending) {
+			count += drainCoalesced(handler);
+		}
+
+		return count;
+	}
+
+	/**
+	 * Checks if there are messages to drain
+	 *
+	 * @return <TRUE> if messages are pending, else <FALSE>
+	 */
+	public boolean isEmpty() {
+		return head.get() >= tail.get() && !coalescePending;
+	}
+
+	/**
+	 * Closes the buffer, so a blocked producer will not wait any longer.
+	 */
+	public void close() {
+		closed = true;
+	}
+
+	/**
+	 * Waits until the buffer has capacity for the next message according to
+	 * the overflow policy.
+	 *
+	 * @param t
+	 *            The current tail
+	 * @return <TRUE> if there is capacity, <FALSE> if the message has to be
+	 *         dropped or coalesced
+	 */
+	private boolean waitForCapacity(long t) {
+
+		while (t - head.get() >= capacity) {
+
+			switch (overflowPolicy) {
+
+			case BLOCK:
+				if (closed) {
+					return false;
+				}
+				LockSupport.parkNanos(BLOCK_PARK_NANOS);
+				break;
+
+			case DROP_OLDEST:
+				long h = head.get();
+				if (t - h >= capacity && head.compareAndSet(h, h + 1)) {
+					dropped.incrementAndGet();
+				}
+				break;
+
+			case COALESCE:
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Merges a message with the pending message of the same key.
+	 *
+	 * @param message
+	 *            The packed message
+	 * @param timeStamp
+	 *            The time stamp
+	 * @param arrivalTime
+	 *            The arrival time
+	 * @return <TRUE> if the message was coalesced, <FALSE> if it was dropped
+	 */
+	private boolean coalesce(int message, long timeStamp, long arrivalTime) {
+
+		// messages with running status or SysEx can not be coalesced by key
+		if ((message & 0x80) == 0) {
+			dropped.incrementAndGet();
+			return false;
+		}
+
+		int key = getCoalesceKey(message);
+
+		coalescedTimeStamps.set(key, timeStamp);
+		if (coalescedMessages.getAndSet(key, message) != 0) {
+			coalesced.incrementAndGet();
+			return true;
+		}
+
+		// the first arrival of a key counts, later values only overwrite it
+		coalescedArrivalTimes.set(key, arrivalTime);
+
+		int word = key >> 6;
+		long bit = 1L << (key & 63);
+		long bits;
+		do {
+			bits = coalescedKeys.get(word);
+		} while (!coalescedKeys.compareAndSet(word, bits, bits | bit));
+
+		enqueued.incrementAndGet();
+		coalescePending = true;
+
+		return true;
+	}
+
+	/**
+	 * Drains all pending coalesced messages
+	 *
+	 * @param handler
+	 *            The handler for the messages
+	 * @return The number of drained messages
+	 */
+	private int drainCoalesced(IMidiIngressHandler handler) {
+
+		int count = 0;
+		coalescePending = false;
+
+		for (int word = 0; word < coalescedKeys.length(); word++) {
+
+			long bits = coalescedKeys.getAndSet(word, 0);
+
+			while (bits != 0) {
+				int bit = Long.numberOfTrailingZeros(bits);
+				bits &= bits - 1;
+
+				int key = (word << 6) | bit;
+				int message = coalescedMessages.getAndSet(key, 0);
+
+				if (message != 0) {
+					handler.handleShortMessage(message & 0xFF,
+							(message >> 8) & 0x7F, (message >> 16) & 0x7F,
+							coalescedTimeStamps.get(key),
+							coalescedArrivalTimes.get(key));
+					count++;
+				}
+			}
+		}
+
+		return count;
+	}
+
+	/**
+	 * Gets the coalesce key of a packed message: status without the msb and
+	 * data1.
+	 */
+	private static int getCoalesceKey(int message) {
+		return ((message & 0x7F) << 7) | ((message >> 8) & 0x7F);
+	}
+
+	/**
+	 * Sets the overflow policy. The tables for coalescing are allocated on
+	 * demand.
+	 *
+	 * @param overflowPolicy
+	 *            The overflow policy
+	 */
+	public synchronized void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+
+		if (overflowPolicy == OverflowPolicy.COALESCE
+				&& coalescedMessages == null) {
+			coalescedMessages = new AtomicIntegerArray(COALESCE_KEYS);
+			coalescedTimeStamps = new AtomicLongArray(COALESCE_KEYS);
+			coalescedArrivalTimes = new AtomicLongArray(COALESCE_KEYS);
+			coalescedKeys = new AtomicLongArray(COALESCE_KEYS / 64);
+		}
+		this.overflowPolicy = overflowPolicy;
+	}
+
+	public OverflowPolicy getOverflowPolicy() {
+		return overflowPolicy;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Gets the number of currently buffered messages
+	 *
+	 * @return The number of buffered messages
+	 */
+	public int size() {
+		return (int) Math.max(0, tail.get() - head.get());
+	}
+
+	public long getEnqueuedCount() {
+		return enqueued.get();
+	}
+
+	public long getDroppedCount() {
+		return dropped.get();
+	}
+
+	public long getCoalescedCount() {
+		return coalesced.get();
+	}
+
+	@Override
+	public String toString() {
+		return "policy: " + overflowPolicy + ", enqueued: " + enqueued.get()
+				+ ", dropped: " + dropped.get() + ", coalesced: "
+				+ coalesced.get();
+	}
+}
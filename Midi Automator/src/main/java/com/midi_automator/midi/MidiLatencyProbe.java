@@ -0,0 +1,42 @@
+package com.midi_automator.midi;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sound.midi.MidiMessage;
+
+import com.midi_automator.utils.LatencyHistogram;
+
+/**
+ * Decodes every dispatched message like the receivers of a show and measures
+ * its latency from the arrival to the dispatch.
+ *
+ * @author aguelle
+ *
+ */
+public class MidiLatencyProbe extends MidiAutomatorReceiver {
+
+	private final LatencyHistogram histogram;
+	private final AtomicLong processed;
+
+	/**
+	 * Constructor
+	 *
+	 * @param histogram
+	 *            The histogram for the latency in microseconds
+	 * @param processed
+	 *            The counter of dispatched messages
+	 */
+	public MidiLatencyProbe(LatencyHistogram histogram, AtomicLong processed) {
+		this.histogram = histogram;
+		this.processed = processed;
+	}
+
+	@Override
+	protected void receive(MidiMessage message, long timeStamp) {
+		getInterpretedSignature();
+		histogram.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime()
+				- arrivalTime));
+		processed.incrementAndGet();
+	}
+}
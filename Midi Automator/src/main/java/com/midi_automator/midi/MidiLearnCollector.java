@@ -0,0 +1,145 @@
+package com.midi_automator.midi;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * Collects the messages received while learning to a single trigger, chord or
+ * sequence. The collection is complete when the learn gap passed without
+ * another message or the maximum number of combo elements is collected.
+ * Messages within the chord window of the first message are learned as a
+ * chord, else as a sequence. The learn gap is independent from the chord
+ * window, so a sequence played at human speed is learned completely.
+ *
+ * @author aguelle
+ *
+ */
+public class MidiLearnCollector {
+
+	/** The default learn gap in milliseconds */
+	public static final long DEFAULT_LEARN_GAP = 500;
+
+	private final List<String> signatures = new ArrayList<String>();
+	private long startTime;
+	private long lastTime;
+
+	private long learnGap = DEFAULT_LEARN_GAP;
+	private long chordWindow = MidiComboAutomaton.DEFAULT_CHORD_WINDOW;
+	private long sequenceWindow = MidiComboAutomaton.DEFAULT_SEQUENCE_WINDOW;
+
+	/**
+	 * Collects a message. Releases are only collected as first message.
+	 *
+	 * @param signature
+	 *            The midi signature
+	 * @param time
+	 *            The time stamp of the message in microseconds
+	 * @param release
+	 *            <TRUE> if the message releases a key, else <FALSE>
+	 * @return <TRUE> if the message was collected, else <FALSE>
+	 */
+	public boolean collect(String signature, long time, boolean release) {
+
+		if (signatures.isEmpty()) {
+			startTime = time;
+
+		} else if (release || isFull()) {
+			return false;
+		}
+
+		signatures.add(signature);
+		lastTime = time;
+		return true;
+	}
+
+	/**
+	 * Checks if the collection is complete
+	 *
+	 * @param time
+	 *            The current time in microseconds
+	 * @return <TRUE> if the learn gap passed since the last message or the
+	 *         collection is full, else <FALSE>
+	 */
+	public boolean isComplete(long time) {
+		return !signatures.isEmpty()
+				&& (isFull() || time - lastTime > learnGap * 1000);
+	}
+
+	/**
+	 * Checks if the maximum number of combo elements is collected
+	 *
+	 * @return <TRUE> if no more messages are collected, else <FALSE>
+	 */
+	public boolean isFull() {
+		return signatures.size() >= MidiComboAutomaton.MAX_ELEMENTS;
+	}
+
+	public boolean isEmpty() {
+		return signatures.isEmpty();
+	}
+
+	/**
+	 * Clears the collected messages
+	 */
+	public void clear() {
+		signatures.clear();
+	}
+
+	/**
+	 * Gets the signature of the collected messages. A sequence that took
+	 * longer than the sequence window gets its own window.
+	 *
+	 * @return The single, chord or sequence signature, <NULL> if no message
+	 *         was collected
+	 */
+	public String getSignature() {
+
+		if (signatures.isEmpty()) {
+			return null;
+		}
+
+		if (signatures.size() == 1) {
+			return signatures.get(0);
+		}
+
+		long span = (lastTime - startTime) / 1000;
+		boolean chord = span <= chordWindow;
+		long window = 0;
+
+		if (!chord && span > sequenceWindow) {
+			window = span + chordWindow;
+		}
+
+		return MidiComboAutomaton.toSignature(
+				chord ? new LinkedHashSet<String>(signatures) : signatures,
+				chord, window);
+	}
+
+	public long getLearnGap() {
+		return learnGap;
+	}
+
+	/**
+	 * Sets the time without messages that completes the collection
+	 *
+	 * @param learnGap
+	 *            The learn gap in milliseconds
+	 */
+	public void setLearnGap(long learnGap) {
+		this.learnGap = learnGap;
+	}
+
+	/**
+	 * Sets the combo windows the collected messages are learned with
+	 *
+	 * @param chordWindow
+	 *            The chord window in milliseconds
+	 * @param sequenceWindow
+	 *            The sequence window in milliseconds
+	 */
+	public void setWindows(long chordWindow, long sequenceWindow) {
+		this.chordWindow = chordWindow;
+		this.sequenceWindow = sequenceWindow;
+	}
+}
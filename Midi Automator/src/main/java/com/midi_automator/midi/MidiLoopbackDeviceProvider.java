@@ -0,0 +1,98 @@
+package com.midi_automator.midi;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.sound.midi.MidiDevice;
+import javax.sound.midi.spi.MidiDeviceProvider;
+
+/**
+ * Provides in-memory loopback midi ports to the midi system. Every port has an
+ * OUT device and an IN device with the same name, messages sent to the OUT
+ * device are transmitted by the IN device, like a virtual midi bus of the
+ * operating system. The ports are configured by the system property
+ * "midiautomator.loopback.ports" as comma separated names and are looked up
+ * again on every enumeration, so removing a name unplugs the port.
+ *
+ * @author aguelle
+ *
+ */
+public class MidiLoopbackDeviceProvider extends MidiDeviceProvider {
+
+	public static final String PORTS_PROPERTY = "midiautomator.loopback.ports";
+
+	private static final String PORTS_DELIMITER = ",";
+
+	private static final Map<String, MidiLoopbackPort> ports = new LinkedHashMap<String, MidiLoopbackPort>();
+
+	@Override
+	public MidiDevice.Info[] getDeviceInfo() {
+
+		List<MidiDevice.Info> infos = new ArrayList<MidiDevice.Info>();
+
+		for (MidiLoopbackPort port : getPorts()) {
+			infos.add(port.getInDevice().getDeviceInfo());
+			infos.add(port.getOutDevice().getDeviceInfo());
+		}
+		return infos.toArray(new MidiDevice.Info[infos.size()]);
+	}
+
+	@Override
+	public MidiDevice getDevice(MidiDevice.Info info) {
+
+		for (MidiLoopbackPort port : getPorts()) {
+
+			if (port.getInDevice().getDeviceInfo() == info) {
+				return port.getInDevice();
+			}
+			if (port.getOutDevice().getDeviceInfo() == info) {
+				return port.getOutDevice();
+			}
+		}
+		throw new IllegalArgumentException("No loopback MIDI device: " + info);
+	}
+
+	/**
+	 * Gets the configured ports. Ports that are still configured keep their
+	 * devices, so their infos stay the same for the midi system.
+	 *
+	 * @return The configured ports
+	 */
+	static List<MidiLoopbackPort> getPorts() {
+
+		String property = System.getProperty(PORTS_PROPERTY, "");
+		List<String> names = new ArrayList<String>();
+
+		for (String name : property.split(PORTS_DELIMITER)) {
+			name = name.trim();
+			if (!name.isEmpty() && !names.contains(name)) {
+				names.add(name);
+			}
+		}
+
+		synchronized (ports) {
+
+			Iterator<Map.Entry<String, MidiLoopbackPort>> iterator = ports
+					.entrySet().iterator();
+
+			while (iterator.hasNext()) {
+				Map.Entry<String, MidiLoopbackPort> entry = iterator.next();
+				if (!names.contains(entry.getKey())) {
+					entry.getValue().close();
+					iterator.remove();
+				}
+			}
+
+			for (String name : names) {
+				if (!ports.containsKey(name)) {
+					ports.put(name, new MidiLoopbackPort(name));
+				}
+			}
+
+			return new ArrayList<MidiLoopbackPort>(ports.values());
+		}
+	}
+}
@@ -0,0 +1,326 @@
+package com.midi_automator.midi;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.sound.midi.MidiDevice;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.MidiUnavailableException;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.Transmitter;
+
+/**
+ * An in-memory loopback midi port. The receivers of the OUT device hand the
+ * messages over to the IN device through a lock-free queue, so senders never
+ * block. A delivery thread of the port transmits them to the transmitters of
+ * the IN device, like the midi thread of a real device. Messages are only
+ * looped back while the IN device is open. Time stamps are not supported.
+ *
+ * @author aguelle
+ *
+ */
+public class MidiLoopbackPort implements Runnable {
+
+	public static final String VENDOR = "MIDI Automator";
+	public static final String DESCRIPTION = "In-memory loopback MIDI port";
+	public static final String VERSION = "1.0";
+
+	private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS
+			.toNanos(10);
+
+	private final String name;
+	private final LoopbackDevice inDevice;
+	private final LoopbackDevice outDevice;
+
+	private final ConcurrentLinkedQueue<MidiMessage> queue = new ConcurrentLinkedQueue<MidiMessage>();
+	private final CopyOnWriteArrayList<LoopbackTransmitter> transmitters = new CopyOnWriteArrayList<LoopbackTransmitter>();
+	private final CopyOnWriteArrayList<LoopbackReceiver> receivers = new CopyOnWriteArrayList<LoopbackReceiver>();
+
+	private volatile Thread thread;
+	private volatile boolean parked;
+	private volatile boolean closed;
+
+	/**
+	 * Constructor
+	 *
+	 * @param name
+	 *            The name of the IN and OUT device
+	 */
+	public MidiLoopbackPort(String name) {
+		this.name = name;
+		inDevice = new LoopbackDevice(new LoopbackInfo(name), true);
+		outDevice = new LoopbackDevice(new LoopbackInfo(name), false);
+	}
+
+	/**
+	 * Hands a message over to the IN device
+	 *
+	 * @param message
+	 *            The midi message
+	 */
+	void offer(MidiMessage message) {
+
+		if (closed || !inDevice.isOpen()) {
+			return;
+		}
+
+		queue.offer((MidiMessage) message.clone());
+		start();
+
+		if (parked) {
+			LockSupport.unpark(thread);
+		}
+	}
+
+	/**
+	 * Starts the delivery thread if it is not running yet.
+	 */
+	private void start() {
+
+		if (thread != null) {
+			return;
+		}
+
+		synchronized (this) {
+			if (thread == null) {
+				Thread deliveryThread = new Thread(this, "MIDI Loopback "
+						+ name);
+				deliveryThread.setDaemon(true);
+				deliveryThread.setPriority(Thread.MAX_PRIORITY);
+				thread = deliveryThread;
+				deliveryThread.start();
+			}
+		}
+	}
+
+	@Override
+	public void run() {
+
+		while (!closed) {
+
+			MidiMessage message = queue.poll();
+
+			if (message != null) {
+				for (LoopbackTransmitter transmitter : transmitters) {
+					transmitter.transmit(message);
+				}
+				continue;
+			}
+
+			parked = true;
+			if (queue.isEmpty()) {
+				LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+			}
+			parked = false;
+		}
+	}
+
+	/**
+	 * Closes the port, its devices are closed and the delivery thread ends.
+	 */
+	void close() {
+
+		inDevice.close();
+		outDevice.close();
+		closed = true;
+		queue.clear();
+
+		Thread deliveryThread = thread;
+		if (deliveryThread != null) {
+			LockSupport.unpark(deliveryThread);
+		}
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public MidiDevice getInDevice() {
+		return inDevice;
+	}
+
+	public MidiDevice getOutDevice() {
+		return outDevice;
+	}
+
+	/**
+	 * The info of a loopback device
+	 *
+	 * @author aguelle
+	 *
+	 */
+	static class LoopbackInfo extends MidiDevice.Info {
+
+		LoopbackInfo(String name) {
+			super(name, VENDOR, DESCRIPTION, VERSION);
+		}
+	}
+
+	/**
+	 * The IN or OUT device of the port
+	 *
+	 * @author aguelle
+	 *
+	 */
+	class LoopbackDevice implements MidiDevice {
+
+		private final MidiDevice.Info info;
+		private final boolean input;
+		private volatile boolean open;
+
+		LoopbackDevice(MidiDevice.Info info, boolean input) {
+			this.info = info;
+			this.input = input;
+		}
+
+		@Override
+		public MidiDevice.Info getDeviceInfo() {
+			return info;
+		}
+
+		@Override
+		public void open() throws MidiUnavailableException {
+
+			if (closed) {
+				throw new MidiUnavailableException("The loopback MIDI port "
+						+ name + " was removed");
+			}
+			open = true;
+		}
+
+		@Override
+		public void close() {
+
+			open = false;
+
+			if (input) {
+				for (LoopbackTransmitter transmitter : transmitters) {
+					transmitter.close();
+				}
+			} else {
+				for (LoopbackReceiver receiver : receivers) {
+					receiver.close();
+				}
+			}
+		}
+
+		@Override
+		public boolean isOpen() {
+			return open;
+		}
+
+		@Override
+		public long getMicrosecondPosition() {
+			return -1;
+		}
+
+		@Override
+		public int getMaxReceivers() {
+			return input ? 0 : -1;
+		}
+
+		@Override
+		public int getMaxTransmitters() {
+			return input ? -1 : 0;
+		}
+
+		@Override
+		public Receiver getReceiver() throws MidiUnavailableException {
+
+			if (input) {
+				throw new MidiUnavailableException(
+						"A loopback MIDI IN device has no receivers");
+			}
+
+			LoopbackReceiver receiver = new LoopbackReceiver();
+			receivers.add(receiver);
+			return receiver;
+		}
+
+		@Override
+		public List<Receiver> getReceivers() {
+			return new ArrayList<Receiver>(receivers);
+		}
+
+		@Override
+		public Transmitter getTransmitter() throws MidiUnavailableException {
+
+			if (!input) {
+				throw new MidiUnavailableException(
+						"A loopback MIDI OUT device has no transmitters");
+			}
+
+			LoopbackTransmitter transmitter = new LoopbackTransmitter();
+			transmitters.add(transmitter);
+			return transmitter;
+		}
+
+		@Override
+		public List<Transmitter> getTransmitters() {
+			return new ArrayList<Transmitter>(transmitters);
+		}
+	}
+
+	/**
+	 * A receiver of the OUT device
+	 *
+	 * @author aguelle
+	 *
+	 */
+	class LoopbackReceiver implements Receiver {
+
+		@Override
+		public void send(MidiMessage message, long timeStamp) {
+			offer(message);
+		}
+
+		@Override
+		public void close() {
+			receivers.remove(this);
+		}
+	}
+
+	/**
+	 * A transmitter of the IN device
+	 *
+	 * @author aguelle
+	 *
+	 */
+	class LoopbackTransmitter implements Transmitter {
+
+		private volatile Receiver receiver;
+
+		/**
+		 * Transmits a message to the receiver. Called by the delivery thread.
+		 *
+		 * @param message
+		 *            The midi message
+		 */
+		void transmit(MidiMessage message) {
+
+			Receiver current = receiver;
+			if (current != null) {
+				current.send(message, -1);
+			}
+		}
+
+		@Override
+		public void setReceiver(Receiver receiver) {
+			this.receiver = receiver;
+		}
+
+		@Override
+		public Receiver getReceiver() {
+			return receiver;
+		}
+
+		@Override
+		public void close() {
+			transmitters.remove(this);
+		}
+	}
+}
@@ -0,0 +1,211 @@
+package com.midi_automator.midi;
+
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sound.midi.MidiDevice;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.MidiUnavailableException;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.ShortMessage;
+
+import org.apache.log4j.Logger;
+import org.springframework.stereotype.Component;
+
+import com.midi_automator.utils.MidiUtils;
+
+/**
+ * Sends midi messages to midi OUT devices at a target time. The receiver of a
+ * device is resolved once when the message is scheduled, so an unavailable
+ * device is reported to the caller. A single timer thread sends the messages
+ * that are due. If the device supports time stamps the message is passed to
+ * the driver slightly ahead with the device time stamp of its target time, so
+ * the driver can deliver it precisely.
+ *
+ * @author aguelle
+ *
+ */
+@Component
+public class MidiOutScheduler implements Runnable {
+
+	private Logger log = Logger.getLogger(this.getClass().getName());
+
+	public static final String THREAD_NAME = "MIDI OUT Scheduler";
+
+	private static final long TIME_STAMP_LEAD = TimeUnit.MILLISECONDS
+			.toNanos(2);
+
+	private final DelayQueue<ScheduledMessage> scheduledMessages = new DelayQueue<ScheduledMessage>();
+	private final AtomicLong messageSequence = new AtomicLong();
+
+	private volatile Thread thread;
+
+	/**
+	 * Sends a midi message. Messages without delay are sent immediately by the
+	 * calling thread.
+	 *
+	 * @param device
+	 *            The midi OUT device
+	 * @param message
+	 *            The midi message
+	 * @param delay
+	 *            The delay in milliseconds
+	 * @param sent
+	 *            Run after the message was sent, may be <NULL>
+	 * @throws MidiUnavailableException
+	 *             If the midi device is not available
+	 */
+	public void send(MidiDevice device, MidiMessage message, long delay,
+			Runnable sent) throws MidiUnavailableException {
+
+		Receiver receiver = MidiUtils.getCachedReceiver(device);
+		long devicePosition = device.getMicrosecondPosition();
+
+		if (delay <= 0) {
+			send(receiver, message, devicePosition);
+			if (sent != null) {
+				sent.run();
+			}
+			return;
+		}
+
+		long target = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay);
+		long timeStamp = -1;
+
+		if (devicePosition >= 0) {
+			timeStamp = devicePosition + TimeUnit.MILLISECONDS.toMicros(delay);
+			target -= TIME_STAMP_LEAD;
+		}
+
+		scheduledMessages.add(new ScheduledMessage(receiver, message,
+				timeStamp, target, sent, messageSequence.getAndIncrement()));
+		start();
+	}
+
+	/**
+	 * Starts the scheduler thread if it is not running yet.
+	 */
+	private void start() {
+
+		if (thread != null) {
+			return;
+		}
+
+		synchronized (this) {
+			if (thread == null) {
+				Thread schedulerThread = new Thread(this, THREAD_NAME);
+				schedulerThread.setDaemon(true);
+				schedulerThread.setPriority(Thread.MAX_PRIORITY);
+				thread = schedulerThread;
+				schedulerThread.start();
+			}
+		}
+	}
+
+	@Override
+	public void run() {
+
+		while (true) {
+
+			ScheduledMessage scheduled;
+
+			try {
+				scheduled = scheduledMessages.take();
+			} catch (InterruptedException e) {
+				log.warn(THREAD_NAME + " was interrupted");
+				thread = null;
+				return;
+			}
+
+			try {
+				send(scheduled.receiver, scheduled.message,
+						scheduled.timeStamp);
+				if (scheduled.sent != null) {
+					scheduled.sent.run();
+				}
+			} catch (RuntimeException e) {
+				log.error("Sending scheduled MIDI message failed", e);
+			}
+		}
+	}
+
+	/**
+	 * Sends a message to a receiver. Assembled parameter changes are sent as
+	 * their control changes.
+	 *
+	 * @param receiver
+	 *            The receiver of the midi OUT device
+	 * @param message
+	 *            The midi message
+	 * @param timeStamp
+	 *            The device time stamp, -1 to send immediately
+	 */
+	private static void send(Receiver receiver, MidiMessage message,
+			long timeStamp) {
+
+		if (message instanceof MidiParameterMessage) {
+			for (ShortMessage controlChange : ((MidiParameterMessage) message)
+					.getShortMessages()) {
+				receiver.send(controlChange, timeStamp);
+			}
+			return;
+		}
+		receiver.send(message, timeStamp);
+	}
+
+	/**
+	 * Gets the number of messages waiting to be sent
+	 *
+	 * @return The number of scheduled messages
+	 */
+	public int getScheduledCount() {
+		return scheduledMessages.size();
+	}
+
+	/**
+	 * A midi message that is sent when its target time was reached. Messages
+	 * with the same target time are sent in the order they were scheduled.
+	 *
+	 * @author aguelle
+	 *
+	 */
+	class ScheduledMessage implements Delayed {
+
+		private final Receiver receiver;
+		private final MidiMessage message;
+		private final long timeStamp;
+		private final long target;
+		private final Runnable sent;
+		private final long sequence;
+
+		public ScheduledMessage(Receiver receiver, MidiMessage message,
+				long timeStamp, long target, Runnable sent, long sequence) {
+			this.receiver = receiver;
+			this.message = message;
+			this.timeStamp = timeStamp;
+			this.target = target;
+			this.sent = sent;
+			this.sequence = sequence;
+		}
+
+		@Override
+		public long getDelay(TimeUnit unit) {
+			return unit.convert(target - System.nanoTime(),
+					TimeUnit.NANOSECONDS);
+		}
+
+		@Override
+		public int compareTo(Delayed other) {
+
+			ScheduledMessage otherMessage = (ScheduledMessage) other;
+			long difference = target - otherMessage.target;
+
+			if (difference == 0) {
+				difference = sequence - otherMessage.sequence;
+			}
+			return (difference < 0) ? -1 : ((difference > 0) ? 1 : 0);
+		}
+	}
+}
@@ -0,0 +1,567 @@
+package com.midi_automator.midi;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.ShortMessage;
+
+import com.midi_automator.midi.MidiParameterMessage.Type;
+
+/**
+ * Assembles the control changes of 14 bit controllers, NRPNs and RPNs to
+ * single parameter messages before they are dispatched. So a parameter change
+ * is learned as one signature and dispatched once per completed value instead
+ * of as two to four unrelated 7 bit control changes.
+ *
+ * The state is kept per channel. The parameter number controllers (CC 99/98
+ * or 101/100) are held back until a data entry (CC 6/38) follows within the
+ * selector window after the latest of them. The selector window is wider than
+ * the pair window, as three controllers already take 2 ms on a DIN link
+ * without running status and USB frames add jitter. It only delays knobs on
+ * CC 98 to 101. Then they select the parameter until another one is selected
+ * or the null RPN deselects it, and the data entries are assembled to NRPN or
+ * RPN messages. If no data entry follows, the held controllers are released
+ * as plain control changes, so devices that use them as ordinary knobs keep
+ * working.
+ *
+ * 14 bit controllers can not be told apart from two knobs that are turned one
+ * after the other, so they are only assembled for the paired controllers 0 to
+ * 31 that are configured for the device. The MSB of a paired controller is
+ * held back until its LSB controller 32 to 63 completes the value, but at
+ * most for the pair window, as the LSB is omitted when it did not change.
+ *
+ * Other channel messages, system common messages and SysEx break the running
+ * status, so the held controllers are released before them. A system reset
+ * discards all state, real time messages pass without touching it.
+ *
+ * Every message is passed on, held or counted as assembled. Must only be used
+ * from one thread.
+ *
+ * @author aguelle
+ *
+ */
+public class MidiParameterAssembler implements IMidiIngressHandler {
+
+	public static final long PAIR_WINDOW = 2;
+	public static final long DEFAULT_SELECTOR_WINDOW = 15;
+
+	private static final int CHANNELS = 16;
+	private static final int CONTROLLER_PAIRS = 32;
+	private static final int DATA_ENTRY = CONTROLLER_PAIRS;
+	private static final int PAIRS = CONTROLLER_PAIRS + 1;
+	private static final int LSB_OFFSET = 32;
+	private static final int NRPN_MSB = 99;
+	private static final int NRPN_LSB = 98;
+	private static final int RPN_MSB = 101;
+	private static final int RPN_LSB = 100;
+	private static final int DATA_ENTRY_MSB = 6;
+	private static final int DATA_ENTRY_LSB = 38;
+	private static final int NULL_PARAMETER = 0x3FFF;
+	private static final int REAL_TIME_STATUS = 0xF8;
+	private static final int SYSTEM_STATUS = 0xF0;
+	private static final int NO_VALUE = -1;
+	private static final int MAX_SELECTORS = 4;
+	private static final String DELIMITER = ",";
+
+	private final IMidiIngressHandler output;
+	private final long pairWindow = TimeUnit.MILLISECONDS
+			.toNanos(PAIR_WINDOW);
+	private volatile long selectorWindow = TimeUnit.MILLISECONDS
+			.toNanos(DEFAULT_SELECTOR_WINDOW);
+	private volatile boolean[] pairedControllers = new boolean[CONTROLLER_PAIRS];
+
+	private final int[] msbs = new int[CHANNELS * PAIRS];
+	private final boolean[] held = new boolean[CHANNELS * PAIRS];
+	private final long[] heldTimeStamps = new long[CHANNELS * PAIRS];
+	private final long[] heldArrivalTimes = new long[CHANNELS * PAIRS];
+	private int heldCount;
+	private int heldSelectorCount;
+
+	private final Type[] parameterTypes = new Type[CHANNELS];
+	private final int[] parameters = new int[CHANNELS];
+
+	private final Type[] selectedTypes = new Type[CHANNELS];
+	private final int[] selectedParameters = new int[CHANNELS];
+	private final int[] selectorCounts = new int[CHANNELS];
+	private final int[] selectorControllers = new int[CHANNELS * MAX_SELECTORS];
+	private final int[] selectorValues = new int[CHANNELS * MAX_SELECTORS];
+	private final long[] selectorTimeStamps = new long[CHANNELS
+			* MAX_SELECTORS];
+	private final long[] selectorArrivalTimes = new long[CHANNELS
+			* MAX_SELECTORS];
+
+	private final AtomicLong assembled = new AtomicLong();
+
+	/**
+	 * Constructor
+	 *
+	 * @param output
+	 *            The handler of the passed and assembled messages
+	 */
+	public MidiParameterAssembler(IMidiIngressHandler output) {
+		this.output = output;
+		reset();
+	}
+
+	@Override
+	public void handleShortMessage(int status, int data1, int data2,
+			long timeStamp, long arrivalTime) {
+
+		if (status >= REAL_TIME_STATUS) {
+			if (status == ShortMessage.SYSTEM_RESET) {
+				discard();
+			}
+			output.handleShortMessage(status, data1, data2, timeStamp,
+					arrivalTime);
+			return;
+		}
+
+		if (status >= SYSTEM_STATUS) {
+			releaseAll();
+			output.handleShortMessage(status, data1, data2, timeStamp,
+					arrivalTime);
+			return;
+		}
+
+		int channel = status & 0x0F;
+
+		if ((status & 0xF0) != ShortMessage.CONTROL_CHANGE) {
+			releaseChannel(channel);
+			output.handleShortMessage(status, data1, data2, timeStamp,
+					arrivalTime);
+			return;
+		}
+
+		switch (data1) {
+		case NRPN_MSB:
+		case NRPN_LSB:
+			holdSelector(channel, Type.NRPN, data1, data2, timeStamp,
+					arrivalTime);
+			return;
+
+		case RPN_MSB:
+		case RPN_LSB:
+			holdSelector(channel, Type.RPN, data1, data2, timeStamp,
+					arrivalTime);
+			return;
+		}
+
+		if (data1 == DATA_ENTRY_MSB || data1 == DATA_ENTRY_LSB) {
+
+			if (selectedTypes[channel] != null) {
+				selectParameter(channel);
+			} else {
+				releaseSelectors(channel);
+			}
+
+			if (parameterTypes[channel] != null) {
+
+				int pair = channel * PAIRS + DATA_ENTRY;
+
+				if (data1 == DATA_ENTRY_MSB) {
+					assembleMsb(pair, data2, timeStamp, arrivalTime);
+				} else if (msbs[pair] == NO_VALUE) {
+					assembled.incrementAndGet();
+				} else {
+					assembleLsb(pair, data2, timeStamp, arrivalTime);
+				}
+				return;
+			}
+		} else {
+			releaseSelectors(channel);
+		}
+
+		boolean[] paired = pairedControllers;
+
+		if (data1 < CONTROLLER_PAIRS && paired[data1]) {
+			assembleMsb(channel * PAIRS + data1, data2, timeStamp,
+					arrivalTime);
+			return;
+		}
+
+		if (data1 >= LSB_OFFSET && data1 < CONTROLLER_PAIRS + LSB_OFFSET
+				&& paired[data1 - LSB_OFFSET]) {
+
+			int pair = channel * PAIRS + data1 - LSB_OFFSET;
+			if (msbs[pair] != NO_VALUE) {
+				assembleLsb(pair, data2, timeStamp, arrivalTime);
+				return;
+			}
+		}
+
+		output.handleShortMessage(status, data1, data2, timeStamp,
+				arrivalTime);
+	}
+
+	@Override
+	public void handleMessage(MidiMessage message, long timeStamp,
+			long arrivalTime) {
+
+		releaseAll();
+		output.handleMessage(message, timeStamp, arrivalTime);
+	}
+
+	/**
+	 * Releases the held MSBs whose LSB did not arrive within the pair window
+	 * and the held parameter number controllers whose data entry did not
+	 * arrive within the selector window after the latest of them
+	 *
+	 * @param now
+	 *            The current System.nanoTime()
+	 */
+	public void flush(long now) {
+
+		long window = selectorWindow;
+
+		for (int channel = 0; channel < CHANNELS && heldCount > 0; channel++) {
+
+			int count = selectorCounts[channel];
+			if (count > 0
+					&& now
+							- selectorArrivalTimes[channel * MAX_SELECTORS
+									+ count - 1] >= window) {
+				releaseSelectors(channel);
+			}
+
+			for (int pair = channel * PAIRS; pair < (channel + 1) * PAIRS; pair++) {
+				if (held[pair] && now - heldArrivalTimes[pair] >= pairWindow) {
+					release(pair);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Checks if controllers are held back
+	 *
+	 * @return <TRUE> if MSBs wait for their LSB or parameter numbers for their
+	 *         data entry, else <FALSE>
+	 */
+	public boolean isPending() {
+		return heldCount > 0;
+	}
+
+	/**
+	 * Gets the delay until the held controllers may have to be released
+	 *
+	 * @return The pair window if MSBs are held, else the selector window in
+	 *         milliseconds
+	 */
+	public long getFlushDelay() {
+		return (heldCount > heldSelectorCount) ? PAIR_WINDOW
+				: getSelectorWindow();
+	}
+
+	/**
+	 * Forgets all selected parameters and values without releasing the held
+	 * controllers. The paired controllers are kept.
+	 */
+	public void reset() {
+
+		Arrays.fill(msbs, NO_VALUE);
+		Arrays.fill(held, false);
+		Arrays.fill(parameterTypes, null);
+		Arrays.fill(selectedTypes, null);
+		Arrays.fill(selectorCounts, 0);
+		heldCount = 0;
+		heldSelectorCount = 0;
+	}
+
+	/**
+	 * Sets the time a data entry may follow the latest parameter number
+	 * controller
+	 *
+	 * @param selectorWindow
+	 *            The selector window in milliseconds
+	 * @throws IllegalArgumentException
+	 *             If the window is negative
+	 */
+	public void setSelectorWindow(long selectorWindow)
+			throws IllegalArgumentException {
+
+		if (selectorWindow < 0) {
+			throw new IllegalArgumentException("Negative selector window: "
+					+ selectorWindow);
+		}
+		this.selectorWindow = TimeUnit.MILLISECONDS.toNanos(selectorWindow);
+	}
+
+	/**
+	 * Gets the time a data entry may follow the latest parameter number
+	 * controller
+	 *
+	 * @return The selector window in milliseconds
+	 */
+	public long getSelectorWindow() {
+		return TimeUnit.NANOSECONDS.toMillis(selectorWindow);
+	}
+
+	/**
+	 * Sets the controllers 0 to 31 that are assembled with their LSB
+	 * controllers 32 to 63 to 14 bit controllers. Must be set before messages
+	 * are handled.
+	 *
+	 * @param controllers
+	 *            The comma separated controller numbers, e.g. "1, 7", empty
+	 *            to assemble no 14 bit controllers
+	 * @throws NumberFormatException
+	 *             If a controller is no number from 0 to 31
+	 */
+	public void setPairedControllers(String controllers)
+			throws NumberFormatException {
+
+		boolean[] paired = new boolean[CONTROLLER_PAIRS];
+
+		for (String controller : controllers.split(DELIMITER)) {
+
+			controller = controller.trim();
+			if (controller.isEmpty()) {
+				continue;
+			}
+
+			int number = Integer.parseInt(controller);
+			if (number < 0 || number >= CONTROLLER_PAIRS) {
+				throw new NumberFormatException("No 14 bit controller: "
+						+ controller);
+			}
+			paired[number] = true;
+		}
+
+		pairedControllers = paired;
+	}
+
+	/**
+	 * Gets the controllers that are assembled to 14 bit controllers
+	 *
+	 * @return The comma separated controller numbers
+	 */
+	public String getPairedControllers() {
+
+		boolean[] paired = pairedControllers;
+		StringBuilder controllers = new StringBuilder();
+
+		for (int controller = 0; controller < paired.length; controller++) {
+			if (paired[controller]) {
+				if (controllers.length() > 0) {
+					controllers.append(DELIMITER).append(' ');
+				}
+				controllers.append(controller);
+			}
+		}
+		return controllers.toString();
+	}
+
+	/**
+	 * Gets the number of messages that were assembled into parameter messages
+	 * or discarded as incomplete
+	 *
+	 * @return The number of assembled messages
+	 */
+	public long getAssembledCount() {
+		return assembled.get();
+	}
+
+	/**
+	 * Holds a parameter number controller back until a data entry confirms it.
+	 * The null RPN deselects the selected parameter at once.
+	 *
+	 * @param channel
+	 *            The channel
+	 * @param type
+	 *            NRPN or RPN
+	 * @param controller
+	 *            The parameter number controller
+	 * @param value
+	 *            The MSB or LSB of the parameter number
+	 */
+	private void holdSelector(int channel, Type type, int controller,
+			int value, long timeStamp, long arrivalTime) {
+
+		releaseMsbs(channel);
+
+		if (selectorCounts[channel] == MAX_SELECTORS) {
+			releaseSelectors(channel);
+		}
+
+		int parameter = 0;
+		if (selectedTypes[channel] == type) {
+			parameter = selectedParameters[channel];
+		} else if (parameterTypes[channel] == type) {
+			parameter = parameters[channel];
+		}
+		parameter = (controller == NRPN_MSB || controller == RPN_MSB) ? (value << 7)
+				| (parameter & 0x7F)
+				: (parameter & 0x3F80) | value;
+
+		int selector = channel * MAX_SELECTORS + selectorCounts[channel];
+		selectorControllers[selector] = controller;
+		selectorValues[selector] = value;
+		selectorTimeStamps[selector] = timeStamp;
+		selectorArrivalTimes[selector] = arrivalTime;
+		selectorCounts[channel]++;
+		heldCount++;
+		heldSelectorCount++;
+
+		selectedTypes[channel] = type;
+		selectedParameters[channel] = parameter;
+
+		if (type == Type.RPN && parameter == NULL_PARAMETER
+				&& parameterTypes[channel] != null) {
+			parameterTypes[channel] = null;
+			absorbSelectors(channel);
+		}
+	}
+
+	/**
+	 * Selects the held parameter number of a channel as a data entry follows
+	 */
+	private void selectParameter(int channel) {
+
+		int pair = channel * PAIRS + DATA_ENTRY;
+		if (held[pair]) {
+			release(pair);
+		}
+
+		parameterTypes[channel] = (selectedTypes[channel] == Type.RPN && selectedParameters[channel] == NULL_PARAMETER) ? null
+				: selectedTypes[channel];
+		parameters[channel] = selectedParameters[channel];
+		msbs[pair] = NO_VALUE;
+		absorbSelectors(channel);
+	}
+
+	/**
+	 * Counts the held parameter number controllers of a channel as assembled
+	 */
+	private void absorbSelectors(int channel) {
+
+		assembled.addAndGet(selectorCounts[channel]);
+		heldCount -= selectorCounts[channel];
+		heldSelectorCount -= selectorCounts[channel];
+		selectorCounts[channel] = 0;
+		selectedTypes[channel] = null;
+	}
+
+	/**
+	 * Releases the held parameter number controllers of a channel as plain
+	 * control changes
+	 */
+	private void releaseSelectors(int channel) {
+
+		int count = selectorCounts[channel];
+		selectorCounts[channel] = 0;
+		selectedTypes[channel] = null;
+		heldCount -= count;
+		heldSelectorCount -= count;
+
+		for (int selector = channel * MAX_SELECTORS; selector < channel
+				* MAX_SELECTORS + count; selector++) {
+			output.handleShortMessage(ShortMessage.CONTROL_CHANGE | channel,
+					selectorControllers[selector], selectorValues[selector],
+					selectorTimeStamps[selector],
+					selectorArrivalTimes[selector]);
+		}
+	}
+
+	/**
+	 * Assembles the MSB of a pair and holds it until its LSB
+	 */
+	private void assembleMsb(int pair, int value, long timeStamp,
+			long arrivalTime) {
+
+		if (held[pair]) {
+			release(pair);
+		}
+
+		msbs[pair] = value;
+		held[pair] = true;
+		heldTimeStamps[pair] = timeStamp;
+		heldArrivalTimes[pair] = arrivalTime;
+		heldCount++;
+	}
+
+	/**
+	 * Assembles the LSB of a pair with a known MSB to a parameter message
+	 */
+	private void assembleLsb(int pair, int value, long timeStamp,
+			long arrivalTime) {
+
+		if (held[pair]) {
+			held[pair] = false;
+			heldCount--;
+			assembled.incrementAndGet();
+		}
+
+		emit(pair, (msbs[pair] << 7) | value, timeStamp, arrivalTime);
+	}
+
+	/**
+	 * Releases all held controllers
+	 */
+	private void releaseAll() {
+
+		for (int channel = 0; channel < CHANNELS && heldCount > 0; channel++) {
+			releaseChannel(channel);
+		}
+	}
+
+	/**
+	 * Releases the held controllers of a channel. Parameter number controllers
+	 * and MSBs are never held at the same time on a channel.
+	 */
+	private void releaseChannel(int channel) {
+
+		releaseSelectors(channel);
+		releaseMsbs(channel);
+	}
+
+	/**
+	 * Releases the held MSBs of a channel
+	 */
+	private void releaseMsbs(int channel) {
+
+		for (int pair = channel * PAIRS; pair < (channel + 1) * PAIRS
+				&& heldCount > 0; pair++) {
+			if (held[pair]) {
+				release(pair);
+			}
+		}
+	}
+
+	/**
+	 * Releases a held MSB without its LSB, the omitted LSB is 0
+	 */
+	private void release(int pair) {
+
+		held[pair] = false;
+		heldCount--;
+		emit(pair, msbs[pair] << 7, heldTimeStamps[pair],
+				heldArrivalTimes[pair]);
+	}
+
+	/**
+	 * Discards all held controllers and forgets the state
+	 */
+	private void discard() {
+
+		assembled.addAndGet(heldCount);
+		reset();
+	}
+
+	/**
+	 * Emits the parameter message of a pair
+	 */
+	private void emit(int pair, int value, long timeStamp, long arrivalTime) {
+
+		int channel = pair / PAIRS;
+		int controller = pair % PAIRS;
+
+		MidiParameterMessage message = (controller == DATA_ENTRY) ? new MidiParameterMessage(
+				parameterTypes[channel], channel, parameters[channel], value)
+				: new MidiParameterMessage(Type.CONTROL_CHANGE_14_BIT, channel,
+						controller, value);
+
+		output.handleMessage(message, timeStamp, arrivalTime);
+	}
+}
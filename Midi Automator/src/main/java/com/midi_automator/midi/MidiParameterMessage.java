@@ -0,0 +1,157 @@
+package com.midi_automator.midi;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.ShortMessage;
+
+import com.midi_automator.utils.MidiUtils;
+
+/**
+ * A logical parameter change that was assembled from several control changes,
+ * i.e. the MSB and LSB of a 14 bit controller or the parameter number and data
+ * entry of an NRPN or RPN. The bytes of the message are the control changes
+ * that set the parameter to the value, so equal parameter changes have equal
+ * bytes.
+ *
+ * @author aguelle
+ *
+ */
+public class MidiParameterMessage extends MidiMessage {
+
+	public static final int MAX_VALUE = 0x3FFF;
+
+	/**
+	 * The types of assembled parameters
+	 *
+	 * @author aguelle
+	 *
+	 */
+	public enum Type {
+		/** A controller 0 to 31 with its LSB controller 32 to 63 */
+		CONTROL_CHANGE_14_BIT(MidiUtils.CONTROL_CHANGE_14_BIT), //
+		/** A non registered parameter number with its data entry */
+		NRPN(MidiUtils.NRPN), //
+		/** A registered parameter number with its data entry */
+		RPN(MidiUtils.RPN);
+
+		private final String command;
+
+		private Type(String command) {
+			this.command = command;
+		}
+
+		public String getCommand() {
+			return command;
+		}
+	}
+
+	private static final int NRPN_MSB = 99;
+	private static final int NRPN_LSB = 98;
+	private static final int RPN_MSB = 101;
+	private static final int RPN_LSB = 100;
+	private static final int DATA_ENTRY_MSB = 6;
+	private static final int DATA_ENTRY_LSB = 38;
+	private static final int LSB_OFFSET = 32;
+
+	private final Type type;
+	private final int channel;
+	private final int parameter;
+	private final int value;
+
+	/**
+	 * Constructor
+	 *
+	 * @param type
+	 *            The type of the parameter
+	 * @param channel
+	 *            The channel, 0 to 15
+	 * @param parameter
+	 *            The controller number 0 to 31 or the 14 bit parameter number
+	 * @param value
+	 *            The 14 bit value
+	 */
+	public MidiParameterMessage(Type type, int channel, int parameter,
+			int value) {
+		super(encode(type, channel, parameter, value));
+		this.type = type;
+		this.channel = channel;
+		this.parameter = parameter;
+		this.value = value;
+	}
+
+	/**
+	 * Encodes a parameter change to the bytes of its control changes
+	 *
+	 * @param type
+	 *            The type of the parameter
+	 * @param channel
+	 *            The channel, 0 to 15
+	 * @param parameter
+	 *            The controller number 0 to 31 or the 14 bit parameter number
+	 * @param value
+	 *            The 14 bit value
+	 * @return The bytes
+	 */
+	private static byte[] encode(Type type, int channel, int parameter,
+			int value) {
+
+		byte status = (byte) (ShortMessage.CONTROL_CHANGE | (channel & 0x0F));
+		byte valueMsb = (byte) ((value >> 7) & 0x7F);
+		byte valueLsb = (byte) (value & 0x7F);
+
+		if (type == Type.CONTROL_CHANGE_14_BIT) {
+			return new byte[] { status, (byte) parameter, valueMsb, status,
+					(byte) (parameter + LSB_OFFSET), valueLsb };
+		}
+
+		boolean nrpn = (type == Type.NRPN);
+		return new byte[] { status, (byte) (nrpn ? NRPN_MSB : RPN_MSB),
+				(byte) ((parameter >> 7) & 0x7F), status,
+				(byte) (nrpn ? NRPN_LSB : RPN_LSB), (byte) (parameter & 0x7F),
+				status, DATA_ENTRY_MSB, valueMsb, status, DATA_ENTRY_LSB,
+				valueLsb };
+	}
+
+	/**
+	 * Splits the parameter change to its control changes, as midi OUT devices
+	 * only accept short messages
+	 *
+	 * @return The control changes
+	 */
+	public ShortMessage[] getShortMessages() {
+
+		byte[] bytes = getMessage();
+		ShortMessage[] messages = new ShortMessage[bytes.length / 3];
+
+		for (int i = 0; i < messages.length; i++) {
+			try {
+				messages[i] = new ShortMessage(bytes[i * 3] & 0xFF,
+						bytes[i * 3 + 1], bytes[i * 3 + 2]);
+			} catch (InvalidMidiDataException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+		return messages;
+	}
+
+	public Type getType() {
+		return type;
+	}
+
+	public int getChannel() {
+		return channel;
+	}
+
+	public int getParameter() {
+		return parameter;
+	}
+
+	public int getValue() {
+		return value;
+	}
+
+	@Override
+	public Object clone() {
+		return new MidiParameterMessage(type, channel, parameter, value);
+	}
+}
@@ -0,0 +1,427 @@
+package com.midi_automator.midi;
+
+import java.util.Arrays;
+
+import javax.sound.midi.ShortMessage;
+
+import com.midi_automator.utils.MidiUtils;
+
+/**
+ * A field index of trigger patterns for channel voice messages. A pattern is a
+ * signature with wildcards or ranges for the channel, data1 and the value, e.g.
+ * "channel *: CONTROL CHANGE 20 value: 65-127" or "channel 1: NOTE ON C3-C4".
+ *
+ * Every combination of command, channel and data1 is indexed to the bitset of
+ * the patterns that cover it, so an incoming message gets its candidates by a
+ * single array lookup. Only the value ranges of the candidates are checked
+ * against the raw data2 of the message, patterns are not normalized to 0 or
+ * 127. The first added pattern that matches wins.
+ *
+ * The index is filled once while compiling and must not be changed after it
+ * was published to the receiving threads.
+ *
+ * @author aguelle
+ *
+ */
+public class MidiPatternIndex {
+
+	/** Matches any value of a field */
+	public static final String WILDCARD = "*";
+	public static final String RANGE_SEPARATOR = "-";
+
+	private static final String CHANNEL_PREFIX = "channel ";
+	private static final String CHANNEL_SEPARATOR = ": ";
+	private static final String PRESSURE_SEPARATOR = " pressure: ";
+	private static final String VALUE_SEPARATOR = " value: ";
+
+	private static final int FIRST_COMMAND = ShortMessage.NOTE_OFF;
+	private static final int COMMANDS = 7;
+	private static final int CHANNELS = 16;
+	private static final int DATA_VALUES = 128;
+	private static final int MAX_PITCH_VALUE = 0x3FFF;
+
+	private final long[][] index = new long[COMMANDS * CHANNELS * DATA_VALUES][];
+	private Pattern[] patterns = new Pattern[0];
+
+	/**
+	 * Gets the route of a pattern and creates it if it does not exist
+	 *
+	 * @param pattern
+	 *            The pattern
+	 * @param debounceWindows
+	 *            The debounce windows for a new route
+	 * @return The route
+	 */
+	MidiRoute getOrCreateRoute(Pattern pattern, long[] debounceWindows) {
+
+		for (Pattern existing : patterns) {
+			if (existing.equals(pattern)) {
+				return existing.route;
+			}
+		}
+
+		int number = patterns.length;
+		pattern.route = new MidiRoute(debounceWindows);
+		patterns = Arrays.copyOf(patterns, number + 1);
+		patterns[number] = pattern;
+
+		int word = number >> 6;
+		long bit = 1L << number;
+
+		for (int channel = pattern.channelMin; channel <= pattern.channelMax; channel++) {
+			for (int data1 = pattern.data1Min; data1 <= pattern.data1Max; data1++) {
+
+				int i = getIndex(pattern.command, channel, data1);
+				long[] candidates = index[i];
+
+				if (candidates == null || candidates.length <= word) {
+					candidates = (candidates == null) ? new long[word + 1]
+							: Arrays.copyOf(candidates, word + 1);
+					index[i] = candidates;
+				}
+				candidates[word] |= bit;
+			}
+		}
+
+		return pattern.route;
+	}
+
+	/**
+	 * Matches the bytes of a short message
+	 *
+	 * @param status
+	 *            The status byte
+	 * @param data1
+	 *            The first data byte
+	 * @param data2
+	 *            The raw second data byte
+	 * @return The route of the first matching pattern or <NULL> if no pattern
+	 *         matches
+	 */
+	public MidiRoute match(int status, int data1, int data2) {
+
+		int command = status & 0xF0;
+		if (command < FIRST_COMMAND || command >= ShortMessage.MIDI_TIME_CODE) {
+			return null;
+		}
+
+		long[] candidates = index[getIndex(command, status & 0x0F,
+				data1 & 0x7F)];
+		if (candidates == null) {
+			return null;
+		}
+
+		for (int word = 0; word < candidates.length; word++) {
+
+			long bits = candidates[word];
+
+			while (bits != 0) {
+
+				Pattern pattern = patterns[(word << 6)
+						+ Long.numberOfTrailingZeros(bits)];
+
+				if (pattern.matchesValue(data1, data2)) {
+					return pattern.route;
+				}
+				bits &= bits - 1;
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Gets the number of patterns
+	 *
+	 * @return The number of patterns
+	 */
+	public int size() {
+		return patterns.length;
+	}
+
+	private static int getIndex(int command, int channel, int data1) {
+		return ((((command - FIRST_COMMAND) >> 4) * CHANNELS) + channel)
+				* DATA_VALUES + data1;
+	}
+
+	/**
+	 * Parses the pattern of a channel voice signature, e.g.
+	 * "channel 1-4: CONTROL CHANGE * value: 65-127"
+	 *
+	 * @param signature
+	 *            The midi signature
+	 * @return The pattern, <NULL> if the signature is no valid pattern
+	 */
+	public static Pattern parsePattern(String signature) {
+
+		if (signature == null || !signature.startsWith(CHANNEL_PREFIX)) {
+			return null;
+		}
+
+		int channelEnd = signature.indexOf(CHANNEL_SEPARATOR);
+		if (channelEnd < 0) {
+			return null;
+		}
+
+		int[] channels = parseRange(
+				signature.substring(CHANNEL_PREFIX.length(), channelEnd), 1,
+				CHANNELS);
+		if (channels == null) {
+			return null;
+		}
+
+		String message = signature.substring(channelEnd
+				+ CHANNEL_SEPARATOR.length());
+		Pattern pattern = new Pattern();
+		pattern.channelMin = channels[0] - 1;
+		pattern.channelMax = channels[1] - 1;
+
+		if (message.startsWith(MidiUtils.NOTE_OFF + " ")) {
+			pattern.command = ShortMessage.NOTE_OFF;
+			return parseKeys(pattern,
+					message.substring(MidiUtils.NOTE_OFF.length() + 1));
+		}
+
+		if (message.startsWith(MidiUtils.NOTE_ON + " ")) {
+			pattern.command = ShortMessage.NOTE_ON;
+			return parseKeys(pattern,
+					message.substring(MidiUtils.NOTE_ON.length() + 1));
+		}
+
+		if (message.startsWith(MidiUtils.POLYPHONIC_KEY_PRESSURE + " ")) {
+			pattern.command = ShortMessage.POLY_PRESSURE;
+			return parseKeysAndValues(pattern,
+					message.substring(MidiUtils.POLYPHONIC_KEY_PRESSURE
+							.length() + 1), PRESSURE_SEPARATOR);
+		}
+
+		if (message.startsWith(MidiUtils.KEY_PRESSURE + " ")) {
+			pattern.command = ShortMessage.CHANNEL_PRESSURE;
+			return parseKeysAndValues(pattern,
+					message.substring(MidiUtils.KEY_PRESSURE.length() + 1),
+					PRESSURE_SEPARATOR);
+		}
+
+		if (message.startsWith(MidiUtils.CONTROL_CHANGE + " ")) {
+			pattern.command = ShortMessage.CONTROL_CHANGE;
+			return parseNumbersAndValues(pattern,
+					message.substring(MidiUtils.CONTROL_CHANGE.length() + 1));
+		}
+
+		if (message.startsWith(MidiUtils.PROGRAM_CHANGE + " ")) {
+			pattern.command = ShortMessage.PROGRAM_CHANGE;
+			int[] programs = parseRange(
+					message.substring(MidiUtils.PROGRAM_CHANGE.length() + 1),
+					0, DATA_VALUES - 1);
+			return setData1(pattern, programs);
+		}
+
+		if (message.startsWith(MidiUtils.PITCH_WHEEL_CHANGE + " ")) {
+			pattern.command = ShortMessage.PITCH_BEND;
+			pattern.pitch = true;
+			int[] values = parseRange(
+					message.substring(MidiUtils.PITCH_WHEEL_CHANGE.length() + 1),
+					0, MAX_PITCH_VALUE);
+			return setValues(setData1(pattern, new int[] { 0, 127 }), values);
+		}
+
+		return null;
+	}
+
+	/**
+	 * Parses the keys of a note pattern part, e.g. "C3-C4"
+	 */
+	private static Pattern parseKeys(Pattern pattern, String keys) {
+		return setData1(pattern, parseKeyRange(keys));
+	}
+
+	/**
+	 * Parses the keys and values of a pressure pattern part, e.g.
+	 * "* pressure: 64-127"
+	 */
+	private static Pattern parseKeysAndValues(Pattern pattern, String part,
+			String separator) {
+
+		int separatorIndex = part.indexOf(separator);
+		if (separatorIndex < 0) {
+			return null;
+		}
+
+		return setValues(
+				setData1(pattern,
+						parseKeyRange(part.substring(0, separatorIndex))),
+				parseRange(part.substring(separatorIndex + separator.length()),
+						0, DATA_VALUES - 1));
+	}
+
+	/**
+	 * Parses the control numbers and values of a control change pattern part,
+	 * e.g. "20 value: 65-127"
+	 */
+	private static Pattern parseNumbersAndValues(Pattern pattern, String part) {
+
+		int separatorIndex = part.indexOf(VALUE_SEPARATOR);
+		if (separatorIndex < 0) {
+			return null;
+		}
+
+		return setValues(
+				setData1(
+						pattern,
+						parseRange(part.substring(0, separatorIndex), 0,
+								DATA_VALUES - 1)),
+				parseRange(
+						part.substring(separatorIndex
+								+ VALUE_SEPARATOR.length()), 0,
+						DATA_VALUES - 1));
+	}
+
+	private static Pattern setData1(Pattern pattern, int[] range) {
+
+		if (pattern == null || range == null) {
+			return null;
+		}
+		pattern.data1Min = range[0];
+		pattern.data1Max = range[1];
+		return pattern;
+	}
+
+	private static Pattern setValues(Pattern pattern, int[] range) {
+
+		if (pattern == null || range == null) {
+			return null;
+		}
+		pattern.valueMin = range[0];
+		pattern.valueMax = range[1];
+		return pattern;
+	}
+
+	/**
+	 * Parses a wildcard, a number or a range of numbers, e.g. "65-127"
+	 *
+	 * @param text
+	 *            The text
+	 * @param min
+	 *            The minimum valid number
+	 * @param max
+	 *            The maximum valid number
+	 * @return The first and last number of the range, <NULL> if the text is
+	 *         invalid
+	 */
+	private static int[] parseRange(String text, int min, int max) {
+
+		if (text.equals(WILDCARD)) {
+			return new int[] { min, max };
+		}
+
+		int separator = text.indexOf(RANGE_SEPARATOR);
+
+		try {
+			int first = Integer.parseInt((separator < 0) ? text : text
+					.substring(0, separator));
+			int last = (separator < 0) ? first : Integer.parseInt(text
+					.substring(separator + 1));
+
+			if (first < min || last > max || first > last) {
+				return null;
+			}
+			return new int[] { first, last };
+
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Parses a wildcard, a key or a range of keys, e.g. "C#-2-C3". Keys of
+	 * negative octaves have a minus too, so a range separator is followed by
+	 * a key name.
+	 *
+	 * @param text
+	 *            The text
+	 * @return The first and last key number of the range, <NULL> if the text
+	 *         is invalid
+	 */
+	private static int[] parseKeyRange(String text) {
+
+		if (text.equals(WILDCARD)) {
+			return new int[] { 0, DATA_VALUES - 1 };
+		}
+
+		int separator = -1;
+		for (int i = 1; i < text.length() - 1; i++) {
+			if (text.startsWith(RANGE_SEPARATOR, i)
+					&& Character.isLetter(text.charAt(i + 1))) {
+				separator = i;
+				break;
+			}
+		}
+
+		int first = MidiUtils.getKeyNumber((separator < 0) ? text : text
+				.substring(0, separator));
+		int last = (separator < 0) ? first : MidiUtils.getKeyNumber(text
+				.substring(separator + 1));
+
+		if (first < 0 || last < 0 || first > last) {
+			return null;
+		}
+		return new int[] { first, last };
+	}
+
+	/**
+	 * A compiled trigger pattern
+	 *
+	 * @author aguelle
+	 *
+	 */
+	public static class Pattern {
+
+		private int command;
+		private int channelMin;
+		private int channelMax;
+		private int data1Min;
+		private int data1Max;
+		private int valueMin = 0;
+		private int valueMax = MAX_PITCH_VALUE;
+		private boolean pitch;
+		private MidiRoute route;
+
+		/**
+		 * Checks if the value of a message is in the range of the pattern. The
+		 * value of a pitch wheel change has 14 bits.
+		 *
+		 * @param data1
+		 *            The first data byte
+		 * @param data2
+		 *            The second data byte
+		 * @return <TRUE> if the value is in the range, else <FALSE>
+		 */
+		boolean matchesValue(int data1, int data2) {
+
+			int value = pitch ? (data1 & 0x7F) | ((data2 & 0x7F) << 7) : data2;
+			return value >= valueMin && value <= valueMax;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+
+			if (!(obj instanceof Pattern)) {
+				return false;
+			}
+
+			Pattern other = (Pattern) obj;
+			return command == other.command && channelMin == other.channelMin
+					&& channelMax == other.channelMax
+					&& data1Min == other.data1Min
+					&& data1Max == other.data1Max
+					&& valueMin == other.valueMin
+					&& valueMax == other.valueMax && pitch == other.pitch;
+		}
+
+		@Override
+		public int hashCode() {
+			return Arrays.hashCode(new int[] { command, channelMin,
+					channelMax, data1Min, data1Max, valueMin, valueMax });
+		}
+	}
+}
@@ -0,0 +1,151 @@
+package com.midi_automator.midi;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.midi_automator.utils.LatencyHistogram;
+
+/**
+ * The result of a replayed midi capture or a stress run. The counters of the
+ * ingress filters and buffers are read live until the replay is complete.
+ *
+ * @author aguelle
+ *
+ */
+public class MidiReplayReport {
+
+	private static final double[] PERCENTILES = { 50, 90, 99, 99.9 };
+
+	private final long injected;
+	private final long injectionTime;
+	private final AtomicLong processed;
+	private final LatencyHistogram histogram;
+	private final MidiINMultiplexer[] multiplexers;
+
+	/**
+	 * Constructor
+	 *
+	 * @param injected
+	 *            The number of injected messages
+	 * @param injectionTime
+	 *            The time it took to inject the messages in nanoseconds
+	 * @param processed
+	 *            The counter of dispatched messages
+	 * @param histogram
+	 *            The latency from injection to dispatch
+	 * @param multiplexers
+	 *            The multiplexers of the replay
+	 */
+	public MidiReplayReport(long injected, long injectionTime, AtomicLong processed,
+			LatencyHistogram histogram, MidiINMultiplexer[] multiplexers) {
+		this.injected = injected;
+		this.injectionTime = injectionTime;
+		this.processed = processed;
+		this.histogram = histogram;
+		this.multiplexers = multiplexers;
+	}
+
+	/**
+	 * Checks if every injected message was processed, filtered, dropped,
+	 * coalesced or assembled
+	 *
+	 * @return <TRUE> if the replay is complete, else <FALSE>
+	 */
+	public boolean isComplete() {
+		return getProcessed() + getFiltered() + getDropped() + getCoalesced()
+				+ getAssembled() >= injected;
+	}
+
+	public long getInjected() {
+		return injected;
+	}
+
+	public long getProcessed() {
+		return processed.get();
+	}
+
+	public long getFiltered() {
+
+		long filtered = 0;
+		for (MidiINMultiplexer multiplexer : multiplexers) {
+			filtered += multiplexer.getIngressFilter().getFilteredCount();
+		}
+		return filtered;
+	}
+
+	public long getDropped() {
+
+		long dropped = 0;
+		for (MidiINMultiplexer multiplexer : multiplexers) {
+			dropped += multiplexer.getIngressBuffer().getDroppedCount();
+		}
+		return dropped;
+	}
+
+	public long getCoalesced() {
+
+		long coalesced = 0;
+		for (MidiINMultiplexer multiplexer : multiplexers) {
+			coalesced += multiplexer.getIngressBuffer().getCoalescedCount();
+		}
+		return coalesced;
+	}
+
+	public long getAssembled() {
+
+		long assembled = 0;
+		for (MidiINMultiplexer multiplexer : multiplexers) {
+			assembled += multiplexer.getParameterAssembler()
+					.getAssembledCount();
+		}
+		return assembled;
+	}
+
+	public LatencyHistogram getHistogram() {
+		return histogram;
+	}
+
+	/**
+	 * Gets the time it took to inject the messages
+	 *
+	 * @return The injection time in milliseconds
+	 */
+	public long getInjectionTime() {
+		return TimeUnit.NANOSECONDS.toMillis(injectionTime);
+	}
+
+	/**
+	 * Gets a readable report with the counters and the latency distribution
+	 *
+	 * @return The report
+	 */
+	public String getReport() {
+
+		StringBuilder report = new StringBuilder();
+		report.append(String.format("%-12s %d%n", "injected", getInjected()));
+		report.append(String.format("%-12s %d%n", "processed", getProcessed()));
+		report.append(String.format("%-12s %d%n", "filtered", getFiltered()));
+		report.append(String.format("%-12s %d%n", "dropped", getDropped()));
+		report.append(String.format("%-12s %d%n", "coalesced", getCoalesced()));
+		report.append(String.format("%-12s %d%n", "assembled", getAssembled()));
+		report.append(String.format("%-12s %d ms%n", "duration",
+				getInjectionTime()));
+
+		for (double percentile : PERCENTILES) {
+			report.append(String.format("%-12s %.3f ms%n", "p" + percentile,
+					histogram.getValueAtPercentile(percentile) / 1000d));
+		}
+		report.append(String.format("%-12s %.3f ms%n", "max",
+				histogram.getMax() / 1000d));
+
+		return report.toString();
+	}
+
+	@Override
+	public String toString() {
+		return "injected: " + getInjected() + ", processed: " + getProcessed()
+				+ ", filtered: " + getFiltered() + ", dropped: " + getDropped()
+				+ ", coalesced: " + getCoalesced() + ", assembled: "
+				+ getAssembled() + ", latency: " + histogram;
+	}
+}
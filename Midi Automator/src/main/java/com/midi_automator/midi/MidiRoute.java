@@ -0,0 +1,158 @@
+package com.midi_automator.midi;
+
+import java.util.Arrays;
+
+/**
+ * The actions a learned midi trigger is routed to. Every kind of trigger is
+ * debounced on its own by the time stamps of the midi messages, so bouncing
+ * switches and duplicated messages within the debounce window are ignored.
+ *
+ * @author aguelle
+ *
+ */
+public class MidiRoute {
+
+	/**
+	 * The kinds of triggers a route can fire
+	 *
+	 * @author aguelle
+	 *
+	 */
+	public enum Trigger {
+		ITEM, //
+		PREVIOUS, //
+		NEXT, //
+		HIDE, //
+		AUTOMATION
+	}
+
+	private static final long NO_TIME = Long.MIN_VALUE;
+
+	private final long[] debounceWindows;
+	private final long[] lastTriggerTimes;
+
+	private int itemIndex = -1;
+	private boolean openPrevious;
+	private boolean openNext;
+	private boolean hideMainFrame;
+	private int[] automationIndexes = new int[0];
+
+	/**
+	 * Creates a route without debouncing
+	 */
+	public MidiRoute() {
+		this(new long[Trigger.values().length]);
+	}
+
+	/**
+	 * Creates a route
+	 *
+	 * @param debounceWindows
+	 *            The debounce windows in microseconds indexed by the ordinal
+	 *            of the trigger
+	 */
+	MidiRoute(long[] debounceWindows) {
+		this.debounceWindows = debounceWindows;
+		lastTriggerTimes = new long[Trigger.values().length];
+		Arrays.fill(lastTriggerTimes, NO_TIME);
+	}
+
+	/**
+	 * Debounces a trigger of the route. A trigger fires on the leading edge,
+	 * all following triggers within the debounce window are ignored. Must only
+	 * be called from the midi dispatcher thread.
+	 *
+	 * @param trigger
+	 *            The kind of trigger
+	 * @param time
+	 *            The time stamp of the midi message in microseconds
+	 * @return <TRUE> if the trigger fires, <FALSE> if it is ignored
+	 */
+	public boolean debounce(Trigger trigger, long time) {
+
+		int index = trigger.ordinal();
+		long lastTime = lastTriggerTimes[index];
+
+		if (lastTime != NO_TIME && time >= lastTime
+				&& time - lastTime < debounceWindows[index]) {
+			return false;
+		}
+
+		lastTriggerTimes[index] = time;
+		return true;
+	}
+
+	/**
+	 * Gets the index of the item to open
+	 *
+	 * @return The index of the item, -1 if no item is routed
+	 */
+	public int getItemIndex() {
+		return itemIndex;
+	}
+
+	/**
+	 * Sets the index of the item to open. Only the first item listening to a
+	 * trigger is routed.
+	 *
+	 * @param itemIndex
+	 *            The index of the item
+	 */
+	void setItemIndex(int itemIndex) {
+		if (this.itemIndex == -1) {
+			this.itemIndex = itemIndex;
+		}
+	}
+
+	public boolean isOpenPrevious() {
+		return openPrevious;
+	}
+
+	void setOpenPrevious(boolean openPrevious) {
+		this.openPrevious = openPrevious;
+	}
+
+	public boolean isOpenNext() {
+		return openNext;
+	}
+
+	void setOpenNext(boolean openNext) {
+		this.openNext = openNext;
+	}
+
+	public boolean isHideMainFrame() {
+		return hideMainFrame;
+	}
+
+	void setHideMainFrame(boolean hideMainFrame) {
+		this.hideMainFrame = hideMainFrame;
+	}
+
+	/**
+	 * Gets the indexes of the GUI automations to activate
+	 *
+	 * @return The automation indexes
+	 */
+	public int[] getAutomationIndexes() {
+		return automationIndexes;
+	}
+
+	/**
+	 * Adds the index of a GUI automation to activate
+	 *
+	 * @param automationIndex
+	 *            The index of the GUI automation
+	 */
+	void addAutomationIndex(int automationIndex) {
+		automationIndexes = Arrays.copyOf(automationIndexes,
+				automationIndexes.length + 1);
+		automationIndexes[automationIndexes.length - 1] = automationIndex;
+	}
+
+	@Override
+	public String toString() {
+		return "item: " + itemIndex + ", previous: " + openPrevious
+				+ ", next: " + openNext + ", hide: " + hideMainFrame
+				+ ", automations: " + Arrays.toString(automationIndexes);
+	}
+}
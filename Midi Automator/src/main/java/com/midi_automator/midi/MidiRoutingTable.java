@@ -0,0 +1,522 @@
+package com.midi_automator.midi;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.SysexMessage;
+
+import com.midi_automator.midi.MidiComboAutomaton.Input;
+import com.midi_automator.midi.MidiGestureDetector.Gesture;
+import com.midi_automator.midi.MidiRoute.Trigger;
+import com.midi_automator.model.MidiAutomatorProperties;
+import com.midi_automator.utils.MidiUtils;
+
+/**
+ * A compiled routing table for learned midi triggers. Short messages are
+ * packed to an integer key of status, data1 and the normalized data2 class, so
+ * routing an incoming message is a single primitive hash lookup without
+ * decoding it to a signature. Triggers with wildcards or ranges are matched
+ * in a field index, but only if no exact trigger is routed to the message.
+ * SysEx triggers are matched byte by byte in a prefix trie. Chords and
+ * sequences are matched by a combo automaton that is advanced by every routed
+ * message, gestures of switches by a gesture detector. Other triggers that can
+ * not be packed are kept by their signature.
+ *
+ * The table is filled once while compiling and must not be changed after it
+ * was published to the receiving threads.
+ *
+ * @author aguelle
+ *
+ */
+public class MidiRoutingTable {
+
+	private static final int EMPTY_KEY = 0;
+	private static final int INITIAL_CAPACITY = 16;
+
+	private int[] keys = new int[INITIAL_CAPACITY];
+	private MidiRoute[] routes = new MidiRoute[INITIAL_CAPACITY];
+	private int size;
+	private Map<String, MidiRoute> signatureRoutes = new HashMap<String, MidiRoute>();
+	private MidiSysexTrie sysexTrie = new MidiSysexTrie();
+	private MidiPatternIndex patternIndex = new MidiPatternIndex();
+	private MidiComboAutomaton comboAutomaton = new MidiComboAutomaton();
+	private MidiGestureDetector gestureDetector = new MidiGestureDetector();
+	private final long[] debounceWindows = new long[Trigger.values().length];
+	private long chordWindow = MidiComboAutomaton.DEFAULT_CHORD_WINDOW;
+	private long sequenceWindow = MidiComboAutomaton.DEFAULT_SEQUENCE_WINDOW;
+
+	/**
+	 * Sets the debounce window of a trigger for all routes
+	 *
+	 * @param trigger
+	 *            The kind of trigger
+	 * @param window
+	 *            The debounce window in microseconds
+	 */
+	public void setDebounceWindow(Trigger trigger, long window) {
+		debounceWindows[trigger.ordinal()] = Math.max(0, window);
+	}
+
+	/**
+	 * Sets the windows of chords and sequences without own window. Must be set
+	 * before the combos are routed.
+	 *
+	 * @param chordWindow
+	 *            The chord window in milliseconds
+	 * @param sequenceWindow
+	 *            The sequence window in milliseconds
+	 */
+	public void setComboWindows(long chordWindow, long sequenceWindow) {
+		this.chordWindow = Math.max(0, chordWindow);
+		this.sequenceWindow = Math.max(0, sequenceWindow);
+	}
+
+	/**
+	 * Sets the times of the gestures
+	 *
+	 * @param doubleTapWindow
+	 *            The double tap window in milliseconds
+	 * @param longPressTime
+	 *            The long press time in milliseconds
+	 * @param holdRepeatInterval
+	 *            The hold repeat interval in milliseconds
+	 */
+	public void setGestureTimes(long doubleTapWindow, long longPressTime,
+			long holdRepeatInterval) {
+		gestureDetector.setTimes(doubleTapWindow, longPressTime,
+				holdRepeatInterval);
+	}
+
+	/**
+	 * Sets the listener for gestures that are fired by a deadline
+	 *
+	 * @param listener
+	 *            The listener
+	 */
+	public void setGestureListener(IMidiGestureListener listener) {
+		gestureDetector.setListener(listener);
+	}
+
+	/**
+	 * Fires the gestures that reached their deadline. Must only be called from
+	 * the midi dispatcher thread.
+	 *
+	 * @param now
+	 *            The current System.nanoTime()
+	 */
+	public void advanceGestures(long now) {
+		gestureDetector.advance(now);
+	}
+
+	/**
+	 * Checks if gesture deadlines are pending
+	 *
+	 * @return <TRUE> if the gestures must be advanced, else <FALSE>
+	 */
+	public boolean isGesturePending() {
+		return gestureDetector.isPending();
+	}
+
+	/**
+	 * Gets the interval the gestures must be advanced while pending
+	 *
+	 * @return The interval in nanoseconds
+	 */
+	public long getGestureTickNanos() {
+		return gestureDetector.getTickNanos();
+	}
+
+	/**
+	 * Routes an item to a midi signature
+	 *
+	 * @param signature
+	 *            The midi signature
+	 * @param index
+	 *            The index of the item
+	 */
+	public void addItem(String signature, int index) {
+		MidiRoute route = getOrCreateRoute(signature);
+		if (route != null) {
+			route.setItemIndex(index);
+		}
+	}
+
+	/**
+	 * Routes the previous action to a midi signature
+	 *
+	 * @param signature
+	 *            The midi signature
+	 */
+	public void addPrevious(String signature) {
+		MidiRoute route = getOrCreateRoute(signature);
+		if (route != null) {
+			route.setOpenPrevious(true);
+		}
+	}
+
+	/**
+	 * Routes the next action to a midi signature
+	 *
+	 * @param signature
+	 *            The midi signature
+	 */
+	public void addNext(String signature) {
+		MidiRoute route = getOrCreateRoute(signature);
+		if (route != null) {
+			route.setOpenNext(true);
+		}
+	}
+
+	/**
+	 * Routes the hide action to a midi signature
+	 *
+	 * @param signature
+	 *            The midi signature
+	 */
+	public void addHide(String signature) {
+		MidiRoute route = getOrCreateRoute(signature);
+		if (route != null) {
+			route.setHideMainFrame(true);
+		}
+	}
+
+	/**
+	 * Routes a GUI automation to a midi signature
+	 *
+	 * @param signature
+	 *            The midi signature
+	 * @param index
+	 *            The index of the GUI automation
+	 */
+	public void addAutomation(String signature, int index) {
+		MidiRoute route = getOrCreateRoute(signature);
+		if (route != null) {
+			route.addAutomationIndex(index);
+		}
+	}
+
+	/**
+	 * Gets the route for a midi message
+	 *
+	 * @param message
+	 *            The raw or normalized midi message, patterns with value
+	 *            ranges need the raw message
+	 * @return The route or <NULL> if no action is routed to the message
+	 */
+	public MidiRoute getRoute(MidiMessage message) {
+
+		if (message instanceof ShortMessage) {
+			return getShortRoute((ShortMessage) message);
+		}
+
+		if (message instanceof SysexMessage) {
+			return getSysexRoute((SysexMessage) message);
+		}
+
+		if (signatureRoutes.isEmpty() || message == null) {
+			return null;
+		}
+		return signatureRoutes.get(MidiUtils.messageToString(message));
+	}
+
+	/**
+	 * Gets the route for a midi message and advances the combos and gestures
+	 * of an input. A completed combo is preferred over the trigger of the
+	 * message. The presses and releases of switches with gestures are routed
+	 * to the gesture they decide. Must only be called from the midi dispatcher
+	 * thread.
+	 *
+	 * @param message
+	 *            The raw midi message
+	 * @param time
+	 *            The time stamp of the message in microseconds
+	 * @param input
+	 *            The input that received the message
+	 * @return The route or <NULL> if no action is routed to the message
+	 */
+	public MidiRoute getRoute(MidiMessage message, long time, Input input) {
+
+		if (!(message instanceof ShortMessage)) {
+			return getRoute(message);
+		}
+
+		ShortMessage shortMessage = (ShortMessage) message;
+		int status = shortMessage.getStatus();
+		int data1 = shortMessage.getData1();
+		int data2 = shortMessage.getData2();
+
+		if (comboAutomaton.size() > 0) {
+
+			MidiRoute route = comboAutomaton.advance(input, status, data1,
+					data2, time);
+			if (route != null) {
+				return route;
+			}
+		}
+
+		if (gestureDetector.isHandled(status, data1, data2)) {
+			return gestureDetector.handle(input, status, data1, data2, time,
+					getRoute(MidiGestureDetector.getPressKey(status, data1,
+							data2)));
+		}
+
+		return getShortRoute(shortMessage);
+	}
+
+	/**
+	 * Gets the route for a short message. An exact trigger is preferred over a
+	 * pattern.
+	 *
+	 * @param message
+	 *            The short message
+	 * @return The route or <NULL> if no action is routed to the message
+	 */
+	private MidiRoute getShortRoute(ShortMessage message) {
+
+		MidiRoute route = getRoute(getRoutingKey(message));
+
+		if (route != null || patternIndex.size() == 0) {
+			return route;
+		}
+		return patternIndex.match(message.getStatus(), message.getData1(),
+				message.getData2());
+	}
+
+	/**
+	 * Gets the route for a SysEx message
+	 *
+	 * @param message
+	 *            The SysEx message
+	 * @return The route or <NULL> if no action is routed to the message
+	 */
+	private MidiRoute getSysexRoute(SysexMessage message) {
+
+		if (sysexTrie.size() == 0) {
+			return null;
+		}
+		return sysexTrie.match(message.getMessage(), message.getLength());
+	}
+
+	/**
+	 * Gets the route for a packed routing key
+	 *
+	 * @param key
+	 *            The routing key
+	 * @return The route or <NULL> if no action is routed to the key
+	 */
+	public MidiRoute getRoute(int key) {
+
+		if (key == EMPTY_KEY) {
+			return null;
+		}
+
+		int mask = keys.length - 1;
+		for (int i = hash(key) & mask;; i = (i + 1) & mask) {
+			int storedKey = keys[i];
+			if (storedKey == key) {
+				return routes[i];
+			}
+			if (storedKey == EMPTY_KEY) {
+				return null;
+			}
+		}
+	}
+
+	/**
+	 * Gets the number of routed triggers
+	 *
+	 * @return The number of routed triggers
+	 */
+	public int size() {
+		return size + signatureRoutes.size() + sysexTrie.size()
+				+ patternIndex.size() + comboAutomaton.size()
+				+ gestureDetector.size();
+	}
+
+	/**
+	 * Gets the route for a signature and creates it if it does not exist.
+	 *
+	 * @param signature
+	 *            The midi signature
+	 * @return The route, <NULL> if no signature is set
+	 */
+	private MidiRoute getOrCreateRoute(String signature) {
+
+		if (signature == null || signature.isEmpty()
+				|| signature.equals(MidiAutomatorProperties.VALUE_NULL)) {
+			return null;
+		}
+
+		Gesture gesture = MidiGestureDetector.getGesture(signature);
+
+		if (gesture != Gesture.TAP) {
+
+			int pressKey = MidiGestureDetector.getPressKey(signature, gesture);
+			return (pressKey != EMPTY_KEY) ? gestureDetector.getOrCreateRoute(
+					pressKey, gesture, debounceWindows) : null;
+		}
+
+		if (MidiComboAutomaton.isCombo(signature)) {
+
+			MidiComboAutomaton.Combo combo = MidiComboAutomaton.parseCombo(
+					signature, chordWindow, sequenceWindow);
+			return (combo != null) ? comboAutomaton.getOrCreateRoute(combo,
+					debounceWindows) : null;
+		}
+
+		int[] sysexPattern = MidiSysexTrie.parsePattern(signature);
+
+		if (sysexPattern != null) {
+			return sysexTrie.getOrCreateRoute(sysexPattern, debounceWindows);
+		}
+
+		int key = getRoutingKey(signature);
+
+		if (key == EMPTY_KEY) {
+
+			MidiPatternIndex.Pattern pattern = MidiPatternIndex
+					.parsePattern(signature);
+
+			if (pattern != null) {
+				return patternIndex.getOrCreateRoute(pattern, debounceWindows);
+			}
+
+			MidiRoute route = signatureRoutes.get(signature);
+			if (route == null) {
+				route = new MidiRoute(debounceWindows);
+				signatureRoutes.put(signature, route);
+			}
+			return route;
+		}
+
+		MidiRoute route = getRoute(key);
+		if (route == null) {
+			route = new MidiRoute(debounceWindows);
+			put(key, route);
+		}
+		return route;
+	}
+
+	/**
+	 * Puts a route to the hash table
+	 *
+	 * @param key
+	 *            The routing key
+	 * @param route
+	 *            The route
+	 */
+	private void put(int key, MidiRoute route) {
+
+		if ((size + 1) * 2 > keys.length) {
+			rehash(keys.length * 2);
+		}
+
+		int mask = keys.length - 1;
+		int i = hash(key) & mask;
+		while (keys[i] != EMPTY_KEY) {
+			i = (i + 1) & mask;
+		}
+		keys[i] = key;
+		routes[i] = route;
+		size++;
+	}
+
+	/**
+	 * Resizes the hash table
+	 *
+	 * @param capacity
+	 *            The new capacity, must be a power of two
+	 */
+	private void rehash(int capacity) {
+
+		int[] oldKeys = keys;
+		MidiRoute[] oldRoutes = routes;
+
+		keys = new int[capacity];
+		routes = new MidiRoute[capacity];
+		size = 0;
+
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != EMPTY_KEY) {
+				put(oldKeys[i], oldRoutes[i]);
+			}
+		}
+	}
+
+	private static int hash(int key) {
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * Packs a short message to a routing key
+	 *
+	 * @param message
+	 *            The short message
+	 * @return The routing key
+	 */
+	public static int getRoutingKey(ShortMessage message) {
+		return getRoutingKey(message.getStatus(), message.getData1(),
+				message.getData2());
+	}
+
+	/**
+	 * Packs the bytes of a short message to a routing key. The data2 byte is
+	 * reduced to the class the signature of the message distinguishes: it is
+	 * ignored for notes and program changes, 0 or 127 for pressure and pitch
+	 * wheel changes and the exact value for all others.
+	 *
+	 * @param status
+	 *            The status byte
+	 * @param data1
+	 *            The first data byte
+	 * @param data2
+	 *            The second data byte
+	 * @return The routing key
+	 */
+	public static int getRoutingKey(int status, int data1, int data2) {
+
+		switch (status & 0xF0) {
+		case ShortMessage.NOTE_OFF:
+		case ShortMessage.NOTE_ON:
+		case ShortMessage.PROGRAM_CHANGE:
+			data2 = 0;
+			break;
+
+		case ShortMessage.POLY_PRESSURE:
+		case ShortMessage.CHANNEL_PRESSURE:
+		case ShortMessage.PITCH_BEND:
+			data2 = (data2 <= 63) ? 0 : 127;
+			break;
+		}
+
+		return ((status & 0xFF) << 16) | ((data1 & 0x7F) << 8)
+				| (data2 & 0x7F);
+	}
+
+	/**
+	 * Compiles a midi signature to a routing key
+	 *
+	 * @param signature
+	 *            The midi signature
+	 * @return The routing key, 0 if the signature is no short message
+	 *         signature
+	 */
+	public static int getRoutingKey(String signature) {
+
+		MidiMessage message;
+		try {
+			message = MidiUtils.signatureToMessage(signature);
+		} catch (InvalidMidiDataException e) {
+			return EMPTY_KEY;
+		}
+
+		if (message instanceof ShortMessage) {
+			return getRoutingKey((ShortMessage) message);
+		}
+		return EMPTY_KEY;
+	}
+}
@@ -0,0 +1,356 @@
+package com.midi_automator.midi;
+
+import java.util.Random;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.SysexMessage;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Generates synthetic midi traffic to stress the receiver chain. Every device
+ * gets its own sending thread like the transmitter of a midi driver, the
+ * messages are paced to the configured rate. The traffic is generated from a
+ * seed, so a run can be repeated.
+ *
+ * @author aguelle
+ *
+ */
+public class MidiStressGenerator {
+
+	private Logger log = Logger.getLogger(this.getClass().getName());
+
+	/**
+	 * The kinds of synthetic traffic
+	 *
+	 * @author aguelle
+	 *
+	 */
+	public enum Profile {
+		/** Dense control change streams of random controllers */
+		CC_FLOOD, //
+		/** Timing clock at the configured tempo */
+		CLOCK, //
+		/** Random bytes, malformed SysEx and random channel voice messages */
+		FUZZ, //
+		/**
+		 * Bursts of control changes sent by all devices at once, every device
+		 * sends the same messages like redundant devices
+		 */
+		BURST
+	}
+
+	/** Sends without waiting between the messages */
+	public static final int AS_FAST_AS_POSSIBLE = 0;
+
+	public static final int DEFAULT_RATE = 5000;
+	public static final long DEFAULT_DURATION = 10000;
+	public static final int DEFAULT_TEMPO = 999;
+	public static final int DEFAULT_DEVICES = 2;
+
+	private static final int CLOCKS_PER_QUARTER = 24;
+	private static final int BURST_SIZE = 64;
+	private static final int MAX_SYSEX_LENGTH = 64;
+
+	private Profile profile = Profile.CC_FLOOD;
+	private int rate = DEFAULT_RATE;
+	private long duration = DEFAULT_DURATION;
+	private int tempo = DEFAULT_TEMPO;
+	private long seed = 0;
+
+	/**
+	 * Sends the traffic to the devices until the duration is over
+	 *
+	 * @param devices
+	 *            The receivers of the devices
+	 * @return The number of sent messages
+	 * @throws InterruptedException
+	 *             If the generator was interrupted
+	 */
+	public long generate(Receiver[] devices) throws InterruptedException {
+
+		final AtomicLong sent = new AtomicLong();
+		final AtomicBoolean over = new AtomicBoolean();
+		final long start = System.nanoTime();
+		final long end = start + TimeUnit.MILLISECONDS.toNanos(duration);
+
+		// all devices decide together if another burst is sent
+		final CyclicBarrier burst = new CyclicBarrier(devices.length,
+				new Runnable() {
+					public void run() {
+						over.set(System.nanoTime() - end >= 0);
+					}
+				});
+		Thread[] threads = new Thread[devices.length];
+
+		for (int i = 0; i < devices.length; i++) {
+
+			final Receiver device = devices[i];
+			final Random random = new Random(
+					(profile == Profile.BURST) ? seed : seed + i);
+
+			threads[i] = new Thread("MIDI Stress " + (i + 1)) {
+				@Override
+				public void run() {
+					sent.addAndGet(send(device, random, burst, over, start,
+							end));
+				}
+			};
+			threads[i].start();
+		}
+
+		try {
+			for (Thread thread : threads) {
+				thread.join();
+			}
+		} catch (InterruptedException e) {
+			for (Thread thread : threads) {
+				thread.interrupt();
+			}
+			throw e;
+		}
+
+		log.info("Generated " + sent.get() + " " + profile
+				+ " MIDI messages on " + devices.length + " devices");
+		return sent.get();
+	}
+
+	/**
+	 * Sends the traffic of one device
+	 *
+	 * @param device
+	 *            The receiver of the device
+	 * @param random
+	 *            The random generator of the device
+	 * @param burst
+	 *            The barrier that starts the bursts of all devices at once
+	 * @param over
+	 *            Set by the barrier when no more bursts are sent
+	 * @param start
+	 *            The start of the run in nanoseconds
+	 * @param end
+	 *            The end of the run in nanoseconds
+	 * @return The number of sent messages
+	 */
+	private long send(Receiver device, Random random, CyclicBarrier burst,
+			AtomicBoolean over, long start, long end) {
+
+		long interval = getInterval();
+		long count = 0;
+
+		try {
+			while (!Thread.currentThread().isInterrupted()) {
+
+				if (profile == Profile.BURST) {
+					if (count % BURST_SIZE == 0) {
+						park(start + count * interval);
+						burst.await(1, TimeUnit.SECONDS);
+						if (over.get()) {
+							break;
+						}
+					}
+
+				} else {
+					if (System.nanoTime() - end >= 0) {
+						break;
+					}
+					if (interval > 0) {
+						park(start + count * interval);
+					}
+				}
+
+				device.send(next(random), -1);
+				count++;
+			}
+		} catch (InvalidMidiDataException e) {
+			log.error("Generated invalid MIDI message", e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (BrokenBarrierException e) {
+			log.warn("MIDI stress burst was broken off");
+		} catch (TimeoutException e) {
+			log.warn("MIDI stress burst timed out");
+		}
+
+		return count;
+	}
+
+	/**
+	 * Waits until a time is due
+	 *
+	 * @param due
+	 *            The due time in nanoseconds
+	 */
+	private static void park(long due) {
+
+		long wait;
+		while ((wait = due - System.nanoTime()) > 0) {
+			LockSupport.parkNanos(wait);
+		}
+	}
+
+	/**
+	 * Gets the interval between two messages of a device
+	 *
+	 * @return The interval in nanoseconds, 0 for no waiting
+	 */
+	long getInterval() {
+
+		if (profile == Profile.CLOCK) {
+			return TimeUnit.MINUTES.toNanos(1)
+					/ ((long) Math.max(1, tempo) * CLOCKS_PER_QUARTER);
+		}
+
+		if (rate <= AS_FAST_AS_POSSIBLE) {
+			return 0;
+		}
+		return TimeUnit.SECONDS.toNanos(1) / rate;
+	}
+
+	/**
+	 * Generates the next message of a device
+	 *
+	 * @param random
+	 *            The random generator of the device
+	 * @return The message
+	 * @throws InvalidMidiDataException
+	 *             If the generated message is invalid
+	 */
+	MidiMessage next(Random random) throws InvalidMidiDataException {
+
+		switch (profile) {
+
+		case CLOCK:
+			return new ShortMessage(ShortMessage.TIMING_CLOCK);
+
+		case FUZZ:
+			return nextFuzz(random);
+
+		default:
+			return new ShortMessage(ShortMessage.CONTROL_CHANGE,
+					random.nextInt(16), random.nextInt(128),
+					random.nextInt(128));
+		}
+	}
+
+	/**
+	 * Generates random bytes, a malformed SysEx message or a random channel
+	 * voice message
+	 *
+	 * @param random
+	 *            The random generator of the device
+	 * @return The message
+	 * @throws InvalidMidiDataException
+	 *             If the generated message is invalid
+	 */
+	private MidiMessage nextFuzz(Random random)
+			throws InvalidMidiDataException {
+
+		switch (random.nextInt(4)) {
+
+		case 0:
+		case 1:
+			byte[] bytes = new byte[1 + random.nextInt(3)];
+			random.nextBytes(bytes);
+			bytes[0] |= 0x80;
+			return new FuzzMessage(bytes);
+
+		case 2:
+			byte[] data = new byte[1 + random.nextInt(MAX_SYSEX_LENGTH)];
+			random.nextBytes(data);
+			data[0] = (byte) SysexMessage.SYSTEM_EXCLUSIVE;
+			return new SysexMessage(data, data.length);
+
+		default:
+			return new ShortMessage(0x80 + (random.nextInt(7) << 4),
+					random.nextInt(16), random.nextInt(128),
+					random.nextInt(128));
+		}
+	}
+
+	public Profile getProfile() {
+		return profile;
+	}
+
+	public void setProfile(Profile profile) {
+		this.profile = profile;
+	}
+
+	public int getRate() {
+		return rate;
+	}
+
+	/**
+	 * Sets the rate of every device
+	 *
+	 * @param rate
+	 *            The messages per second, AS_FAST_AS_POSSIBLE for no waiting
+	 */
+	public void setRate(int rate) {
+		this.rate = rate;
+	}
+
+	public long getDuration() {
+		return duration;
+	}
+
+	/**
+	 * Sets the duration of a run
+	 *
+	 * @param duration
+	 *            The duration in milliseconds
+	 */
+	public void setDuration(long duration) {
+		this.duration = duration;
+	}
+
+	public int getTempo() {
+		return tempo;
+	}
+
+	/**
+	 * Sets the tempo of the timing clock
+	 *
+	 * @param tempo
+	 *            The tempo in beats per minute
+	 */
+	public void setTempo(int tempo) {
+		this.tempo = tempo;
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * A message of random bytes as a broken driver would deliver it
+	 *
+	 * @author aguelle
+	 *
+	 */
+	static class FuzzMessage extends MidiMessage {
+
+		FuzzMessage(byte[] data) {
+			super(data);
+		}
+
+		@Override
+		public Object clone() {
+			return new FuzzMessage(getMessage());
+		}
+	}
+}
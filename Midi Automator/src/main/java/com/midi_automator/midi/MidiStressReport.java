@@ -0,0 +1,153 @@
+package com.midi_automator.midi;
+
+import java.util.Map;
+
+import com.midi_automator.presenter.services.LatencyService.Drop;
+import com.midi_automator.utils.LatencyHistogram;
+
+/**
+ * The result of a stress run through the receiver chain. Adds the dropped
+ * triggers, the load of the event dispatch thread and the heap growth to the
+ * ingress counters.
+ *
+ * @author aguelle
+ *
+ */
+public class MidiStressReport {
+
+	private static final double[] PERCENTILES = { 50, 99 };
+	private static final long MB = 1024 * 1024;
+
+	private final MidiStressGenerator generator;
+	private final MidiReplayReport ingress;
+	private final Map<Drop, Long> droppedTriggers;
+	private final LatencyHistogram edtLag;
+	private final long edtBacklog;
+	private final long heapBefore;
+	private final long heapAfter;
+	private final long heapPeak;
+
+	/**
+	 * Constructor
+	 *
+	 * @param generator
+	 *            The generator of the traffic
+	 * @param ingress
+	 *            The ingress counters and latency of the stress devices
+	 * @param droppedTriggers
+	 *            The triggers dropped during the run by reason
+	 * @param edtLag
+	 *            The time probes waited in the event queue in microseconds
+	 * @param edtBacklog
+	 *            The maximum number of probes waiting in the event queue
+	 * @param heapBefore
+	 *            The used heap before the run in bytes
+	 * @param heapAfter
+	 *            The used heap after the run in bytes
+	 * @param heapPeak
+	 *            The maximum used heap during the run in bytes
+	 */
+	public MidiStressReport(MidiStressGenerator generator,
+			MidiReplayReport ingress, Map<Drop, Long> droppedTriggers,
+			LatencyHistogram edtLag, long edtBacklog, long heapBefore,
+			long heapAfter, long heapPeak) {
+		this.generator = generator;
+		this.ingress = ingress;
+		this.droppedTriggers = droppedTriggers;
+		this.edtLag = edtLag;
+		this.edtBacklog = edtBacklog;
+		this.heapBefore = heapBefore;
+		this.heapAfter = heapAfter;
+		this.heapPeak = heapPeak;
+	}
+
+	public MidiReplayReport getIngress() {
+		return ingress;
+	}
+
+	/**
+	 * Gets the number of processed messages per second
+	 *
+	 * @return The throughput
+	 */
+	public long getThroughput() {
+
+		long time = Math.max(1, ingress.getInjectionTime());
+		return ingress.getProcessed() * 1000 / time;
+	}
+
+	/**
+	 * Gets the number of dropped triggers
+	 *
+	 * @param drop
+	 *            The reason the triggers were dropped
+	 * @return The number of dropped triggers
+	 */
+	public long getDroppedTriggers(Drop drop) {
+
+		Long count = droppedTriggers.get(drop);
+		return (count == null) ? 0 : count;
+	}
+
+	public LatencyHistogram getEdtLag() {
+		return edtLag;
+	}
+
+	public long getEdtBacklog() {
+		return edtBacklog;
+	}
+
+	/**
+	 * Gets the growth of the used heap from before to after the run
+	 *
+	 * @return The growth in bytes
+	 */
+	public long getHeapGrowth() {
+		return heapAfter - heapBefore;
+	}
+
+	public long getHeapPeak() {
+		return heapPeak;
+	}
+
+	/**
+	 * Gets a readable report
+	 *
+	 * @return The report
+	 */
+	public String getReport() {
+
+		StringBuilder report = new StringBuilder();
+		report.append(String.format("%-12s %s, %d/s, %d ms%n", "traffic",
+				generator.getProfile(), generator.getRate(),
+				generator.getDuration()));
+		report.append(ingress.getReport());
+		report.append(String.format("%-12s %d/s%n", "throughput",
+				getThroughput()));
+
+		for (Drop drop : Drop.values()) {
+			report.append(String.format("%-12s %d%n", drop.name()
+					.toLowerCase(), getDroppedTriggers(drop)));
+		}
+
+		for (double percentile : PERCENTILES) {
+			report.append(String.format("%-12s %.3f ms%n", "EDT p"
+					+ percentile, edtLag.getValueAtPercentile(percentile) / 1000d));
+		}
+		report.append(String.format("%-12s %.3f ms%n", "EDT max",
+				edtLag.getMax() / 1000d));
+		report.append(String.format("%-12s %d%n", "EDT backlog", edtBacklog));
+		report.append(String.format("%-12s %+d MB (peak %d MB)%n", "heap",
+				getHeapGrowth() / MB, heapPeak / MB));
+
+		return report.toString();
+	}
+
+	@Override
+	public String toString() {
+		return generator.getProfile() + ": " + ingress + ", throughput: "
+				+ getThroughput() + "/s, dropped triggers: " + droppedTriggers
+				+ ", EDT backlog: " + edtBacklog + ", heap growth: "
+				+ getHeapGrowth() / MB + " MB";
+	}
+}
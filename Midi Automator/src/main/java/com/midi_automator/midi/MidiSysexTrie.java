@@ -0,0 +1,215 @@
+package com.midi_automator.midi;
+
+import java.util.Arrays;
+
+import com.midi_automator.utils.MidiUtils;
+
+/**
+ * A byte prefix trie of learned SysEx triggers. The patterns are complete SysEx
+ * messages from F0 to F7, single bytes may be wildcards, e.g. for device IDs.
+ * Incoming messages are matched byte by byte, so a message that matches no
+ * pattern is rejected at its first unknown byte and is never decoded to a
+ * signature. Exact bytes are preferred to wildcards.
+ *
+ * The trie is filled once while compiling and must not be changed after it was
+ * published to the receiving threads.
+ *
+ * @author aguelle
+ *
+ */
+public class MidiSysexTrie {
+
+	/** Matches any byte */
+	public static final int WILDCARD = -1;
+	public static final String WILDCARD_BYTE = "XX";
+
+	private static final String SIGNATURE_PREFIX = MidiUtils.SYSEX_MESSAGE
+			+ " ";
+
+	private final Node root = new Node();
+	private int size;
+
+	/**
+	 * Gets the route of a pattern and creates it if it does not exist
+	 *
+	 * @param pattern
+	 *            The bytes of the pattern, WILDCARD for any byte
+	 * @param debounceWindows
+	 *            The debounce windows for a new route
+	 * @return The route
+	 */
+	MidiRoute getOrCreateRoute(int[] pattern, long[] debounceWindows) {
+
+		Node node = root;
+
+		for (int value : pattern) {
+			node = node.getOrCreateChild(value);
+		}
+
+		if (node.route == null) {
+			node.route = new MidiRoute(debounceWindows);
+			size++;
+		}
+		return node.route;
+	}
+
+	/**
+	 * Matches a SysEx message
+	 *
+	 * @param message
+	 *            The bytes of the message including the status byte
+	 * @param length
+	 *            The length of the message
+	 * @return The route or <NULL> if no pattern matches
+	 */
+	public MidiRoute match(byte[] message, int length) {
+		return match(root, message, 0, length);
+	}
+
+	/**
+	 * Matches the rest of a message from a node. Only branches with an exact
+	 * and a wildcard child are followed recursively.
+	 *
+	 * @param node
+	 *            The node
+	 * @param message
+	 *            The bytes of the message
+	 * @param position
+	 *            The position of the next byte
+	 * @param length
+	 *            The length of the message
+	 * @return The route or <NULL> if no pattern matches
+	 */
+	private static MidiRoute match(Node node, byte[] message, int position,
+			int length) {
+
+		for (; position < length; position++) {
+
+			Node child = node.getChild(message[position] & 0xFF);
+
+			if (child != null && node.wildcard != null) {
+				MidiRoute route = match(child, message, position + 1, length);
+				if (route != null) {
+					return route;
+				}
+				node = node.wildcard;
+			} else if (child != null) {
+				node = child;
+			} else if (node.wildcard != null) {
+				node = node.wildcard;
+			} else {
+				return null;
+			}
+		}
+
+		return node.route;
+	}
+
+	/**
+	 * Parses the pattern of a SysEx signature, e.g.
+	 * "Sysex message: F0 43 XX 4C 00 00 7E 00 F7"
+	 *
+	 * @param signature
+	 *            The midi signature
+	 * @return The bytes of the pattern, <NULL> if the signature is no valid
+	 *         SysEx signature
+	 */
+	public static int[] parsePattern(String signature) {
+
+		if (signature == null || !signature.startsWith(SIGNATURE_PREFIX)) {
+			return null;
+		}
+
+		String[] bytes = signature.substring(SIGNATURE_PREFIX.length()).trim()
+				.split(" +");
+		int[] pattern = new int[bytes.length];
+
+		for (int i = 0; i < bytes.length; i++) {
+
+			if (bytes[i].equalsIgnoreCase(WILDCARD_BYTE)) {
+				pattern[i] = WILDCARD;
+				continue;
+			}
+
+			try {
+				pattern[i] = Integer.parseInt(bytes[i], 16);
+			} catch (NumberFormatException e) {
+				return null;
+			}
+
+			if (pattern[i] < 0 || pattern[i] > 0xFF) {
+				return null;
+			}
+		}
+
+		return (pattern[0] == 0xF0) ? pattern : null;
+	}
+
+	/**
+	 * Gets the number of patterns
+	 *
+	 * @return The number of patterns
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * A node of the trie with sparse children
+	 *
+	 * @author aguelle
+	 *
+	 */
+	static class Node {
+
+		private int[] values = new int[0];
+		private Node[] children = new Node[0];
+		private Node wildcard;
+		private MidiRoute route;
+
+		/**
+		 * Gets the child for a byte
+		 *
+		 * @param value
+		 *            The byte value
+		 * @return The child, <NULL> if there is no child for the byte
+		 */
+		Node getChild(int value) {
+
+			for (int i = 0; i < values.length; i++) {
+				if (values[i] == value) {
+					return children[i];
+				}
+			}
+			return null;
+		}
+
+		/**
+		 * Gets the child for a byte and creates it if it does not exist
+		 *
+		 * @param value
+		 *            The byte value or WILDCARD
+		 * @return The child
+		 */
+		Node getOrCreateChild(int value) {
+
+			if (value == WILDCARD) {
+				if (wildcard == null) {
+					wildcard = new Node();
+				}
+				return wildcard;
+			}
+
+			Node child = getChild(value);
+
+			if (child == null) {
+				child = new Node();
+				values = Arrays.copyOf(values, values.length + 1);
+				children = Arrays.copyOf(children, children.length + 1);
+				values[values.length - 1] = value;
+				children[children.length - 1] = child;
+			}
+			return child;
+		}
+	}
+}
@@ -0,0 +1,385 @@
+package com.midi_automator.midi;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.ShortMessage;
+
+import com.midi_automator.utils.LatencyHistogram;
+import com.midi_automator.utils.MidiUtils;
+
+/**
+ * Forwards the messages of a midi IN device to the receiver of a midi OUT
+ * device. Forwarding runs on the transmitter thread of the IN device before
+ * the message is filtered, buffered or decoded, so forwarded messages wait
+ * neither for the midi dispatcher nor for the EDT.
+ *
+ * The forwarded messages are selected by a filter over their status bytes.
+ * Channel voice messages can be transformed: channels, notes and controllers
+ * are remapped and values are scaled. The transforms are compiled to lookup
+ * tables, so transforming a message only looks up its bytes. A route must be
+ * configured before it is set to a multiplexer.
+ *
+ * Every route counts its forwarded messages and records the latency from the
+ * arrival of a message until the OUT receiver accepted it.
+ *
+ * @author aguelle
+ *
+ */
+public class MidiThruRoute {
+
+	private static final int CHANNELS = 16;
+	private static final int VALUES = 128;
+	private static final String DELIMITER = ",";
+	private static final String MAP_SEPARATOR = ">";
+	private static final String RANGE_SEPARATOR = "-";
+
+	private final String name;
+	private final MidiIngressFilter filter = new MidiIngressFilter();
+	private final int[] channels = getIdentity(CHANNELS);
+	private final int[] notes = getIdentity(VALUES);
+	private final int[] controllers = getIdentity(VALUES);
+	private final int[] values = getIdentity(VALUES);
+	private boolean transforming;
+
+	private volatile Receiver receiver;
+
+	private final AtomicLong forwarded = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+	private final LatencyHistogram latency = new LatencyHistogram();
+	private volatile long startTime = System.nanoTime();
+
+	/**
+	 * Creates a route that forwards all messages unchanged
+	 *
+	 * @param name
+	 *            The name of the route
+	 */
+	public MidiThruRoute(String name) {
+		this.name = name;
+		filter.setRejectedStatuses("");
+	}
+
+	/**
+	 * Forwards a message if the route selects it. Called by the transmitter
+	 * thread of the IN device.
+	 *
+	 * @param message
+	 *            The raw midi message
+	 * @param arrivalTime
+	 *            The System.nanoTime() when the message arrived
+	 */
+	public void forward(MidiMessage message, long arrivalTime) {
+
+		Receiver out = receiver;
+		if (out == null || !filter.accepts(message.getStatus())) {
+			return;
+		}
+
+		MidiMessage forwardedMessage = message;
+		if (transforming && message instanceof ShortMessage) {
+			forwardedMessage = transform((ShortMessage) message);
+		}
+
+		try {
+			out.send(forwardedMessage, -1);
+		} catch (IllegalStateException e) {
+			// the OUT device was closed while it is reconnected
+			failed.incrementAndGet();
+			return;
+		}
+
+		forwarded.incrementAndGet();
+		latency.record((System.nanoTime() - arrivalTime) / 1000);
+	}
+
+	/**
+	 * Transforms a channel voice message, other messages are not changed
+	 *
+	 * @param message
+	 *            The short message
+	 * @return The transformed message
+	 */
+	private MidiMessage transform(ShortMessage message) {
+
+		int status = message.getStatus();
+		if (status >= ShortMessage.MIDI_TIME_CODE) {
+			return message;
+		}
+
+		int command = status & 0xF0;
+		int data1 = message.getData1();
+		int data2 = message.getData2();
+
+		switch (command) {
+		case ShortMessage.NOTE_OFF:
+		case ShortMessage.NOTE_ON:
+			data1 = notes[data1];
+			// a NOTE ON with velocity 0 is a NOTE OFF
+			data2 = (data2 == 0) ? 0 : Math.max(1, values[data2]);
+			break;
+
+		case ShortMessage.POLY_PRESSURE:
+			data1 = notes[data1];
+			data2 = values[data2];
+			break;
+
+		case ShortMessage.CONTROL_CHANGE:
+			data1 = controllers[data1];
+			data2 = values[data2];
+			break;
+
+		case ShortMessage.CHANNEL_PRESSURE:
+			data1 = values[data1];
+			break;
+		}
+
+		try {
+			return new ShortMessage(command | channels[status & 0x0F], data1,
+					data2);
+		} catch (InvalidMidiDataException e) {
+			return message;
+		}
+	}
+
+	/**
+	 * Sets the receiver of the OUT device
+	 *
+	 * @param receiver
+	 *            The receiver or <NULL> to stop forwarding
+	 */
+	public void setReceiver(Receiver receiver) {
+		this.receiver = receiver;
+	}
+
+	/**
+	 * Sets the channel map, e.g. "1>2, 3>4"
+	 *
+	 * @param map
+	 *            The comma separated channels from 1 to 16 and their target
+	 * @throws NumberFormatException
+	 *             If the map is invalid
+	 */
+	public void setChannelMap(String map) throws NumberFormatException {
+		parseMap(map, channels, 1, false);
+	}
+
+	/**
+	 * Sets the note map of notes and polyphonic key pressure, e.g.
+	 * "C3>D3, 61>63"
+	 *
+	 * @param map
+	 *            The comma separated key names or numbers and their target
+	 * @throws NumberFormatException
+	 *             If the map is invalid
+	 */
+	public void setNoteMap(String map) throws NumberFormatException {
+		parseMap(map, notes, 0, true);
+	}
+
+	/**
+	 * Sets the controller map, e.g. "7>11"
+	 *
+	 * @param map
+	 *            The comma separated controller numbers and their target
+	 * @throws NumberFormatException
+	 *             If the map is invalid
+	 */
+	public void setControllerMap(String map) throws NumberFormatException {
+		parseMap(map, controllers, 0, false);
+	}
+
+	/**
+	 * Sets the range the values 0 to 127 are scaled to, e.g. "0-100" or
+	 * "127-0" to invert them. The values of control changes, pressure and the
+	 * velocity of notes are scaled.
+	 *
+	 * @param range
+	 *            The range, empty to forward the values unchanged
+	 * @throws NumberFormatException
+	 *             If the range is invalid
+	 */
+	public void setValueRange(String range) throws NumberFormatException {
+
+		range = range.trim();
+		int min = 0;
+		int max = VALUES - 1;
+
+		if (!range.isEmpty()) {
+
+			int separator = range.indexOf(RANGE_SEPARATOR);
+			if (separator < 0) {
+				throw new NumberFormatException("No value range: " + range);
+			}
+			min = parseValue(range.substring(0, separator), 0, false);
+			max = parseValue(range.substring(separator + 1), 0, false);
+		}
+
+		for (int value = 0; value < VALUES; value++) {
+			values[value] = min
+					+ Math.round((float) value * (max - min) / (VALUES - 1));
+		}
+		updateTransforming();
+	}
+
+	/**
+	 * Parses a comma separated map of sources and their targets to a lookup
+	 * table
+	 *
+	 * @param map
+	 *            The map
+	 * @param table
+	 *            The lookup table
+	 * @param offset
+	 *            The offset of the written numbers, 1 for channels
+	 * @param keys
+	 *            <TRUE> if key names are allowed
+	 * @throws NumberFormatException
+	 *             If the map is invalid
+	 */
+	private void parseMap(String map, int[] table, int offset, boolean keys)
+			throws NumberFormatException {
+
+		int[] parsed = getIdentity(table.length);
+
+		for (String entry : map.split(DELIMITER)) {
+
+			entry = entry.trim();
+			if (entry.isEmpty()) {
+				continue;
+			}
+
+			int separator = entry.indexOf(MAP_SEPARATOR);
+			if (separator < 0) {
+				throw new NumberFormatException("No mapping: " + entry);
+			}
+
+			int source = parseValue(entry.substring(0, separator), offset,
+					keys);
+			int target = parseValue(entry.substring(separator + 1), offset,
+					keys);
+
+			if (source >= table.length || target >= table.length) {
+				throw new NumberFormatException("Out of range: " + entry);
+			}
+			parsed[source] = target;
+		}
+
+		System.arraycopy(parsed, 0, table, 0, table.length);
+		updateTransforming();
+	}
+
+	/**
+	 * Parses a number or a key name
+	 *
+	 * @param value
+	 *            The number or key name
+	 * @param offset
+	 *            The offset of the written number
+	 * @param keys
+	 *            <TRUE> if key names are allowed
+	 * @return The value
+	 * @throws NumberFormatException
+	 *             If the value is invalid
+	 */
+	private static int parseValue(String value, int offset, boolean keys)
+			throws NumberFormatException {
+
+		value = value.trim();
+
+		if (keys && !value.isEmpty() && !Character.isDigit(value.charAt(0))) {
+			int key = MidiUtils.getKeyNumber(value);
+			if (key < 0) {
+				throw new NumberFormatException("No key: " + value);
+			}
+			return key;
+		}
+
+		int number = Integer.parseInt(value) - offset;
+		if (number < 0 || number >= VALUES) {
+			throw new NumberFormatException("Out of range: " + value);
+		}
+		return number;
+	}
+
+	/**
+	 * Checks if any transform differs from the identity
+	 */
+	private void updateTransforming() {
+		transforming = !isIdentity(channels) || !isIdentity(notes)
+				|| !isIdentity(controllers) || !isIdentity(values);
+	}
+
+	private static int[] getIdentity(int length) {
+
+		int[] table = new int[length];
+		for (int i = 0; i < length; i++) {
+			table[i] = i;
+		}
+		return table;
+	}
+
+	private static boolean isIdentity(int[] table) {
+
+		for (int i = 0; i < table.length; i++) {
+			if (table[i] != i) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Resets the counters and the latency
+	 */
+	public void resetStatistics() {
+		forwarded.set(0);
+		failed.set(0);
+		latency.reset();
+		startTime = System.nanoTime();
+	}
+
+	/**
+	 * Gets the forwarded messages per second since the statistics were reset
+	 *
+	 * @return The throughput in messages per second
+	 */
+	public double getThroughput() {
+
+		long elapsed = System.nanoTime() - startTime;
+		if (elapsed <= 0) {
+			return 0;
+		}
+		return forwarded.get() / (elapsed / (double) TimeUnit.SECONDS.toNanos(1));
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public MidiIngressFilter getFilter() {
+		return filter;
+	}
+
+	public long getForwardedCount() {
+		return forwarded.get();
+	}
+
+	public long getFailedCount() {
+		return failed.get();
+	}
+
+	public LatencyHistogram getLatency() {
+		return latency;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s - forwarded: %d (%.1f/s), failed: %d, %s",
+				name, getForwardedCount(), getThroughput(), getFailedCount(),
+				latency);
+	}
+}
@@ -0,0 +1,181 @@
+package com.midi_automator.midi;
+
+/**
+ * A hashed timer wheel for the deadlines of many short timeouts, e.g. the
+ * gestures of all pressed switches. Scheduling and cancelling a timeout is a
+ * constant time list operation, the timeouts are the list nodes themselves, so
+ * no thread sleeps per timeout and nothing is allocated per schedule. The wheel
+ * is advanced by a single periodic tick while timeouts are pending.
+ *
+ * A timeout expires on the first tick after its deadline, so deadlines are
+ * rounded up to the tick. Must only be used from one thread.
+ *
+ * @author aguelle
+ *
+ */
+public class MidiTimerWheel {
+
+	private final long tickNanos;
+	private final Timeout[] slots;
+	private final int mask;
+	private long currentTick;
+	private int size;
+
+	/**
+	 * Constructor
+	 *
+	 * @param tickNanos
+	 *            The duration of a tick in nanoseconds
+	 * @param slotCount
+	 *            The number of slots, must be a power of two
+	 */
+	public MidiTimerWheel(long tickNanos, int slotCount) {
+		this.tickNanos = tickNanos;
+		slots = new Timeout[slotCount];
+		mask = slotCount - 1;
+	}
+
+	/**
+	 * Schedules a timeout. A scheduled timeout is rescheduled.
+	 *
+	 * @param timeout
+	 *            The timeout
+	 * @param now
+	 *            The current System.nanoTime()
+	 * @param delay
+	 *            The delay in nanoseconds
+	 */
+	public void schedule(Timeout timeout, long now, long delay) {
+
+		cancel(timeout);
+
+		if (size == 0) {
+			currentTick = now / tickNanos;
+		}
+
+		long tick = Math.max(currentTick + 1, (now + Math.max(0, delay)
+				+ tickNanos - 1)
+				/ tickNanos);
+		int slot = (int) (tick & mask);
+
+		timeout.tick = tick;
+		timeout.slot = slot;
+		timeout.previous = null;
+		timeout.next = slots[slot];
+		if (slots[slot] != null) {
+			slots[slot].previous = timeout;
+		}
+		slots[slot] = timeout;
+		size++;
+	}
+
+	/**
+	 * Cancels a timeout if it is scheduled
+	 *
+	 * @param timeout
+	 *            The timeout
+	 */
+	public void cancel(Timeout timeout) {
+
+		if (timeout.slot < 0) {
+			return;
+		}
+
+		if (timeout.previous != null) {
+			timeout.previous.next = timeout.next;
+		} else {
+			slots[timeout.slot] = timeout.next;
+		}
+		if (timeout.next != null) {
+			timeout.next.previous = timeout.previous;
+		}
+
+		timeout.previous = null;
+		timeout.next = null;
+		timeout.slot = -1;
+		size--;
+	}
+
+	/**
+	 * Expires all timeouts that are due. An expiring timeout may only
+	 * reschedule or cancel itself.
+	 *
+	 * @param now
+	 *            The current System.nanoTime()
+	 * @return The number of expired timeouts
+	 */
+	public int advance(long now) {
+
+		long targetTick = now / tickNanos;
+		int expired = 0;
+
+		while (size > 0 && currentTick < targetTick) {
+
+			currentTick++;
+			Timeout timeout = slots[(int) (currentTick & mask)];
+
+			while (timeout != null) {
+
+				Timeout next = timeout.next;
+
+				if (timeout.tick <= currentTick) {
+					cancel(timeout);
+					timeout.expire(now);
+					expired++;
+				}
+				timeout = next;
+			}
+		}
+
+		return expired;
+	}
+
+	/**
+	 * Gets the number of scheduled timeouts
+	 *
+	 * @return The number of scheduled timeouts
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Gets the duration of a tick
+	 *
+	 * @return The duration in nanoseconds
+	 */
+	public long getTickNanos() {
+		return tickNanos;
+	}
+
+	/**
+	 * A timeout that is scheduled on the wheel
+	 *
+	 * @author aguelle
+	 *
+	 */
+	public static abstract class Timeout {
+
+		private long tick;
+		private int slot = -1;
+		private Timeout previous;
+		private Timeout next;
+
+		/**
+		 * Checks if the timeout is scheduled
+		 *
+		 * @return <TRUE> if it is scheduled, else <FALSE>
+		 */
+		public boolean isScheduled() {
+			return slot >= 0;
+		}
+
+		/**
+		 * Called when the deadline was reached
+		 *
+		 * @param now
+		 *            The current System.nanoTime()
+		 */
+		protected abstract void expire(long now);
+	}
+}
@@ -41,11 +41,25 @@ public class MidiAutomatorProperties extends Properties {
 	public static final String KEY_MIDI_OUT_REMOTE_DEVICE = "MIDI_OUT_REMOTE_DEVICE";
 	public static final String KEY_MIDI_OUT_SWITCH_NOTIFIER_DEVICE = "MIDI_OUT_SWITCH_NOTIFIER_DEVICE";
 	public static final String KEY_MIDI_OUT_SWITCH_ITEM_DEVICE = "MIDI_OUT_SWITCH_ITEM_DEVICE";
+	public static final String KEY_MIDI_OUT_REMOTE_14_BIT = "MIDI_OUT_REMOTE_14_BIT";
 
 	public static final String KEY_PREV_MIDI_SIGNATURE = "PREV_MIDI_SIGNATURE";
 	public static final String KEY_NEXT_MIDI_SIGNATURE = "NEXT_MIDI_SIGNATURE";
 	public static final String KEY_HIDE_PROGRAM_SIGNATURE = "HIDE_PROGRAM_SIGNATURE";
 
+	public static final String KEY_MIDI_IN_OVERFLOW_POLICY = "MIDI_IN_OVERFLOW_POLICY";
+	public static final String KEY_MIDI_IN_FILTER = "MIDI_IN_FILTER";
+	public static final String KEY_MIDI_IN_14_BIT_CONTROLLERS = "MIDI_IN_14_BIT_CONTROLLERS";
+	public static final String KEY_MIDI_IN_SELECTOR_WINDOW = "MIDI_IN_SELECTOR_WINDOW";
+	public static final String KEY_MIDI_DEBOUNCE = "MIDI_DEBOUNCE";
+	public static final String KEY_MIDI_OUT_OFFSET = "MIDI_OUT_OFFSET";
+	public static final String KEY_MIDI_IN_MERGE_WINDOW = "MIDI_IN_MERGE_WINDOW";
+	public static final String KEY_MIDI_STRESS = "MIDI_STRESS";
+	public static final String KEY_MIDI_CONTROLLER = "MIDI_CONTROLLER";
+	public static final String KEY_MIDI_COMBO = "MIDI_COMBO";
+	public static final String KEY_MIDI_GESTURE = "MIDI_GESTURE";
+	public static final String KEY_MIDI_THRU = "MIDI_THRU";
+
 	public static final String KEY_LAST_FILE_CHOOSER_DIR = "LAST_FILE_CHOOSER_DIR";
 	public static final String KEY_LAST_PROGRAM_CHOOSER_DIR = "LAST_PROGRAM_CHOOSER_DIR";
 	public static final String KEY_LAST_SCREENSHOT_CHOOSER_DIR = "LAST_SCREENSHOT_CHOOSER_DIR";
@@ -242,6 +256,20 @@ public class MidiAutomatorProperties extends Properties {
 		return Integer.parseInt(index);
 	}
 
+	/**
+	 * Gets the property key of a setting for a specific midi device
+	 * 
+	 * @param key
+	 *            The key of the setting
+	 * @param deviceName
+	 *            The name of the midi device
+	 * @return The property key for the device
+	 */
+	public static String getDeviceKey(String key, String deviceName) {
+		return key + INDEX_SEPARATOR
+				+ deviceName.replaceAll("[^A-Za-z0-9]", "_").toUpperCase();
+	}
+
 	public String getPropertiesFilePath() {
 		return resources.getPropertiesPath() + File.separator
 				+ resources.getMidiAutomatorPropertiesFileName();
@@ -86,7 +86,7 @@ public class Model {
 		bufferedReader.close();
 		fileReader.close();
 
-		if (setList.getItems().size() > 128) {
+		if (setList.getItems().size() > SetList.MAX_ITEMS) {
 			throw new TooManyEntriesException();
 		}
 	}
@@ -14,6 +14,9 @@ import org.springframework.stereotype.Component;
 @Component
 public class SetList {
 
+	/** The maximum number of items a 14 bit remote open index can address */
+	public static final int MAX_ITEMS = 16384;
+
 	public SetList() {
 		items = new ArrayList<SetListItem>();
 	}
@@ -19,6 +19,7 @@ import com.midi_automator.model.Model;
 import com.midi_automator.presenter.services.ItemListService;
 import com.midi_automator.presenter.services.GUIAutomationsService;
 import com.midi_automator.presenter.services.InfoMessagesService;
+import com.midi_automator.presenter.services.MidiControllerService;
 import com.midi_automator.presenter.services.MidiItemChangeNotificationService;
 import com.midi_automator.presenter.services.MidiMetronomService;
 import com.midi_automator.presenter.services.MidiExecuteService;
@@ -53,6 +54,8 @@ public class Presenter {
 	@Autowired
 	private MidiItemChangeNotificationService midiNotificationService;
 	@Autowired
+	private MidiControllerService midiControllerService;
+	@Autowired
 	private InfoMessagesService infoMessagesService;
 
 	public Presenter() {
@@ -98,6 +101,8 @@ public class Presenter {
 		midiNotificationService.loadProperties();
 		fileListService.loadProperties();
 		guiAutomationsService.loadProperties();
+		midiControllerService.loadProperties();
+		midiService.loadThruRoutes();
 		mainFrame.reload();
 	}
 
@@ -21,11 +21,14 @@ import org.springframework.stereotype.Service;
 
 import com.midi_automator.guiautomator.GUIAutomation;
 import com.midi_automator.guiautomator.GUIAutomator;
+import com.midi_automator.midi.MidiComboAutomaton.Input;
+import com.midi_automator.midi.MidiRoute;
+import com.midi_automator.midi.MidiRoute.Trigger;
 import com.midi_automator.model.MidiAutomatorProperties;
 import com.midi_automator.model.MidiAutomatorProperties.GUIAutomationKey;
 import com.midi_automator.presenter.Presenter;
+import com.midi_automator.presenter.services.LatencyService.Drop;
 import com.midi_automator.utils.CommonUtils;
-import com.midi_automator.utils.MidiUtils;
 
 /**
  * Handles all GUI automations.
@@ -49,6 +52,10 @@ public class GUIAutomationsService {
 
 	@Autowired
 	private MidiService midiService;
+	@Autowired
+	private MidiRoutingService midiRoutingService;
+	@Autowired
+	private LatencyService latencyService;
 
 	private GUIAutomation[] guiAutomations;
 	private float minSimilarity;
@@ -84,6 +91,8 @@ public class GUIAutomationsService {
 
 		stopGUIAutomations();
 		startGuiAutomations();
+
+		midiRoutingService.compileRoutingTable();
 	}
 
 	/**
@@ -346,16 +355,65 @@ public class GUIAutomationsService {
 	 * 
 	 * @param message
 	 *            The midi message
+	 * @param time
+	 *            The time stamp of the midi message in microseconds for
+	 *            debouncing
 	 */
-	public void activateAutomationsByMidiMessage(MidiMessage message) {
+	public void activateAutomationsByMidiMessage(MidiMessage message,
+			long time) {
 
-		String signature = MidiUtils.messageToString(message);
+		MidiRoute route = midiRoutingService.getRoute(message, time,
+				Input.AUTOMATION);
 
-		// activate midi automations
-		for (GUIAutomator guiAutomator : guiAutomators) {
-			guiAutomator.activateMidiAutomations(signature);
+		if (route != null) {
+			activateAutomationsByRoute(route, time);
+		}
+	}
+
+	/**
+	 * Activates all GUI automations of a midi route
+	 * 
+	 * @param route
+	 *            The midi route
+	 * @param time
+	 *            The time stamp of the trigger in microseconds for debouncing
+	 */
+	public void activateAutomationsByRoute(MidiRoute route, long time) {
+
+		if (route.getAutomationIndexes().length == 0) {
+			return;
+		}
+
+		if (!route.debounce(Trigger.AUTOMATION, time)) {
+			latencyService.countDrop(Drop.DEBOUNCED);
+			return;
 		}
 
+		for (int automationIndex : route.getAutomationIndexes()) {
+			activateMidiAutomation(automationIndex);
+		}
+	}
+
+	/**
+	 * Activates the MIDI triggered GUI automation with the given index
+	 * 
+	 * @param index
+	 *            The index of the GUI automation
+	 */
+	private void activateMidiAutomation(int index) {
+
+		GUIAutomation[] guiAutomations = this.guiAutomations;
+
+		if (guiAutomations != null && index < guiAutomations.length) {
+			GUIAutomation guiAutomation = guiAutomations[index];
+
+			if (guiAutomation.getTrigger().contains(GUIAutomation.TRIGGER_MIDI)) {
+				log.info("Activated automation " + guiAutomation
+						+ " by MIDI message: "
+						+ guiAutomation.getMidiSignature());
+				guiAutomation.setActive(true);
+			}
+		}
 	}
 
 	/**
@@ -8,10 +8,10 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import com.midi_automator.Messages;
-import com.midi_automator.view.windows.MainFrame.MainFrame;
 
 /**
- * Handles the messages in the info label.
+ * Handles the messages in the info label. The messages may be changed from the
+ * EDT and the midi dispatcher, the label is updated by the UI update service.
  * 
  * @author aguelle
  *
@@ -22,7 +22,7 @@ public class InfoMessagesService {
 	private Set<String> infoMessages = new LinkedHashSet<String>();
 
 	@Autowired
-	private MainFrame mainFrame;
+	private UIUpdateService uiUpdateService;
 
 	/**
 	 * Sets an info message and stores it under the given key
@@ -32,7 +32,7 @@ public class InfoMessagesService {
 	 * @param message
 	 *            The message
 	 */
-	public void setInfoMessage(String key, String message) {
+	public synchronized void setInfoMessage(String key, String message) {
 		Messages.put(key, message);
 		setInfoMessage(message);
 	}
@@ -43,12 +43,12 @@ public class InfoMessagesService {
 	 * @param message
 	 *            The info message
 	 */
-	public void setInfoMessage(String message) {
+	public synchronized void setInfoMessage(String message) {
 		if (!infoMessages.contains(message)) {
 			infoMessages.add(message);
 		}
 		String displayedMesssage = messagesToString(infoMessages);
-		mainFrame.setInfoText(displayedMesssage);
+		uiUpdateService.setInfoText(displayedMesssage);
 	}
 
 	/**
@@ -57,18 +57,18 @@ public class InfoMessagesService {
 	 * @param message
 	 *            The info message
 	 */
-	public void removeInfoMessage(String message) {
+	public synchronized void removeInfoMessage(String message) {
 		infoMessages.remove(message);
 		String displayedMesssage = messagesToString(infoMessages);
-		mainFrame.setInfoText(displayedMesssage);
+		uiUpdateService.setInfoText(displayedMesssage);
 	}
 
 	/**
 	 * Removes all current info messages.
 	 */
-	public void clearInfoMessages() {
+	public synchronized void clearInfoMessages() {
 		infoMessages.clear();
-		mainFrame.setInfoText("");
+		uiUpdateService.setInfoText("");
 	}
 
 	/**
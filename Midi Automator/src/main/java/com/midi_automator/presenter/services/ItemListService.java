@@ -3,11 +3,15 @@ package com.midi_automator.presenter.services;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.sound.midi.InvalidMidiDataException;
 import javax.sound.midi.ShortMessage;
-import javax.swing.SwingUtilities;
 
 import org.apache.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -15,12 +19,17 @@ import org.springframework.stereotype.Service;
 
 import com.midi_automator.Messages;
 import com.midi_automator.Resources;
+import com.midi_automator.midi.MidiDispatcher;
+import com.midi_automator.midi.MidiParameterMessage;
+import com.midi_automator.midi.MidiParameterMessage.Type;
 import com.midi_automator.model.MidiAutomatorProperties;
 import com.midi_automator.model.Model;
 import com.midi_automator.model.SetList;
 import com.midi_automator.model.SetListItem;
 import com.midi_automator.model.TooManyEntriesException;
 import com.midi_automator.presenter.Presenter;
+import com.midi_automator.presenter.services.LatencyService.Drop;
+import com.midi_automator.presenter.services.LatencyService.Stage;
 import com.midi_automator.utils.FileUtils;
 import com.midi_automator.utils.MidiUtils;
 import com.midi_automator.view.windows.MainFrame.ItemList;
@@ -64,13 +73,23 @@ public class ItemListService {
 	private MidiItemChangeNotificationService midiNotificationService;
 	@Autowired
 	private InfoMessagesService infoMessagesService;
+	@Autowired
+	private MidiRoutingService midiRoutingService;
+	@Autowired
+	private UIUpdateService uiUpdateService;
+	@Autowired
+	private MidiDispatcher midiDispatcher;
+	@Autowired
+	private LatencyService latencyService;
 
-	private int currentIndex = -1;
-	private int openedIndex = -1;
+	private volatile int currentIndex = -1;
+	private volatile int openedIndex = -1;
+	private final AtomicInteger selectionCount = new AtomicInteger();
+	private volatile long lastSelectionTime = System.nanoTime()
+			- TimeUnit.MILLISECONDS.toNanos(FAST_SWITCHING_TIMESLOT);
 
 	private final long WAIT_BEFORE_OPENING = 100;
 	public static final long FAST_SWITCHING_TIMESLOT = 400;
-	protected static long lastOpeningTime = 0;
 
 	/**
 	 * Adds a new item
@@ -142,7 +161,8 @@ public class ItemListService {
 		infoMessagesService.removeInfoMessage(Messages
 				.get(Messages.KEY_ERROR_TOO_MUCH_ENTRIES));
 
-		if (index == null && model.getSetList().getItems().size() >= 128) {
+		if (index == null
+				&& model.getSetList().getItems().size() >= SetList.MAX_ITEMS) {
 
 			String error = String.format(Messages.MSG_FILE_LIST_IS_FULL,
 					entryName);
@@ -255,6 +275,7 @@ public class ItemListService {
 					.get(Messages.KEY_ERROR_MIDO_FILE_TOO_BIG));
 		}
 
+		midiRoutingService.compileRoutingTable();
 		mainFrame.reload();
 	}
 
@@ -295,7 +316,10 @@ public class ItemListService {
 	}
 
 	/**
-	 * Selects an entry from the file list
+	 * Selects an entry from the file list. A single selection is opened
+	 * immediately. While switching fast, i.e. within the fast switching time
+	 * slot after the last selection, the entry is opened after the time slot if
+	 * no other entry was selected meanwhile.
 	 * 
 	 * @param index
 	 *            The index of the file to open from the list
@@ -304,20 +328,50 @@ public class ItemListService {
 	 *            not be sent
 	 */
 	public void selectEntryByIndex(int index, boolean send) {
+		selectEntryByIndex(index, send, System.nanoTime());
+	}
+
+	/**
+	 * Selects an entry from the file list. A single selection is opened
+	 * immediately. While switching fast, i.e. within the fast switching time
+	 * slot after the last selection, the entry is opened after the time slot if
+	 * no other entry was selected meanwhile.
+	 * 
+	 * @param index
+	 *            The index of the file to open from the list
+	 * @param send
+	 *            <TRUE> opened index will be sent to slaves, <FALSE> index will
+	 *            not be sent
+	 * @param triggerTime
+	 *            The System.nanoTime() when the selection was triggered
+	 */
+	public void selectEntryByIndex(int index, boolean send, long triggerTime) {
 
 		if (index < 0) {
 			index = 0;
 		}
 
-		itemList.setSelectedIndex(index);
+		uiUpdateService.setSelectedIndex(index);
 		currentIndex = index;
 
-		EntryOpener entryOpener = new EntryOpener(index, send, this);
-		entryOpener.start();
+		long selectionTime = System.nanoTime();
+		boolean fastSwitching = selectionTime - lastSelectionTime < TimeUnit.MILLISECONDS
+				.toNanos(FAST_SWITCHING_TIMESLOT);
+		lastSelectionTime = selectionTime;
+
+		EntryOpener entryOpener = new EntryOpener(index, send,
+				selectionCount.incrementAndGet(), triggerTime, this);
+
+		if (fastSwitching) {
+			midiDispatcher.schedule(entryOpener, FAST_SWITCHING_TIMESLOT);
+		} else {
+			midiDispatcher.execute(entryOpener);
+		}
 	}
 
 	/**
-	 * Opens an entry from the file list
+	 * Opens an entry from the file list. The item signature is sent and the
+	 * file is opened with a delay on the midi dispatcher.
 	 * 
 	 * @param index
 	 *            The index of the file to open from the list
@@ -326,13 +380,30 @@ public class ItemListService {
 	 *            not be sent
 	 */
 	public void openEntryByIndex(int index, boolean send) {
+		openEntryByIndex(index, send, System.nanoTime());
+	}
+
+	/**
+	 * Opens an entry from the file list. The item signature is sent and the
+	 * file is opened with a delay on the midi dispatcher.
+	 * 
+	 * @param index
+	 *            The index of the file to open from the list
+	 * @param send
+	 *            <TRUE> opened index will be sent to slaves, <FALSE> index will
+	 *            not be sent
+	 * @param triggerTime
+	 *            The System.nanoTime() when the opening was triggered
+	 */
+	public void openEntryByIndex(int index, boolean send,
+			final long triggerTime) {
 
 		infoMessagesService.removeInfoMessage(Messages
 				.get(Messages.KEY_INFO_ENTRY_OPENED));
 
 		if (!model.getSetList().getItems().isEmpty()) {
 
-			SetListItem item = model.getSetList().getItems().get(index);
+			final SetListItem item = model.getSetList().getItems().get(index);
 
 			String infoEntryOpened = String.format(Messages.MSG_OPENING_ENTRY,
 					item.getName());
@@ -343,9 +414,11 @@ public class ItemListService {
 			log.debug("Open entry with index: " + index);
 
 			// Send MIDI change notifier
+			long notifierTime = System.nanoTime();
 			midiNotificationService
 					.sendItemChangeNotifier(midiService
 							.getMidiDeviceByKey(MidiAutomatorProperties.KEY_MIDI_OUT_SWITCH_NOTIFIER_DEVICE));
+			latencyService.record(Stage.NOTIFIER, notifierTime);
 			guiAutomationsService.activateAllOncePerChangeAutomations();
 
 			// Send MIDI remote open
@@ -353,21 +426,22 @@ public class ItemListService {
 				midiRemoteOpenService.sendRemoteOpenMidiMessage(index);
 			}
 
-			try {
-				Thread.sleep(WAIT_BEFORE_OPENING);
-			} catch (InterruptedException e) {
-				log.error("Delay before opening a file failed.", e);
-			}
-
 			// Send MIDI item signature
 			midiNotificationService
 					.sendItemSignature(
 							midiService
 									.getMidiDeviceByKey(MidiAutomatorProperties.KEY_MIDI_OUT_SWITCH_ITEM_DEVICE),
-							item.getMidiSendingSignature());
+							item.getMidiSendingSignature(), WAIT_BEFORE_OPENING);
 
-			openedIndex = index;
-			openFileFromSetListItem(item);
+			final int openingIndex = index;
+
+			midiDispatcher.schedule(new Runnable() {
+				public void run() {
+
+					openedIndex = openingIndex;
+					openFileFromSetListItem(item, triggerTime);
+				}
+			}, WAIT_BEFORE_OPENING);
 		}
 	}
 
@@ -377,9 +451,12 @@ public class ItemListService {
 	 * 
 	 * @param item
 	 *            the set list item
+	 * @param triggerTime
+	 *            The System.nanoTime() when the opening was triggered
 	 */
-	private void openFileFromSetListItem(SetListItem item) {
+	private void openFileFromSetListItem(SetListItem item, long triggerTime) {
 
+		long launchTime = System.nanoTime();
 		String filePath = item.getFilePath();
 
 		infoMessagesService.removeInfoMessage(Messages
@@ -418,12 +495,24 @@ public class ItemListService {
 			log.error(Messages.get(Messages.KEY_ERROR_ITEM_FILE_IO), ex);
 		}
 
+		latencyService.record(Stage.LAUNCH, launchTime);
+		latencyService.record(Stage.TOTAL, triggerTime);
 	}
 
 	/**
 	 * Opens the previous file in the list
 	 */
 	public void openPreviousFile() {
+		openPreviousFile(System.nanoTime());
+	}
+
+	/**
+	 * Opens the previous file in the list
+	 * 
+	 * @param triggerTime
+	 *            The System.nanoTime() when the opening was triggered
+	 */
+	public synchronized void openPreviousFile(long triggerTime) {
 
 		currentIndex--;
 
@@ -431,13 +520,23 @@ public class ItemListService {
 		if (currentIndex < 0) {
 			currentIndex = (model.getSetList().getItems().size() - 1);
 		}
-		selectEntryByIndex(currentIndex, true);
+		selectEntryByIndex(currentIndex, true, triggerTime);
 	}
 
 	/**
 	 * Opens the next file in the list
 	 */
 	public void openNextFile() {
+		openNextFile(System.nanoTime());
+	}
+
+	/**
+	 * Opens the next file in the list
+	 * 
+	 * @param triggerTime
+	 *            The System.nanoTime() when the opening was triggered
+	 */
+	public synchronized void openNextFile(long triggerTime) {
 
 		currentIndex++;
 
@@ -446,13 +545,57 @@ public class ItemListService {
 			currentIndex = 0;
 		}
 
-		selectEntryByIndex(currentIndex, true);
+		selectEntryByIndex(currentIndex, true, triggerTime);
 	}
 
+	/**
+	 * Sets the current item if it was selected by the user
+	 * 
+	 * @param currentIndex
+	 *            The index of the selected item
+	 */
 	public void setCurrentItem(int currentIndex) {
+
+		if (uiUpdateService.isApplyingSelection()) {
+			return;
+		}
 		this.currentIndex = currentIndex;
 	}
 
+	/**
+	 * Checks if the selection is still the given one or if another entry was
+	 * selected meanwhile.
+	 * 
+	 * @param selection
+	 *            The number of the selection
+	 * @return <TRUE> if no other entry was selected, else <FALSE>
+	 */
+	boolean isLatestSelection(int selection) {
+		return selectionCount.get() == selection;
+	}
+
+	/**
+	 * Records the latency of a stage of opening an entry
+	 * 
+	 * @param stage
+	 *            The stage
+	 * @param startTime
+	 *            The System.nanoTime() when the stage started
+	 */
+	void recordLatency(Stage stage, long startTime) {
+		latencyService.record(stage, startTime);
+	}
+
+	/**
+	 * Counts a dropped selection
+	 * 
+	 * @param drop
+	 *            The reason the selection was dropped
+	 */
+	void countDrop(Drop drop) {
+		latencyService.countDrop(drop);
+	}
+
 	/**
 	 * Gets the entry name of the file list by index
 	 * 
@@ -538,34 +681,57 @@ public class ItemListService {
 	 * @return The midi signature, <NULL> if there is no unique signature left
 	 */
 	public String getUniqueSendingMidiSignature() {
+		return getUniqueSendingMidiSignature(model.getSetList()
+				.getMidiSendingSignatures());
+	}
 
-		List<String> signatures = model.getSetList().getMidiSendingSignatures();
+	/**
+	 * Gets a unique midi signature that is not used yet. The control changes 1
+	 * to 127 of the item channel are used first, then the NRPNs 0 to 16383 of
+	 * the item channel, so every item of a full set list gets a unique
+	 * signature.
+	 * 
+	 * @param usedSignatures
+	 *            The signatures that are used already
+	 * @return The midi signature, <NULL> if there is no unique signature left
+	 */
+	public static String getUniqueSendingMidiSignature(
+			Collection<String> usedSignatures) {
 
-		ShortMessage message = new ShortMessage();
+		Set<String> signatures = new HashSet<String>(usedSignatures);
+		int channel = MidiItemChangeNotificationService.ITEM_SEND_MIDI_CHANNEL - 1;
 
-		int controlNo = 1;
-		boolean found = true;
-		String signature = null;
+		ShortMessage message = new ShortMessage();
 
-		while (found && controlNo <= 127) {
+		for (int controlNo = 1; controlNo <= 127; controlNo++) {
 			try {
 				message.setMessage(
-						ShortMessage.CONTROL_CHANGE,
-						MidiItemChangeNotificationService.ITEM_SEND_MIDI_CHANNEL - 1,
-						controlNo,
+						MidiItemChangeNotificationService.ITEM_SEND_MIDI_COMMAND,
+						channel, controlNo,
 						MidiItemChangeNotificationService.ITEM_SEND_MIDI_VALUE);
 			} catch (InvalidMidiDataException e) {
-				log.error("Created invalid MIDI message for item", e);
+				throw new IllegalStateException(
+						"Created invalid MIDI message for item", e);
+			}
+			String signature = MidiUtils.messageToString(message);
+
+			if (!signatures.contains(signature)) {
+				return signature;
 			}
-			signature = MidiUtils.messageToString(message);
+		}
+
+		for (int parameter = 0; parameter <= MidiParameterMessage.MAX_VALUE; parameter++) {
+
+			String signature = MidiUtils
+					.messageToString(new MidiParameterMessage(Type.NRPN,
+							channel, parameter, MidiParameterMessage.MAX_VALUE));
 
 			if (!signatures.contains(signature)) {
-				found = false;
+				return signature;
 			}
-			controlNo++;
 		}
 
-		return signature;
+		return null;
 	}
 
 	/**
@@ -619,65 +785,39 @@ public class ItemListService {
 }
 
 /**
- * For asynchronous opening of the list entries.
+ * For opening the list entries on the midi dispatcher. An entry is only opened
+ * if no other entry was selected until it runs.
  * 
  * @author aguelle
  *
  */
-class EntryOpener extends Thread {
-
-	private Logger log = Logger.getLogger(this.getClass().getName());
+class EntryOpener implements Runnable {
 
 	private int index;
 	private boolean send;
+	private int selection;
+	private long triggerTime;
+	private long selectionTime;
 	private ItemListService fileListService;
 
-	public EntryOpener(int index, boolean send, ItemListService fileListService) {
-		super();
+	public EntryOpener(int index, boolean send, int selection,
+			long triggerTime, ItemListService fileListService) {
 		this.index = index;
 		this.send = send;
+		this.selection = selection;
+		this.triggerTime = triggerTime;
+		this.selectionTime = System.nanoTime();
 		this.fileListService = fileListService;
 	}
 
 	@Override
 	public void run() {
 
-		try {
-			ItemListService.lastOpeningTime = System.currentTimeMillis();
-			Thread.sleep(ItemListService.FAST_SWITCHING_TIMESLOT);
-
-			if (!isFastSwitching()) {
-
-				SwingUtilities.invokeLater(new Runnable() {
-					public void run() {
-						fileListService.openEntryByIndex(index, send);
-					}
-				});
-			}
-
-		} catch (InterruptedException e) {
-			log.error("Delay for fast switching file failed.", e);
-		}
-	}
-
-	/**
-	 * Checks if the time since last opening command was bigger than the fast
-	 * switching time slot.
-	 * 
-	 * @return <TRUE> if fast switching, <FALSE> if not fast switching
-	 */
-	private boolean isFastSwitching() {
-
-		boolean isFastSwitching = false;
-
-		long currentTime = System.currentTimeMillis();
-		long lastOpening = ItemListService.lastOpeningTime;
-		long timeSinceLastOpening = currentTime - lastOpening;
-
-		if (timeSinceLastOpening < ItemListService.FAST_SWITCHING_TIMESLOT) {
-			isFastSwitching = true;
+		if (fileListService.isLatestSelection(selection)) {
+			fileListService.recordLatency(Stage.DEBOUNCE, selectionTime);
+			fileListService.openEntryByIndex(index, send, triggerTime);
+		} else {
+			fileListService.countDrop(Drop.SUPERSEDED);
 		}
-
-		return isFastSwitching;
 	}
 }
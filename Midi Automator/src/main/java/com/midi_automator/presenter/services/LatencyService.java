@@ -0,0 +1,237 @@
+package com.midi_automator.presenter.services;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.midi_automator.Resources;
+import com.midi_automator.midi.MidiThruRoute;
+import com.midi_automator.utils.LatencyHistogram;
+
+/**
+ * Measures the latency of switching items from the received midi message to
+ * the launched file. Every stage of a switch feeds its own histogram, the
+ * times are taken from the monotonic System.nanoTime() clock. Triggers that
+ * are dropped on the way are counted by the reason they were dropped for.
+ * The throughput and forwarding latency of the midi thru routes are reported
+ * per route.
+ *
+ * @author aguelle
+ *
+ */
+@Service
+public class LatencyService {
+
+	private Logger log = Logger.getLogger(this.getClass().getName());
+
+	/** Marks a time that was not taken */
+	public static final long NO_TIME = Long.MIN_VALUE;
+
+	private static final String REPORT_FILE_PREFIX = "latency_";
+	private static final String REPORT_FILE_EXTENSION = ".txt";
+
+	/**
+	 * The stages of an item switch
+	 *
+	 * @author aguelle
+	 *
+	 */
+	public enum Stage {
+		/** From the arrival of a midi message until it is dispatched */
+		INGRESS, //
+		/** From dispatching a midi message until its route was executed */
+		DISPATCH, //
+		/** From selecting an item until it is opened */
+		DEBOUNCE, //
+		/** Sending the item change notifier */
+		NOTIFIER, //
+		/** Launching the file of the item */
+		LAUNCH, //
+		/** From the trigger until the file of the item was launched */
+		TOTAL
+	}
+
+	/**
+	 * The reasons a trigger is dropped
+	 *
+	 * @author aguelle
+	 *
+	 */
+	public enum Drop {
+		/** A redundant copy of a message from another remote device */
+		DUPLICATE, //
+		/** A trigger within the debounce window of its route */
+		DEBOUNCED, //
+		/** A selection that was superseded while switching fast */
+		SUPERSEDED, //
+		/** A controller value that was superseded before it was applied */
+		COALESCED
+	}
+
+	@Autowired
+	private Resources resources;
+
+	private final Map<Stage, LatencyHistogram> histograms = new EnumMap<Stage, LatencyHistogram>(
+			Stage.class);
+
+	private final Map<Drop, AtomicLong> drops = new EnumMap<Drop, AtomicLong>(
+			Drop.class);
+
+	private volatile Collection<MidiThruRoute> thruRoutes = Collections
+			.emptyList();
+
+	public LatencyService() {
+		for (Stage stage : Stage.values()) {
+			histograms.put(stage, new LatencyHistogram());
+		}
+		for (Drop drop : Drop.values()) {
+			drops.put(drop, new AtomicLong());
+		}
+	}
+
+	/**
+	 * Records the latency of a stage from its start until now
+	 *
+	 * @param stage
+	 *            The stage
+	 * @param startTime
+	 *            The start of the stage in nanoseconds, nothing is recorded
+	 *            for NO_TIME
+	 */
+	public void record(Stage stage, long startTime) {
+
+		if (startTime == NO_TIME) {
+			return;
+		}
+
+		long latency = (System.nanoTime() - startTime) / 1000;
+		histograms.get(stage).record(latency);
+
+		if (log.isTraceEnabled()) {
+			log.trace("Latency " + stage + ": " + latency + " us");
+		}
+	}
+
+	/**
+	 * Counts a dropped trigger
+	 *
+	 * @param drop
+	 *            The reason the trigger was dropped
+	 */
+	public void countDrop(Drop drop) {
+		drops.get(drop).incrementAndGet();
+	}
+
+	/**
+	 * Gets the number of dropped triggers
+	 *
+	 * @param drop
+	 *            The reason the triggers were dropped
+	 * @return The number of dropped triggers
+	 */
+	public long getDropCount(Drop drop) {
+		return drops.get(drop).get();
+	}
+
+	/**
+	 * Gets the histogram of a stage
+	 *
+	 * @param stage
+	 *            The stage
+	 * @return The latency histogram
+	 */
+	public LatencyHistogram getHistogram(Stage stage) {
+		return histograms.get(stage);
+	}
+
+	/**
+	 * Gets a report with count, p50, p99 and max of all stages, the number of
+	 * dropped triggers and the statistics of the thru routes
+	 *
+	 * @return The report, one line per stage, drop reason and thru route
+	 */
+	public String getReport() {
+
+		StringBuilder report = new StringBuilder();
+
+		for (Stage stage : Stage.values()) {
+			report.append(String.format("%-8s %s%n", stage,
+					histograms.get(stage)));
+		}
+
+		for (Drop drop : Drop.values()) {
+			report.append(String.format("%-10s %d%n", drop, drops.get(drop)
+					.get()));
+		}
+
+		for (MidiThruRoute route : thruRoutes) {
+			report.append(String.format("%-8s %s%n", "THRU", route));
+		}
+
+		return report.toString();
+	}
+
+	/**
+	 * Dumps the report to a file in the properties directory
+	 *
+	 * @return The path of the file
+	 * @throws IOException
+	 *             If the file could not be written
+	 */
+	public String dumpReport() throws IOException {
+
+		String fileName = REPORT_FILE_PREFIX
+				+ new SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date())
+				+ REPORT_FILE_EXTENSION;
+		File file = new File(resources.getPropertiesPath(), fileName);
+
+		Writer writer = new FileWriter(file);
+		try {
+			writer.write(getReport());
+		} finally {
+			writer.close();
+		}
+
+		log.info("Dumped latency report to: " + file.getAbsolutePath());
+		return file.getAbsolutePath();
+	}
+
+	/**
+	 * Resets the histograms of all stages, the drop counters and the
+	 * statistics of the thru routes.
+	 */
+	public void reset() {
+		for (LatencyHistogram histogram : histograms.values()) {
+			histogram.reset();
+		}
+		for (AtomicLong count : drops.values()) {
+			count.set(0);
+		}
+		for (MidiThruRoute route : thruRoutes) {
+			route.resetStatistics();
+		}
+	}
+
+	/**
+	 * Sets the thru routes to report
+	 *
+	 * @param thruRoutes
+	 *            The configured thru routes
+	 */
+	public void setThruRoutes(Collection<MidiThruRoute> thruRoutes) {
+		this.thruRoutes = new ArrayList<MidiThruRoute>(thruRoutes);
+	}
+}
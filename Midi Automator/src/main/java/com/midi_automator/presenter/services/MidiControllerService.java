@@ -0,0 +1,310 @@
+package com.midi_automator.presenter.services;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.ShortMessage;
+import javax.swing.SwingUtilities;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.midi_automator.midi.IMidiControllerHandler;
+import com.midi_automator.midi.MidiControllerCoalescer;
+import com.midi_automator.midi.MidiParameterMessage;
+import com.midi_automator.midi.MidiParameterMessage.Type;
+import com.midi_automator.model.MidiAutomatorProperties;
+import com.midi_automator.model.Model;
+import com.midi_automator.presenter.services.LatencyService.Drop;
+import com.midi_automator.utils.MidiUtils;
+import com.midi_automator.view.windows.MainFrame.ItemList;
+
+/**
+ * Maps continuous controllers, i.e. control changes and the pitch wheel, to
+ * parameterised actions. The value of a mapped controller is not normalized,
+ * it is scaled to the parameter of its action, e.g. the selected item is
+ * value * items / 128. All values are scaled to 14 bit, so a 14 bit
+ * controller is mapped by the signature of its MSB controller and moves in
+ * finer steps.
+ *
+ * The values are coalesced per device, channel and controller and applied on
+ * the EDT. At most one update is pending on the EDT, so a fast fader sweep
+ * costs at most one action per controller and GUI update instead of flooding
+ * the dispatcher.
+ *
+ * A controller is mapped by its signature without value, e.g.
+ * MIDI_CONTROLLER_SELECT_ITEM=channel 1: CONTROL CHANGE 7 or
+ * MIDI_CONTROLLER_SCROLL_ITEMS=channel 1: PITCH WHEEL CHANGE
+ *
+ * @author aguelle
+ *
+ */
+@Service
+public class MidiControllerService {
+
+	private Logger log = Logger.getLogger(this.getClass().getName());
+
+	/**
+	 * The actions a controller can be mapped to
+	 *
+	 * @author aguelle
+	 *
+	 */
+	public enum Action {
+		/** Selects and opens the item at the position of the controller */
+		SELECT_ITEM, //
+		/** Scrolls the item list to the position of the controller */
+		SCROLL_ITEMS
+	}
+
+	private static final int CHANNELS = 16;
+	private static final int CONTROLLERS = 129;
+	private static final int MAX_VALUE = 0x3FFF;
+	private static final String CHANNEL_PREFIX = "channel ";
+	private static final String CHANNEL_SEPARATOR = ": ";
+
+	@Autowired
+	private MidiAutomatorProperties properties;
+	@Autowired
+	private Model model;
+	@Autowired
+	private ItemList itemList;
+	@Autowired
+	private ItemListService itemListService;
+	@Autowired
+	private LatencyService latencyService;
+
+	private volatile Action[] mappings = new Action[CHANNELS * CONTROLLERS];
+	private volatile boolean mapped;
+
+	private final MidiControllerCoalescer coalescer = new MidiControllerCoalescer();
+	private final ConcurrentHashMap<String, Integer> deviceIndexes = new ConcurrentHashMap<String, Integer>();
+
+	private final AtomicBoolean updatePending = new AtomicBoolean();
+
+	private final Runnable update = new Runnable() {
+		public void run() {
+			updatePending.set(false);
+			coalescer.drain(handler);
+		}
+	};
+
+	private final IMidiControllerHandler handler = new IMidiControllerHandler() {
+		public void controllerChanged(int device, int channel, int controller,
+				int value) {
+
+			Action action = mappings[channel * CONTROLLERS + controller];
+			if (action != null) {
+				perform(action, value);
+			}
+		}
+	};
+
+	/**
+	 * Loads the controller mappings from the properties.
+	 */
+	public void loadProperties() {
+
+		Action[] loaded = new Action[CHANNELS * CONTROLLERS];
+		boolean any = false;
+
+		for (Action action : Action.values()) {
+
+			String signature = properties.getProperty(getKey(action));
+			if (signature == null) {
+				continue;
+			}
+
+			int controller = parseController(signature);
+			if (controller < 0) {
+				log.error("Invalid controller \"" + signature + "\" for "
+						+ action);
+				continue;
+			}
+
+			loaded[controller] = action;
+			any = true;
+		}
+
+		mappings = loaded;
+		mapped = any;
+	}
+
+	/**
+	 * Offers a received message to the controller mappings. Mapped
+	 * controllers are coalesced and performed on the EDT.
+	 *
+	 * @param deviceName
+	 *            The name of the receiving device
+	 * @param message
+	 *            The raw or assembled midi message
+	 * @return <TRUE> if the message is a mapped controller, else <FALSE>
+	 */
+	public boolean control(String deviceName, MidiMessage message) {
+
+		if (!mapped) {
+			return false;
+		}
+
+		int channel;
+		int controller;
+		int value;
+
+		if (message instanceof ShortMessage) {
+
+			ShortMessage shortMessage = (ShortMessage) message;
+			int command = shortMessage.getCommand();
+			channel = shortMessage.getChannel();
+
+			if (command == ShortMessage.CONTROL_CHANGE) {
+				controller = shortMessage.getData1();
+				value = shortMessage.getData2() << 7;
+			} else if (command == ShortMessage.PITCH_BEND) {
+				controller = MidiControllerCoalescer.PITCH_WHEEL;
+				value = shortMessage.getData1()
+						| (shortMessage.getData2() << 7);
+			} else {
+				return false;
+			}
+
+		} else if (message instanceof MidiParameterMessage
+				&& ((MidiParameterMessage) message).getType() == Type.CONTROL_CHANGE_14_BIT) {
+
+			MidiParameterMessage parameterMessage = (MidiParameterMessage) message;
+			channel = parameterMessage.getChannel();
+			controller = parameterMessage.getParameter();
+			value = parameterMessage.getValue();
+
+		} else {
+			return false;
+		}
+
+		if (mappings[channel * CONTROLLERS + controller] == null) {
+			return false;
+		}
+
+		if (!coalescer.offer(getDeviceIndex(deviceName), channel, controller,
+				value)) {
+			latencyService.countDrop(Drop.COALESCED);
+		}
+
+		if (updatePending.compareAndSet(false, true)) {
+			SwingUtilities.invokeLater(update);
+		}
+		return true;
+	}
+
+	/**
+	 * Performs an action with the value of its controller. Must only be called
+	 * from the EDT.
+	 *
+	 * @param action
+	 *            The action
+	 * @param value
+	 *            The 14 bit value of the controller
+	 */
+	private void perform(Action action, int value) {
+
+		int size = model.getSetList().getItems().size();
+		if (size == 0) {
+			return;
+		}
+
+		int index = (int) ((long) value * size / (MAX_VALUE + 1));
+
+		switch (action) {
+
+		case SELECT_ITEM:
+			if (index != itemList.getSelectedIndex()) {
+				itemListService.selectEntryByIndex(index, true);
+			}
+			break;
+
+		case SCROLL_ITEMS:
+			itemList.ensureIndexIsVisible(index);
+			break;
+		}
+	}
+
+	/**
+	 * Gets the index of a device in the coalescer. Devices beyond the maximum
+	 * share the indexes.
+	 *
+	 * @param deviceName
+	 *            The name of the device
+	 * @return The index
+	 */
+	private int getDeviceIndex(String deviceName) {
+
+		Integer index = deviceIndexes.get(deviceName);
+
+		if (index == null) {
+			synchronized (deviceIndexes) {
+				index = deviceIndexes.get(deviceName);
+				if (index == null) {
+					index = deviceIndexes.size()
+							% MidiControllerCoalescer.MAX_DEVICES;
+					deviceIndexes.put(deviceName, index);
+				}
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * Parses the signature of a controller without value, e.g.
+	 * "channel 1: CONTROL CHANGE 7" or "channel 1: PITCH WHEEL CHANGE"
+	 *
+	 * @param signature
+	 *            The signature
+	 * @return The index of the controller in the mappings, -1 if the signature
+	 *         is invalid
+	 */
+	private static int parseController(String signature) {
+
+		int channelEnd = signature.indexOf(CHANNEL_SEPARATOR);
+		if (!signature.startsWith(CHANNEL_PREFIX) || channelEnd < 0) {
+			return -1;
+		}
+
+		try {
+			int channel = Integer.parseInt(signature.substring(
+					CHANNEL_PREFIX.length(), channelEnd)) - 1;
+			String controller = signature.substring(
+					channelEnd + CHANNEL_SEPARATOR.length()).trim();
+			int number;
+
+			if (controller.equals(MidiUtils.PITCH_WHEEL_CHANGE)) {
+				number = MidiControllerCoalescer.PITCH_WHEEL;
+			} else if (controller.startsWith(MidiUtils.CONTROL_CHANGE + " ")) {
+				number = Integer.parseInt(controller
+						.substring(MidiUtils.CONTROL_CHANGE.length() + 1));
+			} else {
+				return -1;
+			}
+
+			if (channel < 0 || channel >= CHANNELS || number < 0
+					|| number >= CONTROLLERS) {
+				return -1;
+			}
+			return channel * CONTROLLERS + number;
+
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Gets the properties key of a controller mapping
+	 *
+	 * @param action
+	 *            The action
+	 * @return The properties key
+	 */
+	public static String getKey(Action action) {
+		return MidiAutomatorProperties.KEY_MIDI_CONTROLLER
+				+ MidiAutomatorProperties.INDEX_SEPARATOR + action.name();
+	}
+}
@@ -1,22 +1,31 @@
 package com.midi_automator.presenter.services;
 
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
 import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiDevice;
 import javax.sound.midi.MidiMessage;
 import javax.sound.midi.MidiUnavailableException;
 import javax.sound.midi.ShortMessage;
-import javax.swing.SwingUtilities;
 
 import org.apache.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import com.midi_automator.Messages;
+import com.midi_automator.midi.MidiRoute;
+import com.midi_automator.midi.MidiRoute.Trigger;
 import com.midi_automator.model.MidiAutomatorProperties;
-import com.midi_automator.model.Model;
-import com.midi_automator.utils.MidiUtils;
+import com.midi_automator.presenter.services.LatencyService.Drop;
 
 /**
- * Handles all MIDI master/slave actions
+ * Handles all MIDI master/slave actions. The index of the item to open is sent
+ * as a single LSB on the open file control, so slaves without 14 bit
+ * addressing open it. Indexes above 127 are only sent if the slaves are
+ * configured for 14 bit addressing: the index is preceded by its MSB on the
+ * MSB control and the LSB completes it. A 7 bit slave would open the wrong
+ * item, so they are not sent otherwise and an info message tells the user.
  * 
  * @author aguelle
  *
@@ -26,17 +35,19 @@ public class MidiExecuteService {
 
 	private Logger log = Logger.getLogger(this.getClass().getName());
 
-	private final long WAIT_BEFORE_SLAVE_SEND = 2000;
+	public static final long DEFAULT_WAIT_BEFORE_SLAVE_SEND = 2000;
+	public static final long OPEN_FILE_MSB_TIMEOUT = 100;
 
 	public static final int OPEN_FILE_MIDI_COMMAND = ShortMessage.CONTROL_CHANGE;
 	public static final int OPEN_FILE_MIDI_CHANNEL = 1;
 	public static final int OPEN_FILE_MIDI_CONTROL_NO = 102;
+	public static final int OPEN_FILE_MIDI_CONTROL_NO_MSB = 104;
 	public static final String OPEN_FILE_MIDI_SIGNATURE = "channel "
 			+ OPEN_FILE_MIDI_CHANNEL + ": CONTROL CHANGE "
 			+ OPEN_FILE_MIDI_CONTROL_NO;
-
-	@Autowired
-	private Model model;
+	public static final String OPEN_FILE_MIDI_SIGNATURE_MSB = "channel "
+			+ OPEN_FILE_MIDI_CHANNEL + ": CONTROL CHANGE "
+			+ OPEN_FILE_MIDI_CONTROL_NO_MSB;
 
 	@Autowired
 	private MidiAutomatorProperties properties;
@@ -51,9 +62,15 @@ public class MidiExecuteService {
 	private InfoMessagesService infoMessagesService;
 	@Autowired
 	private PresenterService presenterService;
+	@Autowired
+	private LatencyService latencyService;
+
+	private int openFileIndexMSB;
+	private long openFileIndexMSBTime;
 
 	/**
-	 * Sends a midi message with the current index.
+	 * Sends a midi message with the current index after the configured offset
+	 * of the remote device.
 	 * 
 	 * @param index
 	 *            The index
@@ -69,22 +86,41 @@ public class MidiExecuteService {
 			if (!deviceName.equals(MidiAutomatorProperties.VALUE_NULL)) {
 
 				try {
-					ShortMessage message = new ShortMessage();
-					message.setMessage(OPEN_FILE_MIDI_COMMAND,
-							OPEN_FILE_MIDI_CHANNEL - 1,
-							OPEN_FILE_MIDI_CONTROL_NO, index);
-
-					long timeStamp = midiService.getMidiDeviceByKey(
-							MidiAutomatorProperties.KEY_MIDI_OUT_REMOTE_DEVICE)
-							.getMicrosecondPosition();
-					midiService
-							.getMidiDeviceByKey(
-									MidiAutomatorProperties.KEY_MIDI_OUT_REMOTE_DEVICE)
-							.getReceiver().send(message, timeStamp);
-					midiService.showMidiOUTSignal();
-
-					log.debug("Send MIDI message: "
-							+ MidiUtils.messageToString(message));
+					MidiDevice device = midiService
+							.getMidiDeviceByKey(MidiAutomatorProperties.KEY_MIDI_OUT_REMOTE_DEVICE);
+
+					if (device == null) {
+						throw new MidiUnavailableException();
+					}
+
+					long offset = midiService.getSendOffset(
+							MidiAutomatorProperties.KEY_MIDI_OUT_REMOTE_DEVICE,
+							DEFAULT_WAIT_BEFORE_SLAVE_SEND);
+
+					removeEntryNotSentMessage();
+
+					if (index > 127 && !isRemote14Bit()) {
+						log.warn("Slaves are not configured for 14 bit addressing, index "
+								+ index + " is not sent");
+						infoMessagesService.setInfoMessage(
+								Messages.KEY_MIDI_OUT_REMOTE_ENTRY_NOT_SENT,
+								String.format(
+										Messages.MSG_MIDI_OUT_REMOTE_ENTRY_NOT_SENT,
+										index + 1));
+						return;
+					}
+
+					if (index > 127) {
+						midiService.sendMidiMessage(device, new ShortMessage(
+								OPEN_FILE_MIDI_COMMAND,
+								OPEN_FILE_MIDI_CHANNEL - 1,
+								OPEN_FILE_MIDI_CONTROL_NO_MSB, index >> 7),
+								offset);
+					}
+
+					midiService.sendMidiMessage(device, new ShortMessage(
+							OPEN_FILE_MIDI_COMMAND, OPEN_FILE_MIDI_CHANNEL - 1,
+							OPEN_FILE_MIDI_CONTROL_NO, index & 0x7F), offset);
 
 					infoMessagesService
 							.removeInfoMessage(errMidiDeviceNotAvailable);
@@ -107,114 +143,167 @@ public class MidiExecuteService {
 	}
 
 	/**
-	 * Sends the midi remote open message for the specified index
+	 * Removes the info message of the last entry that was not sent to the
+	 * slaves
+	 */
+	private void removeEntryNotSentMessage() {
+
+		String message = Messages
+				.get(Messages.KEY_MIDI_OUT_REMOTE_ENTRY_NOT_SENT);
+
+		if (message != null) {
+			infoMessagesService.removeInfoMessage(message);
+		}
+	}
+
+	/**
+	 * Checks if the slaves are configured for 14 bit remote open indexes
+	 * 
+	 * @return <TRUE> if indexes above 127 are sent as MSB and LSB, else
+	 *         <FALSE>
+	 */
+	public boolean isRemote14Bit() {
+		return "true".equals(properties
+				.getProperty(MidiAutomatorProperties.KEY_MIDI_OUT_REMOTE_14_BIT));
+	}
+
+	/**
+	 * Sets if the slaves are configured for 14 bit remote open indexes
+	 * 
+	 * @param remote14Bit
+	 *            <TRUE> if indexes above 127 are sent as MSB and LSB, else
+	 *            <FALSE>
+	 */
+	public void setRemote14Bit(boolean remote14Bit) {
+
+		properties.setProperty(
+				MidiAutomatorProperties.KEY_MIDI_OUT_REMOTE_14_BIT,
+				remote14Bit);
+		try {
+			properties.store();
+		} catch (IOException e) {
+			log.error("Storing '14 bit remote open' failed.", e);
+		}
+
+		if (remote14Bit) {
+			removeEntryNotSentMessage();
+		}
+	}
+
+	/**
+	 * Sends the midi remote open message for the specified index with a delay
 	 * 
 	 * @param index
 	 *            The index to open
 	 */
 	public void sendRemoteOpenMidiMessage(int index) {
-		new SendItemChangeToSlavesThread(index).start();
+
+		log.info("Scheduling open index " + index
+				+ " MIDI message to slaves...");
+		sendItemChangeToSlaves(index);
 	}
 
 	/**
-	 * Opens a file by midi message
+	 * Opens a file by midi message. An MSB message is kept until the LSB
+	 * message completes the index, but at most for the MSB timeout. Any other
+	 * message except real time messages discards it, so a stray MSB does not
+	 * change a later 7 bit index. Must only be called from the midi dispatcher
+	 * thread.
 	 * 
 	 * @param message
 	 *            The midi message
+	 * @param triggerTime
+	 *            The System.nanoTime() when the midi message arrived
 	 */
-	public void openFileByMasterMidiMessage(MidiMessage message) {
+	public void openFileByMasterMidiMessage(MidiMessage message,
+			long triggerTime) {
 
 		if (message instanceof ShortMessage) {
 			ShortMessage shortMessage = (ShortMessage) message;
 
-			if (shortMessage.getCommand() == OPEN_FILE_MIDI_COMMAND
-					&& (shortMessage.getChannel() + 1) == OPEN_FILE_MIDI_CHANNEL
-					&& shortMessage.getData1() == OPEN_FILE_MIDI_CONTROL_NO) {
+			if (shortMessage.getStatus() >= ShortMessage.TIMING_CLOCK) {
+				return;
+			}
+
+			int msb = openFileIndexMSB;
+			openFileIndexMSB = 0;
 
-				int index = shortMessage.getData2();
-				fileListService.selectEntryByIndex(index, false);
+			if (shortMessage.getCommand() != OPEN_FILE_MIDI_COMMAND
+					|| (shortMessage.getChannel() + 1) != OPEN_FILE_MIDI_CHANNEL) {
+				return;
 			}
-		}
-	}
 
-	/**
-	 * Hides the main frame if the given midi message fits to the learned midi
-	 * message.
-	 * 
-	 * @param message
-	 *            The learned midi message
-	 */
-	public void hideMainFrameByLearnedMidiMessage(MidiMessage message) {
+			if (shortMessage.getData1() == OPEN_FILE_MIDI_CONTROL_NO_MSB) {
+				openFileIndexMSB = shortMessage.getData2();
+				openFileIndexMSBTime = triggerTime;
+			}
 
-		String signature = MidiUtils.messageToString(message);
+			if (shortMessage.getData1() == OPEN_FILE_MIDI_CONTROL_NO) {
 
-		String hideSignature = midiLearnService
-				.getMainFrameHideMidiListeningSignature();
+				if (triggerTime - openFileIndexMSBTime > TimeUnit.MILLISECONDS
+						.toNanos(OPEN_FILE_MSB_TIMEOUT)) {
+					msb = 0;
+				}
 
-		if (hideSignature != null) {
-			if (hideSignature.equals(signature)) {
-				presenterService.hideShowMainFrame();
+				int index = (msb << 7) | shortMessage.getData2();
+				fileListService.selectEntryByIndex(index, false, triggerTime);
 			}
+		} else {
+			openFileIndexMSB = 0;
 		}
 	}
 
 	/**
-	 * Opens a file if it has a learned midi message
+	 * Executes the learned actions of a midi route
 	 * 
-	 * @param message
-	 *            The learned midi message
+	 * @param route
+	 *            The midi route
+	 * @param time
+	 *            The time stamp of the midi message in microseconds for
+	 *            debouncing
+	 * @param triggerTime
+	 *            The System.nanoTime() when the midi message arrived
 	 */
-	public void openFileByLearnedMidiMessage(MidiMessage message) {
-
-		String signature = MidiUtils.messageToString(message);
+	public void executeLearnedMidiRoute(MidiRoute route, long time,
+			long triggerTime) {
 
-		int index = -1;
-		index = model.getSetList().getMidiListeningSignatures()
-				.indexOf(signature);
-		if (index > -1) {
-			fileListService.selectEntryByIndex(index, true);
-			return;
+		if (route.getItemIndex() > -1 && debounce(route, Trigger.ITEM, time)) {
+			fileListService.selectEntryByIndex(route.getItemIndex(), true,
+					triggerTime);
 		}
-	}
 
-	/**
-	 * Opens the previous file in the list by the learned midi message
-	 * 
-	 * @param message
-	 *            The learned midi message
-	 */
-	public void openPrevFileByLearnedMidiMessage(MidiMessage message) {
-
-		String signature = MidiUtils.messageToString(message);
+		if (route.isOpenPrevious() && debounce(route, Trigger.PREVIOUS, time)) {
+			fileListService.openPreviousFile(triggerTime);
+		}
 
-		String prevSignature = midiLearnService
-				.getPreviousButtonMidiListeningSignature();
+		if (route.isOpenNext() && debounce(route, Trigger.NEXT, time)) {
+			fileListService.openNextFile(triggerTime);
+		}
 
-		if (prevSignature != null) {
-			if (prevSignature.equals(signature)) {
-				fileListService.openPreviousFile();
-			}
+		if (route.isHideMainFrame() && debounce(route, Trigger.HIDE, time)) {
+			presenterService.hideShowMainFrame();
 		}
 	}
 
 	/**
-	 * Opens the next file in the list by the learned midi message
+	 * Debounces a trigger of a route and counts it if it is dropped
 	 * 
-	 * @param message
-	 *            The learned midi message
+	 * @param route
+	 *            The midi route
+	 * @param trigger
+	 *            The kind of trigger
+	 * @param time
+	 *            The time stamp of the midi message in microseconds
+	 * @return <TRUE> if the trigger fires, <FALSE> if it is dropped
 	 */
-	public void openNextFileByLearnedMidiMessage(MidiMessage message) {
-
-		String signature = MidiUtils.messageToString(message);
-
-		String nextSignature = midiLearnService
-				.getNextButtonMidiListeningSignature();
+	private boolean debounce(MidiRoute route, Trigger trigger, long time) {
 
-		if (nextSignature != null) {
-			if (nextSignature.equals(signature)) {
-				fileListService.openNextFile();
-			}
+		if (route.debounce(trigger, time)) {
+			return true;
 		}
+
+		latencyService.countDrop(Drop.DEBOUNCED);
+		return false;
 	}
 
 	/**
@@ -223,42 +312,8 @@ public class MidiExecuteService {
 	public void loadProperties() {
 		midiService
 				.loadMidiDeviceProperty(MidiAutomatorProperties.KEY_MIDI_IN_REMOTE_DEVICE);
+		midiService.loadRedundantMidiInRemoteDevices();
 		midiService
 				.loadMidiDeviceProperty(MidiAutomatorProperties.KEY_MIDI_OUT_REMOTE_DEVICE);
 	}
-
-	/**
-	 * Sends the changed item to remote slaves with a delay
-	 * 
-	 * @author aguelle
-	 * 
-	 */
-	class SendItemChangeToSlavesThread extends Thread {
-
-		private int index;
-
-		public SendItemChangeToSlavesThread(int index) {
-			this.index = index;
-		}
-
-		@Override
-		public void run() {
-			// wait a little before sending remote message...
-			try {
-				Thread.sleep(WAIT_BEFORE_SLAVE_SEND);
-			} catch (InterruptedException e) {
-				log.error("Delay for sending remote message to slaves failed",
-						e);
-			}
-
-			log.info("Sending open index " + index
-					+ " MIDI message to slaves...");
-
-			SwingUtilities.invokeLater(new Runnable() {
-				public void run() {
-					sendItemChangeToSlaves(index);
-				}
-			});
-		}
-	}
 }
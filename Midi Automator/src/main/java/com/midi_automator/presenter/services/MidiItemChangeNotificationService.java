@@ -85,7 +85,14 @@ public class MidiItemChangeNotificationService {
 						SWITCH_NOTIFIER_MIDI_CONTROL_NO,
 						SWITCH_NOTIFIER_MIDI_VALUE);
 
-				midiService.sendMidiMessage(device, message);
+				midiService
+						.sendMidiMessage(
+								device,
+								message,
+								midiService
+										.getSendOffset(
+												MidiAutomatorProperties.KEY_MIDI_OUT_SWITCH_NOTIFIER_DEVICE,
+												0));
 				infoMessagesService
 						.removeInfoMessage(errMidiDeviceNotAvailable);
 
@@ -112,6 +119,22 @@ public class MidiItemChangeNotificationService {
 	 *            The item's midi signature
 	 */
 	public void sendItemSignature(MidiDevice device, String signature) {
+		sendItemSignature(device, signature, 0);
+	}
+
+	/**
+	 * Sends the midi message of the item after a delay. The configured offset
+	 * of the item device is added to the delay.
+	 * 
+	 * @param device
+	 *            The midi item device
+	 * @param signature
+	 *            The item's midi signature
+	 * @param delay
+	 *            The delay in milliseconds
+	 */
+	public void sendItemSignature(MidiDevice device, String signature,
+			long delay) {
 
 		if (device != null) {
 
@@ -122,7 +145,15 @@ public class MidiItemChangeNotificationService {
 				MidiMessage message = MidiUtils.signatureToMessage(signature);
 
 				log.info("Sending MIDI signature of item: " + signature);
-				midiService.sendMidiMessage(device, message);
+				midiService
+						.sendMidiMessage(
+								device,
+								message,
+								delay
+										+ midiService
+												.getSendOffset(
+														MidiAutomatorProperties.KEY_MIDI_OUT_SWITCH_ITEM_DEVICE,
+														0));
 				infoMessagesService
 						.removeInfoMessage(errMidiDeviceNotAvailable);
 
@@ -1,14 +1,20 @@
 package com.midi_automator.presenter.services;
 
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.Enumeration;
 
+import javax.swing.Timer;
+
 import org.apache.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import com.midi_automator.Messages;
+import com.midi_automator.midi.MidiComboAutomaton;
+import com.midi_automator.midi.MidiLearnCollector;
 import com.midi_automator.model.MidiAutomatorProperties;
 import com.midi_automator.model.MidiAutomatorProperties.GUIAutomationKey;
 import com.midi_automator.model.Model;
@@ -23,7 +29,10 @@ import com.midi_automator.view.windows.PreferencesDialog.GUIAutomationPanel.GUIA
 import com.midi_automator.view.windows.PreferencesDialog.GUIAutomationPanel.GUIAutomationTable.GUIAutomationTable;
 
 /**
- * Handles all midi learning functions
+ * Handles all midi learning functions. Messages received until the learn gap
+ * passed without another message are learned as one trigger: messages within
+ * the chord window of the first message as a chord, else as a sequence. The
+ * learn gap defaults to MidiLearnCollector.DEFAULT_LEARN_GAP.
  * 
  * @author aguelle
  *
@@ -36,6 +45,9 @@ public class MidiLearnService {
 	private boolean midiLearning;
 	private String midiLearningKey;
 
+	private final MidiLearnCollector learnCollector = new MidiLearnCollector();
+	private Timer learnGapTimer;
+
 	public static final String KEY_MIDI_LEARN_PREVIOUS_BUTTON = "previous button";
 	public static final String KEY_MIDI_LEARN_NEXT_BUTTON = "next button";
 	public static final String KEY_MIDI_LEARN_ITEM_LIST_ENTRY = "entry";
@@ -59,6 +71,8 @@ public class MidiLearnService {
 	private ItemListService fileListService;
 	@Autowired
 	private InfoMessagesService infoMessagesService;
+	@Autowired
+	private MidiRoutingService midiRoutingService;
 
 	public boolean isMidiLearning() {
 		return midiLearning;
@@ -78,6 +92,72 @@ public class MidiLearnService {
 		}
 	}
 
+	/**
+	 * Collects a received message while learning. The collected messages are
+	 * learned when the learn gap passed without another message. Releases are
+	 * only learned as first message. Must be called from the EDT.
+	 * 
+	 * @param signature
+	 *            The midi signature
+	 * @param time
+	 *            The time stamp of the message in microseconds
+	 * @param release
+	 *            <TRUE> if the message releases a key, else <FALSE>
+	 */
+	public void collectMidiLearnSignature(String signature, long time,
+			boolean release) {
+
+		if (!midiLearning) {
+			return;
+		}
+
+		if (learnCollector.isEmpty()) {
+			learnCollector.setLearnGap(midiRoutingService.getComboProperty(
+					MidiRoutingService.KEY_LEARN_GAP,
+					MidiLearnCollector.DEFAULT_LEARN_GAP));
+			learnCollector.setWindows(midiRoutingService.getComboProperty(
+					MidiRoutingService.KEY_CHORD_WINDOW,
+					MidiComboAutomaton.DEFAULT_CHORD_WINDOW),
+					midiRoutingService.getComboProperty(
+							MidiRoutingService.KEY_SEQUENCE_WINDOW,
+							MidiComboAutomaton.DEFAULT_SEQUENCE_WINDOW));
+		}
+
+		if (!learnCollector.collect(signature, time, release)) {
+			return;
+		}
+
+		if (learnCollector.isFull()) {
+			learnCollectedSignatures();
+			return;
+		}
+
+		if (learnGapTimer == null) {
+			learnGapTimer = new Timer(0, new ActionListener() {
+				public void actionPerformed(ActionEvent e) {
+					learnCollectedSignatures();
+				}
+			});
+			learnGapTimer.setRepeats(false);
+		}
+
+		learnGapTimer.setInitialDelay((int) learnCollector.getLearnGap());
+		learnGapTimer.restart();
+	}
+
+	/**
+	 * Learns the collected messages as single trigger, chord or sequence
+	 */
+	private void learnCollectedSignatures() {
+
+		if (!midiLearning || learnCollector.isEmpty()) {
+			return;
+		}
+
+		midiLearn(learnCollector.getSignature());
+		setMidiLearnMode(false);
+	}
+
 	/**
 	 * Sets the midi signature for a given component
 	 * 
@@ -195,6 +275,7 @@ public class MidiLearnService {
 		model.getSetList().getItems().get(index)
 				.setMidiListeningSignature(midiSignature);
 		fileListService.saveSetList();
+		midiRoutingService.compileRoutingTable();
 	}
 
 	/**
@@ -207,6 +288,11 @@ public class MidiLearnService {
 	public void setMidiLearnMode(boolean midiLearning) {
 		this.midiLearning = midiLearning;
 
+		learnCollector.clear();
+		if (learnGapTimer != null) {
+			learnGapTimer.stop();
+		}
+
 		if (midiLearning) {
 			infoMessagesService.clearInfoMessages();
 			infoMessagesService.setInfoMessage(Messages.MSG_MIDI_LEARN_MODE_ON);
@@ -336,7 +422,9 @@ public class MidiLearnService {
 			found = true;
 		}
 
-		if (signature.contains(MidiExecuteService.OPEN_FILE_MIDI_SIGNATURE)) {
+		if (signature.contains(MidiExecuteService.OPEN_FILE_MIDI_SIGNATURE)
+				|| signature
+						.contains(MidiExecuteService.OPEN_FILE_MIDI_SIGNATURE_MSB)) {
 			found = true;
 		}
 
@@ -1,13 +1,18 @@
 package com.midi_automator.presenter.services;
 
+import java.util.concurrent.TimeUnit;
+
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import com.midi_automator.midi.MidiBeatTracker;
 import com.midi_automator.model.MidiAutomatorProperties;
 import com.midi_automator.view.windows.MainFrame.MainFrame;
 
 /**
- * Handles all metronom functions.
+ * Handles all metronom functions. The metronom follows the midi clock of the
+ * metronom device, the note signatures are a fallback for devices without
+ * clock.
  * 
  * @author aguelle
  *
@@ -18,11 +23,19 @@ public class MidiMetronomService {
 	public static final String METRONOM_FIRST_CLICK_MIDI_SIGNATURE = "channel 16: NOTE ON A4";
 	public static final String METRONOM_CLICK_MIDI_SIGNATURE = "channel 16: NOTE ON E4";
 
+	/** The tempo is unknown if no clock was received for this time */
+	public static final long CLOCK_TIMEOUT = 2000;
+
 	@Autowired
 	private MainFrame mainFrame;
 
 	@Autowired
 	private MidiService midiService;
+	@Autowired
+	private MidiLearnService midiLearnService;
+
+	private final MidiBeatTracker beatTracker = new MidiBeatTracker();
+	private volatile long lastClockTime;
 
 	/**
 	 * Executes the midi metronom's click
@@ -33,6 +46,50 @@ public class MidiMetronomService {
 		mainFrame.blinkMetronom(beat);
 	}
 
+	/**
+	 * Tracks the beats of the midi clock and clicks the metronom on every
+	 * beat. Called by the midi dispatcher thread.
+	 * 
+	 * @param status
+	 *            The status byte of a clock, transport or song position
+	 *            message
+	 * @param data1
+	 *            The first data byte
+	 * @param data2
+	 *            The second data byte
+	 * @param timeStamp
+	 *            The time stamp of the message in microseconds, -1 if not
+	 *            supported by the device
+	 * @param arrivalTime
+	 *            The System.nanoTime() when the message arrived
+	 */
+	public void trackBeat(int status, int data1, int data2, long timeStamp,
+			long arrivalTime) {
+
+		long time = (timeStamp > 0) ? timeStamp : arrivalTime / 1000;
+		int beat = beatTracker.handle(status, data1, data2, time);
+		lastClockTime = arrivalTime;
+
+		if (beat != MidiBeatTracker.NO_BEAT
+				&& !midiLearnService.isMidiLearning()) {
+			metronomClick(beat);
+		}
+	}
+
+	/**
+	 * Gets the tempo of the midi clock. May be called from any thread.
+	 * 
+	 * @return The tempo in beats per minute, 0 if no clock is received
+	 */
+	public double getBpm() {
+
+		if (System.nanoTime() - lastClockTime > TimeUnit.MILLISECONDS
+				.toNanos(CLOCK_TIMEOUT)) {
+			return 0;
+		}
+		return beatTracker.getBpm();
+	}
+
 	/**
 	 * Loads the properties for the service.
 	 */
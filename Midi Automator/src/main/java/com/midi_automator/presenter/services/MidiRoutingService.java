@@ -0,0 +1,306 @@
+package com.midi_automator.presenter.services;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.sound.midi.MidiMessage;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.midi_automator.guiautomator.GUIAutomation;
+import com.midi_automator.midi.IMidiGestureListener;
+import com.midi_automator.midi.MidiComboAutomaton;
+import com.midi_automator.midi.MidiComboAutomaton.Input;
+import com.midi_automator.midi.MidiDispatcher;
+import com.midi_automator.midi.MidiGestureDetector;
+import com.midi_automator.midi.MidiRoute;
+import com.midi_automator.midi.MidiRoute.Trigger;
+import com.midi_automator.midi.MidiRoutingTable;
+import com.midi_automator.model.MidiAutomatorProperties;
+import com.midi_automator.model.Model;
+import com.midi_automator.model.SetListItem;
+
+/**
+ * Compiles the learned midi triggers to a routing table, so incoming midi
+ * messages can be routed without comparing signatures. While gesture deadlines
+ * are pending the table is advanced by a single tick on the midi dispatcher.
+ *
+ * @author aguelle
+ *
+ */
+@Service
+public class MidiRoutingService {
+
+	private Logger log = Logger.getLogger(this.getClass().getName());
+
+	/** The default debounce window in milliseconds */
+	public static final long DEFAULT_DEBOUNCE_WINDOW = 50;
+
+	public static final String KEY_CHORD_WINDOW = "CHORD_WINDOW";
+	public static final String KEY_SEQUENCE_WINDOW = "SEQUENCE_WINDOW";
+	public static final String KEY_LEARN_GAP = "LEARN_GAP";
+
+	public static final String KEY_DOUBLE_TAP_WINDOW = "DOUBLE_TAP_WINDOW";
+	public static final String KEY_LONG_PRESS_TIME = "LONG_PRESS_TIME";
+	public static final String KEY_HOLD_REPEAT_INTERVAL = "HOLD_REPEAT_INTERVAL";
+
+	@Autowired
+	private Model model;
+	@Autowired
+	private MidiAutomatorProperties properties;
+	@Autowired
+	private MidiDispatcher midiDispatcher;
+
+	@Autowired
+	private MidiLearnService midiLearnService;
+	@Autowired
+	private GUIAutomationsService guiAutomationsService;
+	@Autowired
+	private MidiExecuteService midiExecuteService;
+
+	private volatile MidiRoutingTable routingTable = new MidiRoutingTable();
+	private final AtomicBoolean gestureTicking = new AtomicBoolean();
+
+	private final IMidiGestureListener gestureListener = new IMidiGestureListener() {
+		public void gestureFired(Input input, MidiRoute route, long time) {
+
+			log.debug("Fired MIDI gesture route: " + route);
+
+			if (input == Input.REMOTE) {
+				midiExecuteService.executeLearnedMidiRoute(route, time,
+						System.nanoTime());
+			} else {
+				guiAutomationsService.activateAutomationsByRoute(route, time);
+			}
+		}
+	};
+
+	private final Runnable gestureTick = new Runnable() {
+		public void run() {
+
+			MidiRoutingTable table = routingTable;
+			table.advanceGestures(System.nanoTime());
+
+			gestureTicking.set(false);
+			scheduleGestureTick(table);
+		}
+	};
+
+	/**
+	 * Compiles the routing table from the set list and the properties. Must be
+	 * called whenever the set list or the properties changed.
+	 */
+	public void compileRoutingTable() {
+
+		MidiRoutingTable table = new MidiRoutingTable();
+
+		for (Trigger trigger : Trigger.values()) {
+			table.setDebounceWindow(trigger,
+					getDebounceWindow(trigger) * 1000);
+		}
+		table.setComboWindows(
+				getComboProperty(KEY_CHORD_WINDOW,
+						MidiComboAutomaton.DEFAULT_CHORD_WINDOW),
+				getComboProperty(KEY_SEQUENCE_WINDOW,
+						MidiComboAutomaton.DEFAULT_SEQUENCE_WINDOW));
+		table.setGestureTimes(
+				getGestureProperty(KEY_DOUBLE_TAP_WINDOW,
+						MidiGestureDetector.DEFAULT_DOUBLE_TAP_WINDOW),
+				getGestureProperty(KEY_LONG_PRESS_TIME,
+						MidiGestureDetector.DEFAULT_LONG_PRESS_TIME),
+				getGestureProperty(KEY_HOLD_REPEAT_INTERVAL,
+						MidiGestureDetector.DEFAULT_HOLD_REPEAT_INTERVAL));
+		table.setGestureListener(gestureListener);
+
+		List<SetListItem> items = model.getSetList().getItems();
+		for (int i = 0; i < items.size(); i++) {
+			table.addItem(items.get(i).getMidiListeningSignature(), i);
+		}
+
+		table.addPrevious(midiLearnService
+				.getPreviousButtonMidiListeningSignature());
+		table.addNext(midiLearnService.getNextButtonMidiListeningSignature());
+		table.addHide(midiLearnService.getMainFrameHideMidiListeningSignature());
+
+		GUIAutomation[] guiAutomations = guiAutomationsService
+				.getGuiAutomations();
+
+		if (guiAutomations != null) {
+			for (int i = 0; i < guiAutomations.length; i++) {
+
+				String trigger = guiAutomations[i].getTrigger();
+				if (trigger != null
+						&& trigger.contains(GUIAutomation.TRIGGER_MIDI)) {
+					table.addAutomation(guiAutomations[i].getMidiSignature(),
+							i);
+				}
+			}
+		}
+
+		routingTable = table;
+
+		log.debug("Compiled MIDI routing table with " + table.size()
+				+ " triggers");
+	}
+
+	/**
+	 * Gets the configured debounce window of a trigger
+	 *
+	 * @param trigger
+	 *            The kind of trigger
+	 * @return The debounce window in milliseconds
+	 */
+	public long getDebounceWindow(Trigger trigger) {
+
+		String value = properties.getProperty(getDebounceKey(trigger));
+
+		if (value != null) {
+			try {
+				return Long.parseLong(value.trim());
+			} catch (NumberFormatException e) {
+				log.error("Invalid MIDI debounce window: " + value, e);
+			}
+		}
+
+		return DEFAULT_DEBOUNCE_WINDOW;
+	}
+
+	/**
+	 * Gets the properties key of the debounce window of a trigger
+	 *
+	 * @param trigger
+	 *            The kind of trigger
+	 * @return The properties key
+	 */
+	public static String getDebounceKey(Trigger trigger) {
+		return MidiAutomatorProperties.KEY_MIDI_DEBOUNCE
+				+ MidiAutomatorProperties.INDEX_SEPARATOR + trigger.name();
+	}
+
+	/**
+	 * Gets a configured window of the combo triggers
+	 *
+	 * @param name
+	 *            The name of the combo property
+	 * @param defaultValue
+	 *            The default value in milliseconds
+	 * @return The window in milliseconds
+	 */
+	public long getComboProperty(String name, long defaultValue) {
+		return getTimeProperty(getComboKey(name), defaultValue);
+	}
+
+	/**
+	 * Gets a configured time of the gestures
+	 *
+	 * @param name
+	 *            The name of the gesture property
+	 * @param defaultValue
+	 *            The default value in milliseconds
+	 * @return The time in milliseconds
+	 */
+	public long getGestureProperty(String name, long defaultValue) {
+		return getTimeProperty(getGestureKey(name), defaultValue);
+	}
+
+	/**
+	 * Gets a configured time
+	 *
+	 * @param key
+	 *            The properties key
+	 * @param defaultValue
+	 *            The default value in milliseconds
+	 * @return The time in milliseconds
+	 */
+	private long getTimeProperty(String key, long defaultValue) {
+
+		String value = properties.getProperty(key);
+
+		if (value != null) {
+			try {
+				return Long.parseLong(value.trim());
+			} catch (NumberFormatException e) {
+				log.error("Invalid MIDI time " + key + ": " + value, e);
+			}
+		}
+
+		return defaultValue;
+	}
+
+	/**
+	 * Gets the properties key of a combo property
+	 *
+	 * @param name
+	 *            The name of the combo property
+	 * @return The properties key
+	 */
+	public static String getComboKey(String name) {
+		return MidiAutomatorProperties.KEY_MIDI_COMBO
+				+ MidiAutomatorProperties.INDEX_SEPARATOR + name;
+	}
+
+	/**
+	 * Gets the properties key of a gesture property
+	 *
+	 * @param name
+	 *            The name of the gesture property
+	 * @return The properties key
+	 */
+	public static String getGestureKey(String name) {
+		return MidiAutomatorProperties.KEY_MIDI_GESTURE
+				+ MidiAutomatorProperties.INDEX_SEPARATOR + name;
+	}
+
+	/**
+	 * Gets the route for a midi message
+	 *
+	 * @param message
+	 *            The raw or normalized midi message, patterns with value
+	 *            ranges need the raw message
+	 * @return The route or <NULL> if no action is routed to the message
+	 */
+	public MidiRoute getRoute(MidiMessage message) {
+		return routingTable.getRoute(message);
+	}
+
+	/**
+	 * Gets the route for a midi message and advances the chords, sequences and
+	 * gestures of an input. Must only be called from the midi dispatcher
+	 * thread.
+	 *
+	 * @param message
+	 *            The raw midi message
+	 * @param time
+	 *            The time stamp of the message in microseconds
+	 * @param input
+	 *            The input that received the message
+	 * @return The route or <NULL> if no action is routed to the message
+	 */
+	public MidiRoute getRoute(MidiMessage message, long time, Input input) {
+
+		MidiRoutingTable table = routingTable;
+		MidiRoute route = table.getRoute(message, time, input);
+
+		scheduleGestureTick(table);
+		return route;
+	}
+
+	/**
+	 * Schedules the next gesture tick if gesture deadlines are pending and no
+	 * tick is scheduled yet
+	 *
+	 * @param table
+	 *            The routing table
+	 */
+	private void scheduleGestureTick(MidiRoutingTable table) {
+
+		if (table.isGesturePending()
+				&& gestureTicking.compareAndSet(false, true)) {
+			midiDispatcher.schedule(gestureTick, TimeUnit.NANOSECONDS
+					.toMillis(table.getGestureTickNanos()));
+		}
+	}
+}
@@ -1,16 +1,23 @@
 package com.midi_automator.presenter.services;
 
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
+import java.util.TreeMap;
 
 import javax.sound.midi.MidiDevice;
 import javax.sound.midi.MidiMessage;
 import javax.sound.midi.MidiUnavailableException;
-import javax.sound.midi.Receiver;
-import javax.sound.midi.Transmitter;
+import javax.sound.midi.ShortMessage;
+import javax.swing.SwingUtilities;
 
 import org.apache.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -18,13 +25,29 @@ import org.springframework.context.ApplicationContext;
 import org.springframework.stereotype.Service;
 
 import com.midi_automator.Messages;
+import com.midi_automator.Resources;
+import com.midi_automator.midi.IMidiDeviceListener;
+import com.midi_automator.midi.MidiAutomatorReceiver;
+import com.midi_automator.midi.MidiCaptureRecorder;
+import com.midi_automator.midi.MidiComboAutomaton.Input;
+import com.midi_automator.midi.MidiDeviceRegistry;
 import com.midi_automator.midi.MidiINAutomationReceiver;
 import com.midi_automator.midi.MidiINDetector;
 import com.midi_automator.midi.MidiINExecuteReceiver;
 import com.midi_automator.midi.MidiINLearnReceiver;
+import com.midi_automator.midi.MidiINMerger;
 import com.midi_automator.midi.MidiINMetronomReceiver;
+import com.midi_automator.midi.MidiINMultiplexer;
+import com.midi_automator.midi.MidiIngressFilter;
+import com.midi_automator.midi.MidiIngressRingBuffer;
+import com.midi_automator.midi.MidiIngressRingBuffer.OverflowPolicy;
+import com.midi_automator.midi.MidiOutScheduler;
+import com.midi_automator.midi.MidiParameterAssembler;
+import com.midi_automator.midi.MidiRoute;
+import com.midi_automator.midi.MidiThruRoute;
 import com.midi_automator.model.MidiAutomatorProperties;
 import com.midi_automator.presenter.Presenter;
+import com.midi_automator.presenter.services.LatencyService.Stage;
 import com.midi_automator.utils.MidiUtils;
 import com.midi_automator.view.windows.MainFrame.MainFrame;
 
@@ -59,9 +82,56 @@ public class MidiService {
 	private InfoMessagesService infoMessagesService;
 	@Autowired
 	private MidiLearnService midiLearnService;
+	@Autowired
+	private MidiRoutingService midiRoutingService;
+	@Autowired
+	private LatencyService latencyService;
+	@Autowired
+	private MidiOutScheduler midiOutScheduler;
+	@Autowired
+	private MidiINMerger midiINMerger;
+	@Autowired
+	private Resources resources;
 
 	private Map<String, MidiDevice> midiDevices = new HashMap<String, MidiDevice>();
-	private Map<String, Set<Receiver>> midiFunctionReceiverMapping = new HashMap<String, Set<Receiver>>();
+	private Map<String, Set<MidiAutomatorReceiver>> midiFunctionReceiverMapping = new HashMap<String, Set<MidiAutomatorReceiver>>();
+	private Map<MidiDevice, MidiINMultiplexer> multiplexers = new HashMap<MidiDevice, MidiINMultiplexer>();
+	private Map<String, MidiIngressFilter> ingressFilters = new HashMap<String, MidiIngressFilter>();
+	private Map<String, String> configuredDeviceNames = new HashMap<String, String>();
+	private MidiCaptureRecorder captureRecorder;
+	private Map<Integer, MidiThruRoute> thruRoutes = new TreeMap<Integer, MidiThruRoute>();
+
+	public static final String THRU_IN = "IN";
+	public static final String THRU_OUT = "OUT";
+	public static final String THRU_FILTER = "FILTER";
+	public static final String THRU_CHANNELS = "CHANNELS";
+	public static final String THRU_NOTES = "NOTES";
+	public static final String THRU_CONTROLLERS = "CONTROLLERS";
+	public static final String THRU_VALUES = "VALUES";
+
+	private static final String CAPTURE_FILE_PREFIX = "midi_capture_";
+	private static final String CAPTURE_FILE_EXTENSION = ".mid";
+
+	private final IMidiDeviceListener deviceListener = new IMidiDeviceListener() {
+
+		@Override
+		public void midiDeviceAttached(final MidiDevice device) {
+			SwingUtilities.invokeLater(new Runnable() {
+				public void run() {
+					reconnectMidiDevice(device.getDeviceInfo().getName());
+				}
+			});
+		}
+
+		@Override
+		public void midiDeviceDetached(final MidiDevice device) {
+			SwingUtilities.invokeLater(new Runnable() {
+				public void run() {
+					disconnectMidiDevice(device);
+				}
+			});
+		}
+	};
 
 	/**
 	 * Gets a stored midi device by key
@@ -88,10 +158,12 @@ public class MidiService {
 
 		if (midiDeviceName != null && !midiDeviceName.equals("")) {
 
+			watchMidiDevices();
+
 			// MIDI IN Remote
 			if (functionKey
-					.equals(MidiAutomatorProperties.KEY_MIDI_IN_REMOTE_DEVICE)) {
-				loadMidiInRemoteDevice(midiDeviceName);
+					.startsWith(MidiAutomatorProperties.KEY_MIDI_IN_REMOTE_DEVICE)) {
+				loadMidiInRemoteDevice(midiDeviceName, functionKey);
 				return;
 			}
 
@@ -109,26 +181,248 @@ public class MidiService {
 				return;
 			}
 
+			// MIDI thru
+			if (functionKey.startsWith(MidiAutomatorProperties.KEY_MIDI_THRU)) {
+				loadMidiThruDevice(midiDeviceName, functionKey);
+				return;
+			}
+
 			// MIDI OUT
 			reloadMidiDevice(midiDeviceName, functionKey, null, "OUT");
 		}
 	}
 
 	/**
-	 * Loads the midi in remote device
+	 * Loads the IN or OUT device of a midi thru route and reconnects the thru
+	 * routes. The IN device gets no receivers, its multiplexer only forwards.
 	 * 
 	 * @param midiDeviceName
 	 *            The midi device name
+	 * @param functionKey
+	 *            The function key of the route device
+	 */
+	private void loadMidiThruDevice(String midiDeviceName, String functionKey) {
+
+		if (functionKey.startsWith(getThruKey(THRU_IN, ""))) {
+			reloadMidiDevice(midiDeviceName, functionKey,
+					new HashSet<MidiAutomatorReceiver>(), "IN");
+		} else {
+			reloadMidiDevice(midiDeviceName, functionKey, null, "OUT");
+		}
+
+		connectThruRoutes();
+	}
+
+	/**
+	 * Loads the midi thru routes from the properties and opens their devices.
+	 * A route forwards the messages of an IN device to an OUT device, e.g.
+	 * MIDI_THRU_IN_0=device, MIDI_THRU_OUT_0=device. Optionally it filters the
+	 * statuses like the midi IN filter (MIDI_THRU_FILTER_0=F8,FE), remaps
+	 * channels (MIDI_THRU_CHANNELS_0=1>2), notes (MIDI_THRU_NOTES_0=C3>D3) and
+	 * controllers (MIDI_THRU_CONTROLLERS_0=7>11) and scales the values
+	 * (MIDI_THRU_VALUES_0=0-100).
 	 */
-	private void loadMidiInRemoteDevice(String midiDeviceName) {
+	public void loadThruRoutes() {
+
+		Map<Integer, MidiThruRoute> routes = new TreeMap<Integer, MidiThruRoute>();
+		Map<String, String> routeDevices = new HashMap<String, String>();
+		String keyPrefix = getThruKey(THRU_IN, "");
+
+		for (Entry<Object, Object> property : properties.entrySet(keyPrefix)) {
+
+			String key = (String) property.getKey();
+			if (!key.startsWith(keyPrefix)) {
+				continue;
+			}
+
+			try {
+				int index = Integer.parseInt(key.substring(keyPrefix.length()));
+				String inDeviceName = (String) property.getValue();
+				String outDeviceName = properties.getProperty(getThruKey(
+						THRU_OUT, index));
+
+				if (outDeviceName == null) {
+					log.error("No MIDI OUT device for MIDI thru route " + key);
+					continue;
+				}
+
+				MidiThruRoute route = new MidiThruRoute(inDeviceName + " > "
+						+ outDeviceName);
+				String filter = properties.getProperty(getThruKey(THRU_FILTER,
+						index));
+				if (filter != null) {
+					route.getFilter().setRejectedStatuses(filter);
+				}
+				route.setChannelMap(getThruProperty(THRU_CHANNELS, index));
+				route.setNoteMap(getThruProperty(THRU_NOTES, index));
+				route.setControllerMap(getThruProperty(THRU_CONTROLLERS, index));
+				route.setValueRange(getThruProperty(THRU_VALUES, index));
 
-		Set<Receiver> receivers = new HashSet<Receiver>();
+				routes.put(index, route);
+				routeDevices.put(key, inDeviceName);
+				routeDevices.put(getThruKey(THRU_OUT, index), outDeviceName);
+
+			} catch (NumberFormatException e) {
+				log.error("Invalid MIDI thru route " + key, e);
+			}
+		}
+
+		for (String functionKey : new ArrayList<String>(midiDevices.keySet())) {
+			if (functionKey.startsWith(MidiAutomatorProperties.KEY_MIDI_THRU)
+					&& !routeDevices.containsKey(functionKey)) {
+				reloadMidiDevice(MidiAutomatorProperties.VALUE_NULL,
+						functionKey, null, null);
+			}
+		}
+
+		thruRoutes = routes;
+		latencyService.setThruRoutes(routes.values());
+
+		for (Entry<String, String> routeDevice : routeDevices.entrySet()) {
+			loadMidiDeviceByFunctionKey(routeDevice.getKey(),
+					routeDevice.getValue());
+		}
+
+		connectThruRoutes();
+	}
+
+	/**
+	 * Connects the thru routes with the multiplexers of their IN devices and
+	 * the cached receivers of their OUT devices. Routes whose devices are not
+	 * loaded do not forward.
+	 */
+	private void connectThruRoutes() {
+
+		Map<MidiINMultiplexer, List<MidiThruRoute>> connected = new HashMap<MidiINMultiplexer, List<MidiThruRoute>>();
+
+		for (Entry<Integer, MidiThruRoute> entry : thruRoutes.entrySet()) {
+
+			MidiThruRoute route = entry.getValue();
+			MidiDevice inDevice = midiDevices.get(getThruKey(THRU_IN,
+					entry.getKey()));
+			MidiDevice outDevice = midiDevices.get(getThruKey(THRU_OUT,
+					entry.getKey()));
+			MidiINMultiplexer multiplexer = (inDevice != null) ? multiplexers
+					.get(inDevice) : null;
+
+			route.setReceiver(null);
+
+			if (multiplexer == null || outDevice == null) {
+				continue;
+			}
+
+			try {
+				route.setReceiver(MidiUtils.getCachedReceiver(outDevice));
+			} catch (MidiUnavailableException e) {
+				log.error("MIDI thru route " + route.getName()
+						+ " is not available", e);
+				continue;
+			}
+
+			List<MidiThruRoute> routes = connected.get(multiplexer);
+			if (routes == null) {
+				routes = new ArrayList<MidiThruRoute>();
+				connected.put(multiplexer, routes);
+			}
+			routes.add(route);
+		}
+
+		for (MidiINMultiplexer multiplexer : multiplexers.values()) {
+
+			List<MidiThruRoute> routes = connected.get(multiplexer);
+			multiplexer.setThruRoutes((routes != null) ? routes
+					.toArray(new MidiThruRoute[routes.size()])
+					: MidiINMultiplexer.NO_THRU_ROUTES);
+		}
+	}
+
+	/**
+	 * Gets a transform property of a thru route
+	 * 
+	 * @param name
+	 *            The name of the property
+	 * @param index
+	 *            The index of the route
+	 * @return The property value, an empty String if it is not set
+	 */
+	private String getThruProperty(String name, int index) {
+
+		String value = properties.getProperty(getThruKey(name, index));
+		return (value != null) ? value : "";
+	}
+
+	/**
+	 * Gets the properties key of a thru route property
+	 * 
+	 * @param name
+	 *            The name of the property, e.g. THRU_IN
+	 * @param index
+	 *            The index of the route
+	 * @return The properties key
+	 */
+	public static String getThruKey(String name, Object index) {
+		return MidiAutomatorProperties.KEY_MIDI_THRU
+				+ MidiAutomatorProperties.INDEX_SEPARATOR + name
+				+ MidiAutomatorProperties.INDEX_SEPARATOR + index;
+	}
+
+	/**
+	 * Loads a midi in remote device. Redundant remote devices are configured
+	 * by indexed function keys, the messages of all remote devices are merged.
+	 * 
+	 * @param midiDeviceName
+	 *            The midi device name
+	 * @param functionKey
+	 *            The function key of the remote device
+	 */
+	private void loadMidiInRemoteDevice(String midiDeviceName,
+			String functionKey) {
+
+		midiINMerger.setWindow(getMergeWindow() * 1000);
+
+		Set<MidiAutomatorReceiver> receivers = new HashSet<MidiAutomatorReceiver>();
 		receivers.add(ctx.getBean(MidiINLearnReceiver.class));
 		receivers.add(ctx.getBean(MidiINExecuteReceiver.class));
 
-		reloadMidiDevice(midiDeviceName,
-				MidiAutomatorProperties.KEY_MIDI_IN_REMOTE_DEVICE, receivers,
-				"IN");
+		reloadMidiDevice(midiDeviceName, functionKey, receivers, "IN");
+	}
+
+	/**
+	 * Loads the redundant midi in remote devices of the indexed function keys
+	 */
+	public void loadRedundantMidiInRemoteDevices() {
+
+		String keyPrefix = MidiAutomatorProperties.KEY_MIDI_IN_REMOTE_DEVICE
+				+ MidiAutomatorProperties.INDEX_SEPARATOR;
+
+		for (Entry<Object, Object> property : properties.entrySet(keyPrefix)) {
+
+			String key = (String) property.getKey();
+			if (key.startsWith(keyPrefix)) {
+				loadMidiDeviceByFunctionKey(key, (String) property.getValue());
+			}
+		}
+	}
+
+	/**
+	 * Gets the configured merge window of the midi in remote devices
+	 * 
+	 * @return The merge window in milliseconds
+	 */
+	public long getMergeWindow() {
+
+		String value = properties
+				.getProperty(MidiAutomatorProperties.KEY_MIDI_IN_MERGE_WINDOW);
+
+		if (value != null) {
+			try {
+				return Long.parseLong(value.trim());
+			} catch (NumberFormatException e) {
+				log.error("Invalid MIDI IN merge window: " + value, e);
+			}
+		}
+
+		return MidiINMerger.DEFAULT_WINDOW;
 	}
 
 	/**
@@ -142,7 +436,7 @@ public class MidiService {
 	private void loadMidiInAutomationTriggerDevice(String midiDeviceName,
 			String functionKey) {
 
-		Set<Receiver> receivers = new HashSet<Receiver>();
+		Set<MidiAutomatorReceiver> receivers = new HashSet<MidiAutomatorReceiver>();
 		receivers.add(ctx.getBean(MidiINLearnReceiver.class));
 		MidiINAutomationReceiver automationReceiver = ctx
 				.getBean(MidiINAutomationReceiver.class);
@@ -160,7 +454,16 @@ public class MidiService {
 	 */
 	private void loadMidiInMetronomDevice(String midiDeviceName) {
 
-		Set<Receiver> receivers = new HashSet<Receiver>();
+		// the metronom follows the midi clock unless it was filtered explicitly
+		if (!midiDeviceName.equals(MidiAutomatorProperties.VALUE_NULL)
+				&& properties.getProperty(MidiAutomatorProperties.getDeviceKey(
+						MidiAutomatorProperties.KEY_MIDI_IN_FILTER,
+						midiDeviceName)) == null) {
+			getIngressFilter(midiDeviceName).setRejected(
+					ShortMessage.TIMING_CLOCK, false);
+		}
+
+		Set<MidiAutomatorReceiver> receivers = new HashSet<MidiAutomatorReceiver>();
 		receivers.add(ctx.getBean(MidiINMetronomReceiver.class));
 
 		reloadMidiDevice(midiDeviceName,
@@ -181,7 +484,7 @@ public class MidiService {
 	 *            The direction "IN"/"OUT" of the midi device
 	 */
 	private void reloadMidiDevice(String midiDeviceName, String functionKey,
-			Set<Receiver> receivers, String direction) {
+			Set<MidiAutomatorReceiver> receivers, String direction) {
 
 		// get old MidiDevice
 		MidiDevice oldMidiDevice = midiDevices.get(functionKey);
@@ -191,11 +494,20 @@ public class MidiService {
 			oldDeviceName = oldMidiDevice.getDeviceInfo().getName();
 		}
 
+		if (midiDeviceName.equals(MidiAutomatorProperties.VALUE_NULL)) {
+			configuredDeviceNames.remove(functionKey);
+		} else {
+			configuredDeviceNames.put(functionKey, midiDeviceName);
+		}
+
 		if (!midiDeviceName.equals(oldDeviceName)) {
 
 			// unregister old function
 			midiDevices.put(functionKey, null);
 
+			// unload old device
+			unloadMidiDevice(oldMidiDevice, functionKey);
+
 			// load new device
 			if (!midiDeviceName.equals(MidiAutomatorProperties.VALUE_NULL)) {
 
@@ -204,9 +516,6 @@ public class MidiService {
 			} else {
 				midiDevices.remove(functionKey);
 			}
-
-			// unload old device
-			unloadMidiDevice(oldDeviceName, functionKey, direction);
 		}
 	}
 
@@ -223,7 +532,7 @@ public class MidiService {
 	 *            The direction "IN"/"OUT" of the midi device
 	 */
 	private void loadMidiDevice(String midiDeviceName, String functionKey,
-			Set<Receiver> receivers, String direction) {
+			Set<MidiAutomatorReceiver> receivers, String direction) {
 
 		String loadingErrorMessage = String.format(
 				Messages.MSG_MIDI_DEVICE_NOT_AVAILABLE, midiDeviceName);
@@ -241,10 +550,8 @@ public class MidiService {
 			}
 
 			if (receivers != null) {
-				for (Receiver receiver : receivers) {
-					connectMidiDeviceWithReceiver(device, receiver, direction);
-					midiFunctionReceiverMapping.put(functionKey, receivers);
-				}
+				midiFunctionReceiverMapping.put(functionKey,
+						attachReceiversToDevice(device, receivers));
 			}
 
 			// register new device for function
@@ -258,74 +565,307 @@ public class MidiService {
 	}
 
 	/**
-	 * Connects a device with a receiver and opens the device
+	 * Attaches receivers to the multiplexer of a midi IN device. Receivers of
+	 * the same class are shared by all functions of the device.
 	 * 
 	 * @param device
 	 *            The midi device
-	 * @param receiver
-	 *            The receiver
-	 * @param direction
-	 *            The direction of the midi device
+	 * @param receivers
+	 *            The receivers
+	 * @return The attached receivers
 	 * @throws MidiUnavailableException
 	 *             If the midi device is not available
 	 */
-	private void connectMidiDeviceWithReceiver(MidiDevice device,
-			Receiver receiver, String direction)
+	private Set<MidiAutomatorReceiver> attachReceiversToDevice(
+			MidiDevice device, Set<MidiAutomatorReceiver> receivers)
 			throws MidiUnavailableException {
 
-		if (device != null) {
+		if (device == null) {
+			throw new MidiUnavailableException();
+		}
 
-			MidiUtils.setReceiverToDevice(device, receiver);
+		MidiINMultiplexer multiplexer = getMultiplexer(device);
+		Set<MidiAutomatorReceiver> attachedReceivers = new HashSet<MidiAutomatorReceiver>();
+
+		for (MidiAutomatorReceiver receiver : receivers) {
+			attachedReceivers.add(multiplexer.attach(receiver));
 
 			log.info("Connected " + receiver.getClass().getSimpleName()
 					+ " with " + device.getDeviceInfo().getName());
+		}
+
+		return attachedReceivers;
+	}
+
+	/**
+	 * Gets the multiplexer of a midi IN device. A new multiplexer is connected
+	 * to the only transmitter of the device, configured with the ingress filter
+	 * and the overflow policy of the device and gets a midi IN detector.
+	 * 
+	 * @param device
+	 *            The midi device
+	 * @return The multiplexer
+	 * @throws MidiUnavailableException
+	 *             If the transmitter of the device is not available
+	 */
+	private MidiINMultiplexer getMultiplexer(MidiDevice device)
+			throws MidiUnavailableException {
 
-			// connect MIDI IN detector
-			if (direction.equals("IN")) {
-				Receiver midiINDetector = ctx.getBean(MidiINDetector.class);
+		MidiINMultiplexer multiplexer = multiplexers.get(device);
 
-				if (!MidiUtils.isReceiverUsedByDevice(device, midiINDetector)) {
+		if (multiplexer == null) {
+			String deviceName = device.getDeviceInfo().getName();
 
-					MidiUtils.setReceiverToDevice(device, midiINDetector);
+			multiplexer = ctx.getBean(MidiINMultiplexer.class);
+			multiplexer.setDeviceName(deviceName);
+			multiplexer.setIngressFilter(getIngressFilter(deviceName));
+			multiplexer.getIngressBuffer().setOverflowPolicy(
+					getOverflowPolicy(deviceName));
+			setPairedControllers(multiplexer.getParameterAssembler(),
+					deviceName);
+			setSelectorWindow(multiplexer.getParameterAssembler(),
+					deviceName);
+			multiplexer.attach(ctx.getBean(MidiINDetector.class));
 
-					log.info("Connected "
-							+ midiINDetector.getClass().getSimpleName()
-							+ " with " + device.getDeviceInfo().getName());
-				}
+			if (captureRecorder != null) {
+				multiplexer.setIngressTap(captureRecorder.getTap(deviceName));
 			}
 
-		} else {
-			throw new MidiUnavailableException();
+			multiplexer.open(device.getTransmitter());
+			multiplexers.put(device, multiplexer);
+
+			log.info("Connected MIDI IN multiplexer with " + deviceName);
 		}
+
+		return multiplexer;
 	}
 
 	/**
-	 * Unloads a midi device
+	 * Gets the multiplexer of the midi IN device of a function
 	 * 
-	 * @param deviceName
-	 *            The name of the device
 	 * @param functionKey
-	 *            The name of the function key
-	 * @param midiDirection
-	 *            The direction of the midi port "IN"/"OUT"
+	 *            The function key of the midi IN device
+	 * @return The multiplexer, <NULL> if no midi IN device is loaded for the
+	 *         function
 	 */
-	private void unloadMidiDevice(String deviceName, String functionKey,
-			String midiDirection) {
+	public MidiINMultiplexer getMidiINMultiplexer(String functionKey) {
+
+		MidiDevice device = midiDevices.get(functionKey);
+
+		if (device == null) {
+			return null;
+		}
+		return multiplexers.get(device);
+	}
 
-		if (deviceName != null
-				&& !deviceName.equals(MidiAutomatorProperties.VALUE_NULL)) {
+	/**
+	 * Sets the configured 14 bit controllers of a midi device to the parameter
+	 * assembler of its multiplexer. No 14 bit controllers are assembled by
+	 * default.
+	 * 
+	 * @param assembler
+	 *            The parameter assembler
+	 * @param deviceName
+	 *            The name of the midi device
+	 */
+	private void setPairedControllers(MidiParameterAssembler assembler,
+			String deviceName) {
+
+		String value = properties.getProperty(MidiAutomatorProperties
+				.getDeviceKey(
+						MidiAutomatorProperties.KEY_MIDI_IN_14_BIT_CONTROLLERS,
+						deviceName));
+
+		if (value != null) {
 			try {
-				MidiDevice device = MidiUtils.getMidiDevice(deviceName,
-						midiDirection);
+				assembler.setPairedControllers(value);
+			} catch (NumberFormatException e) {
+				log.error("Invalid MIDI IN 14 bit controllers: " + value, e);
+			}
+		}
+	}
 
-				unloadMidiDevice(device, functionKey);
+	/**
+	 * Sets the configured window of a midi device in which a data entry must
+	 * follow the NRPN or RPN parameter number to the parameter assembler of
+	 * its multiplexer.
+	 * 
+	 * @param assembler
+	 *            The parameter assembler
+	 * @param deviceName
+	 *            The name of the midi device
+	 */
+	private void setSelectorWindow(MidiParameterAssembler assembler,
+			String deviceName) {
 
-			} catch (MidiUnavailableException e) {
-				log.error("Retrieving MIDI device failed.", e);
+		String value = properties.getProperty(MidiAutomatorProperties
+				.getDeviceKey(
+						MidiAutomatorProperties.KEY_MIDI_IN_SELECTOR_WINDOW,
+						deviceName));
+
+		if (value != null) {
+			try {
+				assembler.setSelectorWindow(Long.parseLong(value.trim()));
+			} catch (IllegalArgumentException e) {
+				log.error("Invalid MIDI IN selector window: " + value, e);
 			}
 		}
 	}
 
+	/**
+	 * Gets the configured overflow policy for the ingress buffers of a midi
+	 * device.
+	 * 
+	 * @param deviceName
+	 *            The name of the midi device
+	 * @return The overflow policy
+	 */
+	public OverflowPolicy getOverflowPolicy(String deviceName) {
+
+		String value = properties.getProperty(MidiAutomatorProperties
+				.getDeviceKey(
+						MidiAutomatorProperties.KEY_MIDI_IN_OVERFLOW_POLICY,
+						deviceName));
+
+		if (value != null) {
+			try {
+				return OverflowPolicy.valueOf(value);
+			} catch (IllegalArgumentException e) {
+				log.error("Unknown MIDI overflow policy: " + value, e);
+			}
+		}
+
+		return MidiIngressRingBuffer.DEFAULT_OVERFLOW_POLICY;
+	}
+
+	/**
+	 * Gets the ingress filter of a midi device. The filter is shared by all
+	 * receivers of the device and loaded from the properties on first use.
+	 * 
+	 * @param deviceName
+	 *            The name of the midi device
+	 * @return The ingress filter
+	 */
+	public synchronized MidiIngressFilter getIngressFilter(String deviceName) {
+
+		MidiIngressFilter filter = ingressFilters.get(deviceName);
+
+		if (filter == null) {
+			filter = new MidiIngressFilter();
+
+			String value = properties.getProperty(MidiAutomatorProperties
+					.getDeviceKey(MidiAutomatorProperties.KEY_MIDI_IN_FILTER,
+							deviceName));
+
+			if (value != null) {
+				try {
+					filter.setRejectedStatuses(value);
+				} catch (NumberFormatException e) {
+					log.error("Invalid MIDI IN filter: " + value, e);
+				}
+			}
+			ingressFilters.put(deviceName, filter);
+		}
+
+		return filter;
+	}
+
+	/**
+	 * Stores the ingress filter of a midi device to the properties
+	 * 
+	 * @param deviceName
+	 *            The name of the midi device
+	 */
+	public void storeIngressFilter(String deviceName) {
+
+		properties.setProperty(MidiAutomatorProperties.getDeviceKey(
+				MidiAutomatorProperties.KEY_MIDI_IN_FILTER, deviceName),
+				getIngressFilter(deviceName).getRejectedStatuses());
+		try {
+			properties.store();
+		} catch (IOException e) {
+			log.error("Storing the MIDI IN filter failed.", e);
+		}
+	}
+
+	/**
+	 * Gets the ingress counters of all connected midi IN devices
+	 * 
+	 * @return The counters by device
+	 */
+	public Map<String, String> getIngressCounters() {
+
+		Map<String, String> counters = new TreeMap<String, String>();
+
+		for (MidiINMultiplexer multiplexer : multiplexers.values()) {
+			counters.put(multiplexer.getDeviceName(), multiplexer
+					.getIngressBuffer().toString()
+					+ ", "
+					+ multiplexer.getIngressFilter());
+		}
+
+		return counters;
+	}
+
+	/**
+	 * Starts capturing the raw incoming midi stream of all midi IN devices.
+	 */
+	public void startMidiINCapture() {
+
+		captureRecorder = new MidiCaptureRecorder();
+		captureRecorder.start();
+
+		for (MidiINMultiplexer multiplexer : multiplexers.values()) {
+			multiplexer.setIngressTap(captureRecorder.getTap(multiplexer
+					.getDeviceName()));
+		}
+
+		log.info("Started MIDI IN capture");
+	}
+
+	/**
+	 * Stops capturing and writes the captured stream to a Standard MIDI File
+	 * in the settings directory.
+	 * 
+	 * @return The path of the capture file, <NULL> if no capture was running
+	 * @throws IOException
+	 *             If the capture file can not be written
+	 */
+	public String stopMidiINCapture() throws IOException {
+
+		MidiCaptureRecorder recorder = captureRecorder;
+
+		if (recorder == null) {
+			return null;
+		}
+
+		captureRecorder = null;
+		recorder.stop();
+
+		for (MidiINMultiplexer multiplexer : multiplexers.values()) {
+			multiplexer.setIngressTap(null);
+		}
+
+		String fileName = CAPTURE_FILE_PREFIX
+				+ new SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date())
+				+ CAPTURE_FILE_EXTENSION;
+		File file = new File(resources.getPropertiesPath(), fileName);
+		recorder.write(file);
+
+		log.info("Captured " + recorder.getEventCount()
+				+ " MIDI messages to: " + file.getAbsolutePath());
+		return file.getAbsolutePath();
+	}
+
+	/**
+	 * Checks if the incoming midi stream is captured
+	 * 
+	 * @return <TRUE> if a capture is running, else <FALSE>
+	 */
+	public boolean isCapturingMidiIN() {
+		return captureRecorder != null;
+	}
+
 	/**
 	 * Unloads a midi device
 	 * 
@@ -336,23 +876,19 @@ public class MidiService {
 	 */
 	private void unloadMidiDevice(MidiDevice device, String functionKey) {
 
-		try {
-
-			if (device != null) {
-				removeReceiversFromDevice(device,
-						midiFunctionReceiverMapping.get(functionKey));
+		if (device != null) {
+			removeReceiversFromDevice(device,
+					midiFunctionReceiverMapping.remove(functionKey));
 
-				if (!midiDevices.containsValue(device)) {
-					device.close();
+			if (!midiDevices.containsValue(device)) {
+				closeMultiplexer(device);
+				MidiUtils.releaseCachedReceiver(device);
+				device.close();
 
-					log.info("Closed MIDI "
-							+ MidiUtils.getDirectionOfMidiDevice(device)
-							+ " device: " + device.getDeviceInfo().getName());
-				}
+				log.info("Closed MIDI "
+						+ MidiUtils.getDirectionOfMidiDevice(device)
+						+ " device: " + device.getDeviceInfo().getName());
 			}
-
-		} catch (MidiUnavailableException e) {
-			log.error("Unloading MIDI device failed.", e);
 		}
 	}
 
@@ -361,7 +897,12 @@ public class MidiService {
 	 */
 	public void unloadAllMidiDevices() {
 
-		for (Map.Entry<String, MidiDevice> entry : midiDevices.entrySet()) {
+		Map<String, MidiDevice> loadedDevices = new HashMap<String, MidiDevice>(
+				midiDevices);
+		midiDevices.clear();
+		configuredDeviceNames.clear();
+
+		for (Map.Entry<String, MidiDevice> entry : loadedDevices.entrySet()) {
 
 			String functionKey = entry.getKey();
 			MidiDevice device = entry.getValue();
@@ -371,50 +912,119 @@ public class MidiService {
 	}
 
 	/**
-	 * Removes the receivers from the device
+	 * Starts watching the midi devices, so configured functions are
+	 * disconnected when their device is plugged out and reconnected when it is
+	 * plugged in again.
+	 */
+	private void watchMidiDevices() {
+
+		MidiDeviceRegistry registry = MidiUtils.getMidiDeviceRegistry();
+		registry.addListener(deviceListener);
+		registry.startPolling();
+	}
+
+	/**
+	 * Disconnects all functions from a detached midi device. The functions
+	 * stay configured for reconnecting.
+	 * 
+	 * @param device
+	 *            The detached midi device
+	 */
+	private void disconnectMidiDevice(MidiDevice device) {
+
+		List<String> functionKeys = new ArrayList<String>();
+
+		for (Map.Entry<String, MidiDevice> entry : midiDevices.entrySet()) {
+			if (entry.getValue() == device) {
+				functionKeys.add(entry.getKey());
+			}
+		}
+
+		if (functionKeys.isEmpty()) {
+			return;
+		}
+
+		for (String functionKey : functionKeys) {
+			midiDevices.put(functionKey, null);
+		}
+
+		for (String functionKey : functionKeys) {
+			unloadMidiDevice(device, functionKey);
+		}
+
+		connectThruRoutes();
+
+		log.warn("MIDI device " + device.getDeviceInfo().getName()
+				+ " was detached from " + functionKeys);
+		infoMessagesService.setInfoMessage(String.format(
+				Messages.MSG_MIDI_DEVICE_NOT_AVAILABLE, device.getDeviceInfo()
+						.getName()));
+	}
+
+	/**
+	 * Reconnects all configured functions that are not connected to a midi
+	 * device with the attached device name.
+	 * 
+	 * @param deviceName
+	 *            The name of the attached midi device
+	 */
+	private void reconnectMidiDevice(String deviceName) {
+
+		Map<String, String> configured = new HashMap<String, String>(
+				configuredDeviceNames);
+
+		for (Map.Entry<String, String> entry : configured.entrySet()) {
+
+			String functionKey = entry.getKey();
+
+			if (entry.getValue().equals(deviceName)
+					&& midiDevices.get(functionKey) == null) {
+
+				log.info("Reconnecting " + functionKey + " to MIDI device "
+						+ deviceName);
+				loadMidiDeviceByFunctionKey(functionKey, deviceName);
+			}
+		}
+	}
+
+	/**
+	 * Detaches the receivers from the multiplexer of the device
 	 * 
 	 * @param device
 	 *            The midi device
 	 * @param registeredReceivers
 	 *            The midi receivers
-	 * @throws MidiUnavailableException
-	 *             If the midi device is not available
-	 * 
 	 */
 	private void removeReceiversFromDevice(MidiDevice device,
-			Set<Receiver> registeredReceivers) throws MidiUnavailableException {
+			Set<MidiAutomatorReceiver> registeredReceivers) {
 
-		if (device != null) {
+		MidiINMultiplexer multiplexer = multiplexers.get(device);
 
-			if (registeredReceivers != null) {
-				for (Receiver receiver : registeredReceivers) {
-					MidiUtils.removeReceiverFromDevice(device, receiver
-							.getClass().getName());
+		if (multiplexer != null && registeredReceivers != null) {
+			for (MidiAutomatorReceiver receiver : registeredReceivers) {
+				multiplexer.detach(receiver);
 
-					log.info("Removed " + receiver.getClass().getSimpleName()
-							+ " from " + device.getDeviceInfo().getName());
-				}
+				log.info("Removed " + receiver.getClass().getSimpleName()
+						+ " from " + device.getDeviceInfo().getName());
 			}
+		}
+	}
 
-			// remove MIDI IN detector
-			List<Transmitter> transmitters = device.getTransmitters();
-
-			if (transmitters.size() <= 1) {
+	/**
+	 * Closes the multiplexer of a midi IN device and its transmitter
+	 * 
+	 * @param device
+	 *            The midi device
+	 */
+	private void closeMultiplexer(MidiDevice device) {
 
-				Receiver detectorReceiver = null;
-				if (transmitters.size() > 0) {
-					detectorReceiver = transmitters.get(0).getReceiver();
-				}
+		MidiINMultiplexer multiplexer = multiplexers.remove(device);
 
-				if (detectorReceiver != null) {
-					MidiUtils.removeReceiverFromDevice(device, detectorReceiver
-							.getClass().getName());
+		if (multiplexer != null) {
+			multiplexer.close();
 
-					log.info("Removed "
-							+ detectorReceiver.getClass().getSimpleName()
-							+ " from " + device.getDeviceInfo().getName());
-				}
-			}
+			log.info("Removed MIDI IN multiplexer from "
+					+ device.getDeviceInfo().getName());
 		}
 	}
 
@@ -425,18 +1035,39 @@ public class MidiService {
 	 *            The midi message
 	 */
 	public void executeMidiMessage(MidiMessage message) {
+		long now = System.nanoTime();
+		executeMidiMessage(message, now / 1000, now);
+	}
+
+	/**
+	 * Runs the function for the midi message
+	 * 
+	 * @param message
+	 *            The midi message
+	 * @param time
+	 *            The time stamp of the midi message in microseconds for
+	 *            debouncing
+	 * @param triggerTime
+	 *            The System.nanoTime() when the midi message arrived
+	 */
+	public void executeMidiMessage(MidiMessage message, long time,
+			long triggerTime) {
 
 		if (!midiLearnService.isMidiLearning()) {
 
-			String signature = MidiUtils.messageToString(message);
-			log.debug("Executed MIDI message: " + signature);
+			long dispatchTime = System.nanoTime();
+			MidiRoute route = midiRoutingService.getRoute(message, time,
+					Input.REMOTE);
 
-			midiExecuteService.openFileByLearnedMidiMessage(message);
-			midiExecuteService.openFileByMasterMidiMessage(message);
-			midiExecuteService.openPrevFileByLearnedMidiMessage(message);
-			midiExecuteService.openNextFileByLearnedMidiMessage(message);
-			midiExecuteService.hideMainFrameByLearnedMidiMessage(message);
+			if (route != null) {
+				log.debug("Executed MIDI route: " + route);
+				midiExecuteService.executeLearnedMidiRoute(route, time,
+						triggerTime);
+				latencyService.record(Stage.DISPATCH, dispatchTime);
+			}
 
+			midiExecuteService.openFileByMasterMidiMessage(message,
+					triggerTime);
 		}
 	}
 
@@ -466,26 +1097,82 @@ public class MidiService {
 	}
 
 	/**
-	 * Sends a midi signature to a given device
+	 * Sends a midi message to a given device immediately
 	 * 
 	 * @param device
 	 *            The midi device
-	 * @param midiSignature
-	 *            The midi signature
+	 * @param message
+	 *            The midi message
+	 * @throws MidiUnavailableException
+	 *             If the midi device is not available
 	 */
 	public void sendMidiMessage(MidiDevice device, MidiMessage message)
 			throws MidiUnavailableException {
+		sendMidiMessage(device, message, 0);
+	}
+
+	/**
+	 * Sends a midi message to a given device after a delay
+	 * 
+	 * @param device
+	 *            The midi device
+	 * @param message
+	 *            The midi message
+	 * @param delay
+	 *            The delay in milliseconds
+	 * @throws MidiUnavailableException
+	 *             If the midi device is not available
+	 */
+	public void sendMidiMessage(MidiDevice device, final MidiMessage message,
+			long delay) throws MidiUnavailableException {
 
 		if (message == null) {
 			return;
 		}
 
-		long timeStamp = device.getMicrosecondPosition();
-		device.open();
-		device.getReceiver().send(message, timeStamp);
-		showMidiOUTSignal();
+		midiOutScheduler.send(device, message, delay, new Runnable() {
+			public void run() {
+				showMidiOUTSignal();
+				log.debug("Send MIDI message: "
+						+ MidiUtils.messageToString(message));
+			}
+		});
+	}
+
+	/**
+	 * Gets the offset of the messages sent by a midi OUT function
+	 * 
+	 * @param functionKey
+	 *            The function key of the midi OUT device
+	 * @param defaultOffset
+	 *            The offset if none is configured
+	 * @return The offset in milliseconds
+	 */
+	public long getSendOffset(String functionKey, long defaultOffset) {
+
+		String value = properties.getProperty(getSendOffsetKey(functionKey));
 
-		log.debug("Send MIDI message: " + MidiUtils.messageToString(message));
+		if (value != null) {
+			try {
+				return Long.parseLong(value.trim());
+			} catch (NumberFormatException e) {
+				log.error("Invalid MIDI OUT offset: " + value, e);
+			}
+		}
+
+		return defaultOffset;
+	}
+
+	/**
+	 * Gets the properties key of the offset of a midi OUT function
+	 * 
+	 * @param functionKey
+	 *            The function key of the midi OUT device
+	 * @return The properties key
+	 */
+	public static String getSendOffsetKey(String functionKey) {
+		return MidiAutomatorProperties.KEY_MIDI_OUT_OFFSET
+				+ MidiAutomatorProperties.INDEX_SEPARATOR + functionKey;
 	}
 
 	/**
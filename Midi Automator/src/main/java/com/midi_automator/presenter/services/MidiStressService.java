@@ -0,0 +1,493 @@
+package com.midi_automator.presenter.services;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiDevice;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.MidiUnavailableException;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.Sequence;
+import javax.swing.SwingUtilities;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.midi_automator.midi.MidiCaptureReplayer;
+import com.midi_automator.midi.MidiINMultiplexer;
+import com.midi_automator.midi.MidiLatencyProbe;
+import com.midi_automator.midi.MidiLoopbackDeviceProvider;
+import com.midi_automator.midi.MidiReplayReport;
+import com.midi_automator.midi.MidiStressGenerator;
+import com.midi_automator.midi.MidiStressGenerator.Profile;
+import com.midi_automator.midi.MidiStressReport;
+import com.midi_automator.model.MidiAutomatorProperties;
+import com.midi_automator.presenter.services.LatencyService.Drop;
+import com.midi_automator.utils.LatencyHistogram;
+import com.midi_automator.utils.MidiUtils;
+
+/**
+ * Stresses the receiver chain with synthetic midi traffic. Every stress device
+ * is an in-memory loopback port that is loaded as a redundant remote device and
+ * as an automation trigger device, so the traffic runs through the learn,
+ * execute, automation and detector receivers of the running show. The event
+ * dispatch thread is probed while the traffic runs, as AWT does not expose the
+ * length of its event queue. A captured midi stream is replayed through the
+ * same stress devices, one per track of the capture.
+ *
+ * @author aguelle
+ *
+ */
+@Service
+public class MidiStressService {
+
+	private Logger log = Logger.getLogger(this.getClass().getName());
+
+	public static final String PORT_NAME = "MIDI Automator Stress ";
+
+	private static final String FUNCTION_KEY_SUFFIX = "STRESS";
+	private static final String KEY_RATE = "RATE";
+	private static final String KEY_DURATION = "DURATION";
+	private static final String KEY_TEMPO = "TEMPO";
+	private static final String KEY_DEVICES = "DEVICES";
+	private static final String KEY_SEED = "SEED";
+
+	private static final long EDT_PROBE_INTERVAL = TimeUnit.MILLISECONDS
+			.toNanos(10);
+	private static final long DRAIN_TIMEOUT = TimeUnit.SECONDS.toNanos(10);
+	private static final long DRAIN_PARK_NANOS = TimeUnit.MILLISECONDS
+			.toNanos(1);
+
+	@Autowired
+	private MidiAutomatorProperties properties;
+
+	@Autowired
+	private MidiService midiService;
+	@Autowired
+	private LatencyService latencyService;
+
+	private volatile boolean running;
+
+	/**
+	 * Runs a stress test with the configured traffic. Must not be called from
+	 * the event dispatch thread, as it is probed during the run.
+	 *
+	 * @param profile
+	 *            The kind of traffic
+	 * @return The report of the run
+	 * @throws MidiUnavailableException
+	 *             If the stress devices could not be loaded
+	 * @throws InterruptedException
+	 *             If the run was interrupted
+	 */
+	public MidiStressReport stress(Profile profile)
+			throws MidiUnavailableException, InterruptedException {
+
+		if (SwingUtilities.isEventDispatchThread()) {
+			throw new IllegalStateException(
+					"MIDI stress test must not run on the EDT");
+		}
+
+		MidiStressGenerator generator = new MidiStressGenerator();
+		generator.setProfile(profile);
+		generator.setRate((int) getProperty(KEY_RATE,
+				MidiStressGenerator.DEFAULT_RATE));
+		generator.setDuration(getProperty(KEY_DURATION,
+				MidiStressGenerator.DEFAULT_DURATION));
+		generator.setTempo((int) getProperty(KEY_TEMPO,
+				MidiStressGenerator.DEFAULT_TEMPO));
+		generator.setSeed(getProperty(KEY_SEED, System.nanoTime()));
+		int devices = (int) Math.max(1,
+				getProperty(KEY_DEVICES, MidiStressGenerator.DEFAULT_DEVICES));
+
+		running = true;
+		String ports = System.getProperty(
+				MidiLoopbackDeviceProvider.PORTS_PROPERTY, "");
+
+		try {
+			return stress(generator, devices, ports);
+		} finally {
+			unloadStressDevices(devices, ports);
+			running = false;
+		}
+	}
+
+	/**
+	 * Replays a midi capture through the receivers of the running show. Every
+	 * track is injected into its own stress device. Must not be called from
+	 * the event dispatch thread.
+	 *
+	 * @param file
+	 *            The captured Standard MIDI File
+	 * @param speed
+	 *            1 for real time, N for N times faster,
+	 *            MidiCaptureReplayer.AS_FAST_AS_POSSIBLE for no waiting
+	 * @return The report of the replay
+	 * @throws InvalidMidiDataException
+	 *             If the file is no valid Standard MIDI File
+	 * @throws IOException
+	 *             If the file can not be read
+	 * @throws MidiUnavailableException
+	 *             If the stress devices could not be loaded
+	 * @throws InterruptedException
+	 *             If the replay was interrupted
+	 */
+	public MidiReplayReport replay(File file, double speed)
+			throws InvalidMidiDataException, IOException,
+			MidiUnavailableException, InterruptedException {
+
+		if (SwingUtilities.isEventDispatchThread()) {
+			throw new IllegalStateException(
+					"MIDI capture replay must not run on the EDT");
+		}
+
+		Sequence sequence = MidiSystem.getSequence(file);
+		int devices = Math.max(1, sequence.getTracks().length);
+
+		MidiCaptureReplayer replayer = new MidiCaptureReplayer();
+		replayer.setSpeed(speed);
+
+		running = true;
+		String ports = System.getProperty(
+				MidiLoopbackDeviceProvider.PORTS_PROPERTY, "");
+
+		try {
+			return replayer.replay(sequence,
+					loadStressDevices(devices, ports));
+		} finally {
+			unloadStressDevices(devices, ports);
+			running = false;
+		}
+	}
+
+	/**
+	 * Runs the traffic of a generator through the stress devices
+	 *
+	 * @param generator
+	 *            The generator
+	 * @param devices
+	 *            The number of stress devices
+	 * @param ports
+	 *            The configured loopback ports
+	 * @return The report of the run
+	 * @throws MidiUnavailableException
+	 *             If the stress devices could not be loaded
+	 * @throws InterruptedException
+	 *             If the run was interrupted
+	 */
+	private MidiStressReport stress(MidiStressGenerator generator,
+			int devices, String ports) throws MidiUnavailableException,
+			InterruptedException {
+
+		MidiINMultiplexer[] multiplexers = loadStressDevices(devices, ports);
+		Receiver[] receivers = new Receiver[devices];
+		AtomicLong processed = new AtomicLong();
+		LatencyHistogram histogram = new LatencyHistogram();
+
+		for (int i = 0; i < devices; i++) {
+
+			multiplexers[i].attach(new MidiLatencyProbe(histogram, processed));
+
+			MidiDevice out = MidiUtils.getMidiDevice(getPortName(i), "OUT");
+			out.open();
+			receivers[i] = out.getReceiver();
+		}
+
+		Map<Drop, Long> drops = new EnumMap<Drop, Long>(Drop.class);
+		for (Drop drop : Drop.values()) {
+			drops.put(drop, latencyService.getDropCount(drop));
+		}
+
+		long heapBefore = getUsedHeap(true);
+		EdtProbe edtProbe = new EdtProbe();
+		edtProbe.start();
+
+		long start = System.nanoTime();
+		long sent = generator.generate(receivers);
+		MidiReplayReport ingress = new MidiReplayReport(sent,
+				System.nanoTime() - start, processed, histogram, multiplexers);
+
+		long deadline = System.nanoTime() + DRAIN_TIMEOUT;
+		while (!ingress.isComplete() && System.nanoTime() - deadline < 0) {
+			LockSupport.parkNanos(DRAIN_PARK_NANOS);
+		}
+
+		edtProbe.stopProbing();
+		long heapAfter = getUsedHeap(true);
+
+		for (Drop drop : Drop.values()) {
+			drops.put(drop, latencyService.getDropCount(drop) - drops.get(drop));
+		}
+
+		MidiStressReport report = new MidiStressReport(generator, ingress,
+				drops, edtProbe.lag, edtProbe.maxBacklog,
+				heapBefore, heapAfter, edtProbe.maxHeap);
+
+		log.info("MIDI stress test: " + report);
+		return report;
+	}
+
+	/**
+	 * Adds the loopback ports of the stress devices and loads them as remote
+	 * and automation trigger devices on the event dispatch thread
+	 *
+	 * @param devices
+	 *            The number of stress devices
+	 * @param ports
+	 *            The configured loopback ports
+	 * @return The multiplexers of the stress devices
+	 * @throws MidiUnavailableException
+	 *             If a stress device could not be loaded
+	 * @throws InterruptedException
+	 *             If the loading was interrupted
+	 */
+	private MidiINMultiplexer[] loadStressDevices(final int devices,
+			String ports) throws MidiUnavailableException,
+			InterruptedException {
+
+		StringBuilder stressPorts = new StringBuilder(ports);
+		for (int i = 0; i < devices; i++) {
+			stressPorts.append(",").append(getPortName(i));
+		}
+		System.setProperty(MidiLoopbackDeviceProvider.PORTS_PROPERTY,
+				stressPorts.toString());
+
+		final MidiINMultiplexer[] multiplexers = new MidiINMultiplexer[devices];
+
+		invokeAndWait(new Runnable() {
+			public void run() {
+
+				MidiUtils.getMidiDeviceRegistry().refresh();
+
+				for (int i = 0; i < devices; i++) {
+					midiService.loadMidiDeviceByFunctionKey(
+							getRemoteFunctionKey(i), getPortName(i));
+					midiService.loadMidiDeviceByFunctionKey(
+							getAutomationFunctionKey(i), getPortName(i));
+					multiplexers[i] = midiService
+							.getMidiINMultiplexer(getRemoteFunctionKey(i));
+				}
+			}
+		});
+
+		for (int i = 0; i < devices; i++) {
+			if (multiplexers[i] == null) {
+				throw new MidiUnavailableException("Stress device "
+						+ getPortName(i) + " is not available");
+			}
+		}
+
+		return multiplexers;
+	}
+
+	/**
+	 * Unloads the stress devices on the event dispatch thread and removes
+	 * their loopback ports
+	 *
+	 * @param devices
+	 *            The number of stress devices
+	 * @param ports
+	 *            The loopback ports that were configured before the run
+	 * @throws InterruptedException
+	 *             If the unloading was interrupted
+	 */
+	private void unloadStressDevices(final int devices, String ports)
+			throws InterruptedException {
+
+		for (int i = 0; i < devices; i++) {
+			try {
+				MidiUtils.getMidiDevice(getPortName(i), "OUT").close();
+			} catch (MidiUnavailableException e) {
+				// the port was never loaded
+			}
+		}
+
+		System.setProperty(MidiLoopbackDeviceProvider.PORTS_PROPERTY, ports);
+
+		invokeAndWait(new Runnable() {
+			public void run() {
+
+				for (int i = 0; i < devices; i++) {
+					midiService.loadMidiDeviceByFunctionKey(
+							getRemoteFunctionKey(i),
+							MidiAutomatorProperties.VALUE_NULL);
+					midiService.loadMidiDeviceByFunctionKey(
+							getAutomationFunctionKey(i),
+							MidiAutomatorProperties.VALUE_NULL);
+				}
+
+				MidiUtils.getMidiDeviceRegistry().refresh();
+			}
+		});
+	}
+
+	/**
+	 * Runs a task on the event dispatch thread and waits for it
+	 *
+	 * @param task
+	 *            The task
+	 * @throws InterruptedException
+	 *             If the waiting was interrupted
+	 */
+	private void invokeAndWait(Runnable task) throws InterruptedException {
+
+		try {
+			SwingUtilities.invokeAndWait(task);
+		} catch (InvocationTargetException e) {
+			log.error("Loading the MIDI stress devices failed", e.getCause());
+		}
+	}
+
+	/**
+	 * Checks if a stress test is running
+	 *
+	 * @return <TRUE> if a stress test is running, else <FALSE>
+	 */
+	public boolean isRunning() {
+		return running;
+	}
+
+	/**
+	 * Gets the used heap
+	 *
+	 * @param collect
+	 *            <TRUE> if the garbage should be collected before
+	 * @return The used heap in bytes
+	 */
+	private static long getUsedHeap(boolean collect) {
+
+		Runtime runtime = Runtime.getRuntime();
+		if (collect) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	/**
+	 * Gets a property of the stress test
+	 *
+	 * @param name
+	 *            The name of the property
+	 * @param defaultValue
+	 *            The value if the property is not configured
+	 * @return The value
+	 */
+	private long getProperty(String name, long defaultValue) {
+
+		String value = properties.getProperty(getKey(name));
+
+		if (value != null) {
+			try {
+				return Long.parseLong(value.trim());
+			} catch (NumberFormatException e) {
+				log.error("Invalid MIDI stress " + name + ": " + value, e);
+			}
+		}
+
+		return defaultValue;
+	}
+
+	/**
+	 * Gets the properties key of a stress test property
+	 *
+	 * @param name
+	 *            The name of the property
+	 * @return The properties key
+	 */
+	public static String getKey(String name) {
+		return MidiAutomatorProperties.KEY_MIDI_STRESS
+				+ MidiAutomatorProperties.INDEX_SEPARATOR + name;
+	}
+
+	private static String getPortName(int index) {
+		return PORT_NAME + (index + 1);
+	}
+
+	private static String getRemoteFunctionKey(int index) {
+		return MidiAutomatorProperties.KEY_MIDI_IN_REMOTE_DEVICE
+				+ MidiAutomatorProperties.INDEX_SEPARATOR + FUNCTION_KEY_SUFFIX
+				+ index;
+	}
+
+	private static String getAutomationFunctionKey(int index) {
+		return MidiAutomatorProperties.KEY_MIDI_IN_AUTOMATION_TRIGGER_DEVICE
+				+ MidiAutomatorProperties.INDEX_SEPARATOR + FUNCTION_KEY_SUFFIX
+				+ index;
+	}
+
+	/**
+	 * Posts probes to the event queue and measures how long they wait. The
+	 * probes that are posted but not run yet are the backlog of the event
+	 * queue. The heap is sampled with every probe.
+	 *
+	 * @author aguelle
+	 *
+	 */
+	private static class EdtProbe extends Thread {
+
+		private final LatencyHistogram lag = new LatencyHistogram();
+		private final AtomicLong run = new AtomicLong();
+		private volatile boolean probing = true;
+		private long posted;
+		private long maxBacklog;
+		private long maxHeap;
+
+		EdtProbe() {
+			super("MIDI Stress EDT Probe");
+			setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+
+			while (probing) {
+
+				final long postTime = System.nanoTime();
+				posted++;
+
+				SwingUtilities.invokeLater(new Runnable() {
+					public void run() {
+						lag.record(TimeUnit.NANOSECONDS.toMicros(System
+								.nanoTime() - postTime));
+						run.incrementAndGet();
+					}
+				});
+
+				maxBacklog = Math.max(maxBacklog, posted - run.get());
+				maxHeap = Math.max(maxHeap, getUsedHeap(false));
+				LockSupport.parkNanos(EDT_PROBE_INTERVAL);
+			}
+		}
+
+		/**
+		 * Stops probing and waits for the probe thread and the posted probes.
+		 * The event queue is FIFO, so all probes have run when a final
+		 * sentinel has run. Must not be called from the EDT.
+		 *
+		 * @throws InterruptedException
+		 *             If the waiting was interrupted
+		 */
+		void stopProbing() throws InterruptedException {
+
+			probing = false;
+			join();
+
+			try {
+				SwingUtilities.invokeAndWait(new Runnable() {
+					public void run() {
+					}
+				});
+			} catch (InvocationTargetException e) {
+				throw new IllegalStateException(e.getCause());
+			}
+		}
+	}
+}
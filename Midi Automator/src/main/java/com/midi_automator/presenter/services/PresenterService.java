@@ -3,6 +3,8 @@ package com.midi_automator.presenter.services;
 import java.awt.Frame;
 import java.io.IOException;
 
+import javax.swing.SwingUtilities;
+
 import org.apache.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
@@ -144,9 +146,20 @@ public class PresenterService {
 	}
 
 	/**
-	 * Hides and shows the main frame.
+	 * Hides and shows the main frame. If not called from the EDT the frame is
+	 * hidden or shown asynchronously.
 	 */
 	public void hideShowMainFrame() {
+
+		if (!SwingUtilities.isEventDispatchThread()) {
+			SwingUtilities.invokeLater(new Runnable() {
+				public void run() {
+					hideShowMainFrame();
+				}
+			});
+			return;
+		}
+
 		if (mainFrame.isVisible()) {
 			mainFrame.setState(Frame.ICONIFIED);
 			mainFrame.setVisible(false);
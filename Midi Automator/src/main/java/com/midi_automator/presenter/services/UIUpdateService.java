@@ -0,0 +1,118 @@
+package com.midi_automator.presenter.services;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.swing.SwingUtilities;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.midi_automator.view.windows.MainFrame.ItemList;
+import com.midi_automator.view.windows.MainFrame.MainFrame;
+
+/**
+ * Publishes state changes from the midi dispatcher to the GUI. Only the latest
+ * state is kept, all changes that happened until the EDT runs are applied in
+ * one update. So the dispatcher never waits for the EDT and a busy EDT is never
+ * flooded by midi events. Blinking indicators are not published here, they
+ * are rendered by the animation clock.
+ *
+ * @author aguelle
+ *
+ */
+@Service
+public class UIUpdateService {
+
+	private static final int NO_UPDATE = Integer.MIN_VALUE;
+
+	@Autowired
+	private MainFrame mainFrame;
+	@Autowired
+	private ItemList itemList;
+
+	private final AtomicInteger selectedIndex = new AtomicInteger(NO_UPDATE);
+	private final AtomicReference<String> infoText = new AtomicReference<String>();
+
+	private final AtomicBoolean updatePending = new AtomicBoolean();
+	private boolean applyingSelection;
+
+	private final Runnable update = new Runnable() {
+		public void run() {
+			applyUpdates();
+		}
+	};
+
+	/**
+	 * Publishes the selected index of the item list
+	 *
+	 * @param index
+	 *            The selected index
+	 */
+	public void setSelectedIndex(int index) {
+		selectedIndex.set(index);
+		requestUpdate();
+	}
+
+	/**
+	 * Publishes the text of the info label
+	 *
+	 * @param text
+	 *            The info text
+	 */
+	public void setInfoText(String text) {
+		infoText.set(text);
+		requestUpdate();
+	}
+
+	/**
+	 * Checks if the GUI is currently applying a published selection. Must only
+	 * be called from the EDT.
+	 *
+	 * @return <TRUE> if the selection was not made by the user, else <FALSE>
+	 */
+	public boolean isApplyingSelection() {
+		return applyingSelection;
+	}
+
+	/**
+	 * Requests an update of the GUI. Updates are applied immediately if called
+	 * from the EDT, else at most one update is pending on the EDT.
+	 */
+	private void requestUpdate() {
+
+		if (SwingUtilities.isEventDispatchThread()) {
+			applyUpdates();
+			return;
+		}
+
+		if (updatePending.compareAndSet(false, true)) {
+			SwingUtilities.invokeLater(update);
+		}
+	}
+
+	/**
+	 * Applies all published state changes to the GUI. Must only be called from
+	 * the EDT.
+	 */
+	private void applyUpdates() {
+
+		updatePending.set(false);
+
+		int index = selectedIndex.getAndSet(NO_UPDATE);
+		if (index != NO_UPDATE) {
+			applyingSelection = true;
+			try {
+				itemList.setSelectedIndex(index);
+			} finally {
+				applyingSelection = false;
+			}
+		}
+
+		String text = infoText.getAndSet(null);
+		if (text != null) {
+			mainFrame.setInfoText(text);
+		}
+	}
+}
@@ -0,0 +1,173 @@
+package com.midi_automator.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed memory latency histogram in the style of HdrHistogram. Values are
+ * recorded in microseconds into log-linear buckets: every power of two is
+ * divided into 16 linear sub buckets, so percentiles are exact up to 32
+ * microseconds and have a relative error of less than 6.25% above. Recording is
+ * lock-free and never allocates.
+ *
+ * @author aguelle
+ *
+ */
+public class LatencyHistogram {
+
+	private static final int LINEAR_BUCKETS = 32;
+	private static final int SUB_BUCKET_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int MAX_EXPONENT = 37;
+
+	/** The highest trackable value in microseconds, about 38 hours */
+	public static final long HIGHEST_TRACKABLE_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+
+	private static final int BUCKETS = LINEAR_BUCKETS
+			+ (MAX_EXPONENT - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLong totalCount = new AtomicLong();
+	private final AtomicLong totalValue = new AtomicLong();
+	private final AtomicLong maxValue = new AtomicLong();
+
+	/**
+	 * Records a latency
+	 *
+	 * @param micros
+	 *            The latency in microseconds, negative values are recorded as
+	 *            0, values above the highest trackable value are recorded in
+	 *            the highest bucket
+	 */
+	public void record(long micros) {
+
+		if (micros < 0) {
+			micros = 0;
+		}
+
+		counts.incrementAndGet(getBucketIndex(Math.min(micros,
+				HIGHEST_TRACKABLE_VALUE)));
+		totalCount.incrementAndGet();
+		totalValue.addAndGet(micros);
+
+		long max;
+		do {
+			max = maxValue.get();
+		} while (micros > max && !maxValue.compareAndSet(max, micros));
+	}
+
+	/**
+	 * Gets the value at a percentile. The value is the upper bound of the
+	 * bucket the percentile falls into, but never higher than the max.
+	 *
+	 * @param percentile
+	 *            The percentile between 0 and 100
+	 * @return The value in microseconds, 0 if nothing was recorded
+	 */
+	public long getValueAtPercentile(double percentile) {
+
+		long count = totalCount.get();
+
+		if (count == 0) {
+			return 0;
+		}
+
+		long target = Math.max(1,
+				(long) Math.ceil(Math.min(100, percentile) / 100 * count));
+		long cumulated = 0;
+
+		for (int index = 0; index < BUCKETS; index++) {
+			cumulated += counts.get(index);
+
+			if (cumulated >= target) {
+				return Math.min(getBucketUpperBound(index), maxValue.get());
+			}
+		}
+
+		return maxValue.get();
+	}
+
+	/**
+	 * Gets the bucket index of a value
+	 *
+	 * @param value
+	 *            The value
+	 * @return The bucket index
+	 */
+	static int getBucketIndex(long value) {
+
+		if (value < LINEAR_BUCKETS) {
+			return (int) value;
+		}
+
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int subBucket = (int) (value >> (exponent - SUB_BUCKET_BITS))
+				- SUB_BUCKETS;
+
+		return LINEAR_BUCKETS + (exponent - SUB_BUCKET_BITS - 1) * SUB_BUCKETS
+				+ subBucket;
+	}
+
+	/**
+	 * Gets the highest value of a bucket
+	 *
+	 * @param index
+	 *            The bucket index
+	 * @return The highest value that falls into the bucket
+	 */
+	static long getBucketUpperBound(int index) {
+
+		if (index < LINEAR_BUCKETS) {
+			return index;
+		}
+
+		int exponent = (index - LINEAR_BUCKETS) / SUB_BUCKETS
+				+ SUB_BUCKET_BITS + 1;
+		long mantissa = SUB_BUCKETS + (index - LINEAR_BUCKETS) % SUB_BUCKETS;
+
+		return ((mantissa + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+	}
+
+	/**
+	 * Removes all recorded values.
+	 */
+	public void reset() {
+
+		for (int index = 0; index < BUCKETS; index++) {
+			counts.set(index, 0);
+		}
+		totalCount.set(0);
+		totalValue.set(0);
+		maxValue.set(0);
+	}
+
+	public long getCount() {
+		return totalCount.get();
+	}
+
+	public long getMax() {
+		return maxValue.get();
+	}
+
+	/**
+	 * Gets the mean of all recorded values
+	 *
+	 * @return The mean in microseconds, 0 if nothing was recorded
+	 */
+	public double getMean() {
+
+		long count = totalCount.get();
+
+		if (count == 0) {
+			return 0;
+		}
+		return (double) totalValue.get() / count;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("count: %d, p50: %.3f ms, p99: %.3f ms, max: %.3f ms",
+				getCount(), getValueAtPercentile(50) / 1000d,
+				getValueAtPercentile(99) / 1000d, getMax() / 1000d);
+	}
+}
@@ -0,0 +1,680 @@
+package com.midi_automator.utils;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.ShortMessage;
+
+import com.midi_automator.midi.MidiParameterMessage;
+import com.midi_automator.midi.MidiParameterMessage.Type;
+
+/**
+ * Decodes short messages to readable signatures and parses them back.
+ *
+ * Signatures of channel voice messages are kept in a lookup table indexed by
+ * status and data1, so every message is decoded only once and every signature
+ * has one canonical, interned instance. The rows of the table are filled on
+ * first use, decoding all data2 values in advance would keep about two
+ * million strings. Signatures are parsed by hand without regular expressions
+ * and the parsed messages are cached per signature. The cache is cleared when
+ * it is full, as only the learned signatures are parsed repeatedly.
+ *
+ * @author aguelle
+ *
+ */
+final class MidiSignatureCodec {
+
+	private static final int CHANNEL_VOICE_STATUS = 0x80;
+	private static final int SYSTEM_STATUS = 0xF0;
+	private static final int TABLE_SIZE = (SYSTEM_STATUS - CHANNEL_VOICE_STATUS) << 7;
+	private static final int MAX_CACHED_MESSAGES = 4096;
+	private static final long INVALID = -1;
+
+	private static final String CHANNEL_PREFIX = "channel ";
+	private static final String CHANNEL_SEPARATOR = ": ";
+	private static final String VALUE_SEPARATOR = " value: ";
+	private static final String PRESSURE_SEPARATOR = " pressure: ";
+	private static final String FRAME_TYPE_SEPARATOR = ", frame type: ";
+	private static final String UNKNOWN_STATUS = ": status = ";
+	private static final String UNKNOWN_BYTE1 = ", byte1 = ";
+	private static final String UNKNOWN_BYTE2 = ", byte2 = ";
+
+	static final String[] KEY_NAMES = { "C", "C#", "D", "D#", "E", "F", "F#",
+			"G", "G#", "A", "A#", "B" };
+
+	private static final String[] QUARTER_FRAME_MESSAGE_TEXT = {
+			"frame count LS: ", "frame count MS: ", "seconds count LS: ",
+			"seconds count MS: ", "minutes count LS: ", "minutes count MS: ",
+			"hours count LS: ", "hours count MS: " };
+
+	private static final String[] FRAME_TYPE_TEXT = { "24 frames/second",
+			"25 frames/second", "30 frames/second (drop)",
+			"30 frames/second (non-drop)", };
+
+	private static final String[] SYSTEM_MESSAGE_TEXT = {
+			"System Exclusive (should not be in ShortMessage!)",
+			"MTC Quarter Frame: ", "Song Position: ", "Song Select: ",
+			"Undefined", "Undefined", "Tune Request",
+			"End of SysEx (should not be in ShortMessage!)", "Timing clock",
+			"Undefined", "Start", "Continue", "Stop", "Undefined",
+			"Active Sensing", "System Reset" };
+
+	private static final String[][] signatures = new String[TABLE_SIZE][];
+	private static final Map<String, ShortMessage> messages = new ConcurrentHashMap<String, ShortMessage>();
+
+	private MidiSignatureCodec() {
+	}
+
+	/**
+	 * Decodes the bytes of a short message to a signature
+	 *
+	 * @param status
+	 *            The status byte
+	 * @param data1
+	 *            The first data byte
+	 * @param data2
+	 *            The second data byte
+	 * @return The signature, the canonical instance for channel voice messages
+	 */
+	static String decode(int status, int data1, int data2) {
+
+		if (status < CHANNEL_VOICE_STATUS || status >= SYSTEM_STATUS) {
+			return buildSignature(status, data1, data2);
+		}
+
+		int index = ((status - CHANNEL_VOICE_STATUS) << 7) | (data1 & 0x7F);
+
+		String[] row = signatures[index];
+		if (row == null) {
+			row = new String[hasValue(status) ? 128 : 1];
+			signatures[index] = row;
+		}
+
+		int column = (row.length == 1) ? 0 : data2 & 0x7F;
+		String signature = row[column];
+
+		if (signature == null) {
+			signature = buildSignature(status, data1, data2).intern();
+			row[column] = signature;
+		}
+		return signature;
+	}
+
+	/**
+	 * Decodes an assembled parameter to a signature, e.g.
+	 * "channel 1: NRPN 1234 value: 5678". Parameter signatures are not cached,
+	 * they are decoded once per completed value.
+	 *
+	 * @param command
+	 *            The command of the parameter type
+	 * @param channel
+	 *            The channel, 0 to 15
+	 * @param parameter
+	 *            The parameter number
+	 * @param value
+	 *            The 14 bit value
+	 * @return The signature
+	 */
+	static String decodeParameter(String command, int channel, int parameter,
+			int value) {
+
+		return new StringBuilder(48).append(CHANNEL_PREFIX)
+				.append(channel + 1).append(CHANNEL_SEPARATOR).append(command)
+				.append(' ').append(parameter).append(VALUE_SEPARATOR)
+				.append(value).toString();
+	}
+
+	/**
+	 * Parses a signature to a short message. The message is cached per
+	 * signature and shared by all callers, so it must not be changed.
+	 *
+	 * @param signature
+	 *            The signature
+	 * @return The short message
+	 * @throws InvalidMidiDataException
+	 *             If the signature is no short message signature
+	 */
+	static ShortMessage parse(String signature) throws InvalidMidiDataException {
+
+		ShortMessage message = messages.get(signature);
+		if (message != null) {
+			return message;
+		}
+
+		long packed = parseBytes(signature);
+		if (packed == INVALID) {
+			throw new InvalidMidiDataException("Invalid MIDI signature: "
+					+ signature);
+		}
+
+		message = new ShortMessage((int) (packed >> 16) & 0xFF,
+				(int) (packed >> 8) & 0x7F, (int) packed & 0x7F);
+
+		if (messages.size() >= MAX_CACHED_MESSAGES) {
+			messages.clear();
+		}
+
+		ShortMessage cached = messages.putIfAbsent(signature, message);
+		return (cached != null) ? cached : message;
+	}
+
+	/**
+	 * Parses the signature of an assembled parameter, e.g.
+	 * "channel 1: NRPN 1234 value: 5678"
+	 *
+	 * @param signature
+	 *            The signature
+	 * @return The parameter message, <NULL> if the signature is no parameter
+	 *         signature
+	 */
+	static MidiParameterMessage parseParameter(String signature) {
+
+		if (signature == null || !signature.startsWith(CHANNEL_PREFIX)) {
+			return null;
+		}
+
+		long channel = parseNumber(signature, CHANNEL_PREFIX.length());
+		if (channel == INVALID || value(channel) < 1 || value(channel) > 16
+				|| !signature.startsWith(CHANNEL_SEPARATOR, end(channel))) {
+			return null;
+		}
+
+		int start = end(channel) + CHANNEL_SEPARATOR.length();
+
+		for (Type type : Type.values()) {
+
+			int pos = skipCommand(signature, start, type.getCommand());
+			if (pos < 0) {
+				continue;
+			}
+
+			long parameter = parseNumber(signature, pos);
+			if (parameter == INVALID
+					|| !signature.startsWith(VALUE_SEPARATOR, end(parameter))) {
+				return null;
+			}
+
+			long value = parseNumber(signature, end(parameter)
+					+ VALUE_SEPARATOR.length());
+			if (value == INVALID || end(value) != signature.length()
+					|| (type == Type.CONTROL_CHANGE_14_BIT && value(parameter) > 31)) {
+				return null;
+			}
+
+			return new MidiParameterMessage(type, value(channel) - 1,
+					value(parameter), value(value));
+		}
+
+		return null;
+	}
+
+	/**
+	 * Gets the key name and octave to the corresponding byte value
+	 *
+	 * @param keyNumber
+	 *            The byte value
+	 * @return The key name and the octave
+	 */
+	static String getKeyName(int keyNumber) {
+
+		if (keyNumber > 127) {
+			return "illegal value";
+		}
+		return KEY_NAMES[keyNumber % 12] + (keyNumber / 12 - 2);
+	}
+
+	/**
+	 * Gets the byte value for a key name with octave, e.g. "C#3"
+	 *
+	 * @param keyName
+	 *            The key name and the octave
+	 * @return The byte value, -1 if no key was found
+	 */
+	static int getKeyNumber(String keyName) {
+
+		long key = parseKey(keyName, 0);
+		if (key == INVALID || end(key) != keyName.length()) {
+			return -1;
+		}
+		return value(key);
+	}
+
+	/**
+	 * Checks if the signature of a channel voice message depends on data2
+	 */
+	private static boolean hasValue(int status) {
+
+		switch (status & 0xF0) {
+		case ShortMessage.POLY_PRESSURE:
+		case ShortMessage.CONTROL_CHANGE:
+		case ShortMessage.CHANNEL_PRESSURE:
+		case ShortMessage.PITCH_BEND:
+			return true;
+
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * Builds the signature of a short message
+	 */
+	private static String buildSignature(int status, int data1, int data2) {
+
+		StringBuilder signature = new StringBuilder(48);
+		int command = status & 0xF0;
+		int channel = status & 0x0F;
+
+		if (command == SYSTEM_STATUS) {
+
+			signature.append(SYSTEM_MESSAGE_TEXT[channel]);
+
+			switch (channel) {
+			case 1:
+				int type = (data1 & 0x70) >> 4;
+				int value = data1 & 0x0F;
+				if (type == 7) {
+					value = value & 0x1;
+				}
+				signature.append(QUARTER_FRAME_MESSAGE_TEXT[type]).append(
+						value);
+				if (type == 7) {
+					signature.append(FRAME_TYPE_SEPARATOR).append(
+							FRAME_TYPE_TEXT[(data1 & 0x06) >> 1]);
+				}
+				break;
+
+			case 2:
+				signature.append(get14bitValue(data1, data2));
+				break;
+
+			case 3:
+				signature.append(data1);
+				break;
+			}
+
+			return signature.toString();
+		}
+
+		signature.append(CHANNEL_PREFIX).append(channel + 1)
+				.append(CHANNEL_SEPARATOR);
+
+		switch (command) {
+		case ShortMessage.NOTE_OFF:
+			signature.append(MidiUtils.NOTE_OFF).append(' ')
+					.append(getKeyName(data1));
+			break;
+
+		case ShortMessage.NOTE_ON:
+			signature.append(MidiUtils.NOTE_ON).append(' ')
+					.append(getKeyName(data1));
+			break;
+
+		case ShortMessage.POLY_PRESSURE:
+			signature.append(MidiUtils.POLYPHONIC_KEY_PRESSURE).append(' ')
+					.append(getKeyName(data1)).append(PRESSURE_SEPARATOR)
+					.append(data2);
+			break;
+
+		case ShortMessage.CONTROL_CHANGE:
+			signature.append(MidiUtils.CONTROL_CHANGE).append(' ')
+					.append(data1).append(VALUE_SEPARATOR).append(data2);
+			break;
+
+		case ShortMessage.PROGRAM_CHANGE:
+			signature.append(MidiUtils.PROGRAM_CHANGE).append(' ')
+					.append(data1);
+			break;
+
+		case ShortMessage.CHANNEL_PRESSURE:
+			signature.append(MidiUtils.KEY_PRESSURE).append(' ')
+					.append(getKeyName(data1)).append(PRESSURE_SEPARATOR)
+					.append(data2);
+			break;
+
+		case ShortMessage.PITCH_BEND:
+			signature.append(MidiUtils.PITCH_WHEEL_CHANGE).append(' ')
+					.append(get14bitValue(data1, data2));
+			break;
+
+		default:
+			signature.append(MidiUtils.UNKNOWN_MESSAGE).append(UNKNOWN_STATUS)
+					.append(status).append(UNKNOWN_BYTE1).append(data1)
+					.append(UNKNOWN_BYTE2).append(data2);
+			break;
+		}
+
+		return signature.toString();
+	}
+
+	/**
+	 * Parses a signature to the packed bytes of a short message
+	 *
+	 * @param signature
+	 *            The signature
+	 * @return status << 16 | data1 << 8 | data2, INVALID if the signature is
+	 *         no short message signature
+	 */
+	private static long parseBytes(String signature) {
+
+		if (signature == null) {
+			return INVALID;
+		}
+
+		if (!signature.startsWith(CHANNEL_PREFIX)) {
+			return parseSystemBytes(signature);
+		}
+
+		long channel = parseNumber(signature, CHANNEL_PREFIX.length());
+		if (channel == INVALID || value(channel) < 1 || value(channel) > 16
+				|| !signature.startsWith(CHANNEL_SEPARATOR, end(channel))) {
+			return INVALID;
+		}
+
+		int channelStatus = value(channel) - 1;
+		int start = end(channel) + CHANNEL_SEPARATOR.length();
+
+		int pos = skipCommand(signature, start, MidiUtils.NOTE_OFF);
+		if (pos >= 0) {
+			long key = parseKey(signature, pos);
+			return pack(signature, key, ShortMessage.NOTE_OFF | channelStatus,
+					value(key), 0);
+		}
+
+		pos = skipCommand(signature, start, MidiUtils.NOTE_ON);
+		if (pos >= 0) {
+			long key = parseKey(signature, pos);
+			return pack(signature, key, ShortMessage.NOTE_ON | channelStatus,
+					value(key), 0);
+		}
+
+		pos = skipCommand(signature, start, MidiUtils.POLYPHONIC_KEY_PRESSURE);
+		if (pos >= 0) {
+			return parsePressure(signature, pos, ShortMessage.POLY_PRESSURE
+					| channelStatus);
+		}
+
+		pos = skipCommand(signature, start, MidiUtils.KEY_PRESSURE);
+		if (pos >= 0) {
+			return parsePressure(signature, pos, ShortMessage.CHANNEL_PRESSURE
+					| channelStatus);
+		}
+
+		pos = skipCommand(signature, start, MidiUtils.CONTROL_CHANGE);
+		if (pos >= 0) {
+			long controlNo = parseNumber(signature, pos);
+			if (controlNo == INVALID
+					|| !signature.startsWith(VALUE_SEPARATOR, end(controlNo))) {
+				return INVALID;
+			}
+			long value = parseNumber(signature, end(controlNo)
+					+ VALUE_SEPARATOR.length());
+			return pack(signature, value, ShortMessage.CONTROL_CHANGE
+					| channelStatus, value(controlNo), value(value));
+		}
+
+		pos = skipCommand(signature, start, MidiUtils.PROGRAM_CHANGE);
+		if (pos >= 0) {
+			long program = parseNumber(signature, pos);
+			return pack(signature, program, ShortMessage.PROGRAM_CHANGE
+					| channelStatus, value(program), 0);
+		}
+
+		pos = skipCommand(signature, start, MidiUtils.PITCH_WHEEL_CHANGE);
+		if (pos >= 0) {
+			long value = parseNumber(signature, pos);
+			return pack(signature, value, ShortMessage.PITCH_BEND
+					| channelStatus, value(value) & 0x7F, value(value) >> 7);
+		}
+
+		if (signature.startsWith(MidiUtils.UNKNOWN_MESSAGE, start)) {
+			return parseUnknownBytes(signature,
+					start + MidiUtils.UNKNOWN_MESSAGE.length());
+		}
+
+		return INVALID;
+	}
+
+	/**
+	 * Parses the signature of a system message, e.g. "Song Position: 16"
+	 */
+	private static long parseSystemBytes(String signature) {
+
+		for (int i = 1; i < SYSTEM_MESSAGE_TEXT.length; i++) {
+
+			if (i == 7 || !signature.startsWith(SYSTEM_MESSAGE_TEXT[i])) {
+				continue;
+			}
+
+			int status = SYSTEM_STATUS | i;
+			int pos = SYSTEM_MESSAGE_TEXT[i].length();
+
+			switch (i) {
+			case 1:
+				return parseQuarterFrameBytes(signature, pos);
+
+			case 2:
+				long position = parseNumber(signature, pos);
+				return pack(signature, position, status,
+						value(position) & 0x7F, value(position) >> 7);
+
+			case 3:
+				long song = parseNumber(signature, pos);
+				return pack(signature, song, status, value(song), 0);
+
+			default:
+				if (pos == signature.length()) {
+					return ((long) status << 16);
+				}
+			}
+		}
+
+		return INVALID;
+	}
+
+	/**
+	 * Parses the part of a MTC quarter frame signature after its text
+	 */
+	private static long parseQuarterFrameBytes(String signature, int pos) {
+
+		for (int type = 0; type < QUARTER_FRAME_MESSAGE_TEXT.length; type++) {
+
+			if (!signature.startsWith(QUARTER_FRAME_MESSAGE_TEXT[type], pos)) {
+				continue;
+			}
+
+			long value = parseNumber(signature, pos
+					+ QUARTER_FRAME_MESSAGE_TEXT[type].length());
+			int status = SYSTEM_STATUS | 1;
+
+			if (type < 7) {
+				if (value == INVALID || value(value) > 0x0F) {
+					return INVALID;
+				}
+				return pack(signature, value, status,
+						(type << 4) | value(value), 0);
+			}
+
+			if (value == INVALID || value(value) > 1
+					|| !signature.startsWith(FRAME_TYPE_SEPARATOR, end(value))) {
+				return INVALID;
+			}
+
+			int frameTypeStart = end(value) + FRAME_TYPE_SEPARATOR.length();
+			for (int frameType = 0; frameType < FRAME_TYPE_TEXT.length; frameType++) {
+				if (signature.startsWith(FRAME_TYPE_TEXT[frameType],
+						frameTypeStart)
+						&& frameTypeStart + FRAME_TYPE_TEXT[frameType].length() == signature
+								.length()) {
+					return ((long) status << 16)
+							| (((type << 4) | (frameType << 1) | value(value)) << 8);
+				}
+			}
+			return INVALID;
+		}
+
+		return INVALID;
+	}
+
+	/**
+	 * Parses the part of an unknown message signature after its text, e.g.
+	 * ": status = 250, byte1 = 0, byte2 = 0"
+	 */
+	private static long parseUnknownBytes(String signature, int pos) {
+
+		if (!signature.startsWith(UNKNOWN_STATUS, pos)) {
+			return INVALID;
+		}
+
+		long status = parseNumber(signature, pos + UNKNOWN_STATUS.length());
+		if (status == INVALID || value(status) < CHANNEL_VOICE_STATUS
+				|| value(status) > 0xFF
+				|| !signature.startsWith(UNKNOWN_BYTE1, end(status))) {
+			return INVALID;
+		}
+
+		long data1 = parseNumber(signature, end(status)
+				+ UNKNOWN_BYTE1.length());
+		if (data1 == INVALID || value(data1) > 127
+				|| !signature.startsWith(UNKNOWN_BYTE2, end(data1))) {
+			return INVALID;
+		}
+
+		long data2 = parseNumber(signature, end(data1) + UNKNOWN_BYTE2.length());
+		return pack(signature, data2, value(status), value(data1),
+				value(data2));
+	}
+
+	/**
+	 * Parses a pressure signature part, e.g. "C#3 pressure: 127"
+	 */
+	private static long parsePressure(String signature, int pos, int status) {
+
+		long key = parseKey(signature, pos);
+		if (key == INVALID
+				|| !signature.startsWith(PRESSURE_SEPARATOR, end(key))) {
+			return INVALID;
+		}
+
+		long pressure = parseNumber(signature, end(key)
+				+ PRESSURE_SEPARATOR.length());
+		return pack(signature, pressure, status, value(key), value(pressure));
+	}
+
+	/**
+	 * Skips a command and the following blank
+	 *
+	 * @return The position after the command, -1 if the command does not
+	 *         start at the position
+	 */
+	private static int skipCommand(String signature, int pos, String command) {
+
+		int end = pos + command.length();
+		if (signature.startsWith(command, pos) && end < signature.length()
+				&& signature.charAt(end) == ' ') {
+			return end + 1;
+		}
+		return -1;
+	}
+
+	/**
+	 * Parses a key name with octave, e.g. "C#3"
+	 *
+	 * @return The key number and the end position, INVALID if no valid key
+	 *         starts at the position
+	 */
+	private static long parseKey(String signature, int pos) {
+
+		if (pos >= signature.length()) {
+			return INVALID;
+		}
+
+		int note = -1;
+		for (int i = 0; i < KEY_NAMES.length; i++) {
+			if (signature.startsWith(KEY_NAMES[i], pos)
+					&& (note < 0 || KEY_NAMES[i].length() > KEY_NAMES[note]
+							.length())) {
+				note = i;
+			}
+		}
+
+		if (note < 0) {
+			return INVALID;
+		}
+
+		int octaveStart = pos + KEY_NAMES[note].length();
+		boolean negative = octaveStart < signature.length()
+				&& signature.charAt(octaveStart) == '-';
+
+		long octave = parseNumber(signature, negative ? octaveStart + 1
+				: octaveStart);
+		if (octave == INVALID) {
+			return INVALID;
+		}
+
+		int keyNumber = ((negative ? -value(octave) : value(octave)) + 2) * 12
+				+ note;
+		if (keyNumber < 0 || keyNumber > 127) {
+			return INVALID;
+		}
+		return ((long) keyNumber << 32) | end(octave);
+	}
+
+	/**
+	 * Parses a decimal number up to 14 bits
+	 *
+	 * @return The number and the end position, INVALID if no number starts at
+	 *         the position
+	 */
+	private static long parseNumber(String signature, int pos) {
+
+		int end = pos;
+		int value = 0;
+
+		while (end < signature.length()) {
+
+			char c = signature.charAt(end);
+			if (c < '0' || c > '9') {
+				break;
+			}
+
+			value = value * 10 + (c - '0');
+			if (value > 0x3FFF) {
+				return INVALID;
+			}
+			end++;
+		}
+
+		if (end == pos) {
+			return INVALID;
+		}
+		return ((long) value << 32) | end;
+	}
+
+	/**
+	 * Packs the bytes of a short message if the last parsed part ends the
+	 * signature and the data bytes are valid
+	 */
+	private static long pack(String signature, long last, int status,
+			int data1, int data2) {
+
+		if (last == INVALID || end(last) != signature.length() || data1 < 0
+				|| data1 > 127 || data2 < 0 || data2 > 127) {
+			return INVALID;
+		}
+		return ((long) status << 16) | (data1 << 8) | data2;
+	}
+
+	private static int value(long parsed) {
+		return (int) (parsed >> 32);
+	}
+
+	private static int end(long parsed) {
+		return (int) parsed;
+	}
+
+	private static int get14bitValue(int lowerPart, int higherPart) {
+		return (lowerPart & 0x7F) | ((higherPart & 0x7F) << 7);
+	}
+}
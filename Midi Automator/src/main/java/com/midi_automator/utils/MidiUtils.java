@@ -31,14 +31,13 @@ package com.midi_automator.utils;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.sound.midi.InvalidMidiDataException;
 import javax.sound.midi.MetaMessage;
 import javax.sound.midi.MidiDevice;
 import javax.sound.midi.MidiMessage;
-import javax.sound.midi.MidiSystem;
 import javax.sound.midi.MidiUnavailableException;
 import javax.sound.midi.Receiver;
 import javax.sound.midi.ShortMessage;
@@ -47,6 +46,9 @@ import javax.sound.midi.Transmitter;
 
 import org.apache.log4j.Logger;
 
+import com.midi_automator.midi.MidiDeviceRegistry;
+import com.midi_automator.midi.MidiParameterMessage;
+
 /**
  * Supports several utilities for MIDI handling.
  * 
@@ -57,6 +59,9 @@ public class MidiUtils {
 
 	static Logger log = Logger.getLogger(MidiUtils.class.getName());
 
+	private static final MidiDeviceRegistry deviceRegistry = new MidiDeviceRegistry();
+	private static final Map<MidiDevice, Receiver> cachedReceivers = new ConcurrentHashMap<MidiDevice, Receiver>();
+
 	public static final String NOTE_ON = "NOTE ON";
 	public static final String NOTE_OFF = "NOTE OFF";
 	public static final String POLYPHONIC_KEY_PRESSURE = "POLYPHONIC KEY PRESSURE";
@@ -64,7 +69,11 @@ public class MidiUtils {
 	public static final String PROGRAM_CHANGE = "PROGRAM CHANGE";
 	public static final String KEY_PRESSURE = "KEY PRESSURE";
 	public static final String PITCH_WHEEL_CHANGE = "PITCH WHEEL CHANGE";
+	public static final String CONTROL_CHANGE_14_BIT = "14 BIT CONTROL CHANGE";
+	public static final String NRPN = "NRPN";
+	public static final String RPN = "RPN";
 	public static final String SYSTEM_MESSAGE = "SYSTEM MESSAGE";
+	public static final String SYSEX_MESSAGE = "Sysex message:";
 	public static final String UNKNOWN_MESSAGE = "UNKNOWN MESSAGE";
 
 	public static long seByteCount = 0;
@@ -72,31 +81,20 @@ public class MidiUtils {
 	public static long seCount = 0;
 	public static long smCount = 0;
 
-	private static final String[] sm_astrKeyNames = { "C", "C#", "D", "D#",
-			"E", "F", "F#", "G", "G#", "A", "A#", "B" };
-
 	private static final String[] sm_astrKeySignatures = { "Cb", "Gb", "Db",
 			"Ab", "Eb", "Bb", "F", "C", "G", "D", "A", "E", "B", "F#", "C#" };
 
-	private static final String[] QUARTER_FRAME_MESSAGE_TEXT = {
-			"frame count LS: ", "frame count MS: ", "seconds count LS: ",
-			"seconds count MS: ", "minutes count LS: ", "minutes count MS: ",
-			"hours count LS: ", "hours count MS: " };
-
-	private static final String[] FRAME_TYPE_TEXT = { "24 frames/second",
-			"25 frames/second", "30 frames/second (drop)",
-			"30 frames/second (non-drop)", };
-
 	private static final char HEX_DIGITS[] = { '0', '1', '2', '3', '4', '5',
 			'6', '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F' };
 
-	private static final String[] SYSTEM_MESSAGE_TEXT = {
-			"System Exclusive (should not be in ShortMessage!)",
-			"MTC Quarter Frame: ", "Song Position: ", "Song Select: ",
-			"Undefined", "Undefined", "Tune Request",
-			"End of SysEx (should not be in ShortMessage!)", "Timing clock",
-			"Undefined", "Start", "Continue", "Stop", "Undefined",
-			"Active Sensing", "System Reset" };
+	/**
+	 * Gets the registry of the available midi devices
+	 * 
+	 * @return The midi device registry
+	 */
+	public static MidiDeviceRegistry getMidiDeviceRegistry() {
+		return deviceRegistry;
+	}
 
 	/**
 	 * Gets all MIDI devices names
@@ -116,43 +114,7 @@ public class MidiUtils {
 	 *         <name>
 	 */
 	public static List<String> getMidiDeviceSignatures(String direction) {
-
-		List<String> midiDeviceSignatures = new ArrayList<String>();
-		MidiDevice.Info[] infos = MidiSystem.getMidiDeviceInfo();
-
-		for (int i = 0; i < infos.length; i++) {
-			try {
-
-				MidiDevice device = MidiSystem.getMidiDevice(infos[i]);
-				String name = infos[i].getName();
-				int maxReceivers = device.getMaxReceivers();
-				int maxTransmitters = device.getMaxTransmitters();
-				log.debug("Found Midi device: " + name);
-
-				if (direction == null) {
-
-					midiDeviceSignatures.add(name);
-					log.debug("Returning Midi device: " + name);
-
-				} else {
-
-					if (direction.equals("IN") && (maxTransmitters != 0)) {
-						midiDeviceSignatures.add(name);
-						log.debug("Returning Midi IN device: " + name);
-					}
-
-					if (direction.equals("OUT") && (maxReceivers != 0)) {
-						midiDeviceSignatures.add(name);
-						log.debug("Returning Midi OUT device: " + name);
-					}
-				}
-
-			} catch (MidiUnavailableException e) {
-				log.error("A MIDI device is not available", e);
-			}
-		}
-
-		return midiDeviceSignatures;
+		return deviceRegistry.getMidiDeviceSignatures(direction);
 	}
 
 	/**
@@ -174,28 +136,7 @@ public class MidiUtils {
 	 */
 	public static MidiDevice.Info getMidiDeviceInfo(String strDeviceName,
 			boolean bForOutput) {
-
-		MidiDevice.Info[] aInfos = MidiSystem.getMidiDeviceInfo();
-
-		for (int i = 0; i < aInfos.length; i++) {
-
-			if (aInfos[i].getName().equals(strDeviceName)) {
-
-				try {
-					MidiDevice device = MidiSystem.getMidiDevice(aInfos[i]);
-					boolean bAllowsInput = (device.getMaxTransmitters() != 0);
-					boolean bAllowsOutput = (device.getMaxReceivers() != 0);
-					if ((bAllowsOutput && bForOutput)
-							|| (bAllowsInput && !bForOutput)) {
-						return aInfos[i];
-					}
-
-				} catch (MidiUnavailableException e) {
-					// TODO:
-				}
-			}
-		}
-		return null;
+		return deviceRegistry.getMidiDeviceInfo(strDeviceName, bForOutput);
 	}
 
 	/**
@@ -213,25 +154,13 @@ public class MidiUtils {
 	public static MidiDevice getMidiDevice(String midiDeviceName,
 			String direction) throws MidiUnavailableException {
 
-		MidiDevice.Info[] midiInfos;
-		MidiDevice device = null;
-
-		if (midiDeviceName != null) {
-
-			midiInfos = MidiSystem.getMidiDeviceInfo();
-
-			for (int i = 0; i < midiInfos.length; i++) {
-				if (midiInfos[i].getName().equals(midiDeviceName)) {
-					device = MidiSystem.getMidiDevice(midiInfos[i]);
-
-					if (getDirectionOfMidiDevice(device).equals(direction)) {
-						return device;
-					}
-				}
-			}
+		MidiDevice device = deviceRegistry.getMidiDevice(midiDeviceName,
+				direction);
 
+		if (device == null) {
+			throw new MidiUnavailableException();
 		}
-		throw new MidiUnavailableException();
+		return device;
 	}
 
 	/**
@@ -253,6 +182,52 @@ public class MidiUtils {
 		return null;
 	}
 
+	/**
+	 * Gets the receiver of a midi OUT device. The device is opened and its
+	 * receiver is created only once and cached until it is released.
+	 * 
+	 * @param device
+	 *            The midi device
+	 * @return The receiver of the device
+	 * @throws MidiUnavailableException
+	 *             If midi device is not available
+	 */
+	public static Receiver getCachedReceiver(MidiDevice device)
+			throws MidiUnavailableException {
+
+		Receiver receiver = cachedReceivers.get(device);
+
+		if (receiver == null) {
+			synchronized (cachedReceivers) {
+				receiver = cachedReceivers.get(device);
+
+				if (receiver == null) {
+					if (!device.isOpen()) {
+						device.open();
+					}
+					receiver = device.getReceiver();
+					cachedReceivers.put(device, receiver);
+				}
+			}
+		}
+		return receiver;
+	}
+
+	/**
+	 * Closes and removes the cached receiver of a midi device
+	 * 
+	 * @param device
+	 *            The midi device
+	 */
+	public static void releaseCachedReceiver(MidiDevice device) {
+
+		Receiver receiver = cachedReceivers.remove(device);
+
+		if (receiver != null) {
+			receiver.close();
+		}
+	}
+
 	/**
 	 * Sets a midi receiver to a midi device
 	 * 
@@ -317,18 +292,23 @@ public class MidiUtils {
 			return decodeMessage((SysexMessage) message);
 		} else if (message instanceof MetaMessage) {
 			return decodeMessage((MetaMessage) message);
+		} else if (message instanceof MidiParameterMessage) {
+			return decodeMessage((MidiParameterMessage) message);
 		} else {
 			return MidiUtils.UNKNOWN_MESSAGE;
 		}
 	}
 
 	/**
-	 * Creates a midi message from a readable signature string
+	 * Creates a midi message from a readable signature string. The message is
+	 * cached per signature and shared, so it must not be changed.
 	 * 
 	 * @param signature
 	 *            The signature
-	 * @return a midi message
+	 * @return a midi message, a parameter message for the signatures of
+	 *         assembled parameters, <NULL> if the signature is <NULL>
 	 * @throws InvalidMidiDataException
+	 *             If the signature is no short message or parameter signature
 	 */
 	public static MidiMessage signatureToMessage(String signature)
 			throws InvalidMidiDataException {
@@ -337,89 +317,12 @@ public class MidiUtils {
 			return null;
 		}
 
-		int channel = -1;
-		Pattern pattern = Pattern.compile("channel [0-9]*");
-		Matcher matcher = pattern.matcher(signature);
-		if (matcher.find()) {
-
-			String[] split = matcher.group(0).split(" ");
-			channel = Integer.parseInt(split[1]);
-
-		}
-
-		int command = -1;
-		int controlNo = -1;
-		pattern = Pattern.compile(": .* value");
-		matcher = pattern.matcher(signature);
-		if (matcher.find()) {
-
-			String[] split = matcher.group(0).split(" ");
-			String commandString = split[1] + " " + split[2];
-			command = encodeCommand(commandString);
-			controlNo = Integer.parseInt(split[3]);
+		MidiParameterMessage parameterMessage = MidiSignatureCodec
+				.parseParameter(signature);
+		if (parameterMessage != null) {
+			return parameterMessage;
 		}
-
-		int value = -1;
-		pattern = Pattern.compile("value: [0-9]*");
-		matcher = pattern.matcher(signature);
-		if (matcher.find()) {
-
-			String[] split = matcher.group(0).split(" ");
-			value = Integer.parseInt(split[1]);
-		}
-
-		ShortMessage message = new ShortMessage();
-		message.setMessage(command, channel - 1, controlNo, value);
-
-		return message;
-	}
-
-	/**
-	 * Encodes the midi command from a readable string
-	 * 
-	 * @param command
-	 *            The command as readable string
-	 * @return The midi encoded command, -1 if it could not be encoded
-	 */
-	private static int encodeCommand(String command) {
-		int result;
-		switch (command) {
-		case NOTE_OFF:
-			result = ShortMessage.NOTE_OFF;
-			break;
-
-		case NOTE_ON:
-			result = ShortMessage.NOTE_ON;
-			break;
-
-		case POLYPHONIC_KEY_PRESSURE:
-			result = ShortMessage.POLY_PRESSURE;
-			break;
-
-		case CONTROL_CHANGE:
-			result = ShortMessage.CONTROL_CHANGE;
-			break;
-
-		case PROGRAM_CHANGE:
-			result = ShortMessage.PROGRAM_CHANGE;
-			break;
-
-		case KEY_PRESSURE:
-			result = 0xd0;
-			break;
-
-		case PITCH_WHEEL_CHANGE:
-			result = 0xe0;
-			break;
-
-		case SYSTEM_MESSAGE:
-			result = 0xF0;
-
-		default:
-			result = -1;
-			break;
-		}
-		return result;
+		return MidiSignatureCodec.parse(signature);
 	}
 
 	/**
@@ -462,6 +365,7 @@ public class MidiUtils {
 
 		case 0xF0:
 			result = SYSTEM_MESSAGE;
+			break;
 
 		default:
 			result = UNKNOWN_MESSAGE;
@@ -471,90 +375,18 @@ public class MidiUtils {
 	}
 
 	private static String decodeMessage(ShortMessage message) {
-		String strMessage = null;
-		String command = decodeCommand(message.getCommand());
-
-		switch (command) {
-		case NOTE_OFF:
-			strMessage = NOTE_OFF + " " + getKeyName(message.getData1());
-			break;
-
-		case NOTE_ON:
-			strMessage = NOTE_ON + " " + getKeyName(message.getData1());
-			break;
-
-		case POLYPHONIC_KEY_PRESSURE:
-			strMessage = POLYPHONIC_KEY_PRESSURE + " "
-					+ getKeyName(message.getData1()) + " pressure: "
-					+ message.getData2();
-			break;
-
-		case CONTROL_CHANGE:
-			strMessage = CONTROL_CHANGE + " " + message.getData1() + " value: "
-					+ message.getData2();
-			break;
-
-		case PROGRAM_CHANGE:
-			strMessage = PROGRAM_CHANGE + " " + message.getData1();
-			break;
-
-		case KEY_PRESSURE:
-			strMessage = KEY_PRESSURE + " " + getKeyName(message.getData1())
-					+ " pressure: " + message.getData2();
-			break;
-
-		case PITCH_WHEEL_CHANGE:
-			strMessage = PITCH_WHEEL_CHANGE + " "
-					+ get14bitValue(message.getData1(), message.getData2());
-			break;
-
-		case SYSTEM_MESSAGE:
-			strMessage = SYSTEM_MESSAGE_TEXT[message.getChannel()];
-
-			switch (message.getChannel()) {
-
-			case 1:
-				int nQType = (message.getData1() & 0x70) >> 4;
-				int nQData = message.getData1() & 0x0F;
-				if (nQType == 7) {
-					nQData = nQData & 0x1;
-				}
-				strMessage += QUARTER_FRAME_MESSAGE_TEXT[nQType] + nQData;
-				if (nQType == 7) {
-					int nFrameType = (message.getData1() & 0x06) >> 1;
-					strMessage += ", frame type: "
-							+ FRAME_TYPE_TEXT[nFrameType];
-				}
-				break;
-
-			case 2:
-				strMessage += get14bitValue(message.getData1(),
-						message.getData2());
-				break;
-
-			case 3:
-				strMessage += message.getData1();
-				break;
-			}
-
-			break;
-
-		case UNKNOWN_MESSAGE:
-			strMessage = UNKNOWN_MESSAGE + ": status = " + message.getStatus()
-					+ ", byte1 = " + message.getData1() + ", byte2 = "
-					+ message.getData2();
-			break;
-		}
-
-		if (command != SYSTEM_MESSAGE) {
-			int nChannel = message.getChannel() + 1;
-			String strChannel = "channel " + nChannel + ": ";
-			strMessage = strChannel + strMessage;
-		}
 
 		smCount++;
 		smByteCount += message.getLength();
-		return strMessage;
+		return MidiSignatureCodec.decode(message.getStatus(),
+				message.getData1(), message.getData2());
+	}
+
+	private static String decodeMessage(MidiParameterMessage message) {
+
+		return MidiSignatureCodec.decodeParameter(message.getType()
+				.getCommand(), message.getChannel(), message.getParameter(),
+				message.getValue());
 	}
 
 	private static String decodeMessage(SysexMessage message) {
@@ -564,7 +396,7 @@ public class MidiUtils {
 
 		if (message.getStatus() == SysexMessage.SYSTEM_EXCLUSIVE) {
 
-			strMessage = "Sysex message: F0" + getHexString(abData);
+			strMessage = SYSEX_MESSAGE + " F0" + getHexString(abData);
 
 		} else if (message.getStatus() == SysexMessage.SPECIAL_SYSTEM_EXCLUSIVE) {
 			strMessage = "Continued Sysex message F7" + getHexString(abData);
@@ -677,8 +509,9 @@ public class MidiUtils {
 
 	/**
 	 * Normalizes the midi signature by removing the velocity from NOTE_ON and
-	 * NOTE_OFF messages. Normalizes CONTROL_CHANGE, KEY_PRESSURE,
-	 * POLYPHONIC_KEY_PRESSURE and PITCH_WHEEL_CHANGE messages to 0 or 127.
+	 * NOTE_OFF messages. Normalizes KEY_PRESSURE, POLYPHONIC_KEY_PRESSURE and
+	 * PITCH_WHEEL_CHANGE messages to 0 or 127, CONTROL_CHANGE messages keep
+	 * their value.
 	 * 
 	 * @param message
 	 *            The original midi message
@@ -725,24 +558,6 @@ public class MidiUtils {
 		return result;
 	}
 
-	/**
-	 * Gets the key name and octave to the corresponding byte value
-	 * 
-	 * @param nKeyNumber
-	 *            The byte value
-	 * @return The key name and the octave
-	 */
-	private static String getKeyName(int nKeyNumber) {
-
-		if (nKeyNumber > 127) {
-			return "illegal value";
-		}
-
-		int nNote = nKeyNumber % 12;
-		int nOctave = nKeyNumber / 12;
-		return sm_astrKeyNames[nNote] + (nOctave - 2);
-	}
-
 	/**
 	 * Gets the byte value for a key name and a octave
 	 * 
@@ -757,8 +572,8 @@ public class MidiUtils {
 		int nOctave = (octave + 2) * 12;
 
 		int nNote = -1;
-		for (int i = 0; i < sm_astrKeyNames.length; i++) {
-			if (sm_astrKeyNames[i].equals(note)) {
+		for (int i = 0; i < MidiSignatureCodec.KEY_NAMES.length; i++) {
+			if (MidiSignatureCodec.KEY_NAMES[i].equals(note)) {
 				nNote = i;
 				break;
 			}
@@ -771,8 +586,15 @@ public class MidiUtils {
 		return nOctave + nNote;
 	}
 
-	private static int get14bitValue(int nLowerPart, int nHigherPart) {
-		return (nLowerPart & 0x7F) | ((nHigherPart & 0x7F) << 7);
+	/**
+	 * Gets the byte value for a key name with octave, e.g. "C#3"
+	 * 
+	 * @param keyName
+	 *            The key name and the octave
+	 * @return The byte value, -1 if no key was found
+	 */
+	public static int getKeyNumber(String keyName) {
+		return MidiSignatureCodec.getKeyNumber(keyName);
 	}
 
 	// convert from microseconds per quarter note to beats per minute and vice
@@ -862,10 +684,8 @@ public class MidiUtils {
 
 		message.setMessage(command, channel - 1, controlNo, value);
 		MidiDevice device = MidiUtils.getMidiDevice(midiDeviceName, "OUT");
-		device.open();
-		long timeStamp = device.getMicrosecondPosition();
-		device.getReceiver().send(message, timeStamp);
-		device.close();
+		getCachedReceiver(device).send(message,
+				device.getMicrosecondPosition());
 	}
 
 	/**
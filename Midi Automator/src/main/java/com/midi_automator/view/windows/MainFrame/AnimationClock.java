@@ -0,0 +1,61 @@
+package com.midi_automator.view.windows.MainFrame;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.swing.Timer;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * A single clock for all animations of the GUI. It renders the registered
+ * animations at a fixed frame rate on the EDT, so the EDT load does not depend
+ * on how often the animations are triggered.
+ * 
+ * @author aguelle
+ *
+ */
+@Component
+public class AnimationClock implements ActionListener {
+
+	public static final int FRAME_RATE = 30;
+
+	private final CopyOnWriteArrayList<IAnimated> animations = new CopyOnWriteArrayList<IAnimated>();
+	private final Timer timer = new Timer(1000 / FRAME_RATE, this);
+
+	/**
+	 * Registers an animation and starts the clock if it is not running yet.
+	 * 
+	 * @param animation
+	 *            The animation
+	 */
+	public void register(IAnimated animation) {
+
+		animations.addIfAbsent(animation);
+
+		if (!timer.isRunning()) {
+			timer.start();
+		}
+	}
+
+	/**
+	 * Unregisters an animation
+	 * 
+	 * @param animation
+	 *            The animation
+	 */
+	public void unregister(IAnimated animation) {
+		animations.remove(animation);
+	}
+
+	@Override
+	public void actionPerformed(ActionEvent e) {
+
+		long now = System.nanoTime();
+
+		for (IAnimated animation : animations) {
+			animation.animate(now);
+		}
+	}
+}
@@ -1,23 +1,31 @@
 package com.midi_automator.view.windows.MainFrame;
 
 import java.awt.Color;
-import java.awt.event.ActionEvent;
-import java.awt.event.ActionListener;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.swing.JComponent;
-import javax.swing.Timer;
 
-import org.apache.log4j.Logger;
+/**
+ * Blinks a component driven by the animation clock. Starting to blink only
+ * stamps the time of the last activity, so it may be called from any thread
+ * and as often as needed.
+ * 
+ * @author aguelle
+ *
+ */
+public class BlinkingStrategy implements IBlinkingStrategy, IAnimated {
 
-public class BlinkingStrategy implements IBlinkingStrategy {
-
-	protected Logger log = Logger.getLogger(this.getClass().getName());
-
-	private Timer blinkTimer;
 	private JComponent blinkingComponent;
-	private Color blinkingColor;
-	private int blinkingRate;
-	private int blinkingAmount;
+	private Color defaultBackgroundColor;
+	private volatile Color blinkingColor;
+	private volatile int blinkingRate;
+	private volatile int blinkingAmount;
+
+	private final AtomicLong lastActivity = new AtomicLong();
+	private volatile boolean idle = true;
+	private boolean isBlinking;
+	private Color shownColor;
 
 	/**
 	 * Constructor for the blinking strategy
@@ -40,8 +48,7 @@ public class BlinkingStrategy implements IBlinkingStrategy {
 		this.blinkingAmount = blinkingAmount;
 
 		this.blinkingComponent.setOpaque(true);
-		blinkTimer = new Timer(this.blinkingRate, new BlinkingTimerListener());
-		blinkTimer.setInitialDelay(0);
+		defaultBackgroundColor = blinkingComponent.getBackground();
 	}
 
 	@Override
@@ -76,49 +83,53 @@ public class BlinkingStrategy implements IBlinkingStrategy {
 
 	@Override
 	public void startBlinking() {
-		blinkTimer.start();
+		lastActivity.set(System.nanoTime());
+		idle = false;
 	}
 
-	/**
-	 * Stops blinking
-	 */
-	private void stopBlinking() {
-		blinkTimer.stop();
+	@Override
+	public void animate(long now) {
+
+		if (idle) {
+			return;
+		}
+
+		long activity = lastActivity.get();
+		long phase = Math.max(0, now - activity)
+				/ TimeUnit.MILLISECONDS.toNanos(blinkingRate);
+
+		if (phase >= 2 * blinkingAmount) {
+			idle = true;
+
+			// a new activity may have been stamped meanwhile
+			if (lastActivity.get() != activity) {
+				idle = false;
+			}
+		}
+
+		setBlinking(phase < 2 * blinkingAmount && phase % 2 == 0);
 	}
 
 	/**
-	 * Timer listener blinks the component once and stops the timer.
+	 * Switches the background of the component on state changes only.
 	 * 
-	 * @author aguelle
-	 *
+	 * @param blinking
+	 *            <TRUE> for the blinking color, <FALSE> for the default color
 	 */
-	private class BlinkingTimerListener implements ActionListener {
+	private void setBlinking(boolean blinking) {
 
-		private Color defaultBackgroundColor;
-		private boolean isBlinking = true;
-		private int timerCount;
-
-		public BlinkingTimerListener() {
-			defaultBackgroundColor = blinkingComponent.getBackground();
+		if (blinking == isBlinking) {
+			return;
 		}
+		isBlinking = blinking;
 
-		@Override
-		public void actionPerformed(ActionEvent e) {
-
-			timerCount++;
-			if (isBlinking) {
-				log.debug(blinkingComponent.getName() + " blinking on.");
-				blinkingComponent.setBackground(blinkingColor);
-			} else {
-				log.debug(blinkingComponent.getName() + " blinking off.");
-				blinkingComponent.setBackground(defaultBackgroundColor);
-			}
-			isBlinking = !isBlinking;
+		if (blinking) {
+			shownColor = blinkingColor;
+			blinkingComponent.setBackground(shownColor);
 
-			if (timerCount == 2 * blinkingAmount) {
-				timerCount = 0;
-				stopBlinking();
-			}
+			// do not reset the color of another strategy for the component
+		} else if (blinkingComponent.getBackground().equals(shownColor)) {
+			blinkingComponent.setBackground(defaultBackgroundColor);
 		}
 	}
 }
@@ -0,0 +1,18 @@
+package com.midi_automator.view.windows.MainFrame;
+
+/**
+ * Interface for an animation driven by the animation clock
+ * 
+ * @author aguelle
+ *
+ */
+public interface IAnimated {
+
+	/**
+	 * Renders the next frame of the animation. Called on the EDT.
+	 * 
+	 * @param now
+	 *            The System.nanoTime() of the frame
+	 */
+	public void animate(long now);
+}
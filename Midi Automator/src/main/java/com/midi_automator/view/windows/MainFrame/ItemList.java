@@ -48,6 +48,8 @@ public class ItemList extends CacheableBlinkableToolTipJList<IToolTipItem> {
 	private CurrentSelectionHandler selectionHandler;
 	@Autowired
 	private ItemListDragGestureListener itemListDragGestureListener;
+	@Autowired
+	private AnimationClock animationClock;
 
 	/**
 	 * Initializer
@@ -55,12 +57,16 @@ public class ItemList extends CacheableBlinkableToolTipJList<IToolTipItem> {
 	public void init() {
 		super.init();
 
-		firstClickStrategy = new BlinkingStrategy(this,
+		BlinkingStrategy firstClickBlinking = new BlinkingStrategy(this,
 				MainFrame.METRONOM_COLOR_FIRST_CLICK,
 				MainFrame.METRONOM_BLINK_RATE, 1);
-		otherClickStrategy = new BlinkingStrategy(this,
+		BlinkingStrategy otherClickBlinking = new BlinkingStrategy(this,
 				MainFrame.METRONOM_COLOR_OTHER_CLICK,
 				MainFrame.METRONOM_BLINK_RATE, 1);
+		animationClock.register(firstClickBlinking);
+		animationClock.register(otherClickBlinking);
+		firstClickStrategy = firstClickBlinking;
+		otherClickStrategy = otherClickBlinking;
 
 		setName(NAME);
 		addMouseListener(doubleClickListener);
@@ -116,20 +122,17 @@ public class ItemList extends CacheableBlinkableToolTipJList<IToolTipItem> {
 	}
 
 	/**
-	 * Flashes the background color of the content pane.
+	 * Flashes the background color of the content pane. May be called from
+	 * any thread, the flash is rendered by the animation clock.
 	 * 
 	 * @beat the current clicked beat
 	 */
 	public void blinkMetronom(int beat) {
 
 		if (beat == 1) {
-			log.debug("Metronom first click");
-			setBlinkingStrategy(firstClickStrategy);
-			startBlinking();
+			firstClickStrategy.startBlinking();
 		} else {
-			log.debug("Metronom other click");
-			setBlinkingStrategy(otherClickStrategy);
-			startBlinking();
+			otherClickStrategy.startBlinking();
 		}
 	}
 
@@ -27,6 +27,7 @@ import javax.swing.JButton;
 import javax.swing.JComponent;
 import javax.swing.JFileChooser;
 import javax.swing.JFrame;
+import javax.swing.JLabel;
 import javax.swing.JLayer;
 import javax.swing.JList;
 import javax.swing.JMenu;
@@ -49,6 +50,7 @@ import com.midi_automator.presenter.services.ItemListService;
 import com.midi_automator.presenter.services.MidiExecuteService;
 import com.midi_automator.presenter.services.MidiItemChangeNotificationService;
 import com.midi_automator.presenter.services.MidiLearnService;
+import com.midi_automator.presenter.services.MidiMetronomService;
 import com.midi_automator.presenter.services.MidiService;
 import com.midi_automator.presenter.services.PresenterService;
 import com.midi_automator.utils.GUIUtils;
@@ -61,6 +63,10 @@ import com.midi_automator.view.windows.MainFrame.actions.ExitAction;
 import com.midi_automator.view.windows.MainFrame.actions.ExportAction;
 import com.midi_automator.view.windows.MainFrame.actions.HideShowMainFrameAction;
 import com.midi_automator.view.windows.MainFrame.actions.ImportAction;
+import com.midi_automator.view.windows.MainFrame.actions.LatencyAction;
+import com.midi_automator.view.windows.MainFrame.actions.MidiCaptureAction;
+import com.midi_automator.view.windows.MainFrame.actions.MidiReplayAction;
+import com.midi_automator.view.windows.MainFrame.actions.MidiStressAction;
 import com.midi_automator.view.windows.MainFrame.actions.OpenNextItemAction;
 import com.midi_automator.view.windows.MainFrame.actions.OpenPreviousitemAction;
 import com.midi_automator.view.windows.MainFrame.actions.PreferencesAction;
@@ -97,11 +103,20 @@ public class MainFrame extends JFrame {
 	public static final String MENU_ITEM_EXPORT = "Export...";
 	public static final String MENU_ITEM_EXIT = "Exit";
 	public static final String MENU_ITEM_PREFERENCES = "Preferences";
+	public static final String MENU_ITEM_LATENCY = "Latency...";
+	public static final String MENU_ITEM_START_MIDI_CAPTURE = "Start MIDI IN capture";
+	public static final String MENU_ITEM_STOP_MIDI_CAPTURE = "Stop MIDI IN capture";
+	public static final String MENU_ITEM_MIDI_REPLAY = "Replay MIDI IN capture...";
+	public static final String MENU_ITEM_MIDI_STRESS = "MIDI stress test...";
 	public static final String MENU_ITEM_OPEN_MIDI_AUTOMATOR = "Open...";
 	public static final String MENU_ITEM_HIDE_MIDI_AUTOMATOR = "Hide...";
 	public static final String NAME_MENU_ITEM_IMPORT = "import";
 	public static final String NAME_MENU_ITEM_EXPORT = "export";
 	public static final String NAME_MENU_ITEM_PREFERENCES = "preferences";
+	public static final String NAME_MENU_ITEM_LATENCY = "latency";
+	public static final String NAME_MENU_ITEM_MIDI_CAPTURE = "midi capture";
+	public static final String NAME_MENU_ITEM_MIDI_REPLAY = "midi replay";
+	public static final String NAME_MENU_ITEM_MIDI_STRESS = "midi stress";
 	public static final String NAME_MENU_ITEM_EXIT = "exit";
 	public static final String NAME_MENU_ITEM_OPEN_MIDI_AUTOMATOR = "open midi automator";
 	public static final String NAME_PREV_BUTTON = "previous button";
@@ -109,6 +124,7 @@ public class MainFrame extends JFrame {
 	public static final String NAME_INFO_LABEL = "info label";
 	public static final String NAME_MIDI_IN_DETECT_LABEL = "midi IN label";
 	public static final String NAME_MIDI_OUT_DETECT_LABEL = "midi OUT label";
+	public static final String NAME_BPM_LABEL = "bpm label";
 	public static final String NAME_TRAY = "MIDI Automator";
 
 	private ZoomUI zoomUI = new ZoomUI();
@@ -120,8 +136,13 @@ public class MainFrame extends JFrame {
 	private JMenuItem exportMenuItem;
 	private JMenuItem exitMenuItem;
 	private JMenuItem preferencesMenuItem;
+	private JMenuItem latencyMenuItem;
+	private JMenuItem midiCaptureMenuItem;
+	private JMenuItem midiReplayMenuItem;
+	private JMenuItem midiStressMenuItem;
 	private BlinkingJLabel midiINdetect;
 	private BlinkingJLabel midiOUTdetect;
+	private JLabel bpmLabel;
 	private HTMLLabel infoLabel;
 	private JScrollPane itemListScrollPane;
 
@@ -149,6 +170,14 @@ public class MainFrame extends JFrame {
 	private ExportAction exportAction;
 	@Autowired
 	private PreferencesAction preferencesAction;
+	@Autowired
+	private LatencyAction latencyAction;
+	@Autowired
+	private MidiCaptureAction midiCaptureAction;
+	@Autowired
+	private MidiReplayAction midiReplayAction;
+	@Autowired
+	private MidiStressAction midiStressAction;
 
 	private List<String> midiListeningSignatures = new ArrayList<String>();
 	private List<String> midiSendingSignatures = new ArrayList<String>();
@@ -186,6 +215,8 @@ public class MainFrame extends JFrame {
 	private PresenterService presenterService;
 	@Autowired
 	private MidiLearnService midiLearnService;
+	@Autowired
+	private MidiMetronomService midiMetronomService;
 
 	@Autowired
 	private Resources resources;
@@ -194,6 +225,8 @@ public class MainFrame extends JFrame {
 	private Tray tray;
 	@Autowired
 	private HideShowMainFrameAction hideShowAction;
+	@Autowired
+	private AnimationClock animationClock;
 
 	@Autowired
 	private MainFramePopupListener popupListener;
@@ -366,8 +399,8 @@ public class MainFrame extends JFrame {
 			String listeningSignature = midiListeningSignatures.get(i);
 			String sendingSignature = midiSendingSignatures.get(i);
 
-			setListItemTooltip("Listening: " + listeningSignature
-					+ "\nSending: " + sendingSignature, ItemList.NAME, i);
+			itemList.setToolTipText("Listening: " + listeningSignature
+					+ "\nSending: " + sendingSignature, i);
 		}
 
 		// reload preferences frame
@@ -604,23 +637,22 @@ public class MainFrame extends JFrame {
 	}
 
 	/**
-	 * Blinks the MIDI IN detector
+	 * Blinks the MIDI IN detector. May be called from any thread.
 	 */
 	public void blinkMidiINDetect() {
-		log.debug("Blink MIDI IN");
 		midiINdetect.startBlinking();
 	}
 
 	/**
-	 * Blinks the MIDI OUT detector
+	 * Blinks the MIDI OUT detector. May be called from any thread.
 	 */
 	public void blinkMidiOUTDetect() {
-		log.debug("Blink MIDI OUT");
 		midiOUTdetect.startBlinking();
 	}
 
 	/**
-	 * Flashes the background color of the content pane.
+	 * Flashes the background color of the content pane. May be called from
+	 * any thread.
 	 * 
 	 * @beat the current clicked beat
 	 */
@@ -641,6 +673,10 @@ public class MainFrame extends JFrame {
 		fileMenu.add(exportMenuItem);
 		fileMenu.addSeparator();
 		fileMenu.add(preferencesMenuItem);
+		fileMenu.add(latencyMenuItem);
+		fileMenu.add(midiCaptureMenuItem);
+		fileMenu.add(midiReplayMenuItem);
+		fileMenu.add(midiStressMenuItem);
 		fileMenu.addSeparator();
 		fileMenu.add(exitMenuItem);
 
@@ -677,6 +713,26 @@ public class MainFrame extends JFrame {
 		preferencesMenuItem.setAccelerator(KeyStroke.getKeyStroke(
 				KeyEvent.VK_P, ActionEvent.ALT_MASK));
 
+		latencyMenuItem = new JMenuItem(MENU_ITEM_LATENCY);
+		latencyMenuItem.setName(NAME_MENU_ITEM_LATENCY);
+		latencyMenuItem.setEnabled(true);
+		latencyMenuItem.addActionListener(latencyAction);
+
+		midiCaptureMenuItem = new JMenuItem(MENU_ITEM_START_MIDI_CAPTURE);
+		midiCaptureMenuItem.setName(NAME_MENU_ITEM_MIDI_CAPTURE);
+		midiCaptureMenuItem.setEnabled(true);
+		midiCaptureMenuItem.addActionListener(midiCaptureAction);
+
+		midiReplayMenuItem = new JMenuItem(MENU_ITEM_MIDI_REPLAY);
+		midiReplayMenuItem.setName(NAME_MENU_ITEM_MIDI_REPLAY);
+		midiReplayMenuItem.setEnabled(true);
+		midiReplayMenuItem.addActionListener(midiReplayAction);
+
+		midiStressMenuItem = new JMenuItem(MENU_ITEM_MIDI_STRESS);
+		midiStressMenuItem.setName(NAME_MENU_ITEM_MIDI_STRESS);
+		midiStressMenuItem.setEnabled(true);
+		midiStressMenuItem.addActionListener(midiStressAction);
+
 		exitMenuItem = new JMenuItem(MENU_ITEM_EXIT);
 		exitMenuItem.setName(NAME_MENU_ITEM_EXIT);
 		exitMenuItem.setEnabled(true);
@@ -728,7 +784,7 @@ public class MainFrame extends JFrame {
 	}
 
 	/**
-	 * Creates the midi detectors
+	 * Creates the midi detectors and the tempo of the midi clock
 	 * 
 	 * @return a JPanel with the detectors
 	 */
@@ -736,13 +792,19 @@ public class MainFrame extends JFrame {
 		final Font font = new Font(FONT_FAMILY, Font.PLAIN, 10);
 
 		midiINdetect = new BlinkingJLabel(LABEL_MIDI_IN_DETECT);
-		midiINdetect.setBlinkingStrategy(new BlinkingStrategy(midiINdetect,
+		BlinkingStrategy midiINBlinking = new BlinkingStrategy(midiINdetect,
 				MainFrame.MIDI_DETECT_COLOR, MainFrame.MIDI_DETECT_BLINK_RATE,
-				1));
+				1);
+		midiINdetect.setBlinkingStrategy(midiINBlinking);
+		animationClock.register(midiINBlinking);
+
 		midiOUTdetect = new BlinkingJLabel(LABEL_MIDI_OUT_DETECT);
-		midiOUTdetect.setBlinkingStrategy(new BlinkingStrategy(midiOUTdetect,
+		BlinkingStrategy midiOUTBlinking = new BlinkingStrategy(midiOUTdetect,
 				MainFrame.MIDI_DETECT_COLOR, MainFrame.MIDI_DETECT_BLINK_RATE,
-				1));
+				1);
+		midiOUTdetect.setBlinkingStrategy(midiOUTBlinking);
+		animationClock.register(midiOUTBlinking);
+
 		midiINdetect.setName(NAME_MIDI_IN_DETECT_LABEL);
 		midiOUTdetect.setName(NAME_MIDI_OUT_DETECT_LABEL);
 		midiINdetect.setFont(font);
@@ -754,14 +816,35 @@ public class MainFrame extends JFrame {
 		midiINdetect.setOpaque(true);
 		midiOUTdetect.setOpaque(true);
 
+		bpmLabel = new JLabel();
+		bpmLabel.setName(NAME_BPM_LABEL);
+		bpmLabel.setFont(font);
+		bpmLabel.setHorizontalAlignment(SwingConstants.CENTER);
+		animationClock.register(new IAnimated() {
+
+			private long shownBpm;
+
+			@Override
+			public void animate(long now) {
+
+				long bpm = Math.round(midiMetronomService.getBpm());
+
+				if (bpm != shownBpm) {
+					shownBpm = bpm;
+					bpmLabel.setText((bpm > 0) ? String.valueOf(bpm) : "");
+				}
+			}
+		});
+
 		JPanel detectorPanel = new JPanel();
 		detectorPanel.setBorder(BorderFactory.createMatteBorder(0, 5, 0, 0,
 				getBackground()));
-		GridLayout grid = new GridLayout(2, 1);
+		GridLayout grid = new GridLayout(3, 1);
 		grid.setVgap(3);
 		detectorPanel.setLayout(grid);
 		detectorPanel.add(midiINdetect);
 		detectorPanel.add(midiOUTdetect);
+		detectorPanel.add(bpmLabel);
 		return detectorPanel;
 	}
 
@@ -0,0 +1,72 @@
+package com.midi_automator.view.windows.MainFrame.actions;
+
+import java.awt.Font;
+import java.awt.event.ActionEvent;
+import java.io.IOException;
+
+import javax.swing.AbstractAction;
+import javax.swing.JOptionPane;
+import javax.swing.JTextArea;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.midi_automator.presenter.services.InfoMessagesService;
+import com.midi_automator.presenter.services.LatencyService;
+import com.midi_automator.view.windows.MainFrame.MainFrame;
+
+/**
+ * Shows the latency report of item switches. The report can be dumped to a
+ * file or reset.
+ * 
+ * @author aguelle
+ * 
+ */
+@Component
+public class LatencyAction extends AbstractAction {
+
+	private static final long serialVersionUID = 1L;
+	static Logger log = Logger.getLogger(LatencyAction.class.getName());
+
+	private static final String TITLE = "Latency";
+	private static final String OPTION_DUMP = "Dump to file";
+	private static final String OPTION_RESET = "Reset";
+	private static final String OPTION_CLOSE = "Close";
+	private static final String MSG_DUMPED = "Latency report dumped to <b>%s</b>.";
+
+	@Autowired
+	private MainFrame mainFrame;
+
+	@Autowired
+	private LatencyService latencyService;
+	@Autowired
+	private InfoMessagesService infoMessagesService;
+
+	@Override
+	public void actionPerformed(ActionEvent e) {
+
+		JTextArea report = new JTextArea(latencyService.getReport());
+		report.setEditable(false);
+		report.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+
+		String[] options = { OPTION_DUMP, OPTION_RESET, OPTION_CLOSE };
+		int option = JOptionPane.showOptionDialog(mainFrame, report, TITLE,
+				JOptionPane.DEFAULT_OPTION, JOptionPane.PLAIN_MESSAGE, null,
+				options, OPTION_CLOSE);
+
+		if (option == 0) {
+			try {
+				String filePath = latencyService.dumpReport();
+				infoMessagesService.setInfoMessage(String.format(MSG_DUMPED,
+						filePath));
+			} catch (IOException ex) {
+				log.error("Dumping the latency report failed.", ex);
+			}
+		}
+
+		if (option == 1) {
+			latencyService.reset();
+		}
+	}
+}
@@ -0,0 +1,75 @@
+package com.midi_automator.view.windows.MainFrame.actions;
+
+import java.awt.event.ActionEvent;
+import java.io.IOException;
+
+import javax.swing.AbstractAction;
+import javax.swing.JMenuItem;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.midi_automator.presenter.services.InfoMessagesService;
+import com.midi_automator.presenter.services.MidiService;
+import com.midi_automator.view.windows.MainFrame.MainFrame;
+
+/**
+ * Starts and stops capturing the incoming midi stream to a Standard MIDI File
+ * that can be replayed by the MidiCaptureReplayer.
+ *
+ * @author aguelle
+ *
+ */
+@Component
+public class MidiCaptureAction extends AbstractAction {
+
+	private static final long serialVersionUID = 1L;
+	static Logger log = Logger.getLogger(MidiCaptureAction.class.getName());
+
+	private static final String MSG_CAPTURING = "Capturing MIDI IN...";
+	private static final String MSG_CAPTURED = "MIDI IN captured to <b>%s</b>.";
+
+	@Autowired
+	private MidiService midiService;
+	@Autowired
+	private InfoMessagesService infoMessagesService;
+
+	@Override
+	public void actionPerformed(ActionEvent e) {
+
+		if (!midiService.isCapturingMidiIN()) {
+
+			midiService.startMidiINCapture();
+			infoMessagesService.setInfoMessage(MSG_CAPTURING);
+			setMenuItemText(e, MainFrame.MENU_ITEM_STOP_MIDI_CAPTURE);
+
+		} else {
+
+			infoMessagesService.removeInfoMessage(MSG_CAPTURING);
+			setMenuItemText(e, MainFrame.MENU_ITEM_START_MIDI_CAPTURE);
+
+			try {
+				String filePath = midiService.stopMidiINCapture();
+				infoMessagesService.setInfoMessage(String.format(MSG_CAPTURED,
+						filePath));
+			} catch (IOException ex) {
+				log.error("Writing the MIDI IN capture failed.", ex);
+			}
+		}
+	}
+
+	/**
+	 * Sets the text of the menu item that triggered the action
+	 *
+	 * @param e
+	 *            The action event
+	 * @param text
+	 *            The text
+	 */
+	private void setMenuItemText(ActionEvent e, String text) {
+		if (e.getSource() instanceof JMenuItem) {
+			((JMenuItem) e.getSource()).setText(text);
+		}
+	}
+}
@@ -0,0 +1,133 @@
+package com.midi_automator.view.windows.MainFrame.actions;
+
+import java.awt.Font;
+import java.awt.event.ActionEvent;
+import java.io.File;
+import java.util.concurrent.ExecutionException;
+
+import javax.swing.AbstractAction;
+import javax.swing.JFileChooser;
+import javax.swing.JOptionPane;
+import javax.swing.JTextArea;
+import javax.swing.SwingWorker;
+import javax.swing.filechooser.FileNameExtensionFilter;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.midi_automator.Resources;
+import com.midi_automator.midi.MidiCaptureReplayer;
+import com.midi_automator.midi.MidiReplayReport;
+import com.midi_automator.presenter.services.InfoMessagesService;
+import com.midi_automator.presenter.services.MidiStressService;
+import com.midi_automator.view.windows.MainFrame.MainFrame;
+
+/**
+ * Replays a MIDI IN capture through the receivers of the running show in the
+ * background and shows its report.
+ *
+ * @author aguelle
+ *
+ */
+@Component
+public class MidiReplayAction extends AbstractAction {
+
+	private static final long serialVersionUID = 1L;
+	static Logger log = Logger.getLogger(MidiReplayAction.class.getName());
+
+	private static final String TITLE = "MIDI capture replay";
+	private static final String MSG_CHOOSE_SPEED = "The capture runs through all MIDI IN receivers and triggers their actions. Choose the speed:";
+	private static final String MSG_RUNNING = "MIDI capture replay is running...";
+	private static final String MSG_FAILED = "MIDI capture replay failed: %s";
+	private static final String FILE_TYPE = "MIDI capture";
+	private static final String FILE_EXTENSION = "mid";
+
+	private static final String[] SPEEDS = { "Real time", "10 times faster",
+			"As fast as possible" };
+	private static final double[] SPEED_FACTORS = { 1, 10,
+			MidiCaptureReplayer.AS_FAST_AS_POSSIBLE };
+
+	private final JFileChooser fileChooser = new JFileChooser();
+
+	@Autowired
+	private MainFrame mainFrame;
+	@Autowired
+	private Resources resources;
+
+	@Autowired
+	private MidiStressService midiStressService;
+	@Autowired
+	private InfoMessagesService infoMessagesService;
+
+	@Override
+	public void actionPerformed(ActionEvent e) {
+
+		if (midiStressService.isRunning()) {
+			return;
+		}
+
+		fileChooser.setFileFilter(new FileNameExtensionFilter(FILE_TYPE,
+				FILE_EXTENSION));
+		if (fileChooser.getSelectedFile() == null) {
+			fileChooser.setCurrentDirectory(new File(resources
+					.getPropertiesPath()));
+		}
+
+		if (fileChooser.showOpenDialog(mainFrame) != JFileChooser.APPROVE_OPTION) {
+			return;
+		}
+
+		int option = JOptionPane.showOptionDialog(mainFrame, MSG_CHOOSE_SPEED,
+				TITLE, JOptionPane.DEFAULT_OPTION, JOptionPane.PLAIN_MESSAGE,
+				null, SPEEDS, SPEEDS[0]);
+
+		if (option < 0) {
+			return;
+		}
+
+		final File file = fileChooser.getSelectedFile();
+		final double speed = SPEED_FACTORS[option];
+		infoMessagesService.setInfoMessage(MSG_RUNNING);
+
+		new SwingWorker<MidiReplayReport, Void>() {
+
+			@Override
+			protected MidiReplayReport doInBackground() throws Exception {
+				return midiStressService.replay(file, speed);
+			}
+
+			@Override
+			protected void done() {
+
+				infoMessagesService.removeInfoMessage(MSG_RUNNING);
+
+				try {
+					showReport(get());
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+				} catch (ExecutionException ex) {
+					log.error("MIDI capture replay failed.", ex.getCause());
+					infoMessagesService.setInfoMessage(String.format(
+							MSG_FAILED, ex.getCause().getMessage()));
+				}
+			}
+		}.execute();
+	}
+
+	/**
+	 * Shows the report of a replay
+	 *
+	 * @param replayReport
+	 *            The report
+	 */
+	private void showReport(MidiReplayReport replayReport) {
+
+		JTextArea report = new JTextArea(replayReport.getReport());
+		report.setEditable(false);
+		report.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+
+		JOptionPane.showMessageDialog(mainFrame, report, TITLE,
+				JOptionPane.PLAIN_MESSAGE);
+	}
+}
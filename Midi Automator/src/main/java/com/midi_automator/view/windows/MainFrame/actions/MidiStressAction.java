@@ -0,0 +1,107 @@
+package com.midi_automator.view.windows.MainFrame.actions;
+
+import java.awt.Font;
+import java.awt.event.ActionEvent;
+import java.util.concurrent.ExecutionException;
+
+import javax.swing.AbstractAction;
+import javax.swing.JOptionPane;
+import javax.swing.JTextArea;
+import javax.swing.SwingWorker;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.midi_automator.midi.MidiStressGenerator.Profile;
+import com.midi_automator.midi.MidiStressReport;
+import com.midi_automator.presenter.services.InfoMessagesService;
+import com.midi_automator.presenter.services.MidiStressService;
+import com.midi_automator.view.windows.MainFrame.MainFrame;
+
+/**
+ * Runs a MIDI stress test with the chosen traffic in the background and shows
+ * its report.
+ *
+ * @author aguelle
+ *
+ */
+@Component
+public class MidiStressAction extends AbstractAction {
+
+	private static final long serialVersionUID = 1L;
+	static Logger log = Logger.getLogger(MidiStressAction.class.getName());
+
+	private static final String TITLE = "MIDI stress test";
+	private static final String MSG_CHOOSE_PROFILE = "The traffic runs through all MIDI IN receivers. Choose the traffic:";
+	private static final String MSG_RUNNING = "MIDI stress test is running...";
+	private static final String MSG_FAILED = "MIDI stress test failed: %s";
+
+	@Autowired
+	private MainFrame mainFrame;
+
+	@Autowired
+	private MidiStressService midiStressService;
+	@Autowired
+	private InfoMessagesService infoMessagesService;
+
+	@Override
+	public void actionPerformed(ActionEvent e) {
+
+		if (midiStressService.isRunning()) {
+			return;
+		}
+
+		Profile[] profiles = Profile.values();
+		int option = JOptionPane.showOptionDialog(mainFrame,
+				MSG_CHOOSE_PROFILE, TITLE, JOptionPane.DEFAULT_OPTION,
+				JOptionPane.PLAIN_MESSAGE, null, profiles, profiles[0]);
+
+		if (option < 0) {
+			return;
+		}
+
+		final Profile profile = profiles[option];
+		infoMessagesService.setInfoMessage(MSG_RUNNING);
+
+		new SwingWorker<MidiStressReport, Void>() {
+
+			@Override
+			protected MidiStressReport doInBackground() throws Exception {
+				return midiStressService.stress(profile);
+			}
+
+			@Override
+			protected void done() {
+
+				infoMessagesService.removeInfoMessage(MSG_RUNNING);
+
+				try {
+					showReport(get());
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+				} catch (ExecutionException ex) {
+					log.error("MIDI stress test failed.", ex.getCause());
+					infoMessagesService.setInfoMessage(String.format(
+							MSG_FAILED, ex.getCause().getMessage()));
+				}
+			}
+		}.execute();
+	}
+
+	/**
+	 * Shows the report of a stress test
+	 *
+	 * @param stressReport
+	 *            The report
+	 */
+	private void showReport(MidiStressReport stressReport) {
+
+		JTextArea report = new JTextArea(stressReport.getReport());
+		report.setEditable(false);
+		report.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+
+		JOptionPane.showMessageDialog(mainFrame, report, TITLE,
+				JOptionPane.PLAIN_MESSAGE);
+	}
+}
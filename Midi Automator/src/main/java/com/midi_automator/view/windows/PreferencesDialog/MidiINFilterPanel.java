@@ -0,0 +1,129 @@
+package com.midi_automator.view.windows.PreferencesDialog;
+
+import java.awt.BorderLayout;
+import java.awt.GridLayout;
+
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.SysexMessage;
+import javax.swing.BorderFactory;
+import javax.swing.JCheckBox;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+
+import com.midi_automator.midi.MidiIngressFilter;
+
+/**
+ * A panel to edit the ingress filter of a midi IN device. Checked messages are
+ * filtered.
+ * 
+ * @author aguelle
+ *
+ */
+public class MidiINFilterPanel extends JPanel {
+
+	private static final long serialVersionUID = 1L;
+
+	private final String TITLE_SYSTEM_MESSAGES = "System messages";
+	private final String TITLE_CHANNEL_MESSAGES = "Channel messages";
+	private final String TITLE_CHANNELS = "Channels";
+	private final String LABEL_FILTERED = "Filtered messages: %d";
+
+	private static final int[] SYSTEM_STATUSES = { ShortMessage.TIMING_CLOCK,
+			ShortMessage.ACTIVE_SENSING, ShortMessage.MIDI_TIME_CODE,
+			ShortMessage.SONG_POSITION_POINTER, ShortMessage.SONG_SELECT,
+			ShortMessage.START, ShortMessage.CONTINUE, ShortMessage.STOP,
+			ShortMessage.TUNE_REQUEST, ShortMessage.SYSTEM_RESET,
+			SysexMessage.SYSTEM_EXCLUSIVE };
+	private static final String[] SYSTEM_LABELS = { "Timing clock",
+			"Active sensing", "MTC quarter frame", "Song position",
+			"Song select", "Start", "Continue", "Stop", "Tune request",
+			"Reset", "SysEx" };
+	private static final String[] COMMAND_LABELS = { "Note off", "Note on",
+			"Poly pressure", "Control change", "Program change",
+			"Channel pressure", "Pitch bend" };
+
+	private JCheckBox[] systemCheckBoxes = new JCheckBox[SYSTEM_STATUSES.length];
+	private JCheckBox[] commandCheckBoxes = new JCheckBox[MidiIngressFilter.CHANNEL_COMMANDS.length];
+	private JCheckBox[] channelCheckBoxes = new JCheckBox[16];
+
+	/**
+	 * Creates the panel for a filter
+	 * 
+	 * @param filter
+	 *            The ingress filter
+	 */
+	public MidiINFilterPanel(MidiIngressFilter filter) {
+		super(new BorderLayout());
+
+		JPanel systemPanel = new JPanel(new GridLayout(0, 1));
+		systemPanel.setBorder(BorderFactory
+				.createTitledBorder(TITLE_SYSTEM_MESSAGES));
+		for (int i = 0; i < SYSTEM_STATUSES.length; i++) {
+			systemCheckBoxes[i] = new JCheckBox(SYSTEM_LABELS[i],
+					filter.isRejected(SYSTEM_STATUSES[i]));
+			systemPanel.add(systemCheckBoxes[i]);
+		}
+
+		JPanel commandPanel = new JPanel(new GridLayout(0, 1));
+		commandPanel.setBorder(BorderFactory
+				.createTitledBorder(TITLE_CHANNEL_MESSAGES));
+		for (int i = 0; i < MidiIngressFilter.CHANNEL_COMMANDS.length; i++) {
+			commandCheckBoxes[i] = new JCheckBox(COMMAND_LABELS[i],
+					filter.isCommandRejected(MidiIngressFilter.CHANNEL_COMMANDS[i]));
+			commandPanel.add(commandCheckBoxes[i]);
+		}
+
+		JPanel channelPanel = new JPanel(new GridLayout(0, 2));
+		channelPanel.setBorder(BorderFactory.createTitledBorder(TITLE_CHANNELS));
+		for (int channel = 0; channel < 16; channel++) {
+			channelCheckBoxes[channel] = new JCheckBox("" + (channel + 1),
+					filter.isChannelRejected(channel));
+			channelPanel.add(channelCheckBoxes[channel]);
+		}
+
+		JPanel messagesPanel = new JPanel(new GridLayout(1, 3));
+		messagesPanel.add(systemPanel);
+		messagesPanel.add(commandPanel);
+		messagesPanel.add(channelPanel);
+
+		add(messagesPanel, BorderLayout.CENTER);
+		add(new JLabel(String.format(LABEL_FILTERED,
+				filter.getFilteredCount())), BorderLayout.PAGE_END);
+	}
+
+	/**
+	 * Applies the checked messages to the filter at once.
+	 * 
+	 * @param filter
+	 *            The ingress filter
+	 */
+	public void applyTo(MidiIngressFilter filter) {
+
+		MidiIngressFilter edited = new MidiIngressFilter();
+		edited.setRejectedStatuses("");
+
+		for (int i = 0; i < SYSTEM_STATUSES.length; i++) {
+			edited.setRejected(SYSTEM_STATUSES[i],
+					systemCheckBoxes[i].isSelected());
+		}
+
+		// the end of SysEx is filtered together with its start
+		edited.setRejected(SysexMessage.SPECIAL_SYSTEM_EXCLUSIVE,
+				systemCheckBoxes[SYSTEM_STATUSES.length - 1].isSelected());
+
+		for (int i = 0; i < MidiIngressFilter.CHANNEL_COMMANDS.length; i++) {
+			if (commandCheckBoxes[i].isSelected()) {
+				edited.setCommandRejected(MidiIngressFilter.CHANNEL_COMMANDS[i],
+						true);
+			}
+		}
+
+		for (int channel = 0; channel < 16; channel++) {
+			if (channelCheckBoxes[channel].isSelected()) {
+				edited.setChannelRejected(channel, true);
+			}
+		}
+
+		filter.setRejectedStatuses(edited.getRejectedStatuses());
+	}
+}
@@ -28,6 +28,7 @@ import com.midi_automator.guiautomator.GUIAutomation;
 import com.midi_automator.model.MidiAutomatorProperties;
 import com.midi_automator.presenter.Presenter;
 import com.midi_automator.presenter.services.GUIAutomationsService;
+import com.midi_automator.presenter.services.MidiExecuteService;
 import com.midi_automator.presenter.services.MidiItemChangeNotificationService;
 import com.midi_automator.presenter.services.MidiLearnService;
 import com.midi_automator.presenter.services.MidiService;
@@ -39,6 +40,7 @@ import com.midi_automator.view.windows.MainFrame.HTMLLabel;
 import com.midi_automator.view.windows.PreferencesDialog.GUIAutomationPanel.AutomationIndexDoesNotExistException;
 import com.midi_automator.view.windows.PreferencesDialog.GUIAutomationPanel.GUIAutomationPanel;
 import com.midi_automator.view.windows.PreferencesDialog.GUIAutomationPanel.GUIAutomationTable.GUIAutomationTable;
+import com.midi_automator.view.windows.PreferencesDialog.actions.EditMidiINFilterAction;
 import com.midi_automator.view.windows.PreferencesDialog.actions.SendNotificationAction;
 import com.midi_automator.view.windows.PreferencesDialog.listener.PreferencesDialogCloseListener;
 
@@ -54,6 +56,7 @@ public class PreferencesDialog extends AbstractBasicDialog {
 	private final String LABEL_MIDI_IN_REMOTE_DEVICES = "Midi Remote IN:";
 	private final String LABEL_MIDI_OUT_REMOTE_DEVICES = "Midi Master OUT:";
 	private final String LABEL_MIDI_OUT_REMOTE_INFO = "Master open: ch 1 CC 102 &lt;list entry - 1&gt;";
+	private final String LABEL_MIDI_OUT_REMOTE_14_BIT = "Send entries above 128 (CC 104 MSB)";
 	private final String LABEL_MIDI_OUT_SWITCH_NOTIFIER_DEVICES = "Midi Switch Notifier OUT:";
 	private final String LABEL_MIDI_OUT_SWITCH_NOTIFIER_INFO = "Notifier: ch 1 CC 103 value 127";
 	private final String LABEL_MIDI_OUT_SWITCH_ITEM_DEVICES = "Midi Switch List Entry OUT:";
@@ -64,6 +67,7 @@ public class PreferencesDialog extends AbstractBasicDialog {
 			+ "Other clicks: ch 16 NOTE ON E4";
 	private final String LABEL_GUI_AUTOMATION = "Automations";
 	private final String BUTTON_SEND_NOTIFIER = "Send...";
+	private final String BUTTON_MIDI_IN_FILTER = "Filter...";
 
 	public static final String NAME = "preferences dialog";
 	public static final String NAME_MIDI_IN_REMOTE_DEVICE_COMBO_BOX = "midiINRemoteDeviceComboBox";
@@ -72,7 +76,10 @@ public class PreferencesDialog extends AbstractBasicDialog {
 	public static final String NAME_MIDI_OUT_SWITCH_ITEM_DEVICE_COMBO_BOX = "midiOUTSwitchItemDeviceComboBox";
 	public static final String NAME_MIDI_IN_METRONROM_DEVICE_COMBO_BOX = "midiINMetronomDeviceComboBox";
 	public static final String NAME_BUTTON_SEND_NOTIFIER = "buttonSendNotifier";
+	public static final String NAME_BUTTON_MIDI_IN_REMOTE_FILTER = "buttonMidiINRemoteFilter";
+	public static final String NAME_BUTTON_MIDI_IN_METRONOM_FILTER = "buttonMidiINMetronomFilter";
 	public static final String NAME_CHECKBOX_MINIMIZE_ON_CLOSE = "checkcoxMinimizeOnClose";
+	public static final String NAME_CHECKBOX_MIDI_OUT_REMOTE_14_BIT = "checkboxMidiOUTRemote14Bit";
 
 	private JPanel topPanel;
 	private JPanel middlePanel;
@@ -91,6 +98,7 @@ public class PreferencesDialog extends AbstractBasicDialog {
 	private JComboBox<String> midiINMetronomDeviceComboBox;
 	private JComboBox<String> midiOUTSwitchItemDeviceComboBox;
 	private JCheckBox minimizeOnCloseCheckBox;
+	private JCheckBox midiOUTRemote14BitCheckBox;
 
 	@Autowired
 	private GUIAutomationPanel guiAutomationConfigurationPanel;
@@ -116,6 +124,8 @@ public class PreferencesDialog extends AbstractBasicDialog {
 	@Autowired
 	private MidiService midiService;
 	@Autowired
+	private MidiExecuteService midiExecuteService;
+	@Autowired
 	private MidiItemChangeNotificationService midiNotificationService;
 
 	@Autowired
@@ -123,6 +133,8 @@ public class PreferencesDialog extends AbstractBasicDialog {
 
 	@Autowired
 	private SendNotificationAction sendNotificationAction;
+	@Autowired
+	private EditMidiINFilterAction editMidiINFilterAction;
 
 	/**
 	 * Initializes the frame
@@ -156,7 +168,7 @@ public class PreferencesDialog extends AbstractBasicDialog {
 		createRemoteMidiInDevices();
 		createRemoteMidiOutDevices();
 		createSwitchNotifierMidiOutDevices();
-		currentMiddleGridY += 3;
+		currentMiddleGridY += 4;
 
 		createSwitchItemOutDevices();
 		createMetronomMidiInDevices();
@@ -234,6 +246,35 @@ public class PreferencesDialog extends AbstractBasicDialog {
 		c.gridy = currentMiddleGridY + 1;
 		middlePanel.add(midiINRemoteDeviceComboBox, c);
 
+		// Button filter
+		c = new GridBagConstraints();
+		c.insets = INSETS_COMBO_BOX;
+		c.fill = GridBagConstraints.NONE;
+		c.anchor = GridBagConstraints.WEST;
+		c.gridx = 0;
+		c.gridy = currentMiddleGridY + 2;
+		middlePanel.add(
+				createMidiINFilterButton(NAME_BUTTON_MIDI_IN_REMOTE_FILTER,
+						NAME_MIDI_IN_REMOTE_DEVICE_COMBO_BOX), c);
+	}
+
+	/**
+	 * Creates a button that edits the ingress filter of the midi IN device
+	 * chosen in a combo box
+	 * 
+	 * @param name
+	 *            The name of the button
+	 * @param comboBoxName
+	 *            The name of the combo box with the midi IN device
+	 * @return The button
+	 */
+	private JButton createMidiINFilterButton(String name, String comboBoxName) {
+
+		JButton button = new JButton(BUTTON_MIDI_IN_FILTER);
+		button.setName(name);
+		button.setActionCommand(comboBoxName);
+		button.addActionListener(editMidiINFilterAction);
+		return button;
 	}
 
 	/**
@@ -276,6 +317,19 @@ public class PreferencesDialog extends AbstractBasicDialog {
 				"<span style='font-family:Arial; font-size:8px'>"
 						+ LABEL_MIDI_OUT_REMOTE_INFO + "</span>");
 		middlePanel.add(midiOUTSwitchNotifierInfoLabel, c);
+
+		// 14 bit check box
+		c = new GridBagConstraints();
+		c.insets = INSETS_COMBO_BOX;
+		c.fill = GridBagConstraints.NONE;
+		c.anchor = GridBagConstraints.WEST;
+		c.gridx = 1;
+		c.gridy = currentMiddleGridY + 3;
+		midiOUTRemote14BitCheckBox = new JCheckBox(
+				LABEL_MIDI_OUT_REMOTE_14_BIT);
+		midiOUTRemote14BitCheckBox
+				.setName(NAME_CHECKBOX_MIDI_OUT_REMOTE_14_BIT);
+		middlePanel.add(midiOUTRemote14BitCheckBox, c);
 	}
 
 	/**
@@ -407,6 +461,16 @@ public class PreferencesDialog extends AbstractBasicDialog {
 		c.gridy = currentMiddleGridY + 1;
 		middlePanel.add(midiINMetronomDeviceComboBox, c);
 
+		// Button filter
+		c = new GridBagConstraints();
+		c.fill = GridBagConstraints.NONE;
+		c.anchor = GridBagConstraints.WEST;
+		c.gridx = 2;
+		c.gridy = currentMiddleGridY + 1;
+		middlePanel.add(
+				createMidiINFilterButton(NAME_BUTTON_MIDI_IN_METRONOM_FILTER,
+						NAME_MIDI_IN_METRONROM_DEVICE_COMBO_BOX), c);
+
 		// Info label
 		c = new GridBagConstraints();
 		c.insets = INSETS_LABEL_INFO;
@@ -516,6 +580,9 @@ public class PreferencesDialog extends AbstractBasicDialog {
 			midiOUTRemoteDeviceComboBox.setSelectedItem(midiOUTRemoteDevice);
 		}
 
+		midiOUTRemote14BitCheckBox.setSelected(midiExecuteService
+				.isRemote14Bit());
+
 		// midi in metronom
 		String midiINMetronomDevice = midiService
 				.getMidiDeviceName(MidiAutomatorProperties.KEY_MIDI_IN_METRONOM_DEVICE);
@@ -706,6 +773,23 @@ public class PreferencesDialog extends AbstractBasicDialog {
 		return (String) midiOUTSwitchNotifierDeviceComboBox.getSelectedItem();
 	}
 
+	/**
+	 * Gets the name of the midi device chosen in a combo box
+	 * 
+	 * @param comboBoxName
+	 *            The name of the combo box
+	 * @return The name of the midi device, <NULL> if there is no such combo box
+	 */
+	public String getSelectedMidiDeviceName(String comboBoxName) {
+
+		Component component = GUIUtils.getComponentByName(this, comboBoxName);
+
+		if (component instanceof JComboBox) {
+			return (String) ((JComboBox<?>) component).getSelectedItem();
+		}
+		return null;
+	}
+
 	/**
 	 * Closes the preferences window, saves and loads the configuration.
 	 */
@@ -730,6 +814,8 @@ public class PreferencesDialog extends AbstractBasicDialog {
 				MidiAutomatorProperties.KEY_MIDI_IN_METRONOM_DEVICE);
 		midiService.setMidiDeviceName(midiOUTRemoteDeviceName,
 				MidiAutomatorProperties.KEY_MIDI_OUT_REMOTE_DEVICE);
+		midiExecuteService.setRemote14Bit(midiOUTRemote14BitCheckBox
+				.isSelected());
 		midiService.setMidiDeviceName(midiOUTSwitchNotifierDeviceName,
 				MidiAutomatorProperties.KEY_MIDI_OUT_SWITCH_NOTIFIER_DEVICE);
 		midiService.setMidiDeviceName(midiOUTSwitchItemDeviceName,
@@ -0,0 +1,59 @@
+package com.midi_automator.view.windows.PreferencesDialog.actions;
+
+import java.awt.event.ActionEvent;
+
+import javax.swing.AbstractAction;
+import javax.swing.JOptionPane;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.midi_automator.midi.MidiIngressFilter;
+import com.midi_automator.model.MidiAutomatorProperties;
+import com.midi_automator.presenter.services.MidiService;
+import com.midi_automator.view.windows.PreferencesDialog.MidiINFilterPanel;
+import com.midi_automator.view.windows.PreferencesDialog.PreferencesDialog;
+
+/**
+ * Edits the ingress filter of the midi IN device chosen in the combo box named
+ * by the action command.
+ * 
+ * @author aguelle
+ * 
+ */
+@Component
+public class EditMidiINFilterAction extends AbstractAction {
+
+	private static final long serialVersionUID = 1L;
+
+	private final String TITLE = "MIDI IN filter: %s";
+
+	@Autowired
+	private PreferencesDialog preferencesDialog;
+	@Autowired
+	private MidiService midiService;
+
+	@Override
+	public void actionPerformed(ActionEvent e) {
+
+		String deviceName = preferencesDialog.getSelectedMidiDeviceName(e
+				.getActionCommand());
+
+		if (deviceName == null
+				|| deviceName.equals(MidiAutomatorProperties.VALUE_NULL)) {
+			return;
+		}
+
+		MidiIngressFilter filter = midiService.getIngressFilter(deviceName);
+		MidiINFilterPanel filterPanel = new MidiINFilterPanel(filter);
+
+		int option = JOptionPane.showConfirmDialog(preferencesDialog,
+				filterPanel, String.format(TITLE, deviceName),
+				JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
+
+		if (option == JOptionPane.OK_OPTION) {
+			filterPanel.applyTo(filter);
+			midiService.storeIngressFilter(deviceName);
+		}
+	}
+}
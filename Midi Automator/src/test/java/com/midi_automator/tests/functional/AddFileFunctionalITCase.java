@@ -10,7 +10,6 @@ import org.assertj.swing.fixture.JFileChooserFixture;
 import org.junit.Assume;
 import org.junit.Test;
 
-import com.midi_automator.Messages;
 import com.midi_automator.presenter.services.ItemListService;
 import com.midi_automator.tests.utils.GUIAutomations;
 import com.midi_automator.tests.utils.MockUpUtils;
@@ -281,7 +280,7 @@ public class AddFileFunctionalITCase extends FunctionalBaseCase {
 	}
 
 	@Test
-	public void addingMoreFilesThan128ShouldBeImpossible() {
+	public void addingMoreFilesThan128ShouldBePossible() {
 
 		MockUpUtils.setMockupMidoFile("mockups/128_Hello_World.mido");
 		MockUpUtils.setMockupPropertiesFile("mockups/empty.properties");
@@ -290,8 +289,7 @@ public class AddFileFunctionalITCase extends FunctionalBaseCase {
 		saveDialog(addFile("Hello World 129", currentPath
 				+ "/testfiles/Hello World.rtf", ""));
 
-		checkInfoText(String.format(Messages.MSG_FILE_LIST_IS_FULL,
-				"Hello World 129"));
+		assertEquals(129, getFileList().contents().length);
 	}
 
 	@Test
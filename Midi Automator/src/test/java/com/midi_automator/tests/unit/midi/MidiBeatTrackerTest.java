@@ -0,0 +1,127 @@
+package com.midi_automator.tests.unit.midi;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sound.midi.ShortMessage;
+
+import org.junit.Test;
+
+import com.midi_automator.midi.MidiBeatTracker;
+
+public class MidiBeatTrackerTest {
+
+	private static final long BEAT_120_BPM = 500000;
+	private static final long CLOCK_120_BPM = BEAT_120_BPM
+			/ MidiBeatTracker.PPQN;
+
+	@Test
+	public void testBeatsAreCountedFromStart() {
+
+		MidiBeatTracker tracker = new MidiBeatTracker();
+		tracker.handle(ShortMessage.START, 0, 0, 0);
+
+		List<Integer> beats = clock(tracker, 5 * MidiBeatTracker.PPQN, 0,
+				CLOCK_120_BPM);
+
+		assertEquals("[1, 2, 3, 4, 1]", beats.toString());
+	}
+
+	@Test
+	public void testNoBeatsWhileStopped() {
+
+		MidiBeatTracker tracker = new MidiBeatTracker();
+
+		assertTrue(clock(tracker, 3 * MidiBeatTracker.PPQN, 0, CLOCK_120_BPM)
+				.isEmpty());
+		assertFalse(tracker.isRunning());
+	}
+
+	@Test
+	public void testContinueFromSongPosition() {
+
+		MidiBeatTracker tracker = new MidiBeatTracker();
+
+		// third beat of the second bar: 6 beats = 24 sixteenths
+		tracker.handle(ShortMessage.SONG_POSITION_POINTER, 24, 0, 0);
+		tracker.handle(ShortMessage.CONTINUE, 0, 0, 0);
+
+		List<Integer> beats = clock(tracker, 2 * MidiBeatTracker.PPQN, 0,
+				CLOCK_120_BPM);
+
+		assertEquals("[3, 4]", beats.toString());
+	}
+
+	@Test
+	public void testClocksWhileStoppedDoNotShiftContinue() {
+
+		MidiBeatTracker tracker = new MidiBeatTracker();
+		tracker.handle(ShortMessage.START, 0, 0, 0);
+
+		// stop after one and a half beats
+		List<Integer> beats = clock(tracker, 36, 0, CLOCK_120_BPM);
+		assertEquals("[1, 2]", beats.toString());
+		tracker.handle(ShortMessage.STOP, 0, 0, 36 * CLOCK_120_BPM);
+
+		// the sequencer keeps sending clocks while stopped
+		assertTrue(clock(tracker, 13, 36 * CLOCK_120_BPM, CLOCK_120_BPM)
+				.isEmpty());
+
+		tracker.handle(ShortMessage.CONTINUE, 0, 0, 49 * CLOCK_120_BPM);
+		beats = clock(tracker, 2 * MidiBeatTracker.PPQN, 49 * CLOCK_120_BPM,
+				CLOCK_120_BPM);
+
+		assertEquals("[3, 4]", beats.toString());
+	}
+
+	@Test
+	public void testTempoIsEstimatedWithJitter() {
+
+		MidiBeatTracker tracker = new MidiBeatTracker();
+		tracker.handle(ShortMessage.START, 0, 0, 0);
+
+		long time = 0;
+		for (int i = 0; i < 16 * MidiBeatTracker.PPQN; i++) {
+			long jitter = (i % 2 == 0) ? 1500 : -1500;
+			tracker.handle(ShortMessage.TIMING_CLOCK, 0, 0, time + jitter);
+			time += CLOCK_120_BPM;
+		}
+
+		assertEquals(120, tracker.getBpm(), 1);
+	}
+
+	@Test
+	public void testTempoChangeIsFollowed() {
+
+		MidiBeatTracker tracker = new MidiBeatTracker();
+
+		clock(tracker, 4 * MidiBeatTracker.PPQN, 0, CLOCK_120_BPM);
+		assertEquals(120, tracker.getBpm(), 0.5);
+
+		clock(tracker, 4 * MidiBeatTracker.PPQN, 4 * BEAT_120_BPM,
+				CLOCK_120_BPM * 2);
+		assertEquals(60, tracker.getBpm(), 0.5);
+	}
+
+	/**
+	 * Sends clocks to the tracker
+	 * 
+	 * @return The reached beats
+	 */
+	private List<Integer> clock(MidiBeatTracker tracker, int clocks,
+			long start, long interval) {
+
+		List<Integer> beats = new ArrayList<Integer>();
+
+		for (int i = 0; i < clocks; i++) {
+			int beat = tracker.handle(ShortMessage.TIMING_CLOCK, 0, 0, start
+					+ i * interval);
+			if (beat != MidiBeatTracker.NO_BEAT) {
+				beats.add(beat);
+			}
+		}
+		return beats;
+	}
+}
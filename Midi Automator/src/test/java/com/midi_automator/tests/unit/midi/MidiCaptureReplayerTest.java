@@ -0,0 +1,132 @@
+package com.midi_automator.tests.unit.midi;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.SysexMessage;
+
+import org.junit.Test;
+
+import com.midi_automator.midi.MidiAutomatorReceiver;
+import com.midi_automator.midi.MidiCaptureRecorder;
+import com.midi_automator.midi.MidiCaptureReplayer;
+import com.midi_automator.midi.MidiDispatcher;
+import com.midi_automator.midi.MidiINMultiplexer;
+import com.midi_automator.midi.MidiReplayReport;
+
+public class MidiCaptureReplayerTest {
+
+	@Test
+	public void testCapturedStreamIsReplayedFromFile() throws Exception {
+
+		MidiCaptureRecorder recorder = new MidiCaptureRecorder();
+		long start = System.nanoTime();
+		recorder.start();
+
+		for (int i = 0; i < 48; i++) {
+			recorder.record("DAW", new ShortMessage(ShortMessage.TIMING_CLOCK),
+					start + i * 1000000L);
+		}
+		recorder.record("Pads", new ShortMessage(ShortMessage.NOTE_ON, 9, 36,
+				127), start + 5000000L);
+		recorder.record("Pads", new SysexMessage(new byte[] { (byte) 0xF0,
+				0x43, 0x10, (byte) 0xF7 }, 4), start + 6000000L);
+		recorder.stop();
+
+		File file = File.createTempFile("midi_capture", ".mid");
+		file.deleteOnExit();
+		recorder.write(file);
+
+		Sequence sequence = MidiSystem.getSequence(file);
+		assertEquals(3, sequence.getTracks().length);
+
+		MidiCaptureReplayer replayer = new MidiCaptureReplayer();
+		replayer.setSpeed(MidiCaptureReplayer.AS_FAST_AS_POSSIBLE);
+		replayer.setRejectedStatuses("");
+		MidiReplayReport report = replayer.replay(sequence);
+
+		assertEquals(50, report.getInjected());
+		assertEquals(50, report.getProcessed());
+		assertEquals(0, report.getDropped());
+		assertEquals(50, report.getHistogram().getCount());
+	}
+
+	@Test
+	public void testDefaultFilterRejectsReplayedClock() throws Exception {
+
+		MidiCaptureRecorder recorder = new MidiCaptureRecorder();
+		long start = System.nanoTime();
+		recorder.start();
+
+		for (int i = 0; i < 24; i++) {
+			recorder.record("DAW", new ShortMessage(ShortMessage.TIMING_CLOCK),
+					start + i * 100000L);
+		}
+		recorder.record("DAW", new ShortMessage(ShortMessage.START), start);
+		recorder.stop();
+
+		MidiCaptureReplayer replayer = new MidiCaptureReplayer();
+		replayer.setSpeed(10);
+		MidiReplayReport report = replayer.replay(recorder.getSequence());
+
+		assertTrue(report.isComplete());
+		assertEquals(24, report.getFiltered());
+		assertEquals(1, report.getProcessed());
+	}
+
+	@Test
+	public void testReplayReachesAttachedReceivers() throws Exception {
+
+		MidiCaptureRecorder recorder = new MidiCaptureRecorder();
+		long start = System.nanoTime();
+		recorder.start();
+
+		for (int i = 0; i < 20; i++) {
+			recorder.record("Pads", new ShortMessage(ShortMessage.NOTE_ON, 9,
+					36 + i, 127), start + i * 100000L);
+		}
+		recorder.stop();
+
+		MidiDispatcher dispatcher = new MidiDispatcher();
+		MidiINMultiplexer multiplexer = new MidiINMultiplexer();
+		multiplexer.setMidiDispatcher(dispatcher);
+		multiplexer.setDeviceName("Pads");
+		dispatcher.register(multiplexer);
+
+		RecordingReceiver receiver = new RecordingReceiver();
+		multiplexer.attach(receiver);
+
+		try {
+			MidiCaptureReplayer replayer = new MidiCaptureReplayer();
+			replayer.setSpeed(MidiCaptureReplayer.AS_FAST_AS_POSSIBLE);
+			MidiReplayReport report = replayer.replay(
+					recorder.getSequence(),
+					new MidiINMultiplexer[] { multiplexer });
+
+			assertEquals(20, report.getProcessed());
+			assertEquals(20, receiver.received.get());
+			assertEquals(1, multiplexer.getConsumers().length);
+		} finally {
+			multiplexer.close();
+		}
+	}
+
+	/**
+	 * A receiver of the show that counts the dispatched messages.
+	 */
+	private static class RecordingReceiver extends MidiAutomatorReceiver {
+
+		private final AtomicInteger received = new AtomicInteger();
+
+		@Override
+		protected void receive(MidiMessage message, long timeStamp) {
+			received.incrementAndGet();
+		}
+	}
+}
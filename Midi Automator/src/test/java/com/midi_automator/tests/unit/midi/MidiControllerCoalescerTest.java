@@ -0,0 +1,85 @@
+package com.midi_automator.tests.unit.midi;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.midi_automator.midi.IMidiControllerHandler;
+import com.midi_automator.midi.MidiControllerCoalescer;
+
+public class MidiControllerCoalescerTest {
+
+	@Test
+	public void testLatestValueWins() {
+
+		MidiControllerCoalescer coalescer = new MidiControllerCoalescer();
+
+		assertTrue(coalescer.offer(0, 0, 7, 10));
+		for (int value = 11; value <= 127; value++) {
+			assertFalse(coalescer.offer(0, 0, 7, value));
+		}
+
+		RecordingHandler handler = new RecordingHandler();
+		assertEquals(1, coalescer.drain(handler));
+		assertEquals("0/0/7=127", handler.values.get(0));
+		assertFalse(coalescer.isPending());
+	}
+
+	@Test
+	public void testControllersAreCoalescedSeparately() {
+
+		MidiControllerCoalescer coalescer = new MidiControllerCoalescer();
+
+		coalescer.offer(0, 0, 7, 1);
+		coalescer.offer(1, 0, 7, 2);
+		coalescer.offer(0, 15, 7, 3);
+		coalescer.offer(0, 0, MidiControllerCoalescer.PITCH_WHEEL, 16383);
+		coalescer.offer(0, 0, 7, 4);
+
+		RecordingHandler handler = new RecordingHandler();
+		assertEquals(4, coalescer.drain(handler));
+		assertEquals("0/0/7=4", handler.values.get(0));
+		assertEquals("1/0/7=2", handler.values.get(1));
+		assertEquals("0/15/7=3", handler.values.get(2));
+		assertEquals("0/0/128=16383", handler.values.get(3));
+	}
+
+	@Test
+	public void testValuesOfferedWhileDrainingAreLeftForNextDrain() {
+
+		final MidiControllerCoalescer coalescer = new MidiControllerCoalescer();
+		coalescer.offer(0, 0, 7, 1);
+
+		RecordingHandler handler = new RecordingHandler() {
+			@Override
+			public void controllerChanged(int device, int channel,
+					int controller, int value) {
+				super.controllerChanged(device, channel, controller, value);
+				assertTrue(coalescer.offer(device, channel, controller,
+						value + 1));
+			}
+		};
+
+		assertEquals(1, coalescer.drain(handler));
+		assertTrue(coalescer.isPending());
+		assertEquals(1, coalescer.drain(handler));
+		assertEquals("0/0/7=2", handler.values.get(1));
+	}
+
+	/**
+	 * Records the handled values
+	 */
+	private static class RecordingHandler implements IMidiControllerHandler {
+
+		protected final List<String> values = new ArrayList<String>();
+
+		@Override
+		public void controllerChanged(int device, int channel, int controller,
+				int value) {
+			values.add(device + "/" + channel + "/" + controller + "=" + value);
+		}
+	}
+}
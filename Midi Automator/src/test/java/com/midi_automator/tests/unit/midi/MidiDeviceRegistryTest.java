@@ -0,0 +1,79 @@
+package com.midi_automator.tests.unit.midi;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.sound.midi.MidiDevice;
+
+import org.junit.Test;
+
+import com.midi_automator.midi.IMidiDeviceListener;
+import com.midi_automator.midi.MidiDeviceRegistry;
+import com.midi_automator.tests.utils.MockMidiDevice;
+
+public class MidiDeviceRegistryTest {
+
+	@Test
+	public void testDevicesAreLookedUpByNameAndDirection() {
+
+		MidiDeviceRegistry registry = new MidiDeviceRegistry();
+		MockMidiDevice in = new MockMidiDevice("Bus 1", -1, 0, -1);
+		MockMidiDevice out = new MockMidiDevice("Bus 1", 0, -1, -1);
+
+		registry.update(new MidiDevice[] { in, out });
+
+		assertSame(in, registry.getMidiDevice("Bus 1", "IN"));
+		assertSame(out, registry.getMidiDevice("Bus 1", "OUT"));
+		assertSame(out.getDeviceInfo(),
+				registry.getMidiDeviceInfo("Bus 1", true));
+		assertEquals(Arrays.asList("Bus 1"),
+				registry.getMidiDeviceSignatures("IN"));
+		assertEquals(Arrays.asList("Bus 1", "Bus 1"),
+				registry.getMidiDeviceSignatures(null));
+	}
+
+	@Test
+	public void testDiffNotifiesAttachedAndDetachedDevices() {
+
+		MidiDeviceRegistry registry = new MidiDeviceRegistry();
+		DeviceListener listener = new DeviceListener();
+		MockMidiDevice kept = new MockMidiDevice("Keyboard", -1, 0, -1);
+		MockMidiDevice unplugged = new MockMidiDevice("Interface", -1, 0, -1);
+		MockMidiDevice replugged = new MockMidiDevice("Interface", -1, 0, -1);
+
+		registry.addListener(listener);
+		registry.update(new MidiDevice[] { kept, unplugged });
+
+		assertTrue(listener.attached.isEmpty());
+
+		registry.update(new MidiDevice[] { kept });
+
+		assertEquals(Arrays.asList(unplugged), listener.detached);
+		assertTrue(listener.attached.isEmpty());
+
+		registry.update(new MidiDevice[] { kept, replugged });
+
+		assertEquals(Arrays.asList(replugged), listener.attached);
+		assertEquals(1, listener.detached.size());
+		assertSame(replugged, registry.getMidiDevice("Interface", "IN"));
+	}
+
+	class DeviceListener implements IMidiDeviceListener {
+
+		List<MidiDevice> attached = new ArrayList<MidiDevice>();
+		List<MidiDevice> detached = new ArrayList<MidiDevice>();
+
+		@Override
+		public void midiDeviceAttached(MidiDevice device) {
+			attached.add(device);
+		}
+
+		@Override
+		public void midiDeviceDetached(MidiDevice device) {
+			detached.add(device);
+		}
+	}
+}
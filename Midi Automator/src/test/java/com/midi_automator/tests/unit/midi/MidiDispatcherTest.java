@@ -0,0 +1,70 @@
+package com.midi_automator.tests.unit.midi;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.midi_automator.midi.MidiDispatcher;
+
+public class MidiDispatcherTest {
+
+	@Test
+	public void testScheduledTasksRunInDeadlineOrder()
+			throws InterruptedException {
+
+		final MidiDispatcher dispatcher = new MidiDispatcher();
+		final List<String> executed = new CopyOnWriteArrayList<String>();
+		final CountDownLatch done = new CountDownLatch(4);
+
+		dispatcher.schedule(new RecordingTask("late", executed, done), 100);
+		dispatcher.schedule(new RecordingTask("early", executed, done), 20);
+		dispatcher.execute(new RecordingTask("first", executed, done));
+		dispatcher.execute(new RecordingTask("second", executed, done));
+
+		assertTrue(done.await(2, TimeUnit.SECONDS));
+		assertEquals("[first, second, early, late]", executed.toString());
+	}
+
+	@Test
+	public void testTasksRunOnDispatcherThread() throws InterruptedException {
+
+		final MidiDispatcher dispatcher = new MidiDispatcher();
+		final CountDownLatch done = new CountDownLatch(1);
+		final boolean[] onDispatcherThread = new boolean[1];
+
+		dispatcher.execute(new Runnable() {
+			public void run() {
+				onDispatcherThread[0] = dispatcher.isDispatcherThread();
+				done.countDown();
+			}
+		});
+
+		assertTrue(done.await(2, TimeUnit.SECONDS));
+		assertTrue(onDispatcherThread[0]);
+		assertFalse(dispatcher.isDispatcherThread());
+	}
+
+	class RecordingTask implements Runnable {
+
+		private String name;
+		private List<String> executed;
+		private CountDownLatch done;
+
+		RecordingTask(String name, List<String> executed, CountDownLatch done) {
+			this.name = name;
+			this.executed = executed;
+			this.done = done;
+		}
+
+		@Override
+		public void run() {
+			executed.add(name);
+			done.countDown();
+		}
+	}
+}
@@ -0,0 +1,70 @@
+package com.midi_automator.tests.unit.midi;
+
+import static org.junit.Assert.*;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.ShortMessage;
+
+import org.junit.Test;
+
+import com.midi_automator.midi.MidiINMerger;
+
+public class MidiINMergerTest {
+
+	private static final String USB = "Foot Switch USB";
+	private static final String DIN = "Foot Switch DIN";
+
+	private static final long MS = 1000000;
+
+	@Test
+	public void testRedundantCopiesAreDropped() throws InvalidMidiDataException {
+
+		MidiINMerger merger = new MidiINMerger();
+		ShortMessage press = new ShortMessage(ShortMessage.CONTROL_CHANGE, 0,
+				102, 127);
+
+		assertNotEquals(MidiINMerger.DUPLICATE,
+				merger.merge(USB, press, -1, 1000 * MS));
+		assertEquals(MidiINMerger.DUPLICATE,
+				merger.merge(DIN, press, -1, 1004 * MS));
+
+		// the next press is delivered by both devices again
+		assertNotEquals(MidiINMerger.DUPLICATE,
+				merger.merge(DIN, press, -1, 1020 * MS));
+		assertEquals(MidiINMerger.DUPLICATE,
+				merger.merge(USB, press, -1, 1022 * MS));
+
+		// repeated messages of the same device are no copies
+		assertNotEquals(MidiINMerger.DUPLICATE,
+				merger.merge(USB, press, -1, 1030 * MS));
+
+		// other messages and messages outside of the window are no copies
+		assertNotEquals(MidiINMerger.DUPLICATE, merger.merge(DIN,
+				new ShortMessage(ShortMessage.CONTROL_CHANGE, 0, 102, 0), -1,
+				1031 * MS));
+		assertNotEquals(MidiINMerger.DUPLICATE,
+				merger.merge(DIN, press, -1, 1100 * MS));
+
+		assertEquals(2, merger.getDuplicateCount());
+	}
+
+	@Test
+	public void testTimeStampsAreNormalized() throws InvalidMidiDataException {
+
+		MidiINMerger merger = new MidiINMerger();
+		merger.setWindow(0);
+		ShortMessage press = new ShortMessage(ShortMessage.NOTE_ON, 0, 60, 0);
+
+		// the USB device has a time stamp clock of its own
+		long first = merger.merge(USB, press, 5000, 2000 * MS);
+		long second = merger.merge(DIN, press, -1, 2001 * MS);
+		long third = merger.merge(USB, press, 7000, 2002 * MS);
+
+		assertEquals(2000000, first);
+		assertEquals(2001000, second);
+		assertEquals(2002000, third);
+
+		// the merged timeline does not go back in time
+		assertEquals(2002000, merger.merge(DIN, press, -1, 2001500000));
+	}
+}
@@ -0,0 +1,79 @@
+package com.midi_automator.tests.unit.midi;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.ShortMessage;
+
+import org.junit.Test;
+
+import com.midi_automator.midi.MidiAutomatorReceiver;
+import com.midi_automator.midi.MidiINMultiplexer;
+
+public class MidiINMultiplexerTest {
+
+	@Test
+	public void testMessageIsFannedOutToAllReceivers() {
+
+		MidiINMultiplexer multiplexer = new MidiINMultiplexer();
+		SignatureReceiver first = new SignatureReceiver();
+		OtherSignatureReceiver second = new OtherSignatureReceiver();
+
+		multiplexer.attach(first);
+		multiplexer.attach(second);
+		multiplexer.handleShortMessage(ShortMessage.CONTROL_CHANGE, 102, 5,
+				1000, System.nanoTime());
+
+		assertEquals(1, first.signatures.size());
+		assertEquals(first.signatures, second.signatures);
+		assertSame(first.signatures.get(0), second.signatures.get(0));
+	}
+
+	@Test
+	public void testReceiversOfSameClassAreShared() {
+
+		MidiINMultiplexer multiplexer = new MidiINMultiplexer();
+		SignatureReceiver first = new SignatureReceiver();
+		SignatureReceiver second = new SignatureReceiver();
+
+		assertSame(first, multiplexer.attach(first));
+		assertSame(first, multiplexer.attach(second));
+		assertEquals(1, multiplexer.getConsumers().length);
+
+		multiplexer.detach(first);
+		assertEquals(1, multiplexer.getConsumers().length);
+
+		multiplexer.detach(first);
+		assertEquals(0, multiplexer.getConsumers().length);
+	}
+
+	@Test
+	public void testDetachedReceiverGetsNoMessages() {
+
+		MidiINMultiplexer multiplexer = new MidiINMultiplexer();
+		SignatureReceiver receiver = new SignatureReceiver();
+
+		multiplexer.attach(receiver);
+		multiplexer.detach(receiver);
+		multiplexer.handleShortMessage(ShortMessage.NOTE_ON, 60, 100, 1000,
+				System.nanoTime());
+
+		assertTrue(receiver.signatures.isEmpty());
+	}
+
+	class SignatureReceiver extends MidiAutomatorReceiver {
+
+		List<String> signatures = new ArrayList<String>();
+
+		@Override
+		protected void receive(MidiMessage message, long timeStamp) {
+			signatures.add(getInterpretedSignature());
+		}
+	}
+
+	class OtherSignatureReceiver extends SignatureReceiver {
+	}
+}
@@ -0,0 +1,75 @@
+package com.midi_automator.tests.unit.midi;
+
+import static org.junit.Assert.*;
+
+import javax.sound.midi.ShortMessage;
+
+import org.junit.Test;
+
+import com.midi_automator.midi.MidiIngressFilter;
+
+public class MidiIngressFilterTest {
+
+	@Test
+	public void testDefaultRejectsClockSensingAndTimeCode() {
+
+		MidiIngressFilter filter = new MidiIngressFilter();
+
+		assertTrue(filter.isRejected(ShortMessage.TIMING_CLOCK));
+		assertTrue(filter.isRejected(ShortMessage.ACTIVE_SENSING));
+		assertTrue(filter.isRejected(ShortMessage.MIDI_TIME_CODE));
+		assertFalse(filter.isRejected(ShortMessage.START));
+		assertFalse(filter.isRejected(ShortMessage.CONTROL_CHANGE | 15));
+		assertEquals("F1,F8,FE", filter.getRejectedStatuses());
+	}
+
+	@Test
+	public void testCommandsAndChannelsCanBeRejected() {
+
+		MidiIngressFilter filter = new MidiIngressFilter();
+
+		filter.setCommandRejected(ShortMessage.POLY_PRESSURE, true);
+		assertTrue(filter.isCommandRejected(ShortMessage.POLY_PRESSURE));
+		assertTrue(filter.isRejected(ShortMessage.POLY_PRESSURE | 9));
+		assertFalse(filter.isCommandRejected(ShortMessage.NOTE_ON));
+
+		filter.setChannelRejected(9, true);
+		assertTrue(filter.isChannelRejected(9));
+		assertTrue(filter.isRejected(ShortMessage.PITCH_BEND | 9));
+		assertFalse(filter.isRejected(ShortMessage.PITCH_BEND | 8));
+
+		filter.setChannelRejected(9, false);
+		assertFalse(filter.isRejected(ShortMessage.NOTE_ON | 9));
+		assertFalse(filter.isChannelRejected(9));
+	}
+
+	@Test
+	public void testRejectedStatusesRoundTrip() {
+
+		MidiIngressFilter filter = new MidiIngressFilter();
+		filter.setRejectedStatuses("b0, FA,f8");
+
+		assertEquals("B0,F8,FA", filter.getRejectedStatuses());
+		assertFalse(filter.isRejected(ShortMessage.ACTIVE_SENSING));
+
+		MidiIngressFilter copy = new MidiIngressFilter();
+		copy.setRejectedStatuses(filter.getRejectedStatuses());
+		assertEquals(filter.getRejectedStatuses(), copy.getRejectedStatuses());
+	}
+
+	@Test(expected = NumberFormatException.class)
+	public void testDataByteIsNoStatus() {
+		new MidiIngressFilter().setRejectedStatuses("7F");
+	}
+
+	@Test
+	public void testRejectedMessagesAreCounted() {
+
+		MidiIngressFilter filter = new MidiIngressFilter();
+
+		assertFalse(filter.accepts(ShortMessage.TIMING_CLOCK));
+		assertFalse(filter.accepts(ShortMessage.ACTIVE_SENSING));
+		assertTrue(filter.accepts(ShortMessage.NOTE_ON));
+		assertEquals(2, filter.getFilteredCount());
+	}
+}
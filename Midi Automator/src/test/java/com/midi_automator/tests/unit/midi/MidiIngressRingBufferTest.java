@@ -0,0 +1,124 @@
+package com.midi_automator.tests.unit.midi;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.ShortMessage;
+
+import org.junit.Test;
+
+import com.midi_automator.midi.IMidiIngressHandler;
+import com.midi_automator.midi.MidiIngressRingBuffer;
+import com.midi_automator.midi.MidiIngressRingBuffer.OverflowPolicy;
+
+public class MidiIngressRingBufferTest {
+
+	@Test
+	public void testDropOldest() {
+
+		MidiIngressRingBuffer buffer = new MidiIngressRingBuffer(4);
+		buffer.setOverflowPolicy(OverflowPolicy.DROP_OLDEST);
+
+		for (int i = 0; i < 6; i++) {
+			assertTrue(buffer.offer(ShortMessage.NOTE_ON, i, 100, i));
+		}
+
+		RecordingHandler handler = new RecordingHandler();
+		assertEquals(4, buffer.drain(handler, 100));
+		assertEquals(2, handler.data1.get(0).intValue());
+		assertEquals(5, handler.data1.get(3).intValue());
+
+		assertEquals(6, buffer.getEnqueuedCount());
+		assertEquals(2, buffer.getDroppedCount());
+		assertTrue(buffer.isEmpty());
+	}
+
+	@Test
+	public void testCoalesce() {
+
+		MidiIngressRingBuffer buffer = new MidiIngressRingBuffer(2);
+		buffer.setOverflowPolicy(OverflowPolicy.COALESCE);
+
+		buffer.offer(ShortMessage.CONTROL_CHANGE, 7, 0, 0);
+		buffer.offer(ShortMessage.CONTROL_CHANGE, 8, 0, 1);
+
+		// buffer is full now, values of the same controller are merged
+		for (int value = 1; value <= 10; value++) {
+			buffer.offer(ShortMessage.CONTROL_CHANGE, 7, value, 1 + value);
+		}
+
+		RecordingHandler handler = new RecordingHandler();
+		assertEquals(3, buffer.drain(handler, 100));
+		assertEquals(7, handler.data1.get(2).intValue());
+		assertEquals(10, handler.data2.get(2).intValue());
+
+		assertEquals(3, buffer.getEnqueuedCount());
+		assertEquals(9, buffer.getCoalescedCount());
+		assertEquals(0, buffer.getDroppedCount());
+
+		// newer values of a pending key must not overtake it
+		buffer.offer(ShortMessage.CONTROL_CHANGE, 7, 0, 0);
+		buffer.offer(ShortMessage.CONTROL_CHANGE, 8, 0, 1);
+		buffer.offer(ShortMessage.CONTROL_CHANGE, 9, 1, 2);
+		buffer.drain(new RecordingHandler(), 1);
+		buffer.offer(ShortMessage.CONTROL_CHANGE, 9, 2, 3);
+
+		handler = new RecordingHandler();
+		buffer.drain(handler, 100);
+		assertEquals(9, handler.data1.get(1).intValue());
+		assertEquals(2, handler.data2.get(1).intValue());
+	}
+
+	@Test
+	public void testProducerConsumer() throws InterruptedException {
+
+		final MidiIngressRingBuffer buffer = new MidiIngressRingBuffer(16);
+		buffer.setOverflowPolicy(OverflowPolicy.BLOCK);
+		final int messages = 100000;
+
+		Thread producer = new Thread() {
+			public void run() {
+				for (int i = 0; i < messages; i++) {
+					buffer.offer(ShortMessage.NOTE_ON, i & 0x7F,
+							(i >> 7) & 0x7F, i);
+				}
+			}
+		};
+		producer.start();
+
+		RecordingHandler handler = new RecordingHandler();
+		while (handler.timeStamps.size() < messages) {
+			buffer.drain(handler, 8);
+		}
+		producer.join();
+
+		for (int i = 0; i < messages; i++) {
+			assertEquals(i, handler.timeStamps.get(i).longValue());
+		}
+		assertEquals(0, buffer.getDroppedCount());
+	}
+
+	class RecordingHandler implements IMidiIngressHandler {
+
+		List<Integer> data1 = new ArrayList<Integer>();
+		List<Integer> data2 = new ArrayList<Integer>();
+		List<Long> timeStamps = new ArrayList<Long>();
+
+		@Override
+		public void handleShortMessage(int status, int data1, int data2,
+				long timeStamp, long arrivalTime) {
+			this.data1.add(data1);
+			this.data2.add(data2);
+			this.timeStamps.add(timeStamp);
+		}
+
+		@Override
+		public void handleMessage(MidiMessage message, long timeStamp,
+				long arrivalTime) {
+			timeStamps.add(timeStamp);
+		}
+	}
+}
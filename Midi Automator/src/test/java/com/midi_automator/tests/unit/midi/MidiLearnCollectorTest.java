@@ -0,0 +1,75 @@
+package com.midi_automator.tests.unit.midi;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.midi_automator.midi.MidiComboAutomaton;
+import com.midi_automator.midi.MidiLearnCollector;
+
+public class MidiLearnCollectorTest {
+
+	private static final String NOTE_1 = "channel 1: NOTE ON C3";
+	private static final String NOTE_2 = "channel 1: NOTE ON D3";
+	private static final String NOTE_3 = "channel 1: NOTE ON E3";
+
+	@Test
+	public void testSequenceWithGapsLongerThanChordWindowIsLearned() {
+
+		MidiLearnCollector collector = new MidiLearnCollector();
+		long gap = 200000;
+		assertTrue(gap > MidiComboAutomaton.DEFAULT_CHORD_WINDOW * 1000);
+
+		assertTrue(collector.collect(NOTE_1, 0, false));
+		assertFalse(collector.isComplete(gap));
+		assertTrue(collector.collect(NOTE_2, gap, false));
+		assertFalse(collector.isComplete(2 * gap));
+		assertTrue(collector.collect(NOTE_3, 2 * gap, false));
+
+		assertFalse(collector.isComplete(2 * gap
+				+ MidiLearnCollector.DEFAULT_LEARN_GAP * 1000));
+		assertTrue(collector.isComplete(2 * gap
+				+ MidiLearnCollector.DEFAULT_LEARN_GAP * 1000 + 1));
+
+		assertEquals(NOTE_1 + MidiComboAutomaton.SEQUENCE_SEPARATOR + NOTE_2
+				+ MidiComboAutomaton.SEQUENCE_SEPARATOR + NOTE_3,
+				collector.getSignature());
+	}
+
+	@Test
+	public void testChordAndSingleTrigger() {
+
+		MidiLearnCollector collector = new MidiLearnCollector();
+
+		collector.collect(NOTE_1, 0, false);
+		assertEquals(NOTE_1, collector.getSignature());
+
+		// releases and repeated keys of a chord are not learned
+		collector.collect("channel 1: NOTE OFF C3", 5000, true);
+		collector.collect(NOTE_2, 10000, false);
+		collector.collect(NOTE_2, 12000, false);
+		assertEquals(NOTE_1 + MidiComboAutomaton.CHORD_SEPARATOR + NOTE_2,
+				collector.getSignature());
+
+		collector.clear();
+		assertNull(collector.getSignature());
+		assertFalse(collector.isComplete(Long.MAX_VALUE));
+	}
+
+	@Test
+	public void testSlowSequenceGetsItsOwnWindow() {
+
+		MidiLearnCollector collector = new MidiLearnCollector();
+		collector.setLearnGap(800);
+		collector.setWindows(30, 1000);
+
+		collector.collect(NOTE_1, 0, false);
+		collector.collect(NOTE_2, 700000, false);
+		collector.collect(NOTE_3, 1400000, false);
+
+		assertEquals(NOTE_1 + MidiComboAutomaton.SEQUENCE_SEPARATOR + NOTE_2
+				+ MidiComboAutomaton.SEQUENCE_SEPARATOR + NOTE_3
+				+ MidiComboAutomaton.WINDOW_PREFIX + 1430
+				+ MidiComboAutomaton.WINDOW_SUFFIX, collector.getSignature());
+	}
+}
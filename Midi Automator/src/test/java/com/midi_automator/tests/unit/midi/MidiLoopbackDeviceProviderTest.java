@@ -0,0 +1,85 @@
+package com.midi_automator.tests.unit.midi;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.sound.midi.MidiDevice;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.MidiUnavailableException;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.ShortMessage;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.midi_automator.midi.MidiLoopbackDeviceProvider;
+import com.midi_automator.utils.MidiUtils;
+
+public class MidiLoopbackDeviceProviderTest {
+
+	private static final String PORT = "Loopback Test";
+
+	@After
+	public void removePorts() {
+		System.clearProperty(MidiLoopbackDeviceProvider.PORTS_PROPERTY);
+		MidiUtils.getMidiDeviceRegistry().refresh();
+	}
+
+	@Test
+	public void testMessagesAreLoopedBackFromOutToIn() throws Exception {
+
+		System.setProperty(MidiLoopbackDeviceProvider.PORTS_PROPERTY, PORT);
+		MidiUtils.getMidiDeviceRegistry().refresh();
+
+		MidiDevice in = MidiUtils.getMidiDevice(PORT, "IN");
+		MidiDevice out = MidiUtils.getMidiDevice(PORT, "OUT");
+		final BlockingQueue<MidiMessage> received = new LinkedBlockingQueue<MidiMessage>();
+
+		in.open();
+		in.getTransmitter().setReceiver(new Receiver() {
+
+			@Override
+			public void send(MidiMessage message, long timeStamp) {
+				received.add(message);
+			}
+
+			@Override
+			public void close() {
+			}
+		});
+
+		out.open();
+		ShortMessage message = new ShortMessage(ShortMessage.CONTROL_CHANGE,
+				0, 102, 3);
+		out.getReceiver().send(message, -1);
+
+		MidiMessage loopedBack = received.poll(1, TimeUnit.SECONDS);
+		assertNotNull(loopedBack);
+		assertTrue(Arrays.equals(message.getMessage(), loopedBack.getMessage()));
+
+		in.close();
+		out.close();
+	}
+
+	@Test(expected = MidiUnavailableException.class)
+	public void testRemovedPortIsUnplugged() throws Exception {
+
+		System.setProperty(MidiLoopbackDeviceProvider.PORTS_PROPERTY, PORT);
+		MidiUtils.getMidiDeviceRegistry().refresh();
+		MidiDevice in = MidiUtils.getMidiDevice(PORT, "IN");
+
+		System.clearProperty(MidiLoopbackDeviceProvider.PORTS_PROPERTY);
+		MidiUtils.getMidiDeviceRegistry().refresh();
+		assertFalse(MidiUtils.getMidiDeviceSignatures().contains(PORT));
+
+		for (MidiDevice.Info info : MidiSystem.getMidiDeviceInfo()) {
+			assertNotSame(in.getDeviceInfo(), info);
+		}
+		in.open();
+	}
+}
@@ -0,0 +1,84 @@
+package com.midi_automator.tests.unit.midi;
+
+import static org.junit.Assert.*;
+
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.ShortMessage;
+
+import org.junit.Test;
+
+import com.midi_automator.midi.MidiOutScheduler;
+import com.midi_automator.midi.MidiParameterMessage;
+import com.midi_automator.midi.MidiParameterMessage.Type;
+import com.midi_automator.tests.utils.MockMidiDevice;
+import com.midi_automator.utils.MidiUtils;
+
+public class MidiOutSchedulerTest {
+
+	@Test
+	public void testMessageWithoutDelayIsSentImmediately() throws Exception {
+
+		MidiOutScheduler scheduler = new MidiOutScheduler();
+		MockMidiDevice device = new MockMidiDevice("Out", 0, -1, 5000);
+		final boolean[] sent = new boolean[1];
+
+		scheduler.send(device, new ShortMessage(ShortMessage.NOTE_ON, 60, 1),
+				0, new Runnable() {
+					public void run() {
+						sent[0] = true;
+					}
+				});
+
+		assertTrue(sent[0]);
+		assertEquals(1, device.messages.size());
+		assertEquals(Long.valueOf(5000), device.timeStamps.get(0));
+		MidiUtils.releaseCachedReceiver(device);
+	}
+
+	@Test
+	public void testParameterMessageIsSentAsControlChanges() throws Exception {
+
+		MidiOutScheduler scheduler = new MidiOutScheduler();
+		MockMidiDevice device = new MockMidiDevice("Out", 0, -1, -1);
+
+		scheduler.send(device, new MidiParameterMessage(Type.NRPN, 0, 1282,
+				5125), 0, null);
+
+		assertEquals(4, device.messages.size());
+		int[][] expected = { { 99, 10 }, { 98, 2 }, { 6, 40 }, { 38, 5 } };
+		for (int i = 0; i < expected.length; i++) {
+			ShortMessage message = (ShortMessage) device.messages.get(i);
+			assertEquals(ShortMessage.CONTROL_CHANGE, message.getCommand());
+			assertEquals(expected[i][0], message.getData1());
+			assertEquals(expected[i][1], message.getData2());
+		}
+		MidiUtils.releaseCachedReceiver(device);
+	}
+
+	@Test
+	public void testScheduledMessagesAreSentInTargetOrder() throws Exception {
+
+		MidiOutScheduler scheduler = new MidiOutScheduler();
+		MockMidiDevice device = new MockMidiDevice("Out", 0, -1, 1000);
+		MidiMessage late = new ShortMessage(ShortMessage.CONTROL_CHANGE, 102,
+				2);
+		MidiMessage early = new ShortMessage(ShortMessage.CONTROL_CHANGE, 102,
+				1);
+
+		scheduler.send(device, late, 60, null);
+		scheduler.send(device, early, 20, null);
+
+		long deadline = System.currentTimeMillis() + 2000;
+		while (device.messages.size() < 2
+				&& System.currentTimeMillis() < deadline) {
+			Thread.sleep(5);
+		}
+
+		assertEquals(2, device.messages.size());
+		assertSame(early, device.messages.get(0));
+		assertSame(late, device.messages.get(1));
+		assertEquals(Long.valueOf(1000 + 20000), device.timeStamps.get(0));
+		assertEquals(1, device.getCreatedReceivers());
+		MidiUtils.releaseCachedReceiver(device);
+	}
+}
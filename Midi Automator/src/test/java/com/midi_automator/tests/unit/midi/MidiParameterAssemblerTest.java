@@ -0,0 +1,278 @@
+package com.midi_automator.tests.unit.midi;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.ShortMessage;
+
+import org.junit.Test;
+
+import com.midi_automator.midi.IMidiIngressHandler;
+import com.midi_automator.midi.MidiParameterAssembler;
+import com.midi_automator.utils.MidiUtils;
+
+public class MidiParameterAssemblerTest {
+
+	private static final long PAIR_WINDOW = TimeUnit.MILLISECONDS
+			.toNanos(MidiParameterAssembler.PAIR_WINDOW);
+	private static final long SELECTOR_WINDOW = TimeUnit.MILLISECONDS
+			.toNanos(MidiParameterAssembler.DEFAULT_SELECTOR_WINDOW);
+	private static final long MILLISECOND = TimeUnit.MILLISECONDS.toNanos(1);
+
+	@Test
+	public void testNrpnIsAssembledToOneMessage() {
+
+		RecordingHandler handler = new RecordingHandler();
+		MidiParameterAssembler assembler = new MidiParameterAssembler(handler);
+
+		controlChange(assembler, 0, 99, 10, 0);
+		controlChange(assembler, 0, 98, 2, 0);
+		controlChange(assembler, 0, 6, 40, 0);
+		assertTrue(handler.signatures.isEmpty());
+
+		controlChange(assembler, 0, 38, 5, 0);
+		assertEquals(1, handler.signatures.size());
+		assertEquals("channel 1: NRPN 1282 value: 5125",
+				handler.signatures.get(0));
+		assertEquals(3, assembler.getAssembledCount());
+
+		// only the LSB changed
+		controlChange(assembler, 0, 38, 6, 0);
+		assertEquals("channel 1: NRPN 1282 value: 5126",
+				handler.signatures.get(1));
+
+		// the MSB is held until its LSB as the data entry sends LSBs
+		controlChange(assembler, 0, 6, 41, 0);
+		assertTrue(assembler.isPending());
+		assembler.flush(PAIR_WINDOW);
+		assertEquals("channel 1: NRPN 1282 value: 5248",
+				handler.signatures.get(2));
+
+		// the null RPN deselects the parameter
+		controlChange(assembler, 0, 101, 127, 0);
+		controlChange(assembler, 0, 100, 127, 0);
+		controlChange(assembler, 0, 6, 64, 0);
+		assembler.flush(PAIR_WINDOW);
+		assertEquals("channel 1: CONTROL CHANGE 6 value: 64",
+				handler.signatures.get(3));
+		assertEquals(4, handler.signatures.size());
+	}
+
+	@Test
+	public void testParameterNumberWithoutDataEntryIsPassed() {
+
+		RecordingHandler handler = new RecordingHandler();
+		MidiParameterAssembler assembler = new MidiParameterAssembler(handler);
+
+		// a knob on CC 99 is released after the selector window
+		controlChange(assembler, 0, 99, 10, 0);
+		assertTrue(assembler.isPending());
+		assertEquals(MidiParameterAssembler.DEFAULT_SELECTOR_WINDOW,
+				assembler.getFlushDelay());
+		assembler.flush(PAIR_WINDOW);
+		assertTrue(handler.signatures.isEmpty());
+		assembler.flush(SELECTOR_WINDOW);
+		assertEquals("channel 1: CONTROL CHANGE 99 value: 10",
+				handler.signatures.get(0));
+
+		// another message releases the held parameter numbers in order
+		controlChange(assembler, 0, 101, 1, 0);
+		controlChange(assembler, 0, 100, 2, 0);
+		assembler.handleShortMessage(ShortMessage.NOTE_ON, 60, 100, -1, 0);
+		assertEquals("channel 1: CONTROL CHANGE 101 value: 1",
+				handler.signatures.get(1));
+		assertEquals("channel 1: CONTROL CHANGE 100 value: 2",
+				handler.signatures.get(2));
+		assertEquals("channel 1: NOTE ON C3", handler.signatures.get(3));
+
+		// no parameter was selected, so the data entry is a plain controller
+		controlChange(assembler, 0, 6, 64, 0);
+		assertEquals("channel 1: CONTROL CHANGE 6 value: 64",
+				handler.signatures.get(4));
+		assertFalse(assembler.isPending());
+		assertEquals(0, assembler.getAssembledCount());
+	}
+
+	@Test
+	public void testSlowDataEntryCompletesNrpn() {
+
+		RecordingHandler handler = new RecordingHandler();
+		MidiParameterAssembler assembler = new MidiParameterAssembler(handler);
+
+		// the data entry follows 3 ms after CC 98 on a slow link
+		controlChange(assembler, 0, 99, 1, 0);
+		controlChange(assembler, 0, 98, 2, MILLISECOND);
+		assembler.flush(4 * MILLISECOND);
+		assertTrue(handler.signatures.isEmpty());
+		controlChange(assembler, 0, 6, 3, 4 * MILLISECOND);
+		controlChange(assembler, 0, 38, 4, 5 * MILLISECOND);
+
+		assertEquals(1, handler.signatures.size());
+		assertEquals("channel 1: NRPN 130 value: 388",
+				handler.signatures.get(0));
+
+		// the window runs from the latest parameter number controller
+		controlChange(assembler, 0, 99, 5, 10 * MILLISECOND);
+		controlChange(assembler, 0, 98, 6, 10 * MILLISECOND + SELECTOR_WINDOW
+				/ 2);
+		assembler.flush(10 * MILLISECOND + SELECTOR_WINDOW);
+		assertTrue(assembler.isPending());
+		assembler.flush(10 * MILLISECOND + SELECTOR_WINDOW / 2
+				+ SELECTOR_WINDOW);
+		assertEquals("channel 1: CONTROL CHANGE 99 value: 5",
+				handler.signatures.get(1));
+		assertEquals("channel 1: CONTROL CHANGE 98 value: 6",
+				handler.signatures.get(2));
+		assertFalse(assembler.isPending());
+
+		// a narrow window releases the parameter number controllers earlier
+		assembler.setSelectorWindow(1);
+		assertEquals(1, assembler.getSelectorWindow());
+		controlChange(assembler, 0, 101, 0, 0);
+		assembler.flush(MILLISECOND);
+		assertEquals("channel 1: CONTROL CHANGE 101 value: 0",
+				handler.signatures.get(3));
+
+		try {
+			assembler.setSelectorWindow(-1);
+			fail("Negative selector window was set");
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
+	@Test
+	public void testPaired14BitController() {
+
+		RecordingHandler handler = new RecordingHandler();
+		MidiParameterAssembler assembler = new MidiParameterAssembler(handler);
+		assembler.setPairedControllers("7");
+		assertEquals("7", assembler.getPairedControllers());
+
+		controlChange(assembler, 1, 7, 100, 0);
+		controlChange(assembler, 1, 39, 5, 0);
+		assertEquals(1, handler.signatures.size());
+		assertEquals("channel 2: 14 BIT CONTROL CHANGE 7 value: 12805",
+				handler.signatures.get(0));
+
+		// an omitted LSB is 0
+		controlChange(assembler, 1, 7, 101, 0);
+		assembler.flush(PAIR_WINDOW / 2);
+		assertEquals(1, handler.signatures.size());
+		assembler.flush(PAIR_WINDOW);
+		assertEquals("channel 2: 14 BIT CONTROL CHANGE 7 value: 12928",
+				handler.signatures.get(1));
+		assertFalse(assembler.isPending());
+	}
+
+	@Test
+	public void testUnpairedControllersArePassed() {
+
+		RecordingHandler handler = new RecordingHandler();
+		MidiParameterAssembler assembler = new MidiParameterAssembler(handler);
+
+		// two knobs turned one after the other are no 14 bit controller
+		controlChange(assembler, 0, 1, 64, 0);
+		controlChange(assembler, 0, 33, 5, 0);
+		controlChange(assembler, 0, 1, 65, 0);
+		assertFalse(assembler.isPending());
+		assertEquals("channel 1: CONTROL CHANGE 1 value: 64",
+				handler.signatures.get(0));
+		assertEquals("channel 1: CONTROL CHANGE 33 value: 5",
+				handler.signatures.get(1));
+		assertEquals("channel 1: CONTROL CHANGE 1 value: 65",
+				handler.signatures.get(2));
+
+		// an LSB without MSB of a paired controller is passed
+		assembler.setPairedControllers("1, 2");
+		assertEquals("1, 2", assembler.getPairedControllers());
+		controlChange(assembler, 1, 33, 5, 0);
+		assertEquals("channel 2: CONTROL CHANGE 33 value: 5",
+				handler.signatures.get(3));
+		assertEquals(0, assembler.getAssembledCount());
+
+		try {
+			assembler.setPairedControllers("32");
+			fail("Controller 32 was paired");
+		} catch (NumberFormatException e) {
+		}
+	}
+
+	@Test
+	public void testRunningStatusEdgeCases() {
+
+		RecordingHandler handler = new RecordingHandler();
+		MidiParameterAssembler assembler = new MidiParameterAssembler(handler);
+		assembler.setPairedControllers("7");
+
+		controlChange(assembler, 0, 7, 1, 0);
+		controlChange(assembler, 0, 39, 0, 0);
+
+		// real time messages do not break a pair
+		controlChange(assembler, 0, 7, 2, 0);
+		assembler.handleShortMessage(ShortMessage.TIMING_CLOCK, 0, 0, -1, 0);
+		controlChange(assembler, 0, 39, 1, 0);
+		assertEquals("Timing clock", handler.signatures.get(1));
+		assertEquals("channel 1: 14 BIT CONTROL CHANGE 7 value: 257",
+				handler.signatures.get(2));
+
+		// another channel message releases the held MSB first
+		controlChange(assembler, 0, 7, 3, 0);
+		assembler.handleShortMessage(ShortMessage.NOTE_ON, 60, 100, -1, 0);
+		assertEquals("channel 1: 14 BIT CONTROL CHANGE 7 value: 384",
+				handler.signatures.get(3));
+		assertEquals("channel 1: NOTE ON C3", handler.signatures.get(4));
+
+		// a system reset discards the held MSB and the selected parameters
+		controlChange(assembler, 0, 7, 4, 0);
+		controlChange(assembler, 1, 99, 1, 0);
+		controlChange(assembler, 1, 98, 2, 0);
+		controlChange(assembler, 1, 6, 3, 0);
+		assembler.handleShortMessage(ShortMessage.SYSTEM_RESET, 0, 0, -1, 0);
+		assertEquals("System Reset", handler.signatures.get(5));
+		assertFalse(assembler.isPending());
+		assertEquals(6, assembler.getAssembledCount());
+
+		controlChange(assembler, 1, 6, 5, 0);
+		assertEquals("channel 2: CONTROL CHANGE 6 value: 5",
+				handler.signatures.get(6));
+		controlChange(assembler, 0, 7, 5, 0);
+		assembler.flush(PAIR_WINDOW);
+		assertEquals("channel 1: 14 BIT CONTROL CHANGE 7 value: 640",
+				handler.signatures.get(7));
+		assertEquals(8, handler.signatures.size());
+	}
+
+	private static void controlChange(MidiParameterAssembler assembler,
+			int channel, int controller, int value, long arrivalTime) {
+		assembler.handleShortMessage(ShortMessage.CONTROL_CHANGE | channel,
+				controller, value, -1, arrivalTime);
+	}
+
+	class RecordingHandler implements IMidiIngressHandler {
+
+		List<String> signatures = new ArrayList<String>();
+
+		@Override
+		public void handleShortMessage(int status, int data1, int data2,
+				long timeStamp, long arrivalTime) {
+			try {
+				signatures.add(MidiUtils.messageToString(MidiUtils
+						.normalizeMidiMesage(new ShortMessage(status, data1,
+								data2))));
+			} catch (InvalidMidiDataException e) {
+				fail(e.getMessage());
+			}
+		}
+
+		@Override
+		public void handleMessage(MidiMessage message, long timeStamp,
+				long arrivalTime) {
+			signatures.add(MidiUtils.messageToString(message));
+		}
+	}
+}
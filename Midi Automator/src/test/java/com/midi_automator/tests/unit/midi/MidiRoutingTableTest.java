@@ -0,0 +1,361 @@
+package com.midi_automator.tests.unit.midi;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.ShortMessage;
+
+import org.junit.Test;
+
+import com.midi_automator.midi.IMidiGestureListener;
+import com.midi_automator.midi.MidiComboAutomaton.Input;
+import com.midi_automator.midi.MidiParameterMessage;
+import com.midi_automator.midi.MidiParameterMessage.Type;
+import com.midi_automator.midi.MidiRoute;
+import com.midi_automator.midi.MidiRoute.Trigger;
+import com.midi_automator.midi.MidiRoutingTable;
+import com.midi_automator.utils.MidiUtils;
+
+public class MidiRoutingTableTest {
+
+	@Test
+	public void testSignatureKeysMatchMessageKeys()
+			throws InvalidMidiDataException {
+
+		int[] commands = { ShortMessage.NOTE_OFF, ShortMessage.NOTE_ON,
+				ShortMessage.POLY_PRESSURE, ShortMessage.CONTROL_CHANGE,
+				ShortMessage.PROGRAM_CHANGE, ShortMessage.CHANNEL_PRESSURE,
+				ShortMessage.PITCH_BEND };
+
+		for (int command : commands) {
+			for (int channel = 0; channel < 16; channel += 5) {
+				for (int data1 = 0; data1 < 128; data1 += 7) {
+					for (int data2 = 0; data2 < 128; data2 += 9) {
+
+						ShortMessage message = new ShortMessage(command,
+								channel, data1, data2);
+						MidiMessage normalized = MidiUtils
+								.normalizeMidiMesage(message);
+						String signature = MidiUtils
+								.messageToString(normalized);
+
+						assertEquals(signature,
+								MidiRoutingTable.getRoutingKey(message),
+								MidiRoutingTable.getRoutingKey(signature));
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testRouting() throws InvalidMidiDataException {
+
+		MidiRoutingTable table = new MidiRoutingTable();
+		table.addItem("channel 1: CONTROL CHANGE 20 value: 127", 3);
+		table.addItem("channel 1: CONTROL CHANGE 20 value: 127", 5);
+		table.addNext("channel 2: NOTE ON C3");
+		table.addAutomation("channel 2: NOTE ON C3", 1);
+		table.addPrevious("-none-");
+
+		MidiRoute route = table.getRoute(new ShortMessage(
+				ShortMessage.CONTROL_CHANGE, 0, 20, 127));
+		assertEquals(3, route.getItemIndex());
+
+		assertNull(table.getRoute(new ShortMessage(
+				ShortMessage.CONTROL_CHANGE, 0, 20, 0)));
+
+		route = table.getRoute(new ShortMessage(ShortMessage.NOTE_ON, 1, 60,
+				100));
+		assertTrue(route.isOpenNext());
+		assertFalse(route.isOpenPrevious());
+		assertArrayEquals(new int[] { 1 }, route.getAutomationIndexes());
+
+		assertEquals(2, table.size());
+	}
+
+	@Test
+	public void testPatternRouting() throws InvalidMidiDataException {
+
+		MidiRoutingTable table = new MidiRoutingTable();
+		table.addItem("channel *: CONTROL CHANGE 20 value: 65-127", 1);
+		table.addItem("channel 1: CONTROL CHANGE 20 value: 127", 2);
+		table.addNext("channel 1-4: NOTE ON C3-C4");
+		table.addPrevious("channel 1: PITCH WHEEL CHANGE 0-4095");
+
+		// any channel and a range of values
+		assertEquals(1, table.getRoute(new ShortMessage(
+				ShortMessage.CONTROL_CHANGE, 15, 20, 65)).getItemIndex());
+		assertNull(table.getRoute(new ShortMessage(
+				ShortMessage.CONTROL_CHANGE, 15, 20, 64)));
+
+		// an exact trigger is preferred
+		assertEquals(2, table.getRoute(new ShortMessage(
+				ShortMessage.CONTROL_CHANGE, 0, 20, 127)).getItemIndex());
+		assertEquals(1, table.getRoute(new ShortMessage(
+				ShortMessage.CONTROL_CHANGE, 0, 20, 100)).getItemIndex());
+
+		// a range of keys on a range of channels
+		assertTrue(table.getRoute(
+				new ShortMessage(ShortMessage.NOTE_ON, 3, 72, 90))
+				.isOpenNext());
+		assertNull(table.getRoute(new ShortMessage(ShortMessage.NOTE_ON, 4,
+				60, 90)));
+		assertNull(table.getRoute(new ShortMessage(ShortMessage.NOTE_ON, 0,
+				73, 90)));
+
+		// the 14 bit value of a pitch wheel change
+		assertTrue(table.getRoute(
+				new ShortMessage(ShortMessage.PITCH_BEND, 0, 127, 31))
+				.isOpenPrevious());
+		assertNull(table.getRoute(new ShortMessage(ShortMessage.PITCH_BEND,
+				0, 0, 32)));
+
+		assertEquals(4, table.size());
+	}
+
+	@Test
+	public void testTriggersAreDebouncedByTimeStamp()
+			throws InvalidMidiDataException {
+
+		MidiRoutingTable table = new MidiRoutingTable();
+		table.setDebounceWindow(Trigger.NEXT, 50000);
+		table.addNext("channel 2: NOTE ON C3");
+		table.addAutomation("channel 2: NOTE ON C3", 1);
+
+		MidiRoute route = table.getRoute(new ShortMessage(ShortMessage.NOTE_ON,
+				1, 60, 100));
+
+		assertTrue(route.debounce(Trigger.NEXT, 1000000));
+		assertFalse(route.debounce(Trigger.NEXT, 1000000));
+		assertFalse(route.debounce(Trigger.NEXT, 1030000));
+		assertTrue(route.debounce(Trigger.NEXT, 1050000));
+
+		// other triggers of the route are debounced on their own
+		assertTrue(route.debounce(Trigger.AUTOMATION, 1050000));
+		assertTrue(route.debounce(Trigger.AUTOMATION, 1050001));
+
+		// a time stamp before the last trigger restarts the debouncing
+		assertTrue(route.debounce(Trigger.NEXT, 10));
+	}
+
+	@Test
+	public void testChordRouting() throws InvalidMidiDataException {
+
+		MidiRoutingTable table = new MidiRoutingTable();
+		table.addItem("channel 1: NOTE ON C3 + channel 1: NOTE ON E3", 1);
+		table.addNext("channel 1: NOTE ON C3");
+
+		ShortMessage c3 = new ShortMessage(ShortMessage.NOTE_ON, 0, 60, 100);
+		ShortMessage e3 = new ShortMessage(ShortMessage.NOTE_ON, 0, 64, 100);
+
+		// the single trigger fires until the chord is completed
+		assertTrue(table.getRoute(c3, 1000000, Input.REMOTE).isOpenNext());
+		assertEquals(1, table.getRoute(e3, 1020000, Input.REMOTE)
+				.getItemIndex());
+
+		// in any order, but within the window
+		assertNull(table.getRoute(e3, 2000000, Input.REMOTE));
+		assertTrue(table.getRoute(c3, 2040000, Input.REMOTE).isOpenNext());
+		assertEquals(1, table.getRoute(e3, 2060000, Input.REMOTE)
+				.getItemIndex());
+
+		// a release does not hold a note
+		assertNull(table.getRoute(new ShortMessage(ShortMessage.NOTE_ON, 0,
+				64, 0), 3000000, Input.REMOTE));
+		assertTrue(table.getRoute(c3, 3010000, Input.REMOTE).isOpenNext());
+
+		assertEquals(2, table.size());
+	}
+
+	@Test
+	public void testSequenceRouting() throws InvalidMidiDataException {
+
+		MidiRoutingTable table = new MidiRoutingTable();
+		table.setComboWindows(30, 500);
+		table.addPrevious("channel 1: CONTROL CHANGE 20 value: 127 > "
+				+ "channel 1: CONTROL CHANGE 20 value: 127 > "
+				+ "channel 1: CONTROL CHANGE 21 value: 127");
+		table.addAutomation("channel 1: CONTROL CHANGE 21 value: 127"
+				+ " > channel 1: CONTROL CHANGE 20 value: 127 within 100 ms",
+				2);
+
+		ShortMessage a = new ShortMessage(ShortMessage.CONTROL_CHANGE, 0, 20,
+				127);
+		ShortMessage b = new ShortMessage(ShortMessage.CONTROL_CHANGE, 0, 21,
+				127);
+
+		// a message advances a sequence only once
+		assertNull(table.getRoute(a, 1000000, Input.REMOTE));
+		assertNull(table.getRoute(b, 1100000, Input.REMOTE));
+		assertNull(table.getRoute(a, 1250000, Input.REMOTE));
+		assertNull(table.getRoute(a, 1300000, Input.REMOTE));
+		assertTrue(table.getRoute(b, 1400000, Input.REMOTE).isOpenPrevious());
+
+		// the latest start of a partial match is kept
+		assertNull(table.getRoute(a, 2000000, Input.REMOTE));
+		assertNull(table.getRoute(a, 2400000, Input.REMOTE));
+		assertNull(table.getRoute(a, 2600000, Input.REMOTE));
+		assertTrue(table.getRoute(b, 2800000, Input.REMOTE).isOpenPrevious());
+
+		// out of the window
+		assertNull(table.getRoute(a, 3000000, Input.REMOTE));
+		assertNull(table.getRoute(a, 3100000, Input.REMOTE));
+		assertNull(table.getRoute(b, 3600000, Input.REMOTE));
+
+		// every input advances on its own with its own window
+		assertNull(table.getRoute(b, 4000000, Input.AUTOMATION));
+		assertNull(table.getRoute(a, 4200000, Input.AUTOMATION));
+		assertNull(table.getRoute(b, 5000000, Input.AUTOMATION));
+		assertArrayEquals(new int[] { 2 },
+				table.getRoute(a, 5050000, Input.AUTOMATION)
+						.getAutomationIndexes());
+
+		assertEquals(2, table.size());
+	}
+
+	@Test
+	public void testInvalidCombosAreNotRouted() {
+
+		MidiRoutingTable table = new MidiRoutingTable();
+		table.addNext("channel 1: NOTE ON C3 + channel 1: NOTE ON C3");
+		table.addNext("channel 1: NOTE ON C3 + channel 1: NOTE ON E3"
+				+ " > channel 1: NOTE ON G3");
+		table.addNext("channel 1: NOTE ON C3 > Sysex message: F0 7E F7");
+		table.addNext("channel 1: NOTE ON C3 > channel 1: NOTE ON E3"
+				+ " within x ms");
+
+		assertEquals(0, table.size());
+	}
+
+	@Test
+	public void testParameterRouting() {
+
+		MidiRoutingTable table = new MidiRoutingTable();
+		table.addItem("channel 1: NRPN 1282 value: 5125", 2);
+		table.addNext("channel 2: 14 BIT CONTROL CHANGE 7 value: 16383");
+
+		assertEquals(0, MidiRoutingTable
+				.getRoutingKey("channel 1: NRPN 1282 value: 5125"));
+
+		MidiParameterMessage nrpn = new MidiParameterMessage(Type.NRPN, 0,
+				1282, 5125);
+		assertEquals("channel 1: NRPN 1282 value: 5125",
+				MidiUtils.messageToString(nrpn));
+		assertEquals(2, table.getRoute(nrpn, 1000000, Input.REMOTE)
+				.getItemIndex());
+
+		assertTrue(table.getRoute(
+				new MidiParameterMessage(Type.CONTROL_CHANGE_14_BIT, 1, 7,
+						16383)).isOpenNext());
+		assertNull(table.getRoute(new MidiParameterMessage(Type.RPN, 0, 1282,
+				5125)));
+
+		assertEquals(2, table.size());
+	}
+
+	@Test
+	public void testGesturesAreDecidedByPressAndRelease()
+			throws InvalidMidiDataException {
+
+		MidiRoutingTable table = new MidiRoutingTable();
+		table.addNext("channel 1: CONTROL CHANGE 64 value: 127");
+		table.addPrevious("channel 1: CONTROL CHANGE 64 value: 127"
+				+ " (long press)");
+		table.addHide("channel 1: NOTE ON C3 (double tap)");
+		table.addItem("channel 1: NOTE ON C3", 4);
+
+		ShortMessage press = new ShortMessage(ShortMessage.CONTROL_CHANGE, 0,
+				64, 127);
+		ShortMessage release = new ShortMessage(ShortMessage.CONTROL_CHANGE,
+				0, 64, 0);
+
+		// a tap is decided on the release
+		assertNull(table.getRoute(press, 1000000, Input.REMOTE));
+		assertTrue(table.getRoute(release, 1100000, Input.REMOTE)
+				.isOpenNext());
+
+		// the press duration is measured by the time stamps
+		assertNull(table.getRoute(press, 2000000, Input.REMOTE));
+		assertTrue(table.getRoute(release, 2600000, Input.REMOTE)
+				.isOpenPrevious());
+
+		// a double tap is decided on the second press
+		ShortMessage noteOn = new ShortMessage(ShortMessage.NOTE_ON, 0, 60,
+				100);
+		ShortMessage noteOff = new ShortMessage(ShortMessage.NOTE_OFF, 0, 60,
+				0);
+
+		assertNull(table.getRoute(noteOn, 3000000, Input.REMOTE));
+		assertNull(table.getRoute(noteOff, 3050000, Input.REMOTE));
+		assertTrue(table.getRoute(noteOn, 3150000, Input.REMOTE)
+				.isHideMainFrame());
+		assertNull(table.getRoute(noteOff, 3200000, Input.REMOTE));
+
+		assertEquals(4, table.size());
+	}
+
+	@Test
+	public void testGesturesAreDecidedByDeadlines()
+			throws InvalidMidiDataException {
+
+		MidiRoutingTable table = new MidiRoutingTable();
+		table.setGestureTimes(300, 500, 200);
+		table.addItem("channel 1: NOTE ON C3", 1);
+		table.addNext("channel 1: NOTE ON C3 (double tap)");
+		table.addPrevious("channel 1: NOTE ON C3 (hold)");
+
+		final List<MidiRoute> fired = new ArrayList<MidiRoute>();
+		table.setGestureListener(new IMidiGestureListener() {
+			public void gestureFired(Input input, MidiRoute route, long time) {
+				assertEquals(Input.AUTOMATION, input);
+				fired.add(route);
+			}
+		});
+
+		ShortMessage noteOn = new ShortMessage(ShortMessage.NOTE_ON, 0, 60,
+				100);
+		ShortMessage release = new ShortMessage(ShortMessage.NOTE_ON, 0, 60,
+				0);
+
+		// the tap is fired when the double tap window passed
+		long start = System.nanoTime();
+		assertNull(table.getRoute(noteOn, 1000000, Input.AUTOMATION));
+		assertNull(table.getRoute(release, 1050000, Input.AUTOMATION));
+		advance(table, start, 250);
+		assertTrue(fired.isEmpty());
+		advance(table, start, 400);
+		assertEquals(1, fired.size());
+		assertEquals(1, fired.get(0).getItemIndex());
+		assertFalse(table.isGesturePending());
+
+		// a hold repeats until the release
+		start = System.nanoTime();
+		assertNull(table.getRoute(noteOn, 2000000, Input.AUTOMATION));
+		advance(table, start, 450);
+		assertEquals(1, fired.size());
+		advance(table, start, 1000);
+		assertEquals(4, fired.size());
+		assertTrue(fired.get(3).isOpenPrevious());
+		assertNull(table.getRoute(release, 3000000, Input.AUTOMATION));
+		assertFalse(table.isGesturePending());
+	}
+
+	/**
+	 * Advances the gestures tick by tick until a time after the start
+	 */
+	private static void advance(MidiRoutingTable table, long start,
+			long millis) {
+
+		long end = start + TimeUnit.MILLISECONDS.toNanos(millis);
+		for (long now = start; now <= end; now += table.getGestureTickNanos()) {
+			table.advanceGestures(now);
+		}
+		table.advanceGestures(end);
+	}
+}
@@ -0,0 +1,124 @@
+package com.midi_automator.tests.unit.midi;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.SysexMessage;
+
+import org.junit.Test;
+
+import com.midi_automator.midi.MidiStressGenerator;
+import com.midi_automator.midi.MidiStressGenerator.Profile;
+
+public class MidiStressGeneratorTest {
+
+	@Test
+	public void testFloodIsRepeatableBySeed() throws InterruptedException {
+
+		MidiStressGenerator generator = new MidiStressGenerator();
+		generator.setRate(2000);
+		generator.setDuration(100);
+		generator.setSeed(42);
+
+		RecordingReceiver first = new RecordingReceiver();
+		RecordingReceiver second = new RecordingReceiver();
+		long sent = generator.generate(new Receiver[] { first });
+		generator.generate(new Receiver[] { second });
+
+		assertEquals(sent, first.messages.size());
+		assertTrue(sent > 100 && sent <= 201);
+
+		int count = Math.min(first.messages.size(), second.messages.size());
+		for (int i = 0; i < count; i++) {
+			assertArrayEquals(first.messages.get(i).getMessage(),
+					second.messages.get(i).getMessage());
+		}
+	}
+
+	@Test
+	public void testClockFollowsTempo() throws InterruptedException {
+
+		MidiStressGenerator generator = new MidiStressGenerator();
+		generator.setProfile(Profile.CLOCK);
+		generator.setTempo(1250);
+		generator.setDuration(200);
+
+		RecordingReceiver device = new RecordingReceiver();
+		long sent = generator.generate(new Receiver[] { device });
+
+		// 1250 bpm are 500 clocks per second
+		assertTrue(String.valueOf(sent), sent >= 90 && sent <= 101);
+		for (MidiMessage message : device.messages) {
+			assertEquals(ShortMessage.TIMING_CLOCK, message.getStatus());
+		}
+	}
+
+	@Test
+	public void testFuzzSendsMalformedMessages() throws InterruptedException {
+
+		MidiStressGenerator generator = new MidiStressGenerator();
+		generator.setProfile(Profile.FUZZ);
+		generator.setRate(MidiStressGenerator.AS_FAST_AS_POSSIBLE);
+		generator.setDuration(50);
+
+		RecordingReceiver device = new RecordingReceiver();
+		generator.generate(new Receiver[] { device });
+
+		boolean sysex = false;
+		boolean raw = false;
+
+		for (MidiMessage message : device.messages) {
+			sysex |= message instanceof SysexMessage;
+			raw |= !(message instanceof ShortMessage)
+					&& !(message instanceof SysexMessage);
+			assertTrue(message.getStatus() >= 0x80);
+		}
+
+		assertTrue(sysex);
+		assertTrue(raw);
+	}
+
+	@Test
+	public void testBurstsAreSentByAllDevices() throws InterruptedException {
+
+		MidiStressGenerator generator = new MidiStressGenerator();
+		generator.setProfile(Profile.BURST);
+		generator.setRate(6400);
+		generator.setDuration(100);
+
+		RecordingReceiver first = new RecordingReceiver();
+		RecordingReceiver second = new RecordingReceiver();
+		generator.generate(new Receiver[] { first, second });
+
+		assertEquals(0, first.messages.size() % 64);
+		assertEquals(first.messages.size(), second.messages.size());
+
+		for (int i = 0; i < first.messages.size(); i++) {
+			assertTrue(Arrays.equals(first.messages.get(i).getMessage(),
+					second.messages.get(i).getMessage()));
+		}
+	}
+
+	/**
+	 * Records the sent messages of a device
+	 */
+	private static class RecordingReceiver implements Receiver {
+
+		private final List<MidiMessage> messages = new ArrayList<MidiMessage>();
+
+		@Override
+		public void send(MidiMessage message, long timeStamp) {
+			messages.add(message);
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+}
@@ -0,0 +1,84 @@
+package com.midi_automator.tests.unit.midi;
+
+import static org.junit.Assert.*;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.SysexMessage;
+
+import org.junit.Test;
+
+import com.midi_automator.midi.MidiRoute;
+import com.midi_automator.midi.MidiRoutingTable;
+import com.midi_automator.midi.MidiSysexTrie;
+import com.midi_automator.utils.MidiUtils;
+
+public class MidiSysexTrieTest {
+
+	@Test
+	public void testLearnedSignatureMatchesMessage()
+			throws InvalidMidiDataException {
+
+		SysexMessage message = sysex(0xF0, 0x43, 0x10, 0x4C, 0x00, 0xF7);
+		String signature = MidiUtils.messageToString(message);
+
+		MidiRoutingTable table = new MidiRoutingTable();
+		table.addItem(signature, 2);
+
+		assertEquals(2, table.getRoute(message).getItemIndex());
+		assertNull(table.getRoute(sysex(0xF0, 0x43, 0x10, 0x4C, 0x01, 0xF7)));
+		assertNull(table.getRoute(sysex(0xF0, 0x43, 0x10, 0x4C, 0x00, 0x00,
+				0xF7)));
+		assertEquals(1, table.size());
+	}
+
+	@Test
+	public void testWildcardMatchesAnyDeviceId()
+			throws InvalidMidiDataException {
+
+		MidiRoutingTable table = new MidiRoutingTable();
+		table.addNext("Sysex message: F0 43 XX 4C 00 F7");
+		table.addItem("Sysex message: F0 43 10 4C 00 F7", 4);
+
+		MidiRoute route = table.getRoute(sysex(0xF0, 0x43, 0x1F, 0x4C, 0x00,
+				0xF7));
+		assertTrue(route.isOpenNext());
+
+		// exact bytes are preferred
+		route = table.getRoute(sysex(0xF0, 0x43, 0x10, 0x4C, 0x00, 0xF7));
+		assertEquals(4, route.getItemIndex());
+		assertFalse(route.isOpenNext());
+	}
+
+	@Test
+	public void testBacktrackingFromExactToWildcard()
+			throws InvalidMidiDataException {
+
+		MidiRoutingTable table = new MidiRoutingTable();
+		table.addItem("Sysex message: F0 7E 01 06 F7", 0);
+		table.addItem("Sysex message: F0 7E XX 07 F7", 1);
+
+		assertEquals(1, table.getRoute(sysex(0xF0, 0x7E, 0x01, 0x07, 0xF7))
+				.getItemIndex());
+		assertEquals(0, table.getRoute(sysex(0xF0, 0x7E, 0x01, 0x06, 0xF7))
+				.getItemIndex());
+	}
+
+	@Test
+	public void testPatternParsing() {
+
+		assertArrayEquals(new int[] { 0xF0, 0x43, MidiSysexTrie.WILDCARD,
+				0xF7 }, MidiSysexTrie.parsePattern("Sysex message: F0 43 xx F7"));
+		assertNull(MidiSysexTrie.parsePattern("channel 1: NOTE ON C3"));
+		assertNull(MidiSysexTrie.parsePattern("Sysex message: F0 4G F7"));
+		assertNull(MidiSysexTrie.parsePattern("Sysex message: 43 F7"));
+	}
+
+	private SysexMessage sysex(int... values) throws InvalidMidiDataException {
+
+		byte[] data = new byte[values.length];
+		for (int i = 0; i < values.length; i++) {
+			data[i] = (byte) values[i];
+		}
+		return new SysexMessage(data, data.length);
+	}
+}
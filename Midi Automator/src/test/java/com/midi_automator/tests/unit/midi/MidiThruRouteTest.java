@@ -0,0 +1,143 @@
+package com.midi_automator.tests.unit.midi;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.ShortMessage;
+
+import org.junit.Test;
+
+import com.midi_automator.midi.MidiThruRoute;
+import com.midi_automator.utils.MidiUtils;
+
+public class MidiThruRouteTest {
+
+	@Test
+	public void testMessagesAreForwardedUnchanged() throws Exception {
+
+		RecordingReceiver receiver = new RecordingReceiver();
+		MidiThruRoute route = new MidiThruRoute("route");
+
+		ShortMessage message = new ShortMessage(ShortMessage.NOTE_ON, 60, 100);
+		route.forward(message, System.nanoTime());
+		assertEquals(0, route.getForwardedCount());
+
+		route.setReceiver(receiver);
+		route.forward(message, System.nanoTime());
+		route.forward(new ShortMessage(ShortMessage.TIMING_CLOCK),
+				System.nanoTime());
+
+		assertSame(message, receiver.messages.get(0));
+		assertEquals("Timing clock", receiver.getSignature(1));
+		assertEquals(2, route.getForwardedCount());
+		assertEquals(2, route.getLatency().getCount());
+
+		route.resetStatistics();
+		assertEquals(0, route.getForwardedCount());
+	}
+
+	@Test
+	public void testFilterSelectsForwardedMessages() throws Exception {
+
+		RecordingReceiver receiver = new RecordingReceiver();
+		MidiThruRoute route = new MidiThruRoute("route");
+		route.setReceiver(receiver);
+		route.getFilter().setRejectedStatuses("F8, FE");
+
+		route.forward(new ShortMessage(ShortMessage.TIMING_CLOCK),
+				System.nanoTime());
+		route.forward(new ShortMessage(ShortMessage.ACTIVE_SENSING),
+				System.nanoTime());
+		route.forward(new ShortMessage(ShortMessage.START), System.nanoTime());
+
+		assertEquals(1, receiver.messages.size());
+		assertEquals("Start", receiver.getSignature(0));
+	}
+
+	@Test
+	public void testMessagesAreTransformed() throws Exception {
+
+		RecordingReceiver receiver = new RecordingReceiver();
+		MidiThruRoute route = new MidiThruRoute("route");
+		route.setReceiver(receiver);
+		route.setChannelMap("1>2");
+		route.setNoteMap("C3>D3");
+		route.setControllerMap("7>11");
+		route.setValueRange("127-0");
+
+		route.forward(new ShortMessage(ShortMessage.NOTE_ON, 0, 60, 127),
+				System.nanoTime());
+		route.forward(new ShortMessage(ShortMessage.NOTE_ON, 0, 60, 0),
+				System.nanoTime());
+		route.forward(new ShortMessage(ShortMessage.CONTROL_CHANGE, 0, 7, 0),
+				System.nanoTime());
+		route.forward(new ShortMessage(ShortMessage.CONTROL_CHANGE, 2, 1, 27),
+				System.nanoTime());
+
+		ShortMessage noteOn = (ShortMessage) receiver.messages.get(0);
+		assertEquals(1, noteOn.getChannel());
+		assertEquals(62, noteOn.getData1());
+		assertEquals(1, noteOn.getData2());
+
+		// a NOTE ON with velocity 0 stays a NOTE OFF
+		assertEquals(0, ((ShortMessage) receiver.messages.get(1)).getData2());
+
+		ShortMessage controlChange = (ShortMessage) receiver.messages.get(2);
+		assertEquals(1, controlChange.getChannel());
+		assertEquals(11, controlChange.getData1());
+		assertEquals(127, controlChange.getData2());
+
+		controlChange = (ShortMessage) receiver.messages.get(3);
+		assertEquals(2, controlChange.getChannel());
+		assertEquals(1, controlChange.getData1());
+		assertEquals(100, controlChange.getData2());
+	}
+
+	@Test
+	public void testInvalidMapsAreRejected() {
+
+		MidiThruRoute route = new MidiThruRoute("route");
+
+		String[] channelMaps = { "0>1", "17>1", "1-2", "a>b" };
+		for (String map : channelMaps) {
+			try {
+				route.setChannelMap(map);
+				fail("Channel map " + map + " was accepted");
+			} catch (NumberFormatException e) {
+			}
+		}
+
+		try {
+			route.setValueRange("0-128");
+			fail("Value range was accepted");
+		} catch (NumberFormatException e) {
+		}
+
+		route.setChannelMap("");
+		route.setNoteMap(" ");
+		route.setValueRange("");
+	}
+
+	class RecordingReceiver implements Receiver {
+
+		List<MidiMessage> messages = new ArrayList<MidiMessage>();
+
+		@Override
+		public void send(MidiMessage message, long timeStamp) {
+			messages.add(message);
+		}
+
+		@Override
+		public void close() {
+		}
+
+		String getSignature(int index) throws InvalidMidiDataException {
+			return MidiUtils.messageToString(messages.get(index));
+		}
+	}
+}
@@ -0,0 +1,117 @@
+package com.midi_automator.tests.unit.midi;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.midi_automator.midi.MidiTimerWheel;
+
+public class MidiTimerWheelTest {
+
+	private static final long TICK = 1000;
+
+	@Test
+	public void testTimeoutsExpireOnTheFirstTickAfterTheirDeadline() {
+
+		MidiTimerWheel wheel = new MidiTimerWheel(TICK, 8);
+		List<String> expired = new ArrayList<String>();
+
+		RecordingTimeout first = new RecordingTimeout("first", expired);
+		RecordingTimeout second = new RecordingTimeout("second", expired);
+
+		wheel.schedule(first, 10000, 2500);
+		wheel.schedule(second, 10000, 1000);
+		assertEquals(2, wheel.size());
+
+		assertEquals(0, wheel.advance(10999));
+		assertEquals(1, wheel.advance(11000));
+		assertEquals(0, wheel.advance(12999));
+		assertEquals(1, wheel.advance(13000));
+		assertEquals("[second, first]", expired.toString());
+		assertEquals(0, wheel.size());
+	}
+
+	@Test
+	public void testTimeoutsBeyondOneRotation() {
+
+		MidiTimerWheel wheel = new MidiTimerWheel(TICK, 8);
+		List<String> expired = new ArrayList<String>();
+
+		wheel.schedule(new RecordingTimeout("late", expired), 0, 20000);
+		wheel.schedule(new RecordingTimeout("early", expired), 0, 4000);
+
+		assertEquals(1, wheel.advance(12000));
+		assertEquals("[early]", expired.toString());
+		assertEquals(1, wheel.advance(20000));
+		assertEquals("[early, late]", expired.toString());
+	}
+
+	@Test
+	public void testCancelledAndRescheduledTimeouts() {
+
+		MidiTimerWheel wheel = new MidiTimerWheel(TICK, 8);
+		List<String> expired = new ArrayList<String>();
+
+		RecordingTimeout cancelled = new RecordingTimeout("cancelled",
+				expired);
+		RecordingTimeout rescheduled = new RecordingTimeout("rescheduled",
+				expired);
+
+		wheel.schedule(cancelled, 0, 1000);
+		wheel.schedule(rescheduled, 0, 1000);
+		wheel.cancel(cancelled);
+		wheel.schedule(rescheduled, 0, 3000);
+
+		assertFalse(cancelled.isScheduled());
+		assertEquals(1, wheel.size());
+		assertEquals(0, wheel.advance(2000));
+		assertEquals(1, wheel.advance(3000));
+		assertEquals("[rescheduled]", expired.toString());
+	}
+
+	@Test
+	public void testRepeatingTimeout() {
+
+		final MidiTimerWheel wheel = new MidiTimerWheel(TICK, 8);
+		final List<String> expired = new ArrayList<String>();
+
+		MidiTimerWheel.Timeout repeating = new MidiTimerWheel.Timeout() {
+			@Override
+			protected void expire(long now) {
+				expired.add("repeat");
+				if (expired.size() < 3) {
+					wheel.schedule(this, now, 8000);
+				}
+			}
+		};
+
+		wheel.schedule(repeating, 0, 8000);
+		for (long now = 0; now <= 100000; now += TICK) {
+			wheel.advance(now);
+		}
+		assertEquals(3, expired.size());
+		assertEquals(0, wheel.size());
+	}
+
+	/**
+	 * Records its expiration
+	 */
+	private static class RecordingTimeout extends MidiTimerWheel.Timeout {
+
+		private final String name;
+		private final List<String> expired;
+
+		private RecordingTimeout(String name, List<String> expired) {
+			this.name = name;
+			this.expired = expired;
+		}
+
+		@Override
+		protected void expire(long now) {
+			expired.add(name);
+		}
+	}
+}
@@ -0,0 +1,69 @@
+package com.midi_automator.tests.unit.presenter.services;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.sound.midi.InvalidMidiDataException;
+
+import org.junit.Test;
+
+import com.midi_automator.midi.MidiParameterMessage;
+import com.midi_automator.model.SetList;
+import com.midi_automator.presenter.services.ItemListService;
+import com.midi_automator.utils.MidiUtils;
+
+public class ItemListServiceTest {
+
+	@Test
+	public void testSendingSignaturesAreUniqueBeyond127Items()
+			throws InvalidMidiDataException {
+
+		List<String> signatures = new ArrayList<String>();
+
+		for (int i = 0; i < 300; i++) {
+			String signature = ItemListService
+					.getUniqueSendingMidiSignature(signatures);
+			assertNotNull(signature);
+			assertFalse(signature, signatures.contains(signature));
+			assertNotNull(MidiUtils.signatureToMessage(signature));
+			signatures.add(signature);
+		}
+
+		assertEquals("channel 16: CONTROL CHANGE 1 value: 127",
+				signatures.get(0));
+		assertEquals("channel 16: CONTROL CHANGE 127 value: 127",
+				signatures.get(126));
+		assertEquals("channel 16: NRPN 0 value: 16383", signatures.get(127));
+		assertTrue(MidiUtils.signatureToMessage(signatures.get(299))
+				instanceof MidiParameterMessage);
+	}
+
+	@Test
+	public void testFullSetListGetsUniqueSendingSignatures() {
+
+		Set<String> signatures = new HashSet<String>();
+
+		for (int controlNo = 1; controlNo <= 127; controlNo++) {
+			signatures.add("channel 16: CONTROL CHANGE " + controlNo
+					+ " value: 127");
+		}
+		for (int parameter = 0; parameter < SetList.MAX_ITEMS; parameter++) {
+			if (parameter != 5000) {
+				signatures.add("channel 16: NRPN " + parameter
+						+ " value: 16383");
+			}
+		}
+		assertTrue(signatures.size() >= SetList.MAX_ITEMS);
+
+		String signature = ItemListService
+				.getUniqueSendingMidiSignature(signatures);
+		assertEquals("channel 16: NRPN 5000 value: 16383", signature);
+
+		signatures.add(signature);
+		assertNull(ItemListService.getUniqueSendingMidiSignature(signatures));
+	}
+}
@@ -0,0 +1,60 @@
+package com.midi_automator.tests.unit.utils;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.midi_automator.utils.LatencyHistogram;
+
+public class LatencyHistogramTest {
+
+	@Test
+	public void testPercentiles() {
+
+		LatencyHistogram histogram = new LatencyHistogram();
+
+		for (long micros = 1; micros <= 1000; micros++) {
+			histogram.record(micros);
+		}
+		histogram.record(5000000);
+
+		assertEquals(1001, histogram.getCount());
+		assertEquals(5000000, histogram.getMax());
+
+		long p50 = histogram.getValueAtPercentile(50);
+		long p99 = histogram.getValueAtPercentile(99);
+
+		// values are exact up to 32 microseconds and within 6.25% above
+		assertTrue("p50: " + p50, p50 >= 501 && p50 <= 501 * 1.0625);
+		assertTrue("p99: " + p99, p99 >= 991 && p99 <= 991 * 1.0625);
+		assertEquals(5000000, histogram.getValueAtPercentile(100));
+	}
+
+	@Test
+	public void testExactLowValues() {
+
+		LatencyHistogram histogram = new LatencyHistogram();
+
+		for (long micros = 1; micros <= 30; micros++) {
+			histogram.record(micros);
+		}
+
+		assertEquals(15, histogram.getValueAtPercentile(50));
+		assertEquals(30, histogram.getValueAtPercentile(99));
+	}
+
+	@Test
+	public void testOutOfRangeValues() {
+
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(-5);
+		histogram.record(Long.MAX_VALUE / 2);
+
+		assertEquals(0, histogram.getValueAtPercentile(50));
+		assertEquals(Long.MAX_VALUE / 2, histogram.getMax());
+
+		histogram.reset();
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getValueAtPercentile(99));
+	}
+}
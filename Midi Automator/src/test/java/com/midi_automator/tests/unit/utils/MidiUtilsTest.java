@@ -0,0 +1,147 @@
+package com.midi_automator.tests.unit.utils;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.ShortMessage;
+
+import org.junit.Test;
+
+import com.midi_automator.midi.MidiParameterMessage;
+import com.midi_automator.midi.MidiParameterMessage.Type;
+import com.midi_automator.utils.MidiUtils;
+
+public class MidiUtilsTest {
+
+	@Test
+	public void testChannelVoiceSignaturesAreParsedBack()
+			throws InvalidMidiDataException {
+
+		int[] commands = { ShortMessage.NOTE_OFF, ShortMessage.NOTE_ON,
+				ShortMessage.POLY_PRESSURE, ShortMessage.CONTROL_CHANGE,
+				ShortMessage.PROGRAM_CHANGE, ShortMessage.CHANNEL_PRESSURE,
+				ShortMessage.PITCH_BEND };
+
+		for (int command : commands) {
+			for (int channel = 0; channel < 16; channel += 3) {
+				for (int data1 = 0; data1 < 128; data1++) {
+					for (int data2 = 0; data2 < 128; data2 += 21) {
+
+						MidiMessage normalized = MidiUtils
+								.normalizeMidiMesage(new ShortMessage(command,
+										channel, data1, data2));
+						String signature = MidiUtils
+								.messageToString(normalized);
+						MidiMessage parsed = MidiUtils
+								.signatureToMessage(signature);
+
+						assertTrue(signature, Arrays.equals(
+								normalized.getMessage(), parsed.getMessage()));
+						assertSame(signature,
+								MidiUtils.messageToString(parsed));
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testSignaturesAreCanonical() throws InvalidMidiDataException {
+
+		String signature = MidiUtils.messageToString(new ShortMessage(
+				ShortMessage.CONTROL_CHANGE, 0, 103, 127));
+
+		assertEquals("channel 1: CONTROL CHANGE 103 value: 127", signature);
+		assertSame(signature, MidiUtils.messageToString(new ShortMessage(
+				ShortMessage.CONTROL_CHANGE, 0, 103, 127)));
+		assertSame(MidiUtils.signatureToMessage(signature),
+				MidiUtils.signatureToMessage(new String(signature)));
+	}
+
+	@Test
+	public void testSystemMessageSignatures() throws InvalidMidiDataException {
+
+		assertEquals("Timing clock", MidiUtils.messageToString(new ShortMessage(
+				ShortMessage.TIMING_CLOCK)));
+		assertEquals("Song Position: 300", MidiUtils
+				.messageToString(new ShortMessage(
+						ShortMessage.SONG_POSITION_POINTER, 44, 2)));
+		assertEquals("MTC Quarter Frame: hours count MS: 1, frame type: "
+				+ "30 frames/second (non-drop)",
+				MidiUtils.messageToString(new ShortMessage(
+						ShortMessage.MIDI_TIME_CODE, 0x77, 0)));
+
+		int[] statuses = { ShortMessage.MIDI_TIME_CODE,
+				ShortMessage.SONG_POSITION_POINTER, ShortMessage.SONG_SELECT,
+				ShortMessage.TUNE_REQUEST, ShortMessage.TIMING_CLOCK,
+				ShortMessage.START, ShortMessage.CONTINUE, ShortMessage.STOP,
+				ShortMessage.ACTIVE_SENSING, ShortMessage.SYSTEM_RESET };
+
+		for (int status : statuses) {
+			for (int data1 = 0; data1 < 128; data1 += 5) {
+
+				String signature = MidiUtils.messageToString(new ShortMessage(
+						status, data1, 2));
+				assertEquals(signature, MidiUtils.messageToString(MidiUtils
+						.signatureToMessage(signature)));
+			}
+		}
+
+		MidiMessage start = MidiUtils
+				.signatureToMessage("channel 11: UNKNOWN MESSAGE: status = 250, byte1 = 0, byte2 = 0");
+		assertEquals(ShortMessage.START, start.getStatus());
+	}
+
+	@Test
+	public void testParameterSignaturesAreParsedBack()
+			throws InvalidMidiDataException {
+
+		MidiParameterMessage[] messages = {
+				new MidiParameterMessage(Type.CONTROL_CHANGE_14_BIT, 1, 7,
+						12805),
+				new MidiParameterMessage(Type.NRPN, 0, 1282, 5125),
+				new MidiParameterMessage(Type.RPN, 15, 0, 0x3FFF) };
+
+		for (MidiParameterMessage message : messages) {
+
+			String signature = MidiUtils.messageToString(message);
+			MidiMessage parsed = MidiUtils.signatureToMessage(signature);
+
+			assertTrue(signature, parsed instanceof MidiParameterMessage);
+			assertArrayEquals(signature, message.getMessage(),
+					parsed.getMessage());
+		}
+
+		assertEquals(
+				ShortMessage.class,
+				MidiUtils.signatureToMessage(
+						"channel 1: CONTROL CHANGE 7 value: 100").getClass());
+	}
+
+	@Test(expected = InvalidMidiDataException.class)
+	public void testInvalidParameterSignatureIsRejected()
+			throws InvalidMidiDataException {
+		MidiUtils
+				.signatureToMessage("channel 1: 14 BIT CONTROL CHANGE 32 value: 0");
+	}
+
+	@Test(expected = InvalidMidiDataException.class)
+	public void testInvalidSignatureIsRejected()
+			throws InvalidMidiDataException {
+		MidiUtils.signatureToMessage("channel 1: CONTROL CHANGE 128 value: 0");
+	}
+
+	@Test
+	public void testKeyNumbers() {
+
+		assertEquals(60, MidiUtils.getKeyNumber("C3"));
+		assertEquals(1, MidiUtils.getKeyNumber("C#-2"));
+		assertEquals(127, MidiUtils.getKeyNumber("G8"));
+		assertEquals(-1, MidiUtils.getKeyNumber("G#8"));
+		assertEquals(-1, MidiUtils.getKeyNumber("H3"));
+		assertEquals(-1, MidiUtils.getKeyNumber("C3 "));
+	}
+}
@@ -0,0 +1,58 @@
+package com.midi_automator.tests.unit.view;
+
+import static org.junit.Assert.*;
+
+import java.awt.Color;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.JLabel;
+
+import org.junit.Test;
+
+import com.midi_automator.view.windows.MainFrame.BlinkingStrategy;
+
+public class BlinkingStrategyTest {
+
+	@Test
+	public void testBlinkingIsRenderedByFrames() {
+
+		JLabel label = new JLabel();
+		label.setBackground(Color.WHITE);
+		BlinkingStrategy strategy = new BlinkingStrategy(label, Color.YELLOW,
+				200, 1);
+
+		strategy.startBlinking();
+		long start = System.nanoTime();
+
+		// many activities within one frame are rendered once
+		for (int i = 0; i < 1000; i++) {
+			strategy.startBlinking();
+		}
+
+		strategy.animate(start + TimeUnit.MILLISECONDS.toNanos(30));
+		assertEquals(Color.YELLOW, label.getBackground());
+
+		strategy.animate(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(250));
+		assertEquals(Color.WHITE, label.getBackground());
+	}
+
+	@Test
+	public void testOtherStrategyColorIsKept() {
+
+		JLabel label = new JLabel();
+		label.setBackground(Color.WHITE);
+		BlinkingStrategy first = new BlinkingStrategy(label, Color.RED, 200, 1);
+		BlinkingStrategy other = new BlinkingStrategy(label, Color.GREEN, 200,
+				1);
+
+		long now = System.nanoTime();
+		other.startBlinking();
+		other.animate(now);
+		first.startBlinking();
+		first.animate(now);
+		assertEquals(Color.RED, label.getBackground());
+
+		other.animate(now + TimeUnit.MILLISECONDS.toNanos(250));
+		assertEquals(Color.RED, label.getBackground());
+	}
+}
@@ -0,0 +1,127 @@
+package com.midi_automator.tests.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.sound.midi.MidiDevice;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.Transmitter;
+
+/**
+ * A midi device without hardware. Messages sent to its receivers are recorded.
+ */
+public class MockMidiDevice implements MidiDevice {
+
+	private final MidiDevice.Info info;
+	private final int maxTransmitters;
+	private final int maxReceivers;
+	private final long microsecondPosition;
+	private boolean open;
+	private int createdReceivers;
+
+	public final List<MidiMessage> messages = Collections
+			.synchronizedList(new ArrayList<MidiMessage>());
+	public final List<Long> timeStamps = Collections
+			.synchronizedList(new ArrayList<Long>());
+
+	/**
+	 * Constructor
+	 *
+	 * @param name
+	 *            The name of the device
+	 * @param maxTransmitters
+	 *            The maximum transmitters, -1 for unlimited
+	 * @param maxReceivers
+	 *            The maximum receivers, -1 for unlimited
+	 * @param microsecondPosition
+	 *            The device time, -1 if time stamps are not supported
+	 */
+	public MockMidiDevice(String name, int maxTransmitters, int maxReceivers,
+			long microsecondPosition) {
+		info = new MidiDevice.Info(name, "", "", "") {
+		};
+		this.maxTransmitters = maxTransmitters;
+		this.maxReceivers = maxReceivers;
+		this.microsecondPosition = microsecondPosition;
+	}
+
+	@Override
+	public MidiDevice.Info getDeviceInfo() {
+		return info;
+	}
+
+	@Override
+	public void open() {
+		open = true;
+	}
+
+	@Override
+	public void close() {
+		open = false;
+	}
+
+	@Override
+	public boolean isOpen() {
+		return open;
+	}
+
+	@Override
+	public long getMicrosecondPosition() {
+		return microsecondPosition;
+	}
+
+	@Override
+	public int getMaxReceivers() {
+		return maxReceivers;
+	}
+
+	@Override
+	public int getMaxTransmitters() {
+		return maxTransmitters;
+	}
+
+	@Override
+	public Receiver getReceiver() {
+
+		createdReceivers++;
+
+		return new Receiver() {
+
+			@Override
+			public void send(MidiMessage message, long timeStamp) {
+				messages.add(message);
+				timeStamps.add(timeStamp);
+			}
+
+			@Override
+			public void close() {
+			}
+		};
+	}
+
+	/**
+	 * Gets the number of receivers created by getReceiver()
+	 *
+	 * @return The number of created receivers
+	 */
+	public int getCreatedReceivers() {
+		return createdReceivers;
+	}
+
+	@Override
+	public List<Receiver> getReceivers() {
+		return new ArrayList<Receiver>();
+	}
+
+	@Override
+	public Transmitter getTransmitter() {
+		return null;
+	}
+
+	@Override
+	public List<Transmitter> getTransmitters() {
+		return new ArrayList<Transmitter>();
+	}
+}